@@ -734,11 +734,11 @@ public class RankedSet {
                     }
                     if (!keyShouldBePresent && level == 0 && lastCount > 0) {
                         // If the key need not be present and we are on the finest level, then if it wasn't an exact
-                        // match, key would have the next rank after the last one. Except in the case where key is less
-                        // than the lowest key in the set, in which case it takes rank 0. This is recognizable because
-                        // at level 0, only the leftmost empty array has a count of zero; every other key has a count of one
-                        // (or the number of duplicates if those are counted separately).
-                        rank++;
+                        // match, key would have the rank after all the occurrences of the last one. Except in the case
+                        // where key is less than the lowest key in the set, in which case it takes rank 0. This is
+                        // recognizable because at level 0, only the leftmost empty array has a count of zero; every other
+                        // key has a count of one (or the number of duplicates if those are counted separately).
+                        rank += lastCount;
                     }
                     return true;
                 }
@@ -0,0 +1,490 @@
+/*
+ * ShardedRankedSet.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.async;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.ReadTransactionContext;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.TransactionContext;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.apple.foundationdb.async.AsyncUtil.READY_FALSE;
+
+/**
+ * A {@link RankedSet} whose additions are spread over several independent shards, so that concurrent updates of a
+ * single popular set do not all conflict with one another.
+ *
+ * <p>
+ * The set consists of a <em>base</em> ranked set, stored just as an ordinary {@code RankedSet} in the given subspace,
+ * and a number of <em>shard</em> ranked sets, stored after the level subspaces of the base under the key
+ * <code>[{@value #SHARDS_KEY}, <i>shard</i>]</code>. Each key is added to the shard chosen by a hash of the key, and
+ * every element is in either its shard or the base. Since the sets are disjoint (or, when counting duplicates, their
+ * counts add up), the rank of a key is the sum of its ranks in each set, and the element at a given rank is found by
+ * searching the non-empty sets together for the largest element whose combined rank does not exceed that rank. Ranges
+ * are read from every set and merged.
+ * </p>
+ *
+ * <p>
+ * Reads therefore look at every non-empty set. {@link #compact} moves elements from the shards into the base, which
+ * is meant to be run periodically in the background to keep the shards small. Empty shards cost only a size check.
+ * </p>
+ *
+ * <p>
+ * The number of shards of an existing set must not be changed.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ShardedRankedSet extends RankedSet {
+    /**
+     * The first tuple element of the subspaces of the shards, which is never a level of the base.
+     */
+    public static final int SHARDS_KEY = MAX_LEVELS;
+
+    private final RankedSet base;
+    private final List<RankedSet> shards;
+    private final List<RankedSet> allSets;
+
+    /**
+     * Initialize a new sharded ranked set.
+     * @param subspace the subspace where the ranked set is stored
+     * @param executor an executor to use when running asynchronous tasks
+     * @param config configuration to use for the base and all shards
+     * @param nshards the number of shards over which additions are spread
+     */
+    public ShardedRankedSet(Subspace subspace, Executor executor, Config config, int nshards) {
+        this(subspace, executor, config, nshards, setSubspace -> new RankedSet(setSubspace, executor, config));
+    }
+
+    /**
+     * Initialize a new sharded ranked set.
+     * @param subspace the subspace where the ranked set is stored
+     * @param executor an executor to use when running asynchronous tasks
+     * @param config configuration to use for the base and all shards
+     * @param nshards the number of shards over which additions are spread
+     * @param setFactory a function to create the ranked set for the base or a shard in a given subspace, which must
+     * use the same configuration
+     */
+    public ShardedRankedSet(Subspace subspace, Executor executor, Config config, int nshards,
+                            Function<Subspace, RankedSet> setFactory) {
+        super(subspace, executor, config);
+        if (nshards < 1) {
+            throw new IllegalArgumentException("number of shards must be positive");
+        }
+        this.base = setFactory.apply(subspace);
+        final List<RankedSet> shardSets = new ArrayList<>(nshards);
+        for (int i = 0; i < nshards; i++) {
+            shardSets.add(setFactory.apply(subspace.subspace(Tuple.from(SHARDS_KEY, i))));
+        }
+        this.shards = Collections.unmodifiableList(shardSets);
+        final List<RankedSet> sets = new ArrayList<>(nshards + 1);
+        sets.add(base);
+        sets.addAll(shardSets);
+        this.allSets = Collections.unmodifiableList(sets);
+    }
+
+    /**
+     * Get the number of shards over which additions are spread.
+     * @return the number of shards
+     */
+    public int getNShards() {
+        return shards.size();
+    }
+
+    /**
+     * Get the shard to which a key is added.
+     * @param key the key
+     * @return the index of the shard for {@code key}
+     */
+    public int getShardIndex(byte[] key) {
+        // Do not use the configured hash function, whose low bits choose the levels of a key, since all of the keys
+        // in a shard would then share them. (It might also be random.)
+        final int hash = (int)((Arrays.hashCode(key) * 0x9E3779B97F4A7C15L) >>> 32);
+        return Math.floorMod(hash, shards.size());
+    }
+
+    private RankedSet shardFor(byte[] key) {
+        return shards.get(getShardIndex(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> init(TransactionContext tc) {
+        return tc.runAsync(tr -> AsyncUtil.whenAll(allSets.stream().map(set -> set.init(tr)).collect(Collectors.toList())));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> initNeeded(ReadTransactionContext tc) {
+        return tc.readAsync(tr -> AsyncUtil.getAll(allSets.stream().map(set -> set.initNeeded(tr)).collect(Collectors.toList()))
+                .thenApply(needed -> needed.contains(Boolean.TRUE)));
+    }
+
+    /**
+     * Add a key to the set. The key is added to its shard, unless duplicates are not counted and it is already in the
+     * base.
+     * @param tc the transaction to use to access the database
+     * @param key the key to add
+     * @return a future that completes to {@code true} if the ranked set was modified
+     */
+    @Override
+    public CompletableFuture<Boolean> add(TransactionContext tc, byte[] key) {
+        final RankedSet shard = shardFor(key);
+        if (config.isCountDuplicates()) {
+            return shard.add(tc, key);
+        }
+        return tc.runAsync(tr -> base.contains(tr, key)
+                .thenCompose(inBase -> Boolean.TRUE.equals(inBase) ? READY_FALSE : shard.add(tr, key)));
+    }
+
+    /**
+     * Removes a key from the set. The key is removed from its shard if present there and otherwise from the base.
+     * @param tc the transaction to use to access the database
+     * @param key the key to remove
+     * @return a future that completes to {@code true} if the set was modified, that is, if the key was present before this operation
+     */
+    @Override
+    public CompletableFuture<Boolean> remove(TransactionContext tc, byte[] key) {
+        final RankedSet shard = shardFor(key);
+        return tc.runAsync(tr -> shard.contains(tr, key)
+                .thenCompose(inShard -> Boolean.TRUE.equals(inShard) ? shard.remove(tr, key) : base.remove(tr, key)));
+    }
+
+    @Override
+    public CompletableFuture<Void> clear(TransactionContext tc) {
+        // Clearing the base clears the whole subspace, so it must come first.
+        return tc.runAsync(tr -> base.clear(tr)
+                .thenCompose(vignore -> AsyncUtil.whenAll(shards.stream().map(shard -> shard.clear(tr)).collect(Collectors.toList()))));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> contains(ReadTransactionContext tc, byte[] key) {
+        return tc.readAsync(tr -> shardFor(key).contains(tr, key)
+                .thenCompose(inShard -> Boolean.TRUE.equals(inShard) ? AsyncUtil.READY_TRUE : base.contains(tr, key)));
+    }
+
+    @Override
+    public CompletableFuture<Long> count(ReadTransactionContext tc, byte[] key) {
+        return tc.readAsync(tr -> shardFor(key).count(tr, key)
+                .thenCombine(base.count(tr, key), Long::sum));
+    }
+
+    @Override
+    public CompletableFuture<Long> rank(ReadTransactionContext tc, byte[] key, boolean nullIfMissing) {
+        return tc.readAsync(tr -> {
+            if (nullIfMissing) {
+                return contains(tr, key).thenCompose(present -> Boolean.TRUE.equals(present) ?
+                                                                combinedRank(tr, allSets, key) :
+                                                                CompletableFuture.completedFuture(null));
+            } else {
+                return combinedRank(tr, allSets, key);
+            }
+        });
+    }
+
+    private static CompletableFuture<Long> combinedRank(ReadTransaction tr, List<RankedSet> sets, byte[] key) {
+        return AsyncUtil.getAll(sets.stream().map(set -> set.rank(tr, key, false)).collect(Collectors.toList()))
+                .thenApply(ranks -> ranks.stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Override
+    public CompletableFuture<Long> size(ReadTransactionContext tc) {
+        return tc.readAsync(tr -> sizes(tr).thenApply(sizes -> sizes.stream().mapToLong(Long::longValue).sum()));
+    }
+
+    private CompletableFuture<List<Long>> sizes(ReadTransaction tr) {
+        return AsyncUtil.getAll(allSets.stream().map(set -> set.size(tr)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Return the Nth item in the set.
+     *
+     * This searches all of the non-empty sets together, keeping a window of the positions in each set that could
+     * still hold the item. Each round takes the middle key of every window and finds the combined rank of their
+     * median, weighted by the window sizes. Depending on whether that rank is at most {@code rank}, the positions
+     * below or above the median are dropped from every window, which removes at least a quarter of the remaining
+     * positions. So the number of rounds is logarithmic in the size of the set, and each round does one lookup per set.
+     * @param tc the transaction to use to access the database
+     * @param rank the rank index to find
+     * @return a future that completes to the key for the {@code rank}th item or {@code null} if that index is out of bounds
+     */
+    @Override
+    public CompletableFuture<byte[]> getNth(ReadTransactionContext tc, long rank) {
+        if (rank < 0) {
+            return CompletableFuture.completedFuture((byte[])null);
+        }
+        return tc.readAsync(tr -> sizes(tr).thenCompose(sizes -> {
+            final long total = sizes.stream().mapToLong(Long::longValue).sum();
+            if (rank >= total) {
+                return CompletableFuture.completedFuture((byte[])null);
+            }
+            final List<RankedSet> nonEmptySets = new ArrayList<>();
+            final List<Long> nonEmptySizes = new ArrayList<>();
+            for (int i = 0; i < allSets.size(); i++) {
+                if (sizes.get(i) > 0) {
+                    nonEmptySets.add(allSets.get(i));
+                    nonEmptySizes.add(sizes.get(i));
+                }
+            }
+            if (nonEmptySets.size() == 1) {
+                return nonEmptySets.get(0).getNth(tr, rank);
+            }
+            final NthSearch search = new NthSearch(nonEmptySets, nonEmptySizes, total, rank);
+            return AsyncUtil.whileTrue(() -> search.next(tr), executor).thenApply(vignore -> search.found);
+        }));
+    }
+
+    private static class NthSearch {
+        private final List<RankedSet> sets;
+        private final long rank;
+        // The positions in each set that could still hold the largest key whose combined rank is at most rank.
+        private final long[] low;
+        private final long[] high;
+        private byte[] found;
+
+        NthSearch(List<RankedSet> sets, List<Long> sizes, long total, long rank) {
+            this.sets = sets;
+            this.rank = rank;
+            this.low = new long[sets.size()];
+            this.high = new long[sets.size()];
+            for (int i = 0; i < sets.size(); i++) {
+                final long size = sizes.get(i);
+                low[i] = Math.max(0L, rank - (total - size));
+                high[i] = Math.min(rank, size - 1);
+            }
+        }
+
+        CompletableFuture<Boolean> next(ReadTransaction tr) {
+            final long[] mids = new long[sets.size()];
+            final List<CompletableFuture<byte[]>> midKeys = new ArrayList<>(sets.size());
+            for (int i = 0; i < sets.size(); i++) {
+                if (low[i] > high[i]) {
+                    midKeys.add(CompletableFuture.completedFuture((byte[])null));
+                } else {
+                    mids[i] = (low[i] + high[i]) >>> 1;
+                    midKeys.add(sets.get(i).getNth(tr, mids[i]));
+                }
+            }
+            return AsyncUtil.getAll(midKeys).thenCompose(keys -> {
+                final byte[] median = weightedMedian(keys);
+                if (median == null) {
+                    return READY_FALSE;
+                }
+                return AsyncUtil.getAll(sets.stream().map(set -> set.rank(tr, median, false)).collect(Collectors.toList()))
+                        .thenApply(ranks -> {
+                            final boolean atMost = ranks.stream().mapToLong(Long::longValue).sum() <= rank;
+                            if (atMost && (found == null || ByteArrayUtil.compareUnsigned(median, found) > 0)) {
+                                found = median;
+                            }
+                            for (int i = 0; i < sets.size(); i++) {
+                                final byte[] key = keys.get(i);
+                                if (atMost) {
+                                    // Keys less than the median, or, if it was found, equal to it, are not needed.
+                                    low[i] = Math.max(low[i], ranks.get(i));
+                                    if (key != null && ByteArrayUtil.compareUnsigned(key, median) <= 0) {
+                                        low[i] = Math.max(low[i], mids[i] + 1);
+                                    }
+                                } else {
+                                    // Keys at least the median are beyond the rank.
+                                    high[i] = Math.min(high[i], ranks.get(i) - 1);
+                                    if (key != null && ByteArrayUtil.compareUnsigned(key, median) >= 0) {
+                                        high[i] = Math.min(high[i], mids[i] - 1);
+                                    }
+                                }
+                            }
+                            return true;
+                        });
+            });
+        }
+
+        // The smallest middle key such that the windows whose middle keys are at most it hold at least half the
+        // positions. The windows whose middle keys are at least it then also hold at least half of them.
+        private byte[] weightedMedian(List<byte[]> keys) {
+            final List<Integer> order = new ArrayList<>(sets.size());
+            long totalWeight = 0;
+            for (int i = 0; i < sets.size(); i++) {
+                if (keys.get(i) != null) {
+                    order.add(i);
+                    totalWeight += high[i] - low[i] + 1;
+                }
+            }
+            if (order.isEmpty()) {
+                return null;
+            }
+            order.sort((i1, i2) -> ByteArrayUtil.compareUnsigned(keys.get(i1), keys.get(i2)));
+            long weight = 0;
+            for (int i : order) {
+                weight += high[i] - low[i] + 1;
+                if (weight * 2 >= totalWeight) {
+                    return keys.get(i);
+                }
+            }
+            return keys.get(order.get(order.size() - 1));
+        }
+    }
+
+    /**
+     * Get the keys in a range, in order, merged from the base and all of the shards. A key that is in more than one
+     * of them is only returned once, as with an ordinary ranked set.
+     * @param tr the transaction to use to access the database
+     * @param beginKey the (inclusive) lower bound for the range
+     * @param endKey the (exclusive) upper bound for the range
+     * @return an iterable of the keys in the ranked set within the given range
+     */
+    @Override
+    public AsyncIterable<byte[]> getRange(ReadTransaction tr, byte[] beginKey, byte[] endKey) {
+        return new AsyncIterable<byte[]>() {
+            @Override
+            public AsyncIterator<byte[]> iterator() {
+                return new MergedRangeIterator(allSets.stream()
+                        .map(set -> AsyncPeekIterator.wrap(set.getRange(tr, beginKey, endKey).iterator()))
+                        .collect(Collectors.toList()));
+            }
+
+            @Override
+            public CompletableFuture<List<byte[]>> asList() {
+                return AsyncUtil.collectRemaining(iterator());
+            }
+        };
+    }
+
+    private static class MergedRangeIterator implements AsyncIterator<byte[]> {
+        private final List<AsyncPeekIterator<byte[]>> iterators;
+
+        MergedRangeIterator(List<AsyncPeekIterator<byte[]>> iterators) {
+            this.iterators = iterators;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> onHasNext() {
+            return AsyncUtil.getAll(iterators.stream().map(AsyncIterator::onHasNext).collect(Collectors.toList()))
+                    .thenApply(hasNexts -> hasNexts.contains(Boolean.TRUE));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return onHasNext().join();
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] min = null;
+            for (AsyncPeekIterator<byte[]> iterator : iterators) {
+                if (iterator.hasNext() && (min == null || ByteArrayUtil.compareUnsigned(iterator.peek(), min) < 0)) {
+                    min = iterator.peek();
+                }
+            }
+            for (AsyncPeekIterator<byte[]> iterator : iterators) {
+                if (iterator.hasNext() && Arrays.equals(iterator.peek(), min)) {
+                    iterator.next();
+                }
+            }
+            return min;
+        }
+
+        @Override
+        public void cancel() {
+            iterators.forEach(AsyncIterator::cancel);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> preloadForLookup(ReadTransaction tr) {
+        return AsyncUtil.whenAll(allSets.stream().map(set -> set.preloadForLookup(tr)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Move elements from the shards into the base. This conflicts with concurrent additions to the same shards, so it
+     * should be done in the background, a limited number of keys per transaction, until no more keys are moved.
+     * @param tc the transaction to use to access the database
+     * @param keyLimit the maximum number of distinct keys to move
+     * @return a future that completes to the number of distinct keys moved
+     */
+    public CompletableFuture<Integer> compact(TransactionContext tc, int keyLimit) {
+        return tc.runAsync(tr -> {
+            final AtomicInteger moved = new AtomicInteger();
+            final Iterator<RankedSet> shardIterator = shards.iterator();
+            return AsyncUtil.whileTrue(() -> {
+                final int remaining = keyLimit - moved.get();
+                if (remaining <= 0 || !shardIterator.hasNext()) {
+                    return READY_FALSE;
+                }
+                final RankedSet shard = shardIterator.next();
+                return firstKeys(tr, shard, remaining)
+                        .thenCompose(keys -> moveKeys(tr, shard, keys))
+                        .thenApply(count -> {
+                            moved.addAndGet(count);
+                            return true;
+                        });
+            }, executor).thenApply(vignore -> moved.get());
+        });
+    }
+
+    private static CompletableFuture<List<byte[]>> firstKeys(Transaction tr, RankedSet shard, int limit) {
+        final Subspace levelZero = shard.getSubspace().subspace(Tuple.from(0));
+        // One more for the empty key at the start of the level.
+        return tr.getRange(levelZero.range(), limit + 1).asList().thenApply(keyValues -> {
+            final List<byte[]> keys = new ArrayList<>(keyValues.size());
+            for (KeyValue keyValue : keyValues) {
+                final byte[] key = levelZero.unpack(keyValue.getKey()).getBytes(0);
+                if (key.length > 0 && keys.size() < limit) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        });
+    }
+
+    private CompletableFuture<Integer> moveKeys(Transaction tr, RankedSet shard, List<byte[]> keys) {
+        final Iterator<byte[]> keyIterator = keys.iterator();
+        return AsyncUtil.whileTrue(() -> {
+            if (!keyIterator.hasNext()) {
+                return READY_FALSE;
+            }
+            final byte[] key = keyIterator.next();
+            return shard.count(tr, key).thenCompose(count -> {
+                final AtomicLong remaining = new AtomicLong(count);
+                // Each occurrence must be moved in turn, since concurrent updates of the same key would not see each other.
+                return AsyncUtil.whileTrue(() -> remaining.getAndDecrement() <= 0 ?
+                                                 READY_FALSE :
+                                                 base.add(tr, key).thenCompose(added -> shard.remove(tr, key)).thenApply(removed -> true),
+                        executor);
+            }).thenApply(vignore -> true);
+        }, executor).thenApply(vignore -> keys.size());
+    }
+}
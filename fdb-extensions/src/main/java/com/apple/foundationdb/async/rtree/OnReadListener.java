@@ -21,6 +21,7 @@
 package com.apple.foundationdb.async.rtree;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -34,6 +35,18 @@ public interface OnReadListener {
         // nothing
     }
 
+    /**
+     * Called before a node is fetched while scanning. If this returns a node, for instance from a cache, that node is
+     * used as is and is not fetched, and none of the other callbacks are invoked for it. The returned node must not
+     * be modified by anyone.
+     * @param nodeId the id of the node about to be fetched
+     * @return the node with the given id or {@code null} if the node needs to be fetched
+     */
+    @Nullable
+    default Node onBeforeNodeRead(@Nonnull final byte[] nodeId) {
+        return null;
+    }
+
     default <T extends Node> CompletableFuture<T> onAsyncRead(@Nonnull CompletableFuture<T> future) {
         return future;
     }
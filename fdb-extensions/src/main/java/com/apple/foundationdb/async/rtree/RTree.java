@@ -45,6 +45,7 @@ import javax.annotation.Nullable;
 import java.math.BigInteger;
 import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
@@ -588,7 +589,7 @@ public class RTree {
         final AtomicReference<byte[]> currentId = new AtomicReference<>(nodeId);
         final List<Deque<ChildSlot>> toBeProcessed = Lists.newArrayList();
         final AtomicReference<LeafNode> leafNode = new AtomicReference<>(null);
-        return AsyncUtil.whileTrue(() -> onReadListener.onAsyncRead(storageAdapter.fetchNode(readTransaction, currentId.get()))
+        return AsyncUtil.whileTrue(() -> fetchNodeForScan(readTransaction, currentId.get())
                 .thenApply(node -> {
                     if (node == null) {
                         if (Arrays.equals(currentId.get(), rootId)) {
@@ -651,6 +652,22 @@ public class RTree {
                                                    : TraversalState.of(toBeProcessed, leafNode.get()));
     }
 
+    /**
+     * Fetch a node while scanning unless the {@link OnReadListener} already has it.
+     * @param readTransaction the transaction to use
+     * @param nodeId the id of the node
+     * @return a future that completes with the node or {@code null} if there is no such node
+     */
+    @Nonnull
+    private CompletableFuture<Node> fetchNodeForScan(@Nonnull final ReadTransaction readTransaction,
+                                                     @Nonnull final byte[] nodeId) {
+        final Node node = onReadListener.onBeforeNodeRead(nodeId);
+        if (node != null) {
+            return CompletableFuture.completedFuture(node);
+        }
+        return onReadListener.onAsyncRead(storageAdapter.fetchNode(readTransaction, nodeId));
+    }
+
     /**
      * Returns the next left-most path from a given {@link TraversalState} to a leaf node containing items as
      * a {@link TraversalState}. The term <em>left-most</em> used here is defined by comparing
@@ -1088,6 +1105,147 @@ public class RTree {
         storageAdapter.writeNodes(transaction, Lists.newArrayList(oldRootNode, newRootNode, leftNode, rightNode));
     }
 
+    //
+    // Bulk load path
+    //
+
+    /**
+     * Create the item slot that {@link #insertOrUpdate(TransactionContext, Point, Tuple, Tuple)} would insert for
+     * the arguments passed in. The Hilbert value of the point is computed using this tree's Hilbert value function.
+     * @param point the point to be used in space
+     * @param keySuffix the additional key to be stored with the item
+     * @param value the additional value to be stored with the item
+     * @return a new item slot that can be passed to {@link #bulkLoad(TransactionContext, Collection)}
+     */
+    @Nonnull
+    public ItemSlot newItemSlot(@Nonnull final Point point,
+                                @Nonnull final Tuple keySuffix,
+                                @Nonnull final Tuple value) {
+        return new ItemSlot(hilbertValueFunction.apply(point), point, Tuple.from(point.getCoordinates(), keySuffix), value);
+    }
+
+    /**
+     * Method to insert or update many items at once. The items are first sorted by Hilbert value and key. If several
+     * items have the same point and key suffix, the one that comes last in {@code items} wins, just as if the items
+     * had been inserted one after another.
+     * <p>
+     * If the R-tree is empty, the tree is built bottom-up: the sorted items are packed into as few leaf nodes as
+     * possible, the child slots of those leaf nodes are then packed into intermediate nodes, and so on until all slots
+     * of a level fit into the root node. Each node is written exactly once, and no node is read other than the root
+     * node. If the R-tree is not empty, the items are inserted one by one in Hilbert value order, which still means
+     * that consecutive inserts mostly touch the same nodes.
+     * </p>
+     * Packed nodes are only filled to about halfway between {@code m} and {@code M}, so that later inserts into a
+     * packed part of the tree do not split nodes right away.
+     * @param tc transaction context
+     * @param items the items to be inserted or updated, as created by {@link #newItemSlot(Point, Tuple, Tuple)}
+     * @return a completable future that completes when all items have been inserted or updated
+     */
+    @Nonnull
+    public CompletableFuture<Void> bulkLoad(@Nonnull final TransactionContext tc,
+                                            @Nonnull final Collection<ItemSlot> items) {
+        final List<ItemSlot> sortedItems = sortAndDeduplicate(items);
+        if (sortedItems.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        return tc.runAsync(transaction -> storageAdapter.fetchNode(transaction, rootId)
+                .thenCompose(rootNode -> {
+                    if (rootNode == null || rootNode.isEmpty()) {
+                        writePackedNodes(transaction, sortedItems);
+                        return AsyncUtil.DONE;
+                    }
+                    final Iterator<ItemSlot> iterator = sortedItems.iterator();
+                    return AsyncUtil.whileTrue(() -> {
+                        final ItemSlot itemSlot = iterator.next();
+                        return fetchPathForModification(transaction, itemSlot.getHilbertValue(), itemSlot.getKey(), true)
+                                .thenCompose(leafNode -> insertOrUpdateSlot(transaction, Objects.requireNonNull(leafNode),
+                                        itemSlot.getPosition(), itemSlot.getHilbertValue(), itemSlot.getKey(), itemSlot.getValue()))
+                                .thenApply(ignored -> iterator.hasNext());
+                    }, executor);
+                }));
+    }
+
+    /**
+     * Sort the items passed in by Hilbert value and key, keeping only the last item for any given Hilbert value and
+     * key.
+     * @param items the items
+     * @return a new sorted list of items without duplicates
+     */
+    @Nonnull
+    private static List<ItemSlot> sortAndDeduplicate(@Nonnull final Collection<ItemSlot> items) {
+        final List<ItemSlot> sortedItems = Lists.newArrayList(items);
+        // this sort is stable, so items with the same Hilbert value and key remain in the order they were passed in
+        sortedItems.sort(ItemSlot.comparator);
+        final List<ItemSlot> result = Lists.newArrayListWithCapacity(sortedItems.size());
+        for (final ItemSlot itemSlot : sortedItems) {
+            final int lastIndex = result.size() - 1;
+            if (lastIndex >= 0 && ItemSlot.comparator.compare(result.get(lastIndex), itemSlot) == 0) {
+                result.set(lastIndex, itemSlot);
+            } else {
+                result.add(itemSlot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build a packed tree bottom-up from items that are sorted by Hilbert value and key and write all its nodes. The
+     * slots of each level are evenly distributed over as many nodes as are needed to fill each node to about halfway
+     * between {@code m} and {@code M}, leaving room for later inserts, while each non-root node still holds at least
+     * {@code m} slots. The topmost level becomes the root node.
+     * @param transaction transaction to use
+     * @param sortedItems the sorted items without duplicates
+     */
+    private void writePackedNodes(@Nonnull final Transaction transaction,
+                                  @Nonnull final List<ItemSlot> sortedItems) {
+        final int minM = config.getMinM();
+        final int maxM = config.getMaxM();
+        final int packedM = Math.max(minM, (minM + maxM + 1) / 2);
+        final List<Node> nodes = Lists.newArrayList();
+        List<? extends NodeSlot> currentSlots = sortedItems;
+        int level = 0;
+        while (currentSlots.size() > maxM) {
+            final int numSlots = currentSlots.size();
+            final int numNodes = Math.max(1, Math.min((numSlots + packedM - 1) / packedM, numSlots / Math.max(1, minM)));
+            final List<ChildSlot> childSlots = Lists.newArrayListWithCapacity(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                final List<? extends NodeSlot> slots = currentSlots.subList(i * numSlots / numNodes, (i + 1) * numSlots / numNodes);
+                final Node node = newPackedNode(nodeIdSupplier.get(), level, slots);
+                nodes.add(node);
+                final NodeSlot firstSlot = slots.get(0);
+                final NodeSlot lastSlot = slots.get(slots.size() - 1);
+                childSlots.add(new ChildSlot(firstSlot.getSmallestHilbertValue(), firstSlot.getSmallestKey(),
+                        lastSlot.getLargestHilbertValue(), lastSlot.getLargestKey(),
+                        node.getId(), NodeHelpers.computeMbr(slots)));
+            }
+            currentSlots = childSlots;
+            level ++;
+        }
+        nodes.add(newPackedNode(rootId, level, currentSlots));
+        storageAdapter.writeNodes(transaction, nodes);
+    }
+
+    /**
+     * Create a new node holding the slots passed in. Child slots of intermediate nodes are inserted individually, so
+     * that the node slot index (if in use) is maintained.
+     * @param nodeId the id of the new node
+     * @param level the level of the new node, {@code 0} indicating the leaf level
+     * @param slots the slots of the new node in order
+     * @return a new node
+     */
+    @Nonnull
+    private Node newPackedNode(@Nonnull final byte[] nodeId, final int level,
+                               @Nonnull final List<? extends NodeSlot> slots) {
+        if (level == 0) {
+            return new LeafNode(nodeId, Lists.newArrayList()).moveInSlots(storageAdapter, slots);
+        }
+        final IntermediateNode intermediateNode = new IntermediateNode(nodeId);
+        for (int i = 0; i < slots.size(); i++) {
+            intermediateNode.insertSlot(storageAdapter, level - 1, i, slots.get(i));
+        }
+        return intermediateNode;
+    }
+
     // Delete Path
 
     /**
@@ -156,6 +156,9 @@ public class RankedSetTest {
             for (int i = 0, n = 0; i < keys.length; ++i, n += i) {
                 long rank = rs.rank(tr, keys[i]).join();
                 assertEquals(n, rank);
+                // A missing key just after this one comes after all of its occurrences.
+                long missingRank = rs.rank(tr, ByteArrayUtil.join(keys[i], new byte[] {0}), false).join();
+                assertEquals(n + i + 1, missingRank);
             }
             for (int i = 0, n = 0; i < keys.length; ++i) {
                 for (int j = 1; j <= i + 1; j++) {
@@ -0,0 +1,117 @@
+/*
+ * ShardedRankedSetTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.async;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.test.TestDatabaseExtension;
+import com.apple.foundationdb.test.TestExecutors;
+import com.apple.foundationdb.test.TestSubspaceExtension;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for {@link ShardedRankedSet}.
+ */
+@Tag(Tags.RequiresFDB)
+@Execution(ExecutionMode.CONCURRENT)
+public class ShardedRankedSetTest {
+    @RegisterExtension
+    static final TestDatabaseExtension dbExtension = new TestDatabaseExtension();
+    @RegisterExtension
+    TestSubspaceExtension rsSubspaceExtension = new TestSubspaceExtension(dbExtension);
+    private Database db;
+    private Subspace rsSubspace;
+
+    @BeforeEach
+    public void setUp() {
+        this.db = dbExtension.getDatabase();
+        this.rsSubspace = rsSubspaceExtension.getSubspace();
+    }
+
+    @ParameterizedTest(name = "countDuplicates = {0}")
+    @ValueSource(booleans = {false, true})
+    public void nthAndRange(boolean countDuplicates) {
+        final RankedSet.Config config = RankedSet.newConfigBuilder().setCountDuplicates(countDuplicates).build();
+        final ShardedRankedSet rs = new ShardedRankedSet(rsSubspace, TestExecutors.defaultThreadPool(), config, 4);
+        rs.init(db).join();
+
+        final Random random = new Random(1066);
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            values.add(random.nextInt(100));
+        }
+        // Leave some elements in the base and some in the shards.
+        addAll(rs, values.subList(0, 150));
+        rs.compact(db, 1000).join();
+        addAll(rs, values.subList(150, values.size()));
+
+        final List<Integer> expected = countDuplicates ? new ArrayList<>(values) : new ArrayList<>(new TreeSet<>(values));
+        Collections.sort(expected);
+
+        db.read(tr -> {
+            assertEquals(expected.size(), rs.size(tr).join());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(key(expected.get(i)), rs.getNth(tr, i).join(), "rank " + i);
+            }
+            assertNull(rs.getNth(tr, expected.size()).join());
+            return null;
+        });
+
+        final List<Integer> distinct = new ArrayList<>(new TreeSet<>(expected));
+        assertEquals(distinct, rs.getRangeList(db, key(0), key(100)).stream()
+                .map(key -> (int)Tuple.fromBytes(key).getLong(0)).collect(Collectors.toList()));
+        assertEquals(distinct.stream().filter(i -> i >= 25 && i < 75).collect(Collectors.toList()),
+                rs.getRangeList(db, key(25), key(75)).stream()
+                        .map(key -> (int)Tuple.fromBytes(key).getLong(0)).collect(Collectors.toList()));
+    }
+
+    private void addAll(RankedSet rs, List<Integer> values) {
+        db.run(tr -> {
+            for (int value : values) {
+                rs.add(tr, key(value)).join();
+            }
+            return null;
+        });
+    }
+
+    private static byte[] key(int value) {
+        return Tuple.from(value).pack();
+    }
+}
@@ -45,6 +45,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -175,6 +176,59 @@ public class RTreeModificationTest {
         onReadCounters.resetCounters();
     }
 
+    @ParameterizedTest
+    @MethodSource("numSamplesAndSeeds")
+    public void testBulkLoad(final RTree.Config config, final long seed, final int numSamples) {
+        final RTreeScanTest.OnWriteCounters onWriteCounters = new RTreeScanTest.OnWriteCounters();
+        final RTree rTree = new RTree(rtSubspace.getSubspace(), rtSecondarySubspace.getSubspace(), TestExecutors.defaultThreadPool(), config,
+                RTreeHilbertCurveHelpers::hilbertValue, NodeHelpers::newSequentialNodeId, onWriteCounters,
+                OnReadListener.NOOP);
+        final Random random = new Random(seed);
+        final Item[] items = new Item[numSamples];
+        for (int i = 0; i < numSamples; ++i) {
+            final RTree.Point point = new RTree.Point(Tuple.from((long)random.nextInt(1000), (long)random.nextInt(1000)));
+            items[i] = new Item(point, Tuple.from(i), Tuple.from("value" + i));
+        }
+
+        // the first batch is packed into an empty tree, all other batches are inserted into the existing tree
+        final int numInsertsPerBatch = 1_000;
+        for (int i = 0; i < numSamples; i += numInsertsPerBatch) {
+            final List<ItemSlot> itemSlots = new ArrayList<>();
+            for (int j = i; j < Math.min(numSamples, i + numInsertsPerBatch); j ++) {
+                // the first of two slots for the same item is overwritten by the second one
+                itemSlots.add(rTree.newItemSlot(items[j].getPoint(), items[j].getKeySuffix(), Tuple.from("old")));
+                itemSlots.add(rTree.newItemSlot(items[j].getPoint(), items[j].getKeySuffix(), items[j].getValue()));
+            }
+            db.run(tr -> rTree.bulkLoad(tr, itemSlots).join());
+        }
+        onWriteCounters.logCounters();
+        validateRTree(db, rTree);
+
+        final List<ItemSlot> scanned = db.run(tr -> AsyncUtil.collectRemaining(rTree.scan(tr, mbr -> true, (l, h) -> true)).join());
+        Assertions.assertEquals(numSamples, scanned.size());
+        for (final ItemSlot itemSlot : scanned) {
+            final Item item = items[(int)itemSlot.getKeySuffix().getLong(0)];
+            Assertions.assertEquals(item.getPoint().getCoordinates(), itemSlot.getPosition().getCoordinates());
+            Assertions.assertEquals(item.getValue(), itemSlot.getValue());
+        }
+
+        // the packed tree can still be modified as usual
+        final int numDeletable = Math.min(numSamples, 2 * numInsertsPerBatch);
+        db.run(tr -> {
+            for (int i = 0; i < numDeletable; i += 2) {
+                rTree.delete(tr, items[i].getPoint(), items[i].getKeySuffix()).join();
+            }
+            return null;
+        });
+        validateRTree(db, rTree);
+        final AtomicLong nresults = new AtomicLong(0);
+        db.run(tr -> {
+            AsyncUtil.forEachRemaining(rTree.scan(tr, mbr -> true, (l, h) -> true), itemSlot -> nresults.incrementAndGet()).join();
+            return null;
+        });
+        Assertions.assertEquals(numSamples - (numDeletable + 1) / 2, nresults.get());
+    }
+
     @Test
     void dumpRTree() {
         final OnReadListener onReadListener = new OnReadListener() {
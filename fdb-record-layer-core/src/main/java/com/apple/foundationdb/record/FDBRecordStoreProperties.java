@@ -63,6 +63,35 @@ public final class FDBRecordStoreProperties {
     public static final RecordLayerPropertyKey<Boolean> LOAD_RECORDS_VIA_GETS = RecordLayerPropertyKey.booleanPropertyKey(
             "com.apple.foundationdb.record.recordstore.load_records_via_gets", false);
 
+    /**
+     * The number of bytes of memory that an unordered distinct plan, such as
+     * {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan}, can use to
+     * remember the keys that it has already returned. Once that is exceeded, the keys are spilled to a local
+     * temporary file. This only affects how much memory a single execution of a query can use, not its results.
+     */
+    public static final RecordLayerPropertyKey<Long> UNORDERED_DISTINCT_MEMORY_BUDGET = RecordLayerPropertyKey.longPropertyKey(
+            "com.apple.foundationdb.record.query.unordered_distinct_memory_budget", 64L * 1024 * 1024);
+
+    /**
+     * Whether a filter plan over a record scan, such as
+     * {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan}, should check its filter before
+     * fully deserializing each record, by only parsing the fields that the filter uses. Records that do not match are
+     * then never fully deserialized. This only applies to filters on the fields of the record, and only affects the
+     * cost of the query, not its results.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final RecordLayerPropertyKey<Boolean> LAZY_FILTER_DESERIALIZATION = RecordLayerPropertyKey.booleanPropertyKey(
+            "com.apple.foundationdb.record.query.lazy_filter_deserialization", false);
+
+    /**
+     * The number of bytes of serialized records that {@link com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase#saveRecordsAsync}
+     * saves before stopping, leaving the rest of the batch for another transaction. This keeps a large batch well within
+     * the transaction size limit, which also has to allow for the index entries of the records.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final RecordLayerPropertyKey<Long> BATCH_SAVE_MAX_BYTES = RecordLayerPropertyKey.longPropertyKey(
+            "com.apple.foundationdb.record.recordstore.batch_save_max_bytes", 4L * 1024 * 1024);
+
     private FDBRecordStoreProperties() {
         throw new RecordCoreException("should not instantiate class of static prop");
     }
@@ -29,6 +29,7 @@ import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.record.metadata.SyntheticRecordType;
 import com.apple.foundationdb.record.metadata.UnnestedRecordType;
+import com.apple.foundationdb.record.metadata.expressions.CompiledKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.LiteralKeyExpression;
 import com.apple.foundationdb.record.query.plan.cascades.typing.Type;
@@ -97,6 +98,8 @@ public class RecordMetaData implements RecordMetaDataProvider {
     private final KeyExpression recordCountKey;
     private final boolean usesLocalRecordsDescriptor;
     private final Map<Index, Collection<RecordType>> recordTypesForIndex;
+    @Nonnull
+    private final Map<Index, CompiledKeyExpression> compiledIndexRootExpressions;
 
     private static final Descriptors.FileDescriptor[] defaultExcludedDependencies = {
             RecordMetaDataProto.getDescriptor(), RecordMetaDataOptionsProto.getDescriptor(), TupleFieldsProto.getDescriptor()
@@ -155,6 +158,7 @@ public class RecordMetaData implements RecordMetaDataProvider {
         this.recordCountKey = recordCountKey;
         this.usesLocalRecordsDescriptor = usesLocalRecordsDescriptor;
         this.recordTypesForIndex = new ConcurrentHashMap<>();
+        this.compiledIndexRootExpressions = new ConcurrentHashMap<>();
     }
 
     /**
@@ -481,6 +485,19 @@ public class RecordMetaData implements RecordMetaDataProvider {
         });
     }
 
+    /**
+     * Get the root expression of an index, compiled for evaluating against records of this meta-data.
+     * The compiled expression is kept with this meta-data, so it is shared by all record stores using it.
+     * @param index the index
+     * @return the compiled root expression of the index
+     */
+    @API(API.Status.INTERNAL)
+    @Nonnull
+    public CompiledKeyExpression getCompiledRootExpression(@Nonnull Index index) {
+        return MapUtils.computeIfAbsent(compiledIndexRootExpressions, index,
+                idx -> CompiledKeyExpression.compile(idx.getRootExpression()));
+    }
+
     @Nullable
     @API(API.Status.DEPRECATED)
     public KeyExpression getRecordCountKey() {
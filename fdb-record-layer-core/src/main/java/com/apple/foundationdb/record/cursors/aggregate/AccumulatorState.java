@@ -20,6 +20,9 @@
 
 package com.apple.foundationdb.record.cursors.aggregate;
 
+import com.apple.foundationdb.record.RecordCursorProto;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
@@ -45,4 +48,26 @@ public interface AccumulatorState<T, R> {
      */
     @Nullable
     R finish();
+
+    /**
+     * Save the partial accumulation so far, so that it can be restored or combined with other partial accumulations
+     * using {@link #mergeFrom}. States that are only used for streaming aggregation need not override this, since
+     * only a hash aggregation spills or continues partial states. The default implementation throws.
+     * @return the serialized partial state
+     * @throws UnsupportedOperationException if this kind of state cannot be saved
+     */
+    @Nonnull
+    default RecordCursorProto.AccumulatorState toProto() {
+        throw new UnsupportedOperationException("accumulator state cannot be saved: " + getClass().getName());
+    }
+
+    /**
+     * Combine a partial accumulation saved by {@link #toProto} from a state of the same kind into this state.
+     * Merging into a new state restores the saved one. The default implementation throws, like {@link #toProto}.
+     * @param proto the serialized partial state
+     * @throws UnsupportedOperationException if this kind of state cannot be restored
+     */
+    default void mergeFrom(@Nonnull RecordCursorProto.AccumulatorState proto) {
+        throw new UnsupportedOperationException("accumulator state cannot be restored: " + getClass().getName());
+    }
 }
@@ -20,6 +20,9 @@
 
 package com.apple.foundationdb.record.cursors.aggregate;
 
+import com.apple.foundationdb.record.RecordCursorProto;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
@@ -77,4 +80,16 @@ public class AverageAccumulatorState<T extends Number> implements AccumulatorSta
 
         return total.finish().doubleValue() / count;
     }
+
+    @Nonnull
+    @Override
+    public RecordCursorProto.AccumulatorState toProto() {
+        return total.toProto().toBuilder().setCount(count).build();
+    }
+
+    @Override
+    public void mergeFrom(@Nonnull final RecordCursorProto.AccumulatorState proto) {
+        total.mergeFrom(proto);
+        count += proto.getCount();
+    }
 }
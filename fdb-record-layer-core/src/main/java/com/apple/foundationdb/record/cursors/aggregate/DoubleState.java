@@ -20,6 +20,9 @@
 
 package com.apple.foundationdb.record.cursors.aggregate;
 
+import com.apple.foundationdb.record.RecordCursorProto;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
@@ -68,6 +71,23 @@ public class DoubleState implements AccumulatorState<Double, Double> {
         }
     }
 
+    @Nonnull
+    @Override
+    public RecordCursorProto.AccumulatorState toProto() {
+        final RecordCursorProto.AccumulatorState.Builder builder = RecordCursorProto.AccumulatorState.newBuilder();
+        if (hasValue) {
+            builder.setHasValue(true).setDoubleState(currentState);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void mergeFrom(@Nonnull final RecordCursorProto.AccumulatorState proto) {
+        if (proto.getHasValue()) {
+            accumulate(proto.getDoubleState());
+        }
+    }
+
     private void resetState(final PrimitiveAccumulatorOperation operation) {
         switch (operation) {
             case SUM:
@@ -0,0 +1,263 @@
+/*
+ * HashGrouping.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.cursors.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.planprotos.PComparableObject;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
+import com.apple.foundationdb.record.query.plan.cascades.typing.Type;
+import com.apple.foundationdb.record.query.plan.cascades.values.AggregateValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.CountValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.NumericAggregationValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.RecordConstructorValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.Value;
+import com.apple.foundationdb.record.query.plan.plans.QueryResult;
+import com.apple.foundationdb.record.query.plan.serialization.PlanSerialization;
+import com.apple.foundationdb.record.sorting.HashAggregateCursor;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * HashGrouping groups records by hashing their grouping criteria, for use by a {@link HashAggregateCursor}.
+ * Unlike {@link StreamGrouping}, the records do not need to be ordered by the grouping criteria.
+ * <p>
+ * Each aggregate is accumulated into one of the primitive {@link AccumulatorState}s, so that the partial aggregates
+ * of a group can be saved and combined. Only a {@link RecordConstructorValue} whose children are all sums, averages,
+ * minimums, maximums and counts of numeric values can be aggregated this way; see {@link #isSupported}.
+ * </p>
+ *
+ * @param <M> the type of content (message) that is in the store
+ */
+@API(API.Status.EXPERIMENTAL)
+public class HashGrouping<M extends Message> implements HashAggregateCursor.Aggregator<QueryResult, QueryResult> {
+    @Nonnull
+    private final Value groupingKeyValue;
+    @Nonnull
+    private final RecordConstructorValue aggregateValue;
+    @Nonnull
+    private final List<AggregateValue> aggregates;
+    @Nonnull
+    private final FDBRecordStoreBase<M> store;
+    @Nonnull
+    private final EvaluationContext context;
+    @Nonnull
+    private final CorrelationIdentifier alias;
+    @Nonnull
+    private final CorrelationIdentifier groupingKeyAlias;
+    @Nonnull
+    private final CorrelationIdentifier aggregateAlias;
+    @Nonnull
+    private final Value completeResultValue;
+
+    /**
+     * Create a new group aggregator.
+     *
+     * @param groupingKeyValue the grouping key
+     * @param aggregateValue the aggregate values that will accumulate the fields, which must be supported
+     * @param completeResultValue the {@link Value} of the aggregate results
+     * @param groupingKeyAlias the identifier of {@code groupingKeyValue}
+     * @param aggregateAlias the identifier of {@code aggregateValue}
+     * @param store record store from which to fetch records
+     * @param context evaluation context containing parameter bindings
+     * @param alias the quantifier alias for the value evaluation
+     */
+    public HashGrouping(@Nonnull final Value groupingKeyValue,
+                        @Nonnull final AggregateValue aggregateValue,
+                        @Nonnull final Value completeResultValue,
+                        @Nonnull final CorrelationIdentifier groupingKeyAlias,
+                        @Nonnull final CorrelationIdentifier aggregateAlias,
+                        @Nonnull final FDBRecordStoreBase<M> store,
+                        @Nonnull final EvaluationContext context,
+                        @Nonnull final CorrelationIdentifier alias) {
+        if (!isSupported(aggregateValue)) {
+            throw new RecordCoreException("aggregate cannot be computed by hashing")
+                    .addLogInfo("aggregate", aggregateValue);
+        }
+        this.groupingKeyValue = groupingKeyValue;
+        this.aggregateValue = (RecordConstructorValue)aggregateValue;
+        final ImmutableList.Builder<AggregateValue> aggregatesBuilder = ImmutableList.builder();
+        for (Value child : aggregateValue.getChildren()) {
+            aggregatesBuilder.add((AggregateValue)child);
+        }
+        this.aggregates = aggregatesBuilder.build();
+        this.store = store;
+        this.context = context;
+        this.alias = alias;
+        this.groupingKeyAlias = groupingKeyAlias;
+        this.aggregateAlias = aggregateAlias;
+        this.completeResultValue = completeResultValue;
+    }
+
+    /**
+     * Determine whether an aggregate can be computed using primitive accumulator states.
+     * @param aggregateValue the aggregate
+     * @return {@code true} if a {@link HashGrouping} can compute {@code aggregateValue}
+     */
+    public static boolean isSupported(@Nonnull final AggregateValue aggregateValue) {
+        if (!(aggregateValue instanceof RecordConstructorValue)) {
+            return false;
+        }
+        for (Value child : aggregateValue.getChildren()) {
+            if (!(child instanceof AggregateValue) || newState((AggregateValue)child) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static AccumulatorState<?, ?> newState(@Nonnull final AggregateValue aggregate) {
+        if (aggregate instanceof CountValue) {
+            return new LongState(PrimitiveAccumulatorOperation.SUM);
+        }
+        if (!(aggregate instanceof NumericAggregationValue)) {
+            return null;
+        }
+        switch (((NumericAggregationValue)aggregate).getOperator()) {
+            case SUM_I:
+                return new IntegerState(PrimitiveAccumulatorOperation.SUM);
+            case SUM_L:
+                return new LongState(PrimitiveAccumulatorOperation.SUM);
+            case SUM_F:
+                return new FloatState(PrimitiveAccumulatorOperation.SUM);
+            case SUM_D:
+                return new DoubleState(PrimitiveAccumulatorOperation.SUM);
+            case MIN_I:
+                return new IntegerState(PrimitiveAccumulatorOperation.MIN);
+            case MIN_L:
+                return new LongState(PrimitiveAccumulatorOperation.MIN);
+            case MIN_F:
+                return new FloatState(PrimitiveAccumulatorOperation.MIN);
+            case MIN_D:
+                return new DoubleState(PrimitiveAccumulatorOperation.MIN);
+            case MAX_I:
+                return new IntegerState(PrimitiveAccumulatorOperation.MAX);
+            case MAX_L:
+                return new LongState(PrimitiveAccumulatorOperation.MAX);
+            case MAX_F:
+                return new FloatState(PrimitiveAccumulatorOperation.MAX);
+            case MAX_D:
+                return new DoubleState(PrimitiveAccumulatorOperation.MAX);
+            case AVG_I:
+                return AverageAccumulatorState.intAverageState();
+            case AVG_L:
+                return AverageAccumulatorState.longAverageState();
+            case AVG_F:
+                return AverageAccumulatorState.floatAverageState();
+            case AVG_D:
+                return AverageAccumulatorState.doubleAverageState();
+            default:
+                return null;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public ByteString groupKey(@Nonnull final QueryResult value) {
+        final Object groupKey = groupingKeyValue.eval(store, context.withBinding(alias, value));
+        if (groupKey == null) {
+            return ByteString.EMPTY;
+        }
+        if (groupKey instanceof Message) {
+            return ((Message)groupKey).toByteString();
+        }
+        return PlanSerialization.valueObjectToProto(groupKey).toByteString();
+    }
+
+    @Nonnull
+    @Override
+    public List<AccumulatorState<?, ?>> newStates() {
+        final List<AccumulatorState<?, ?>> states = new ArrayList<>(aggregates.size());
+        for (AggregateValue aggregate : aggregates) {
+            states.add(Objects.requireNonNull(newState(aggregate)));
+        }
+        return states;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void accumulate(@Nonnull final QueryResult value, @Nonnull final List<AccumulatorState<?, ?>> states) {
+        final EvaluationContext nestedContext = context.withBinding(alias, value);
+        for (int i = 0; i < aggregates.size(); i++) {
+            final AggregateValue aggregate = aggregates.get(i);
+            final Object input;
+            if (aggregate instanceof NumericAggregationValue &&
+                    states.get(i) instanceof AverageAccumulatorState) {
+                // The average state keeps its own count, so it takes the plain value rather than the (value, count) partial.
+                input = ((NumericAggregationValue)aggregate).getChild().eval(store, nestedContext);
+            } else {
+                input = aggregate.evalToPartial(store, nestedContext);
+            }
+            ((AccumulatorState<Object, ?>)states.get(i)).accumulate(input);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public QueryResult finish(@Nonnull final ByteString groupKey, @Nonnull final List<AccumulatorState<?, ?>> states) {
+        final Message.Builder aggregateBuilder = context.getTypeRepository().newMessageBuilder(aggregateValue.getResultType());
+        final Descriptors.Descriptor descriptor = aggregateBuilder.getDescriptorForType();
+        final List<Type.Record.Field> fields = Objects.requireNonNull(aggregateValue.getResultType().getFields());
+        for (int i = 0; i < aggregates.size(); i++) {
+            Object result = states.get(i).finish();
+            if (result == null && aggregates.get(i) instanceof CountValue) {
+                result = 0L;
+            }
+            if (result != null) {
+                aggregateBuilder.setField(descriptor.findFieldByNumber(fields.get(i).getFieldIndex()), result);
+            }
+        }
+        final EvaluationContext nestedContext = context.childBuilder()
+                .setBinding(groupingKeyAlias, decodeGroupKey(groupKey))
+                .setBinding(aggregateAlias, aggregateBuilder.build())
+                .build(context.getTypeRepository());
+        return QueryResult.ofComputed(completeResultValue.eval(store, nestedContext));
+    }
+
+    @Nullable
+    private Object decodeGroupKey(@Nonnull final ByteString groupKey) {
+        try {
+            final Type groupingKeyType = groupingKeyValue.getResultType();
+            if (groupingKeyType instanceof Type.Record) {
+                return DynamicMessage.parseFrom(context.getTypeRepository().getMessageDescriptor(groupingKeyType), groupKey);
+            }
+            if (groupKey.isEmpty()) {
+                return null;
+            }
+            return PlanSerialization.protoToValueObject(PComparableObject.parseFrom(groupKey));
+        } catch (InvalidProtocolBufferException ex) {
+            throw new RecordCoreException(ex);
+        }
+    }
+}
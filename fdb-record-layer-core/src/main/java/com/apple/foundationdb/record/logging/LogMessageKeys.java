@@ -296,12 +296,18 @@ public enum LogMessageKeys {
     FAILED_TRANSACTIONS_COUNT_IN_RUNNER,
     TOTAL_RECORDS_SCANNED,
     TOTAL_RECORDS_SCANNED_DURING_FAILURES,
+    TRANSACTION_SIZE_ESTIMATE,
+    CONFLICT_RATE,
 
     // time limits milliseconds
     TIME_LIMIT_MILLIS("time_limit_milliseconds"),
     TIME_STARTED_MILLIS("time_started_milliseconds"),
     TIME_ENDED_MILLIS("time_ended_milliseconds"),
     TIME_TO_WAIT_MILLIS("time_to_wait_milliseconds"),
+    TARGET_TRANSACTION_LATENCY_MILLIS("target_transaction_latency_milliseconds"),
+    TRANSACTION_LATENCY_MILLIS("transaction_latency_milliseconds"),
+    SMOOTHED_TRANSACTION_LATENCY_MILLIS("smoothed_transaction_latency_milliseconds"),
+    LATENCY_DELAY_MILLIS("latency_delay_milliseconds"),
 
     // Log the name of the tokenizer used
     TOKENIZER_NAME,
@@ -149,6 +149,17 @@ public class IndexOptions {
      */
     public static final String RANK_COUNT_DUPLICATES = "rankCountDuplicates";
 
+    /**
+     * The number of shards over which a {@link IndexTypes#TIME_WINDOW_LEADERBOARD} index spreads the additions to the
+     * skip list of each leaderboard group, using a {@link com.apple.foundationdb.async.ShardedRankedSet}. Concurrent score
+     * updates within a popular group then mostly do not conflict, at the cost of reading every shard for rank lookups.
+     * Use {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardShardCompaction}
+     * to fold the shards back together periodically.
+     *
+     * The default is {@code 1}, which does not shard the skip list. The number of shards cannot be changed for an existing index.
+     */
+    public static final String TIME_WINDOW_LEADERBOARD_SHARDS = "timeWindowLeaderboardShards";
+
     /**
      * Size of each position bitmap for {@link IndexTypes#BITMAP_VALUE} indexes.
      *
@@ -213,6 +224,13 @@ public class IndexOptions {
      */
     public static final String RTREE_USE_NODE_SLOT_INDEX = "rtreeUseNodeSlotIndex";
 
+    /**
+     * Option to indicate whether the R-tree maintains a version that changes whenever the R-tree is modified, which
+     * allows scans to cache its intermediate nodes across transactions in a
+     * {@link com.apple.foundationdb.record.provider.foundationdb.indexes.MultidimensionalNodeCache}.
+     */
+    public static final String RTREE_USE_NODE_CACHE = "rtreeUseNodeCache";
+
     private IndexOptions() {
     }
 }
@@ -0,0 +1,236 @@
+/*
+ * CompiledKeyExpression.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata.expressions;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link KeyExpression} prepared for evaluating repeatedly against records of a fixed set of types.
+ *
+ * <p>
+ * Expressions that always produce exactly one key and only access fields of the record, namely
+ * {@link FieldKeyExpression}s that do not fan out, {@link NestingKeyExpression}s of those,
+ * {@link ThenKeyExpression}s and {@link EmptyKeyExpression}, are compiled for each record type's
+ * descriptor into a tree of extractors. The field descriptors are looked up once, when compiling, and the
+ * extractors add the field values directly to the key, without building the intermediate lists of
+ * {@link Key.Evaluated} that {@link KeyExpression#evaluate} does for each child.
+ * Any other expressions are evaluated with {@link KeyExpression#evaluate}, as before.
+ * </p>
+ *
+ * <p>
+ * In either case, the result is the same as evaluating the expression itself.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class CompiledKeyExpression {
+    // Extractor for records whose keys cannot be compiled.
+    private static final Extractor NOT_COMPILED = (message, values) -> {
+        throw new UnsupportedOperationException("not compiled");
+    };
+
+    @Nonnull
+    private final KeyExpression expression;
+    @Nonnull
+    private final Map<Descriptors.Descriptor, Extractor> extractors;
+
+    private CompiledKeyExpression(@Nonnull KeyExpression expression) {
+        this.expression = expression;
+        this.extractors = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Prepare a key expression for evaluation. The expression is actually compiled the first time it is evaluated against
+     * each record type.
+     * @param expression the key expression to compile
+     * @return a new compiled key expression
+     */
+    @Nonnull
+    public static CompiledKeyExpression compile(@Nonnull KeyExpression expression) {
+        return new CompiledKeyExpression(expression);
+    }
+
+    @Nonnull
+    public KeyExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluate against a given record, with the same result as {@link KeyExpression#evaluate}.
+     * @param <M> the type of record
+     * @param record the record
+     * @return the evaluated keys for the given record
+     */
+    @Nonnull
+    public <M extends Message> List<Key.Evaluated> evaluate(@Nullable FDBRecord<M> record) {
+        if (record == null) {
+            return expression.evaluate(null);
+        }
+        final Message message = record.getRecord();
+        final Extractor extractor = getExtractor(message.getDescriptorForType());
+        if (extractor == NOT_COMPILED) {
+            return expression.evaluateMessage(record, message);
+        }
+        final List<Object> values = new ArrayList<>(expression.getColumnSize());
+        extractor.extract(message, values);
+        return Collections.singletonList(Key.Evaluated.concatenate(values));
+    }
+
+    /**
+     * Whether the expression was compiled for the given record type. Otherwise, it is evaluated as before.
+     * @param descriptor the descriptor of the record type
+     * @return {@code true} if evaluating against records with the given descriptor uses compiled extractors
+     */
+    public boolean isCompiledFor(@Nonnull Descriptors.Descriptor descriptor) {
+        return getExtractor(descriptor) != NOT_COMPILED;
+    }
+
+    @Nonnull
+    private Extractor getExtractor(@Nonnull Descriptors.Descriptor descriptor) {
+        return extractors.computeIfAbsent(descriptor, key -> {
+            final Extractor compiled = compile(expression, key);
+            return compiled == null ? NOT_COMPILED : compiled;
+        });
+    }
+
+    /**
+     * Adds the values of a key expression that produces a single key to that key.
+     */
+    @FunctionalInterface
+    private interface Extractor {
+        void extract(@Nullable Message message, @Nonnull List<Object> values);
+    }
+
+    // Exact classes, since subclasses may evaluate differently.
+    @Nullable
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private static Extractor compile(@Nonnull KeyExpression expression, @Nonnull Descriptors.Descriptor descriptor) {
+        final Class<?> expressionClass = expression.getClass();
+        if (expressionClass == FieldKeyExpression.class) {
+            return compileField((FieldKeyExpression)expression, descriptor);
+        } else if (expressionClass == NestingKeyExpression.class) {
+            return compileNesting((NestingKeyExpression)expression, descriptor);
+        } else if (expressionClass == ThenKeyExpression.class) {
+            return compileThen((ThenKeyExpression)expression, descriptor);
+        } else if (expressionClass == EmptyKeyExpression.class) {
+            return (message, values) -> { };
+        } else if (expressionClass == GroupingKeyExpression.class) {
+            return compile(((GroupingKeyExpression)expression).getWholeKey(), descriptor);
+        } else if (expressionClass == KeyWithValueExpression.class) {
+            return compile(((KeyWithValueExpression)expression).getInnerKey(), descriptor);
+        } else {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Extractor compileField(@Nonnull FieldKeyExpression field, @Nonnull Descriptors.Descriptor descriptor) {
+        final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(field.getFieldName());
+        final KeyExpression.FanType fanType = field.getFanType();
+        final Key.Evaluated.NullStandin nullStandin = field.getNullStandin();
+        if (fanType == KeyExpression.FanType.FanOut) {
+            // Produces a key for each element, or none when missing.
+            return null;
+        }
+        if (fieldDescriptor == null) {
+            final Object missing = fanType == KeyExpression.FanType.Concatenate ? Collections.emptyList() : nullStandin;
+            return (message, values) -> values.add(missing);
+        }
+        if (fieldDescriptor.isRepeated()) {
+            if (fanType != KeyExpression.FanType.Concatenate) {
+                // Fails when evaluated.
+                return null;
+            }
+            return (message, values) -> {
+                if (message != null && message.getRepeatedFieldCount(fieldDescriptor) > 0) {
+                    values.add(message.getField(fieldDescriptor));
+                } else {
+                    values.add(Collections.emptyList());
+                }
+            };
+        }
+        final Object missing = fanType == KeyExpression.FanType.Concatenate ? Collections.emptyList() : nullStandin;
+        final boolean alwaysPresent = nullStandin == Key.Evaluated.NullStandin.NOT_NULL;
+        final boolean tupleField = fieldDescriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE &&
+                                   TupleFieldsHelper.isTupleField(fieldDescriptor.getMessageType());
+        return (message, values) -> {
+            if (message != null && (alwaysPresent || message.hasField(fieldDescriptor))) {
+                final Object value = message.getField(fieldDescriptor);
+                values.add(tupleField ? TupleFieldsHelper.fromProto((Message)value, fieldDescriptor.getMessageType()) : value);
+            } else {
+                values.add(missing);
+            }
+        };
+    }
+
+    @Nullable
+    private static Extractor compileNesting(@Nonnull NestingKeyExpression nesting, @Nonnull Descriptors.Descriptor descriptor) {
+        final FieldKeyExpression parent = nesting.getParent();
+        if (parent.getClass() != FieldKeyExpression.class || parent.getFanType() != KeyExpression.FanType.None) {
+            return null;
+        }
+        final Descriptors.FieldDescriptor fieldDescriptor = descriptor.findFieldByName(parent.getFieldName());
+        if (fieldDescriptor == null || fieldDescriptor.isRepeated() ||
+                fieldDescriptor.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE ||
+                TupleFieldsHelper.isTupleField(fieldDescriptor.getMessageType())) {
+            return null;
+        }
+        final Extractor child = compile(nesting.getChild(), fieldDescriptor.getMessageType());
+        if (child == null) {
+            return null;
+        }
+        final boolean alwaysPresent = parent.getNullStandin() == Key.Evaluated.NullStandin.NOT_NULL;
+        return (message, values) -> {
+            // A missing parent evaluates the child against no message.
+            final Message submessage = message != null && (alwaysPresent || message.hasField(fieldDescriptor)) ?
+                                       (Message)message.getField(fieldDescriptor) : null;
+            child.extract(submessage, values);
+        };
+    }
+
+    @Nullable
+    private static Extractor compileThen(@Nonnull ThenKeyExpression then, @Nonnull Descriptors.Descriptor descriptor) {
+        final List<KeyExpression> children = then.getChildren();
+        final Extractor[] compiledChildren = new Extractor[children.size()];
+        for (int i = 0; i < compiledChildren.length; i++) {
+            compiledChildren[i] = compile(children.get(i), descriptor);
+            if (compiledChildren[i] == null) {
+                return null;
+            }
+        }
+        return (message, values) -> {
+            for (Extractor child : compiledChildren) {
+                child.extract(message, values);
+            }
+        };
+    }
+}
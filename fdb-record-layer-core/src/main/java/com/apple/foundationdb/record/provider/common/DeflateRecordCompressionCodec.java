@@ -0,0 +1,133 @@
+/*
+ * DeflateRecordCompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+
+import javax.annotation.Nonnull;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link RecordCompressionCodec} using zlib through {@link Deflater} and {@link Inflater}. This is the format that
+ * {@link TransformedRecordSerializer} has always used, with compression version {@value #COMPRESSION_VERSION}.
+ *
+ * <p>
+ * The {@link Deflater} and {@link Inflater} instances, which are relatively expensive to create because of their native
+ * state, are pooled with a {@link MappedPool} and reset between records rather than created for each one.
+ * </p>
+ *
+ * <p>
+ * The compression level is a zlib level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}. The
+ * default, {@value #DEFAULT_COMPRESSION_LEVEL}, is zlib's own default. Records are typically small, and for them the
+ * highest levels spend several times as much CPU searching for matches as this one while making the output only a
+ * few percent smaller. A lower level is faster still, and a higher one is worth it only if storage matters much more
+ * than the cost of writing records.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class DeflateRecordCompressionCodec implements RecordCompressionCodec {
+    public static final int COMPRESSION_VERSION = 1;
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final DeflateRecordCompressionCodec INSTANCE = new DeflateRecordCompressionCodec();
+
+    private static final MappedPool<Integer, Deflater, RuntimeException> DEFLATER_POOL = new MappedPool<>(Deflater::new);
+    private static final MappedPool<Boolean, Inflater, RuntimeException> INFLATER_POOL = new MappedPool<>(key -> new Inflater());
+
+    protected DeflateRecordCompressionCodec() {
+    }
+
+    @Nonnull
+    public static DeflateRecordCompressionCodec instance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int getCompressionVersion() {
+        return COMPRESSION_VERSION;
+    }
+
+    @Override
+    public int getDefaultCompressionLevel() {
+        return DEFAULT_COMPRESSION_LEVEL;
+    }
+
+    @Override
+    public int compress(int level, @Nonnull byte[] input, int inputOffset, int inputLength,
+                        @Nonnull byte[] output, int outputOffset, int outputLength) {
+        final Deflater compressor = DEFLATER_POOL.poll(level);
+        boolean reusable = false;
+        try {
+            compressor.setInput(input, inputOffset, inputLength);
+            compressor.finish(); // necessary to include checksum
+            final int compressedLength = compressor.deflate(output, outputOffset, outputLength, Deflater.FULL_FLUSH);
+            // If we end up filling the buffer, then the compressed data is at least as large as what was available.
+            reusable = true;
+            return compressedLength == outputLength ? -1 : compressedLength;
+        } finally {
+            release(level, compressor, reusable);
+        }
+    }
+
+    @Override
+    public int decompress(@Nonnull byte[] input, int inputOffset, int inputLength, @Nonnull byte[] output) throws DataFormatException {
+        final Inflater decompressor = INFLATER_POOL.poll(Boolean.TRUE);
+        boolean reusable = false;
+        try {
+            decompressor.setInput(input, inputOffset, inputLength);
+            final int actualDecompressedSize = decompressor.inflate(output);
+            if (actualDecompressedSize < output.length) {
+                throw new RecordSerializationException("decompressed record too small")
+                        .addLogInfo(LogMessageKeys.EXPECTED, output.length)
+                        .addLogInfo(LogMessageKeys.ACTUAL, actualDecompressedSize);
+            } else if (decompressor.getRemaining() > 0) {
+                throw new RecordSerializationException("decompressed record too large")
+                        .addLogInfo(LogMessageKeys.EXPECTED, output.length);
+            }
+            reusable = true;
+            return actualDecompressedSize;
+        } finally {
+            release(decompressor, reusable);
+        }
+    }
+
+    private static void release(int level, @Nonnull Deflater compressor, boolean reusable) {
+        if (reusable) {
+            compressor.reset();
+            if (DEFLATER_POOL.offer(level, compressor)) {
+                return;
+            }
+        }
+        compressor.end();
+    }
+
+    private static void release(@Nonnull Inflater decompressor, boolean reusable) {
+        if (reusable) {
+            decompressor.reset();
+            if (INFLATER_POOL.offer(Boolean.TRUE, decompressor)) {
+                return;
+            }
+        }
+        decompressor.end();
+    }
+}
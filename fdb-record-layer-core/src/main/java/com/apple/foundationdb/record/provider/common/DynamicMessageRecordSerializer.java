@@ -28,16 +28,19 @@ import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.UnknownFieldSet;
+import com.google.protobuf.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -116,6 +119,33 @@ public class DynamicMessageRecordSerializer implements RecordSerializer<Message>
         }
     }
 
+    @Nonnull
+    @Override
+    public LazyRecordView<Message> deserializeLazily(@Nonnull final RecordMetaData metaData,
+                                                     @Nonnull final Tuple primaryKey,
+                                                     @Nonnull final byte[] serialized,
+                                                     @Nullable StoreTimer timer) {
+        // The union message should have just one field, the record's message. Find where that is without parsing it.
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(serialized);
+            final int tag = input.readTag();
+            final Descriptors.FieldDescriptor unionField = metaData.getUnionDescriptor().findFieldByNumber(WireFormat.getTagFieldNumber(tag));
+            if (unionField != null && !unionField.isRepeated() && unionField.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE &&
+                    WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                final int length = input.readRawVarint32();
+                final int offset = input.getTotalBytesRead();
+                input.skipRawBytes(length);
+                if (input.isAtEnd()) {
+                    return LazyRecordView.of(unionField.getMessageType(), serialized, offset, length,
+                            () -> deserialize(metaData, primaryKey, serialized, timer), timer);
+                }
+            }
+        } catch (IOException ex) {
+            // Parse the whole record instead, which reports the error.
+        }
+        return LazyRecordView.of(deserialize(metaData, primaryKey, serialized, timer));
+    }
+
     @Nonnull
     protected DynamicMessage deserializeUnion(@Nonnull final Descriptors.Descriptor unionDescriptor,
                                               @Nonnull final Tuple primaryKey,
@@ -0,0 +1,171 @@
+/*
+ * LatencyHistogram.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of the times recorded for a {@link StoreTimer.Event}, from which percentiles can be estimated.
+ *
+ * Values are grouped by their highest set bit, and each of those groups is divided into {@value #SUB_BUCKETS}
+ * equal buckets, so a percentile is accurate to within about 3% over the whole range. Values of {@code 2^40}
+ * nanoseconds (about 18 minutes) or more all go into the last bucket. Recording a value only increments two atomic
+ * counters, without locking or allocating.
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class LatencyHistogram {
+    /**
+     * The number of buckets into which each power of two is divided.
+     */
+    public static final int SUB_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int MAX_BITS = 40;
+    private static final int BUCKET_COUNT = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    @Nonnull
+    private final AtomicLongArray counts;
+    @Nonnull
+    private final AtomicLong totalCount;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new AtomicLong();
+    }
+
+    /**
+     * Record one occurrence of a value.
+     * @param value the value, usually a time in nanoseconds; negative values are counted as zero
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+    }
+
+    /**
+     * Get the number of values that have been recorded.
+     * @return the total count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get an estimate of the value at a given percentile of the recorded values. The estimate is the largest value
+     * in the bucket containing the percentile, so it is never less than the actual value.
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the estimated value, or {@code 0} if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long total = getCount();
+        if (total == 0) {
+            return 0L;
+        }
+        final long target = Math.max(1L, (long)Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+        // Only possible if values were recorded while counting.
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Add the values recorded in another histogram into this one.
+     * @param other the histogram to add
+     */
+    public void add(@Nonnull LatencyHistogram other) {
+        long added = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+                added += count;
+            }
+        }
+        totalCount.addAndGet(added);
+    }
+
+    /**
+     * Get a copy of this histogram, which does not change when more values are recorded in this one.
+     * @return a new histogram with the same counts
+     */
+    @Nonnull
+    public LatencyHistogram copy() {
+        final LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * Get the values recorded in one histogram since an earlier copy of it was made.
+     * @param histogram the current histogram
+     * @param earlier an earlier {@link #copy} of the same histogram
+     * @return a new histogram with the difference of the counts
+     */
+    @Nonnull
+    public static LatencyHistogram difference(@Nonnull LatencyHistogram histogram, @Nonnull LatencyHistogram earlier) {
+        final LatencyHistogram difference = new LatencyHistogram();
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = Math.max(0L, histogram.counts.get(i) - earlier.counts.get(i));
+            difference.counts.set(i, count);
+            total += count;
+        }
+        difference.totalCount.set(total);
+        return difference;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)Math.max(0L, value);
+        }
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit >= MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int)(value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowerBound = (long)(SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", p50=" + getValueAtPercentile(50) +
+               ", p99=" + getValueAtPercentile(99) + ", p999=" + getValueAtPercentile(99.9) + "}";
+    }
+}
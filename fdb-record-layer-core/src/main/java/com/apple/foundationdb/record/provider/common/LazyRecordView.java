@@ -0,0 +1,178 @@
+/*
+ * LazyRecordView.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * A view of a serialized record that only parses the fields that are asked for.
+ *
+ * The view keeps the bytes of the record message, after any transformations by the serializer have been undone.
+ * {@link #getFields} skips over all the other fields without decoding them, which makes it much cheaper than parsing
+ * the whole record when only a few fields are needed, for instance to check a filter that rejects most records.
+ * {@link #getRecord} parses the whole record, the same as {@link RecordSerializer#deserialize}, the first time it is called.
+ * @param <M> type used to represent stored records
+ * @see RecordSerializer#deserializeLazily
+ */
+@API(API.Status.EXPERIMENTAL)
+public class LazyRecordView<M extends Message> {
+    @Nonnull
+    private final Descriptors.Descriptor descriptor;
+    @Nullable
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+    @Nullable
+    private final Supplier<M> parser;
+    @Nullable
+    private final StoreTimer timer;
+    @Nullable
+    private M record;
+
+    protected LazyRecordView(@Nonnull Descriptors.Descriptor descriptor, @Nullable byte[] data, int offset, int length,
+                             @Nullable Supplier<M> parser, @Nullable StoreTimer timer, @Nullable M record) {
+        this.descriptor = descriptor;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.parser = parser;
+        this.timer = timer;
+        this.record = record;
+    }
+
+    /**
+     * Get a view of a record that has already been parsed.
+     * @param record the parsed record
+     * @param <M> type used to represent stored records
+     * @return a view for which all fields are already available
+     */
+    @Nonnull
+    public static <M extends Message> LazyRecordView<M> of(@Nonnull M record) {
+        return new LazyRecordView<>(record.getDescriptorForType(), null, 0, 0, null, null, record);
+    }
+
+    /**
+     * Get a view of a serialized record message.
+     * @param descriptor the descriptor of the record's type
+     * @param data an array containing the serialized record message
+     * @param offset the offset of the message in {@code data}
+     * @param length the length of the message in {@code data}
+     * @param parser a function to parse the whole record
+     * @param timer a timer used to instrument partial deserialization
+     * @param <M> type used to represent stored records
+     * @return a view that parses fields as they are asked for
+     */
+    @Nonnull
+    public static <M extends Message> LazyRecordView<M> of(@Nonnull Descriptors.Descriptor descriptor,
+                                                           @Nonnull byte[] data, int offset, int length,
+                                                           @Nonnull Supplier<M> parser, @Nullable StoreTimer timer) {
+        return new LazyRecordView<>(descriptor, data, offset, length, parser, timer, null);
+    }
+
+    /**
+     * Get the descriptor of the record's type, which is known without parsing any fields.
+     * @return the record's descriptor
+     */
+    @Nonnull
+    public Descriptors.Descriptor getDescriptorForType() {
+        return descriptor;
+    }
+
+    /**
+     * Get whether the whole record has been parsed.
+     * @return {@code true} if {@link #getRecord} has been called or the record was parsed when the view was created
+     */
+    public boolean isParsed() {
+        return record != null;
+    }
+
+    /**
+     * Get the whole record, parsing it if that has not been done yet.
+     * @return the parsed record
+     */
+    @Nonnull
+    public M getRecord() {
+        if (record == null) {
+            record = parser.get();
+        }
+        return record;
+    }
+
+    /**
+     * Get a message with only some of the top-level fields of the record. Fields of the message that are in
+     * {@code fieldNames} have the same value as they do in the whole record; all other fields are unset.
+     * Unknown names are ignored. If the record has already been parsed, the whole record is returned instead.
+     * @param fieldNames the names of the fields to parse
+     * @return a message of the record's type with the given fields set
+     */
+    @Nonnull
+    public Message getFields(@Nonnull Collection<String> fieldNames) {
+        if (record != null) {
+            return record;
+        }
+        final long startTime = System.nanoTime();
+        final BitSet fieldNumbers = new BitSet();
+        for (String fieldName : fieldNames) {
+            final Descriptors.FieldDescriptor field = descriptor.findFieldByName(fieldName);
+            if (field != null) {
+                fieldNumbers.set(field.getNumber());
+            }
+        }
+        try {
+            // Copy the wanted fields, in the order they were written, so that repeated and merged fields
+            // come out the same as in a full parse.
+            final CodedInputStream input = CodedInputStream.newInstance(data, offset, length);
+            final ByteString.Output copied = ByteString.newOutput();
+            while (true) {
+                final int start = input.getTotalBytesRead();
+                final int tag = input.readTag();
+                if (tag == 0) {
+                    break;
+                }
+                input.skipField(tag);
+                if (fieldNumbers.get(WireFormat.getTagFieldNumber(tag))) {
+                    copied.write(data, offset + start, input.getTotalBytesRead() - start);
+                }
+            }
+            return DynamicMessage.newBuilder(descriptor).mergeFrom(copied.toByteString()).buildPartial();
+        } catch (IOException ex) {
+            throw new RecordSerializationException("Error reading fields from byte array", ex)
+                    .addLogInfo("recordType", descriptor.getName());
+        } finally {
+            if (timer != null) {
+                timer.recordSinceNanoTime(RecordSerializer.Events.DESERIALIZE_PROTOBUF_FIELDS, startTime);
+            }
+        }
+    }
+}
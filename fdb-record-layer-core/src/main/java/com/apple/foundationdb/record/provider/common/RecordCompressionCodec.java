@@ -0,0 +1,81 @@
+/*
+ * RecordCompressionCodec.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.annotation.API;
+
+import javax.annotation.Nonnull;
+import java.util.zip.DataFormatException;
+
+/**
+ * A compression algorithm used by {@link TransformedRecordSerializer}.
+ *
+ * <p>
+ * Each compressed record begins with a one-byte compression version, which identifies the codec that compressed it,
+ * followed by the uncompressed length. The codec itself only produces and consumes the bytes that come after that
+ * header. Since the version is stored with each record, a serializer can read records written with any of the codecs
+ * registered with it, regardless of which one it uses to write new records.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread safe, as a single serializer is used concurrently for many records.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public interface RecordCompressionCodec {
+    /**
+     * Get the compression version written before records compressed by this codec.
+     * @return the compression version, which must be between {@code 1} and {@code 127}
+     */
+    int getCompressionVersion();
+
+    /**
+     * Get the compression level used when none is given to the serializer's builder.
+     * @return the default compression level for this codec
+     */
+    int getDefaultCompressionLevel();
+
+    /**
+     * Compress some data into the given output array.
+     * @param level the compression level, whose meaning depends on the codec
+     * @param input the array containing the data to compress
+     * @param inputOffset the offset of the data to compress
+     * @param inputLength the length of the data to compress
+     * @param output the array into which to write the compressed data
+     * @param outputOffset the offset at which to start writing
+     * @param outputLength the number of bytes available for writing
+     * @return the length of the compressed data or {@code -1} if it did not fit into {@code outputLength} bytes
+     */
+    int compress(int level, @Nonnull byte[] input, int inputOffset, int inputLength,
+                 @Nonnull byte[] output, int outputOffset, int outputLength);
+
+    /**
+     * Decompress some data into the given output array.
+     * @param input the array containing the compressed data
+     * @param inputOffset the offset of the compressed data
+     * @param inputLength the length of the compressed data
+     * @param output the array into which to write the decompressed data, which has the uncompressed length from the header
+     * @return the number of bytes written to {@code output}
+     * @throws DataFormatException if the compressed data is not valid
+     * @throws RecordSerializationException if the compressed data does not decompress to the length of {@code output}
+     */
+    int decompress(@Nonnull byte[] input, int inputOffset, int inputLength, @Nonnull byte[] output) throws DataFormatException;
+}
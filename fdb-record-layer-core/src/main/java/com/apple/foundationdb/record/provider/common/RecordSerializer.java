@@ -79,6 +79,25 @@ public interface RecordSerializer<M extends Message> {
     M deserialize(@Nonnull RecordMetaData metaData, @Nonnull Tuple primaryKey,
                   @Nonnull byte[] serialized, @Nullable StoreTimer timer);
 
+    /**
+     * Convert a byte array to a view of a Protobuf record that can get some fields of the record without parsing the rest.
+     * The default implementation parses the whole record. Serializers that can find the record's message in the serialized
+     * bytes should override this to parse fields only when they are asked for.
+     *
+     * @param metaData the store's meta-data
+     * @param primaryKey the primary key of the record
+     * @param serialized the serialized bytes
+     * @param timer a timer used to instrument deserialization
+     * @return a view of the deserialized record
+     * @see LazyRecordView
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    default LazyRecordView<M> deserializeLazily(@Nonnull RecordMetaData metaData, @Nonnull Tuple primaryKey,
+                                                @Nonnull byte[] serialized, @Nullable StoreTimer timer) {
+        return LazyRecordView.of(deserialize(metaData, primaryKey, serialized, timer));
+    }
+
     /**
      * Convert this typed record serializer to an untyped one.
      *
@@ -136,6 +155,8 @@ public interface RecordSerializer<M extends Message> {
         SERIALIZE_PROTOBUF_RECORD("serialize protobuf record"),
         /** The amount of time spent deserializing a Protobuf record from bytes. */
         DESERIALIZE_PROTOBUF_RECORD("deserialize protobuf record"),
+        /** The amount of time spent deserializing some fields of a Protobuf record from bytes. */
+        DESERIALIZE_PROTOBUF_FIELDS("deserialize protobuf record fields"),
         /** The amount of time spent compressing serialized bytes. */
         COMPRESS_SERIALIZED_RECORD("compress serialized record"),
         /** The amount of time spent decompressing serialized bytes. */
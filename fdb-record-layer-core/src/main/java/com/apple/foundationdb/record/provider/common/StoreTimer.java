@@ -44,7 +44,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -61,14 +62,31 @@ import java.util.stream.Stream;
 public class StoreTimer {
     @Nonnull
     private static final Counter ZERO_COUNTER = new Counter(true);
+    // Each enum class of events is given a slot the first time one of its events is recorded by any timer.
+    private static final int MAX_ENUM_SLOTS = 64;
+    @Nonnull
+    private static final AtomicInteger NEXT_ENUM_SLOT = new AtomicInteger();
+    @Nonnull
+    private static final ClassValue<Integer> ENUM_SLOTS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return NEXT_ENUM_SLOT.getAndIncrement();
+        }
+    };
 
     @Nonnull
     protected final Map<Event, Counter> counters;
     @Nonnull
     protected final Map<Event, Counter> timeoutCounters;
+    // The counters of events that are enum constants, such as those of FDBStoreTimer, indexed by the slot of their enum
+    // class and then their ordinal, so that recording them does not need a hash lookup. Every counter here is also in
+    // counters, which remains the complete set; this is replaced when the timer is reset.
+    @Nonnull
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Counter>> enumCounters;
     protected long lastReset;
     @Nonnull
     protected final UUID uuid;
+    private volatile boolean latencyHistogramsEnabled;
 
     /**
      * Confirm that there is no naming conflict among the event names that will be used.
@@ -134,7 +152,11 @@ public class StoreTimer {
 
                 // Do not add events that weren't changed since the snapshot
                 if (count > 0) {
-                    differenceCounters.put(event, new Counter(count, counter.getCumulativeValue() - snapShotCounter.getCumulativeValue()));
+                    @Nullable LatencyHistogram histogram = counter.getHistogram();
+                    if (histogram != null) {
+                        histogram = snapShotCounter.getHistogram() == null ? histogram.copy() : LatencyHistogram.difference(histogram, snapShotCounter.getHistogram());
+                    }
+                    differenceCounters.put(event, new Counter(count, counter.getCumulativeValue() - snapShotCounter.getCumulativeValue(), histogram, false));
                 }
             }
         }
@@ -171,13 +193,88 @@ public class StoreTimer {
             }
             return counter;
         } else {
+            @Nullable final AtomicReferenceArray<Counter> enumClassCounters = getEnumClassCounters(event);
+            if (enumClassCounters != null) {
+                final int ordinal = ((Enum<?>)event).ordinal();
+                @Nullable Counter counter = enumClassCounters.get(ordinal);
+                if (counter == null) {
+                    counter = createIfNotExists ? MapUtils.computeIfAbsent(counters, event, this::newCounter) : counters.get(event);
+                    if (counter != null) {
+                        enumClassCounters.set(ordinal, counter);
+                    }
+                }
+                return counter;
+            }
             if (createIfNotExists) {
-                return MapUtils.computeIfAbsent(counters, event, evignore -> new Counter());
+                return MapUtils.computeIfAbsent(counters, event, this::newCounter);
             }
             return counters.get(event);
         }
     }
 
+    @Nullable
+    private AtomicReferenceArray<Counter> getEnumClassCounters(@Nonnull Event event) {
+        if (!(event instanceof Enum)) {
+            return null;
+        }
+        final Class<?> enumClass = ((Enum<?>)event).getDeclaringClass();
+        final int slot = ENUM_SLOTS.get(enumClass);
+        if (slot >= MAX_ENUM_SLOTS) {
+            return null;
+        }
+        final AtomicReferenceArray<AtomicReferenceArray<Counter>> current = enumCounters;
+        @Nullable AtomicReferenceArray<Counter> enumClassCounters = current.get(slot);
+        if (enumClassCounters == null) {
+            current.compareAndSet(slot, null, new AtomicReferenceArray<>(enumClass.getEnumConstants().length));
+            enumClassCounters = current.get(slot);
+        }
+        return enumClassCounters;
+    }
+
+    @Nonnull
+    private Counter newCounter(@Nonnull Event event) {
+        if (latencyHistogramsEnabled && !(event instanceof Count) && !(event instanceof SizeEvent)) {
+            return new Counter(0, 0L, new LatencyHistogram(), false);
+        }
+        return new Counter();
+    }
+
+    /**
+     * Get whether events recorded by this timer also keep a {@link LatencyHistogram} of their times.
+     *
+     * @return {@code true} if latency histograms are enabled
+     * @see #setLatencyHistogramsEnabled(boolean)
+     */
+    public boolean isLatencyHistogramsEnabled() {
+        return latencyHistogramsEnabled;
+    }
+
+    /**
+     * Set whether events recorded by this timer also keep a {@link LatencyHistogram} of their times, from which
+     * {@link #getKeysAndValues()} includes percentiles. This only applies to the counters of events that are first
+     * recorded after it is set; {@link Count} and {@link SizeEvent} events never have histograms.
+     *
+     * @param latencyHistogramsEnabled whether to keep latency histograms
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public void setLatencyHistogramsEnabled(boolean latencyHistogramsEnabled) {
+        this.latencyHistogramsEnabled = latencyHistogramsEnabled;
+    }
+
+    /**
+     * Get the latency histogram for a given event.
+     *
+     * @param event the event to get the histogram for
+     * @return the histogram of the event's times or {@code null} if the event has not been recorded with a histogram
+     * @see #setLatencyHistogramsEnabled(boolean)
+     */
+    @Nullable
+    @API(API.Status.EXPERIMENTAL)
+    public LatencyHistogram getLatencyHistogram(@Nonnull Event event) {
+        @Nullable Counter counter = getCounter(event, false);
+        return counter == null ? null : counter.getHistogram();
+    }
+
     /**
      * Return the timeout counter value for a given event type.
      *
@@ -406,8 +503,11 @@ public class StoreTimer {
      * {@link StoreTimer.Event}.
      */
     public static class Counter {
-        private final AtomicLong cumulativeValue;
-        private final AtomicInteger count;
+        // Striped, so that a timer shared by many threads does not make each update contend for the same cache line.
+        private final LongAdder cumulativeValue;
+        private final LongAdder count;
+        @Nullable
+        private final LatencyHistogram histogram;
         private boolean immutable;
 
         private Counter() {
@@ -419,7 +519,8 @@ public class StoreTimer {
         }
 
         private Counter(Counter counter, boolean immutable) {
-            this(counter.getCount(), counter.getCumulativeValue(), immutable);
+            this(counter.getCount(), counter.getCumulativeValue(),
+                    counter.histogram == null ? null : counter.histogram.copy(), immutable);
         }
 
         public Counter(boolean immutable) {
@@ -431,8 +532,15 @@ public class StoreTimer {
         }
 
         public Counter(int count, long cumulativeValue, boolean immutable) {
-            this.count = new AtomicInteger(count);
-            this.cumulativeValue = new AtomicLong(cumulativeValue);
+            this(count, cumulativeValue, null, immutable);
+        }
+
+        private Counter(int count, long cumulativeValue, @Nullable LatencyHistogram histogram, boolean immutable) {
+            this.count = new LongAdder();
+            this.count.add(count);
+            this.cumulativeValue = new LongAdder();
+            this.cumulativeValue.add(cumulativeValue);
+            this.histogram = histogram;
             this.immutable = immutable;
         }
 
@@ -442,7 +550,7 @@ public class StoreTimer {
          * @return the number of occurrences of the associated event
          */
         public int getCount() {
-            return count.get();
+            return count.intValue();
         }
 
         /**
@@ -462,7 +570,19 @@ public class StoreTimer {
          * @return the cumulative value of the associated event
          */
         public long getCumulativeValue() {
-            return cumulativeValue.get();
+            return cumulativeValue.sum();
+        }
+
+        /**
+         * Get the histogram of the values recorded for the associated event, if it has one.
+         *
+         * @return the histogram or {@code null} if latency histograms were not enabled when the counter was created
+         * @see StoreTimer#setLatencyHistogramsEnabled(boolean)
+         */
+        @Nullable
+        @API(API.Status.EXPERIMENTAL)
+        public LatencyHistogram getHistogram() {
+            return histogram;
         }
 
         /**
@@ -472,8 +592,11 @@ public class StoreTimer {
          */
         public void record(long occurrenceValue) {
             checkImmutable();
-            cumulativeValue.addAndGet(occurrenceValue);
-            count.incrementAndGet();
+            cumulativeValue.add(occurrenceValue);
+            count.increment();
+            if (histogram != null) {
+                histogram.record(occurrenceValue);
+            }
         }
 
         /**
@@ -483,7 +606,7 @@ public class StoreTimer {
          */
         public void increment(int amount) {
             checkImmutable();
-            count.addAndGet(amount);
+            count.add(amount);
         }
 
         /**
@@ -493,8 +616,11 @@ public class StoreTimer {
          */
         public void add(@Nonnull Counter counter) {
             checkImmutable();
-            cumulativeValue.addAndGet(counter.getCumulativeValue());
-            count.addAndGet(counter.getCount());
+            cumulativeValue.add(counter.getCumulativeValue());
+            count.add(counter.getCount());
+            if (histogram != null && counter.histogram != null) {
+                histogram.add(counter.histogram);
+            }
         }
 
         /**
@@ -519,6 +645,7 @@ public class StoreTimer {
     public StoreTimer() {
         counters = new ConcurrentHashMap<>();
         timeoutCounters = new ConcurrentHashMap<>();
+        enumCounters = new AtomicReferenceArray<>(MAX_ENUM_SLOTS);
         lastReset = System.nanoTime();
         uuid = UUID.randomUUID();
     }
@@ -752,12 +879,17 @@ public class StoreTimer {
         for (Map.Entry<Event, Counter> entry : counters.entrySet()) {
             Event event = entry.getKey();
             Counter counter = entry.getValue();
-            result.put(event.logKeyWithSuffix("_count"), counter.count.get());
+            result.put(event.logKeyWithSuffix("_count"), counter.getCount());
             if (event instanceof SizeEvent) {
                 result.put(event.logKeyWithSuffix("_size"), counter.getCumulativeValue());
             } else if (!(event instanceof Count)) {
                 result.put(event.logKeyWithSuffix("_micros"), counter.getTimeNanos() / 1000L);
             }
+            if (counter.histogram != null && counter.histogram.getCount() > 0) {
+                result.put(event.logKeyWithSuffix("_p50_micros"), counter.histogram.getValueAtPercentile(50) / 1000L);
+                result.put(event.logKeyWithSuffix("_p99_micros"), counter.histogram.getValueAtPercentile(99) / 1000L);
+                result.put(event.logKeyWithSuffix("_p999_micros"), counter.histogram.getValueAtPercentile(99.9) / 1000L);
+            }
         }
 
         // now add recorded timeout events to map
@@ -769,7 +901,7 @@ public class StoreTimer {
         for (Aggregate aggregate : getAggregates()) {
             @Nullable Counter counter = aggregate.compute(this);
             if (counter != null) {
-                result.put(aggregate.logKeyWithSuffix("_count"), counter.count.get());
+                result.put(aggregate.logKeyWithSuffix("_count"), counter.getCount());
                 if (!(aggregate instanceof Count)) {
                     result.put(aggregate.logKeyWithSuffix("_micros"), counter.getTimeNanos() / 1000L);
                 }
@@ -784,6 +916,7 @@ public class StoreTimer {
      */
     public void reset() {
         counters.clear();
+        enumCounters = new AtomicReferenceArray<>(MAX_ENUM_SLOTS);
         timeoutCounters.clear();
         lastReset = System.nanoTime();
     }
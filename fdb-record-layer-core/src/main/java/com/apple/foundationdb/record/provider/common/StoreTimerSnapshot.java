@@ -179,10 +179,13 @@ public final class StoreTimerSnapshot {
     public static class CounterSnapshot {
         private final long cumulativeValue;
         private final int count;
+        @Nullable
+        private final LatencyHistogram histogram;
 
         private CounterSnapshot(@Nonnull StoreTimer.Counter c) {
             cumulativeValue = c.getCumulativeValue();
             count = c.getCount();
+            histogram = c.getHistogram() == null ? null : c.getHistogram().copy();
         }
 
         /**
@@ -223,5 +226,16 @@ public final class StoreTimerSnapshot {
         public long getCumulativeValue() {
             return cumulativeValue;
         }
+
+        /**
+         * Get a copy of the histogram of the associated event, if it has one. This should not be modified.
+         *
+         * @return the histogram at the time of the snapshot or {@code null} if the counter did not have one
+         */
+        @Nullable
+        @API(API.Status.EXPERIMENTAL)
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
     }
 }
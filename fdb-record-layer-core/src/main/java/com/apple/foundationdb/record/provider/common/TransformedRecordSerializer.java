@@ -28,6 +28,7 @@ import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.Message;
 import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
 
@@ -37,10 +38,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 /**
  * A {@link RecordSerializer} implementation that transforms the bytes produced
@@ -60,6 +62,12 @@ import java.util.zip.Inflater;
  * </p>
  *
  * <p>
+ * Compressed records further begin with a compression version identifying the {@link RecordCompressionCodec}
+ * that compressed them. Records are compressed with a single codec, by default {@link DeflateRecordCompressionCodec},
+ * but can be decompressed with any of the codecs given to the builder with {@link Builder#addCompressionCodec}.
+ * </p>
+ *
+ * <p>
  * This base class does not itself support encryption: an exception will be thrown
  * when trying to construct a serializer with encryption enabled or when encountering
  * a serialized record that requires decryption. Subclasses, such as {@link TransformedRecordSerializerJCE},
@@ -87,9 +95,10 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     // TODO: Can remove this after transition to write everything with _CLEAR.
     protected static final int ENCODING_PROTO_MESSAGE_FIELD = 0x02;
     protected static final int ENCODING_PROTO_TYPE_MASK = 0x07;
-    protected static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+    protected static final int DEFAULT_COMPRESSION_LEVEL = DeflateRecordCompressionCodec.DEFAULT_COMPRESSION_LEVEL;
+    // The range of versions that a RecordCompressionCodec can have, which are written as a single byte.
     protected static final int MIN_COMPRESSION_VERSION = 1;
-    protected static final int MAX_COMPRESSION_VERSION = 1;
+    protected static final int MAX_COMPRESSION_VERSION = Byte.MAX_VALUE;
 
     @Nonnull
     protected final RecordSerializer<M> inner;
@@ -97,17 +106,39 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected final int compressionLevel;
     protected final boolean encryptWhenSerializing;
     protected final double writeValidationRatio;
+    @Nonnull
+    protected final RecordCompressionCodec compressionCodec;
+    @Nonnull
+    protected final Map<Integer, RecordCompressionCodec> compressionCodecs;
 
     protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
                                           boolean compressWhenSerializing,
                                           int compressionLevel,
                                           boolean encryptWhenSerializing,
                                           double writeValidationRatio) {
+        this(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing, writeValidationRatio,
+                DeflateRecordCompressionCodec.instance(), defaultCompressionCodecs());
+    }
+
+    protected TransformedRecordSerializer(@Nonnull RecordSerializer<M> inner,
+                                          boolean compressWhenSerializing,
+                                          int compressionLevel,
+                                          boolean encryptWhenSerializing,
+                                          double writeValidationRatio,
+                                          @Nonnull RecordCompressionCodec compressionCodec,
+                                          @Nonnull Map<Integer, RecordCompressionCodec> compressionCodecs) {
         this.inner = inner;
         this.compressWhenSerializing = compressWhenSerializing;
         this.compressionLevel = compressionLevel;
         this.encryptWhenSerializing = encryptWhenSerializing;
         this.writeValidationRatio = writeValidationRatio;
+        this.compressionCodec = compressionCodec;
+        this.compressionCodecs = compressionCodecs;
+    }
+
+    @Nonnull
+    private static Map<Integer, RecordCompressionCodec> defaultCompressionCodecs() {
+        return ImmutableMap.of(DeflateRecordCompressionCodec.COMPRESSION_VERSION, DeflateRecordCompressionCodec.instance());
     }
 
     @SpotBugsSuppressWarnings("EI_EXPOSE_REP")
@@ -165,22 +196,14 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
 
         // Write compression version number and uncompressed size as these
         // meta-data are needed when decompressing.
-        compressed[0] = (byte) MAX_COMPRESSION_VERSION;
+        compressed[0] = (byte) compressionCodec.getCompressionVersion();
         ByteBuffer.wrap(compressed, 1, 4).order(ByteOrder.BIG_ENDIAN).putInt(state.length);
 
         // Actually compress. If we end up filling the buffer, then just
         // return the uncompressed value because it's pointless to compress
         // if we actually increase the amount of data.
-        Deflater compressor = new Deflater(compressionLevel);
-        int compressedLength;
-        try {
-            compressor.setInput(state.data, state.offset, state.length);
-            compressor.finish(); // necessary to include checksum
-            compressedLength = compressor.deflate(compressed, 5, compressed.length - 5, Deflater.FULL_FLUSH);
-        } finally {
-            compressor.end();
-        }
-        if (compressedLength == compressed.length - 5) {
+        int compressedLength = compressionCodec.compress(compressionLevel, state.data, state.offset, state.length, compressed, 5, compressed.length - 5);
+        if (compressedLength < 0) {
             increment(timer, Counts.RECORD_BYTES_AFTER_COMPRESSION, state.length);
             state.compressed = false;
         } else {
@@ -263,34 +286,18 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
     protected void decompress(@Nonnull TransformState state, @Nullable StoreTimer timer) throws DataFormatException {
         long startTime = System.nanoTime();
 
-        // At the moment, there is only one compression version, so
-        // we after we've verified it is in the right range, we
-        // can just move on. If we ever introduce a new format version,
-        // we will need to make this code more complicated.
+        // The compression version identifies the codec that compressed the record, which need not be
+        // the one used by this serializer for compressing.
         int compressionVersion = state.data[state.offset];
-        if (compressionVersion < MIN_COMPRESSION_VERSION || compressionVersion > MAX_COMPRESSION_VERSION) {
+        RecordCompressionCodec codec = compressionCodecs.get(compressionVersion);
+        if (codec == null) {
             throw new RecordSerializationException("unknown compression version")
                     .addLogInfo("compressionVersion", compressionVersion);
         }
 
         int decompressedLength = ByteBuffer.wrap(state.data, state.offset + 1, 4).order(ByteOrder.BIG_ENDIAN).getInt();
         byte[] decompressed = new byte[decompressedLength];
-
-        Inflater decompressor = new Inflater();
-        try {
-            decompressor.setInput(state.data, state.offset + 5, state.length - 5);
-            int actualDecompressedSize = decompressor.inflate(decompressed);
-            if (actualDecompressedSize < decompressedLength) {
-                throw new RecordSerializationException("decompressed record too small")
-                        .addLogInfo(LogMessageKeys.EXPECTED, decompressedLength)
-                        .addLogInfo(LogMessageKeys.ACTUAL, actualDecompressedSize);
-            } else if (decompressor.getRemaining() > 0) {
-                throw new RecordSerializationException("decompressed record too large")
-                        .addLogInfo(LogMessageKeys.EXPECTED, decompressedLength);
-            }
-        } finally {
-            decompressor.end();
-        }
+        codec.decompress(state.data, state.offset + 5, state.length - 5, decompressed);
 
         state.setDataArray(decompressed);
 
@@ -305,15 +312,40 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
 
     @Nonnull
     @Override
-    @SuppressWarnings("PMD.PreserveStackTrace")
     public M deserialize(@Nonnull RecordMetaData metaData,
                          @Nonnull Tuple primaryKey,
                          @Nonnull byte[] serialized,
                          @Nullable StoreTimer timer) {
+        return inner.deserialize(metaData, primaryKey, untransform(metaData, primaryKey, serialized, timer), timer);
+    }
+
+    @Nonnull
+    @Override
+    public LazyRecordView<M> deserializeLazily(@Nonnull RecordMetaData metaData,
+                                               @Nonnull Tuple primaryKey,
+                                               @Nonnull byte[] serialized,
+                                               @Nullable StoreTimer timer) {
+        return inner.deserializeLazily(metaData, primaryKey, untransform(metaData, primaryKey, serialized, timer), timer);
+    }
+
+    /**
+     * Undo the transformations applied when serializing a record, giving the bytes to be deserialized by the inner serializer.
+     * @param metaData the store's meta-data
+     * @param primaryKey the primary key of the record
+     * @param serialized the serialized bytes
+     * @param timer a timer used to instrument decryption and decompression
+     * @return the bytes of the record as serialized by the inner serializer
+     */
+    @Nonnull
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    protected byte[] untransform(@Nonnull RecordMetaData metaData,
+                                 @Nonnull Tuple primaryKey,
+                                 @Nonnull byte[] serialized,
+                                 @Nullable StoreTimer timer) {
         int encoding = serialized[0];
         if (encoding != ENCODING_CLEAR && (encoding & ENCODING_PROTO_TYPE_MASK) == ENCODING_PROTO_MESSAGE_FIELD) {
             // TODO: Can remove this after transition to write everything with _CLEAR.
-            return inner.deserialize(metaData, primaryKey, serialized, timer);
+            return serialized;
         } else {
             TransformState state = new TransformState(serialized, 1, serialized.length - 1);
             if (encoding != ENCODING_CLEAR) {
@@ -354,14 +386,15 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
                             .addLogInfo(LogMessageKeys.PRIMARY_KEY, primaryKey);
                 }
             }
-            return inner.deserialize(metaData, primaryKey, state.getDataArray(), timer);
+            return state.getDataArray();
         }
     }
 
     @Nonnull
     @Override
     public RecordSerializer<Message> widen() {
-        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel, encryptWhenSerializing, writeValidationRatio);
+        return new TransformedRecordSerializer<>(inner.widen(), compressWhenSerializing, compressionLevel, encryptWhenSerializing, writeValidationRatio,
+                compressionCodec, compressionCodecs);
     }
 
     @Nonnull
@@ -409,9 +442,14 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         @Nonnull
         protected final RecordSerializer<M> inner;
         protected boolean compressWhenSerializing;
-        protected int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        @Nullable
+        protected Integer compressionLevel;
         protected boolean encryptWhenSerializing;
         protected double writeValidationRatio;
+        @Nonnull
+        protected RecordCompressionCodec compressionCodec = DeflateRecordCompressionCodec.instance();
+        @Nonnull
+        protected final Map<Integer, RecordCompressionCodec> compressionCodecs = new HashMap<>(defaultCompressionCodecs());
 
         protected Builder(@Nonnull RecordSerializer<M> inner) {
             this.inner = inner;
@@ -433,15 +471,18 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
         }
 
         /**
-         * Compression level to use if compressing. These should be the
-         * same levels as used by the {@link Deflater} class (which
-         * are the same levels as used by zlib). The higher the level,
-         * the better the compression will be but the slower or more
-         * CPU intensive it will be. The default level if none is
-         * set here is {@value DEFAULT_COMPRESSION_LEVEL}. Setting
-         * this does <i>not</i> automatically enable compression when
-         * serializing.
-         * @param level the compression level (0-9)
+         * Compression level to use if compressing. The meaning of the
+         * level depends on the {@linkplain #setCompressionCodec codec}.
+         * For the default codec, these should be the same levels as used
+         * by the {@link Deflater} class (which are the same levels as used
+         * by zlib). The higher the level, the better the compression will
+         * be but the slower or more CPU intensive it will be. If none is
+         * set here, the codec's {@linkplain RecordCompressionCodec#getDefaultCompressionLevel()
+         * default level} is used, which is {@value DEFAULT_COMPRESSION_LEVEL}
+         * for the default codec. See {@link DeflateRecordCompressionCodec}
+         * for the trade-off between levels. Setting this does <i>not</i>
+         * automatically enable compression when serializing.
+         * @param level the compression level (0-9 for the default codec)
          * @return this <code>Builder</code>
          * @see Deflater
          */
@@ -451,6 +492,43 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
             return this;
         }
 
+        /**
+         * Codec to use if compressing. The default is {@link DeflateRecordCompressionCodec}, which
+         * is the only codec understood by older versions of this class. The codec is also added as
+         * with {@link #addCompressionCodec(RecordCompressionCodec)}, so that records compressed
+         * with it can be decompressed. The {@linkplain #setCompressionLevel(int) compression level}
+         * is passed to the codec. Setting this does <i>not</i> automatically enable compression
+         * when serializing.
+         * @param compressionCodec the codec with which to compress records
+         * @return this <code>Builder</code>
+         */
+        @Nonnull
+        public Builder<M> setCompressionCodec(@Nonnull RecordCompressionCodec compressionCodec) {
+            addCompressionCodec(compressionCodec);
+            this.compressionCodec = compressionCodec;
+            return this;
+        }
+
+        /**
+         * Add a codec with which to decompress records. Each codec is identified by its
+         * {@linkplain RecordCompressionCodec#getCompressionVersion() compression version}, so
+         * a codec must be added before any records written with it are read, and this replaces
+         * any codec previously added with the same version.
+         * @param compressionCodec a codec with which to decompress records
+         * @return this <code>Builder</code>
+         * @throws RecordCoreArgumentException if the codec's compression version is out of range
+         */
+        @Nonnull
+        public Builder<M> addCompressionCodec(@Nonnull RecordCompressionCodec compressionCodec) {
+            final int compressionVersion = compressionCodec.getCompressionVersion();
+            if (compressionVersion < MIN_COMPRESSION_VERSION || compressionVersion > MAX_COMPRESSION_VERSION) {
+                throw new RecordCoreArgumentException("compression version out of range")
+                        .addLogInfo("compressionVersion", compressionVersion);
+            }
+            compressionCodecs.put(compressionVersion, compressionCodec);
+            return this;
+        }
+
         /**
          * Whether to encrypt records after serializing. Should
          * compression and encryption both be set, then data
@@ -486,6 +564,14 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
             return this;
         }
 
+        /**
+         * Get the compression level to use, which is the codec's default unless one has been set.
+         * @return the compression level
+         */
+        protected int getCompressionLevelOrDefault() {
+            return compressionLevel == null ? compressionCodec.getDefaultCompressionLevel() : compressionLevel;
+        }
+
         /**
          * Construct a {@link TransformedRecordSerializer} from the
          * parameters specified by this builder. If one has enabled
@@ -501,9 +587,11 @@ public class TransformedRecordSerializer<M extends Message> implements RecordSer
             return new TransformedRecordSerializer<>(
                     inner,
                     compressWhenSerializing,
-                    compressionLevel,
+                    getCompressionLevelOrDefault(),
                     encryptWhenSerializing,
-                    writeValidationRatio
+                    writeValidationRatio,
+                    compressionCodec,
+                    ImmutableMap.copyOf(compressionCodecs)
             );
         }
     }
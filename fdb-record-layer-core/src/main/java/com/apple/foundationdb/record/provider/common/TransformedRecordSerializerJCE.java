@@ -22,6 +22,7 @@ package com.apple.foundationdb.record.provider.common;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
@@ -31,6 +32,7 @@ import javax.crypto.spec.IvParameterSpec;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
+import java.util.Map;
 
 /**
  * An extension of {@link TransformedRecordSerializer} to use JCE to encrypt and decrypt records.
@@ -60,6 +62,24 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
         this.secureRandom = secureRandom;
     }
 
+    @SuppressWarnings("squid:S00107") // There is a builder for this
+    protected TransformedRecordSerializerJCE(@Nonnull RecordSerializer<M> inner,
+                                             boolean compressWhenSerializing,
+                                             int compressionLevel,
+                                             boolean encryptWhenSerializing,
+                                             double writeValidationRatio,
+                                             @Nonnull RecordCompressionCodec compressionCodec,
+                                             @Nonnull Map<Integer, RecordCompressionCodec> compressionCodecs,
+                                             @Nullable String cipherName,
+                                             @Nullable Key encryptionKey,
+                                             @Nullable SecureRandom secureRandom) {
+        super(inner, compressWhenSerializing, compressionLevel, encryptWhenSerializing, writeValidationRatio,
+                compressionCodec, compressionCodecs);
+        this.cipherName = cipherName;
+        this.encryptionKey = encryptionKey;
+        this.secureRandom = secureRandom;
+    }
+
     @Override
     protected void encrypt(@Nonnull TransformState state, @Nullable StoreTimer timer) throws GeneralSecurityException {
         if (cipherName == null || encryptionKey == null || secureRandom == null) {
@@ -180,6 +200,20 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
             return this;
         }
 
+        @Override
+        @Nonnull
+        public Builder<M> setCompressionCodec(@Nonnull RecordCompressionCodec compressionCodec) {
+            super.setCompressionCodec(compressionCodec);
+            return this;
+        }
+
+        @Override
+        @Nonnull
+        public Builder<M> addCompressionCodec(@Nonnull RecordCompressionCodec compressionCodec) {
+            super.addCompressionCodec(compressionCodec);
+            return this;
+        }
+
         /**
          * Whether to encrypt records after serializing. Should
          * compression and encryption both be set, then data
@@ -298,9 +332,11 @@ public class TransformedRecordSerializerJCE<M extends Message> extends Transform
             return new TransformedRecordSerializerJCE<>(
                     inner,
                     compressWhenSerializing,
-                    compressionLevel,
+                    getCompressionLevelOrDefault(),
                     encryptWhenSerializing,
                     writeValidationRatio,
+                    compressionCodec,
+                    ImmutableMap.copyOf(compressionCodecs),
                     cipherName,
                     encryptionKey,
                     secureRandom
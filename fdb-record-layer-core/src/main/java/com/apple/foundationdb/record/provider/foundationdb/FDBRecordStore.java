@@ -40,6 +40,7 @@ import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.ExecuteState;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
 import com.apple.foundationdb.record.FunctionNames;
 import com.apple.foundationdb.record.IndexBuildProto;
 import com.apple.foundationdb.record.IndexEntry;
@@ -81,6 +82,7 @@ import com.apple.foundationdb.record.metadata.UnnestedRecordType;
 import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.common.DynamicMessageRecordSerializer;
+import com.apple.foundationdb.record.provider.common.LazyRecordView;
 import com.apple.foundationdb.record.provider.common.RecordSerializer;
 import com.apple.foundationdb.record.provider.foundationdb.indexing.IndexingRangeSet;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
@@ -100,6 +102,8 @@ import com.apple.foundationdb.record.query.plan.serialization.DefaultPlanSeriali
 import com.apple.foundationdb.record.query.plan.serialization.PlanSerializationRegistry;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromStoredRecordPlan;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordPlanner;
+import com.apple.foundationdb.record.util.pair.NonnullPair;
+import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
@@ -124,7 +128,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -238,6 +244,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     protected static final Object INDEX_UNIQUENESS_VIOLATIONS_KEY = FDBRecordStoreKeyspace.INDEX_UNIQUENESS_VIOLATIONS_SPACE.key();
     protected static final Object RECORD_VERSION_KEY = FDBRecordStoreKeyspace.RECORD_VERSION_SPACE.key();
     protected static final Object INDEX_BUILD_SPACE_KEY = FDBRecordStoreKeyspace.INDEX_BUILD_SPACE.key();
+    protected static final Object INDEX_STATISTICS_SPACE_KEY = FDBRecordStoreKeyspace.INDEX_STATISTICS_SPACE.key();
 
     @SuppressWarnings("squid:S2386")
     @SpotBugsSuppressWarnings("MS_MUTABLE_ARRAY")
@@ -494,23 +501,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         recordBuilder.setPrimaryKey(primaryKey);
 
         final CompletableFuture<FDBStoredRecord<M>> result = loadExistingRecord(typedSerializer, primaryKey).thenCompose(oldRecord -> {
-            if (oldRecord == null) {
-                if (existenceCheck.errorIfNotExists()) {
-                    throw new RecordDoesNotExistException("record does not exist",
-                            LogMessageKeys.PRIMARY_KEY, primaryKey);
-                }
-            } else {
-                if (existenceCheck.errorIfExists()) {
-                    throw new RecordAlreadyExistsException("record already exists",
-                            LogMessageKeys.PRIMARY_KEY, primaryKey);
-                }
-                if (existenceCheck.errorIfTypeChanged() && oldRecord.getRecordType() != recordType) {
-                    throw new RecordTypeChangedException("record type changed",
-                            LogMessageKeys.PRIMARY_KEY, primaryKey,
-                            LogMessageKeys.ACTUAL_TYPE, oldRecord.getRecordType().getName(),
-                            LogMessageKeys.EXPECTED_TYPE, recordType.getName());
-                }
-            }
+            checkExistence(existenceCheck, primaryKey, recordType, oldRecord);
             if (isDryRun) {
                 final FDBStoredRecord<M> newRecord = dryRunSetSizeInfo(typedSerializer, recordBuilder, metaData);
                 return CompletableFuture.completedFuture(newRecord);
@@ -529,6 +520,107 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return context.instrument(FDBStoreTimer.Events.SAVE_RECORD, result);
     }
 
+    /**
+     * Save a batch of records, loading any existing records with the same primary keys together and then
+     * updating each index for all the records at once with {@link IndexMaintainer#updateAll}.
+     *
+     * The records are serialized first, so that the batch can be cut off as soon as the total size reaches
+     * {@link FDBRecordStoreProperties#BATCH_SAVE_MAX_BYTES}. The existence check is made for every record
+     * in the batch before any of them are written. Indexes on synthetic record types are updated for each record
+     * before the next one is written, because their records are built from the other constituents in the store.
+     * @param records the records to be saved, which must all have different primary keys
+     * @param existenceCheck when to throw an exception if a record with the same primary key does or does not already exist
+     * @return a future that completes with the stored record forms of the records that were saved, in the same order
+     */
+    @Override
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public CompletableFuture<List<FDBStoredRecord<Message>>> saveRecordsAsync(@Nonnull Collection<? extends Message> records,
+                                                                               @Nonnull RecordExistenceCheck existenceCheck) {
+        return saveTypedRecords(serializer, records, existenceCheck);
+    }
+
+    @Nonnull
+    @API(API.Status.INTERNAL)
+    protected <M extends Message> CompletableFuture<List<FDBStoredRecord<M>>> saveTypedRecords(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                               @Nonnull Collection<? extends M> records,
+                                                                                               @Nonnull RecordExistenceCheck existenceCheck) {
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final long maxBytes = context.getPropertyStorage().getPropertyValue(FDBRecordStoreProperties.BATCH_SAVE_MAX_BYTES);
+        final List<FDBStoredRecordBuilder<M>> recordBuilders = new ArrayList<>(records.size());
+        final List<byte[]> serializedRecords = new ArrayList<>(records.size());
+        final Set<Tuple> primaryKeys = new HashSet<>();
+        long totalBytes = 0;
+        for (M rec : records) {
+            if (totalBytes >= maxBytes) {
+                break;
+            }
+            final RecordType recordType = metaData.getRecordTypeForDescriptor(rec.getDescriptorForType());
+            final FDBStoredRecordBuilder<M> recordBuilder = FDBStoredRecord.newBuilder(rec).setRecordType(recordType);
+            recordBuilder.setVersion(recordVersionForSave(metaData, null, VersionstampSaveBehavior.DEFAULT));
+            final Tuple primaryKey = recordType.getPrimaryKey().evaluateSingleton(recordBuilder).toTuple();
+            if (!primaryKeys.add(primaryKey)) {
+                throw new RecordCoreArgumentException("batch has more than one record with the same primary key",
+                        LogMessageKeys.PRIMARY_KEY, primaryKey);
+            }
+            recordBuilder.setPrimaryKey(primaryKey);
+            final byte[] serialized = typedSerializer.serialize(metaData, recordType, rec, getTimer());
+            totalBytes += serialized.length;
+            recordBuilders.add(recordBuilder);
+            serializedRecords.add(serialized);
+        }
+        final CompletableFuture<List<FDBStoredRecord<M>>> result = loadExistingRecords(typedSerializer,
+                recordBuilders.stream().map(FDBStoredRecordBuilder::getPrimaryKey).collect(Collectors.toList())).thenCompose(oldRecords -> {
+                    for (int i = 0; i < recordBuilders.size(); i++) {
+                        final FDBStoredRecordBuilder<M> recordBuilder = recordBuilders.get(i);
+                        checkExistence(existenceCheck, recordBuilder.getPrimaryKey(), recordBuilder.getRecordType(), oldRecords.get(i));
+                    }
+                    final List<FDBStoredRecord<M>> newRecords = new ArrayList<>(recordBuilders.size());
+                    CompletableFuture<Void> saved = AsyncUtil.DONE;
+                    for (int i = 0; i < recordBuilders.size(); i++) {
+                        final FDBStoredRecord<M> oldRecord = oldRecords.get(i);
+                        final FDBStoredRecordBuilder<M> recordBuilder = recordBuilders.get(i);
+                        final byte[] serialized = serializedRecords.get(i);
+                        saved = saved.thenCompose(vignore -> {
+                            final FDBStoredRecord<M> newRecord = saveSerializedRecord(recordBuilder, serialized, metaData, oldRecord);
+                            if (oldRecord == null) {
+                                addRecordCount(metaData, newRecord, LITTLE_ENDIAN_INT64_ONE);
+                            } else {
+                                if (getTimer() != null) {
+                                    getTimer().increment(FDBStoreTimer.Counts.REPLACE_RECORD_VALUE_BYTES, oldRecord.getValueSize());
+                                }
+                            }
+                            newRecords.add(newRecord);
+                            return updateSyntheticIndexes(oldRecord, newRecord);
+                        });
+                    }
+                    return saved.thenCompose(vignore -> updateSecondaryIndexes(oldRecords, newRecords)).thenApply(vignore -> newRecords);
+                });
+        return context.instrument(FDBStoreTimer.Events.SAVE_RECORDS, result);
+    }
+
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private <M extends Message> void checkExistence(@Nonnull RecordExistenceCheck existenceCheck, @Nonnull Tuple primaryKey,
+                                                    @Nonnull RecordType recordType, @Nullable FDBStoredRecord<M> oldRecord) {
+        if (oldRecord == null) {
+            if (existenceCheck.errorIfNotExists()) {
+                throw new RecordDoesNotExistException("record does not exist",
+                        LogMessageKeys.PRIMARY_KEY, primaryKey);
+            }
+        } else {
+            if (existenceCheck.errorIfExists()) {
+                throw new RecordAlreadyExistsException("record already exists",
+                        LogMessageKeys.PRIMARY_KEY, primaryKey);
+            }
+            if (existenceCheck.errorIfTypeChanged() && oldRecord.getRecordType() != recordType) {
+                throw new RecordTypeChangedException("record type changed",
+                        LogMessageKeys.PRIMARY_KEY, primaryKey,
+                        LogMessageKeys.ACTUAL_TYPE, oldRecord.getRecordType().getName(),
+                        LogMessageKeys.EXPECTED_TYPE, recordType.getName());
+            }
+        }
+    }
+
     @SuppressWarnings("PMD.CloseResource")
     private <M extends Message> void addRecordCount(@Nonnull RecordMetaData metaData, @Nonnull FDBStoredRecord<M> rec, @Nonnull byte[] increment) {
         if (metaData.getRecordCountKey() == null) {
@@ -564,6 +656,22 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return loadTypedRecord(typedSerializer, primaryKey, false);
     }
 
+    /**
+     * Load the existing records for a batch, with as many loads outstanding at once as the pipeline size allows.
+     * @param typedSerializer the serializer to use for existing records
+     * @param primaryKeys the primary keys to load
+     * @return a future that completes with the existing record for each primary key, or <code>null</code> if there is none
+     */
+    @Nonnull
+    private <M extends Message> CompletableFuture<List<FDBStoredRecord<M>>> loadExistingRecords(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                                @Nonnull List<Tuple> primaryKeys) {
+        return RecordCursor.fromList(getExecutor(), primaryKeys)
+                .mapPipelined(primaryKey -> loadExistingRecord(typedSerializer, primaryKey).thenApply(Optional::ofNullable),
+                        getPipelineSize(PipelineOperation.KEY_TO_RECORD))
+                .map(oldRecord -> oldRecord.orElse(null))
+                .asList();
+    }
+
     @Nonnull
     private <M extends Message> FDBStoredRecord<M> dryRunSetSizeInfo(@Nonnull RecordSerializer<M> typedSerializer, @Nonnull final FDBStoredRecordBuilder<M> recordBuilder,
                                                                           @Nonnull final RecordMetaData metaData) {
@@ -579,9 +687,15 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Nonnull
     private <M extends Message> FDBStoredRecord<M> serializeAndSaveRecord(@Nonnull RecordSerializer<M> typedSerializer, @Nonnull final FDBStoredRecordBuilder<M> recordBuilder,
                                                                           @Nonnull final RecordMetaData metaData, @Nullable FDBStoredSizes oldSizeInfo) {
+        final byte[] serialized = typedSerializer.serialize(metaData, recordBuilder.getRecordType(), recordBuilder.getRecord(), getTimer());
+        return saveSerializedRecord(recordBuilder, serialized, metaData, oldSizeInfo);
+    }
+
+    @Nonnull
+    private <M extends Message> FDBStoredRecord<M> saveSerializedRecord(@Nonnull final FDBStoredRecordBuilder<M> recordBuilder, @Nonnull byte[] serialized,
+                                                                        @Nonnull final RecordMetaData metaData, @Nullable FDBStoredSizes oldSizeInfo) {
         final Tuple primaryKey = recordBuilder.getPrimaryKey();
         final FDBRecordVersion version = recordBuilder.getVersion();
-        final byte[] serialized = typedSerializer.serialize(metaData, recordBuilder.getRecordType(), recordBuilder.getRecord(), getTimer());
         final FDBRecordVersion splitVersion = useOldVersionFormat() ? null : version;
         final SplitHelper.SizeInfo sizeInfo = new SplitHelper.SizeInfo();
         preloadCache.invalidate(primaryKey); // clear out cache of older value if present
@@ -688,6 +802,92 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         }
     }
 
+    /**
+     * Update secondary indexes for a batch of changed records. The changes for each index are collected
+     * and given to its maintainer together, so that it can batch its work, and different maintainers are run
+     * concurrently, as they are for a single record. Indexes on synthetic record types are not updated here, but
+     * as each record is written.
+     * @param oldRecords the previous stored record for each change, which may be <code>null</code>
+     * @param newRecords the new stored record for each change, which may be <code>null</code>
+     * @return a future that is complete when all the indexes are updated
+     */
+    @Nonnull
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private <M extends Message> CompletableFuture<Void> updateSecondaryIndexes(@Nonnull final List<FDBStoredRecord<M>> oldRecords,
+                                                                               @Nonnull final List<FDBStoredRecord<M>> newRecords) {
+        if (recordStoreStateRef.get() == null) {
+            return preloadRecordStoreStateAsync().thenCompose(vignore -> updateSecondaryIndexes(oldRecords, newRecords));
+        }
+        final Map<Index, List<Pair<FDBStoredRecord<M>, FDBStoredRecord<M>>>> changes = new LinkedHashMap<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        beginRecordStoreStateRead();
+        boolean haveFuture = false;
+        try {
+            for (int i = 0; i < oldRecords.size(); i++) {
+                final FDBStoredRecord<M> oldRecord = oldRecords.get(i);
+                final FDBStoredRecord<M> newRecord = newRecords.get(i);
+                if (oldRecord == null && newRecord == null) {
+                    continue;
+                }
+                if (oldRecord == null || newRecord == null || oldRecord.getRecordType() == newRecord.getRecordType()) {
+                    final RecordType recordType = oldRecord == null ? newRecord.getRecordType() : oldRecord.getRecordType();
+                    addIndexChanges(oldRecord, newRecord, changes, getEnabledIndexes(recordType));
+                    addIndexChanges(oldRecord, newRecord, changes, getEnabledUniversalIndexes());
+                    addIndexChanges(oldRecord, newRecord, changes, getEnabledMultiTypeIndexes(recordType));
+                } else {
+                    final List<Index> oldIndexes = new ArrayList<>(getEnabledIndexes(oldRecord.getRecordType()));
+                    oldIndexes.addAll(getEnabledUniversalIndexes());
+                    oldIndexes.addAll(getEnabledMultiTypeIndexes(oldRecord.getRecordType()));
+                    final List<Index> newIndexes = new ArrayList<>(getEnabledIndexes(newRecord.getRecordType()));
+                    newIndexes.addAll(getEnabledUniversalIndexes());
+                    newIndexes.addAll(getEnabledMultiTypeIndexes(newRecord.getRecordType()));
+                    final List<Index> commonIndexes = new ArrayList<>(oldIndexes);
+                    commonIndexes.retainAll(newIndexes);
+                    oldIndexes.removeAll(commonIndexes);
+                    newIndexes.removeAll(commonIndexes);
+                    addIndexChanges(oldRecord, null, changes, oldIndexes);
+                    addIndexChanges(null, newRecord, changes, newIndexes);
+                    addIndexChanges(oldRecord, newRecord, changes, commonIndexes);
+                }
+            }
+            for (Map.Entry<Index, List<Pair<FDBStoredRecord<M>, FDBStoredRecord<M>>>> entry : changes.entrySet()) {
+                final IndexMaintainer maintainer = getIndexMaintainer(entry.getKey());
+                final CompletableFuture<Void> future;
+                if (isIndexWriteOnly(entry.getKey())) {
+                    future = maintainer.updateAllWhileWriteOnly(entry.getValue());
+                } else {
+                    future = maintainer.updateAll(entry.getValue());
+                }
+                if (!MoreAsyncUtil.isCompletedNormally(future)) {
+                    futures.add(future);
+                }
+            }
+            haveFuture = true;
+        } finally {
+            if (!haveFuture) {
+                endRecordStoreStateRead();
+            }
+        }
+        if (futures.isEmpty()) {
+            endRecordStoreStateRead();
+            return AsyncUtil.DONE;
+        } else {
+            return AsyncUtil.whenAll(futures).whenComplete((v, t) -> endRecordStoreStateRead());
+        }
+    }
+
+    private static <M extends Message> void addIndexChanges(@Nullable final FDBStoredRecord<M> oldRecord,
+                                                            @Nullable final FDBStoredRecord<M> newRecord,
+                                                            @Nonnull final Map<Index, List<Pair<FDBStoredRecord<M>, FDBStoredRecord<M>>>> changes,
+                                                            @Nonnull final List<Index> indexes) {
+        if (oldRecord == null && newRecord == null) {
+            return;
+        }
+        for (Index index : indexes) {
+            changes.computeIfAbsent(index, k -> new ArrayList<>()).add(Pair.of(oldRecord, newRecord));
+        }
+    }
+
     private <M extends Message> void updateSecondaryIndexes(@Nullable final FDBIndexableRecord<M> oldRecord,
                                                             @Nullable final FDBIndexableRecord<M> newRecord,
                                                             @Nonnull final List<CompletableFuture<Void>> futures,
@@ -713,6 +913,37 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         }
     }
 
+    /**
+     * Update the indexes on synthetic record types for one stored record in a batch. The synthetic records are found
+     * by reading the other constituents from the store as it is now, so this must be done after the record is written
+     * and before the next record in the batch is, or else old synthetic records would be built from new constituents.
+     * @param oldRecord the previous stored record, which may be <code>null</code>
+     * @param newRecord the new stored record, which may be <code>null</code>
+     * @return a future that is complete when the synthetic indexes are updated
+     */
+    @Nonnull
+    private <M extends Message> CompletableFuture<Void> updateSyntheticIndexes(@Nullable final FDBStoredRecord<M> oldRecord,
+                                                                               @Nullable final FDBStoredRecord<M> newRecord) {
+        if (getRecordMetaData().getSyntheticRecordTypes().isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        if (recordStoreStateRef.get() == null) {
+            return preloadRecordStoreStateAsync().thenCompose(vignore -> updateSyntheticIndexes(oldRecord, newRecord));
+        }
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        beginRecordStoreStateRead();
+        boolean haveFuture = false;
+        try {
+            updateSyntheticIndexes(oldRecord, newRecord, futures);
+            haveFuture = true;
+        } finally {
+            if (!haveFuture) {
+                endRecordStoreStateRead();
+            }
+        }
+        return AsyncUtil.whenAll(futures).whenComplete((v, t) -> endRecordStoreStateRead());
+    }
+
     @API(API.Status.EXPERIMENTAL)
     @SuppressWarnings("PMD.CompareObjectsWithEquals")
     private <M extends Message> void updateSyntheticIndexes(@Nullable FDBStoredRecord<M> oldRecord,
@@ -887,6 +1118,17 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return getSubspace().subspace(Tuple.from(INDEX_BUILD_SPACE_KEY, index.getSubspaceTupleKey()));
     }
 
+    /**
+     * Subspace for index in which to store sampled statistics about the index's key distribution.
+     * @param index the index to retrieve the statistics subspace for
+     * @return the subspace for the statistics of the given index
+     * @see com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics
+     */
+    @Nonnull
+    public Subspace indexStatisticsSubspace(@Nonnull Index index) {
+        return getSubspace().subspace(Tuple.from(INDEX_STATISTICS_SPACE_KEY, index.getSubspaceTupleKey()));
+    }
+
     /**
      * Get the maintainer for a given index.
      * @param index the required index
@@ -1043,14 +1285,20 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     private <M extends Message> CompletableFuture<FDBStoredRecord<M>> deserializeRecord(@Nonnull RecordSerializer<M> typedSerializer, @Nonnull final FDBRawRecord rawRecord,
                                                                                         @Nonnull final RecordMetaData metaData,
                                                                                         @Nonnull final Optional<CompletableFuture<FDBRecordVersion>> versionFutureOptional) {
+        countKeysAndValues(FDBStoreTimer.Counts.LOAD_RECORD_KEY, FDBStoreTimer.Counts.LOAD_RECORD_KEY_BYTES, FDBStoreTimer.Counts.LOAD_RECORD_VALUE_BYTES,
+                rawRecord);
+        return deserializeRecord(() -> typedSerializer.deserialize(metaData, rawRecord.getPrimaryKey(), rawRecord.getRawRecord(), getTimer()),
+                rawRecord, metaData, versionFutureOptional);
+    }
+
+    private <M extends Message> CompletableFuture<FDBStoredRecord<M>> deserializeRecord(@Nonnull Supplier<M> deserializer, @Nonnull final FDBRawRecord rawRecord,
+                                                                                        @Nonnull final RecordMetaData metaData,
+                                                                                        @Nonnull final Optional<CompletableFuture<FDBRecordVersion>> versionFutureOptional) {
         final Tuple primaryKey = rawRecord.getPrimaryKey();
-        final byte[] serialized = rawRecord.getRawRecord();
 
         try {
-            final M protoRecord = typedSerializer.deserialize(metaData, primaryKey, rawRecord.getRawRecord(), getTimer());
+            final M protoRecord = deserializer.get();
             final RecordType recordType = metaData.getRecordTypeForDescriptor(protoRecord.getDescriptorForType());
-            countKeysAndValues(FDBStoreTimer.Counts.LOAD_RECORD_KEY, FDBStoreTimer.Counts.LOAD_RECORD_KEY_BYTES, FDBStoreTimer.Counts.LOAD_RECORD_VALUE_BYTES,
-                    rawRecord);
 
             final FDBStoredRecordBuilder<M> recordBuilder = FDBStoredRecord.newBuilder(protoRecord)
                     .setPrimaryKey(primaryKey).setRecordType(recordType).setSize(rawRecord);
@@ -1073,19 +1321,24 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                 return CompletableFuture.completedFuture(recordBuilder.build());
             }
         } catch (Exception ex) {
-            final LoggableException ex2 = new RecordCoreException("Failed to deserialize record", ex);
-            ex2.addLogInfo(
-                    subspaceProvider.logKey(), subspaceProvider.toString(context),
-                    LogMessageKeys.PRIMARY_KEY, primaryKey,
-                    LogMessageKeys.META_DATA_VERSION, metaData.getVersion());
-            if (LOGGER.isDebugEnabled()) {
-                ex2.addLogInfo("serialized", ByteArrayUtil2.loggable(serialized));
-            }
-            if (LOGGER.isTraceEnabled()) {
-                ex2.addLogInfo("descriptor", metaData.getUnionDescriptor().getFile().toProto());
-            }
-            throw ex2;
+            throw deserializationError(ex, rawRecord, metaData);
+        }
+    }
+
+    @Nonnull
+    private RecordCoreException deserializationError(@Nonnull Exception ex, @Nonnull FDBRawRecord rawRecord, @Nonnull RecordMetaData metaData) {
+        final RecordCoreException ex2 = new RecordCoreException("Failed to deserialize record", ex);
+        ex2.addLogInfo(
+                subspaceProvider.logKey(), subspaceProvider.toString(context),
+                LogMessageKeys.PRIMARY_KEY, rawRecord.getPrimaryKey(),
+                LogMessageKeys.META_DATA_VERSION, metaData.getVersion());
+        if (LOGGER.isDebugEnabled()) {
+            ex2.addLogInfo("serialized", ByteArrayUtil2.loggable(rawRecord.getRawRecord()));
+        }
+        if (LOGGER.isTraceEnabled()) {
+            ex2.addLogInfo("descriptor", metaData.getUnionDescriptor().getFile().toProto());
         }
+        return ex2;
     }
 
     protected void countKeysAndValues(@Nonnull final FDBStoreTimer.Count key,
@@ -1199,6 +1452,83 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                                                                                  @Nullable byte[] continuation,
                                                                                  @Nonnull ScanProperties scanProperties) {
         final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final RecordCursor<FDBRawRecord> rawRecords = scanRawRecords(metaData, low, high, lowEndpoint, highEndpoint, continuation, scanProperties);
+        RecordCursor<FDBStoredRecord<M>> result = rawRecords.mapPipelined(rawRecord ->
+                deserializeRecord(typedSerializer, rawRecord, metaData, loadRecordVersionForScan(rawRecord, scanProperties)),
+                pipelineSizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
+        return context.instrument(FDBStoreTimer.Events.SCAN_RECORDS, result);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * This store only parses the named fields of each record, using {@link RecordSerializer#deserializeLazily}, to check
+     * the filter. The whole record is only parsed for records that match.
+     * </p>
+     */
+    @Override
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    public RecordCursor<FDBStoredRecord<Message>> scanRecordsMatching(@Nonnull TupleRange range, @Nullable byte[] continuation,
+                                                                      @Nonnull ScanProperties scanProperties,
+                                                                      @Nonnull Collection<String> fieldNames,
+                                                                      @Nonnull Function<FDBStoredRecord<Message>, Boolean> filter) {
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final RecordCursor<FDBRawRecord> rawRecords = scanRawRecords(metaData, range.getLow(), range.getHigh(),
+                range.getLowEndpoint(), range.getHighEndpoint(), continuation, scanProperties);
+        RecordCursor<FDBStoredRecord<Message>> result = rawRecords
+                .map(rawRecord -> {
+                    countKeysAndValues(FDBStoreTimer.Counts.LOAD_RECORD_KEY, FDBStoreTimer.Counts.LOAD_RECORD_KEY_BYTES, FDBStoreTimer.Counts.LOAD_RECORD_VALUE_BYTES,
+                            rawRecord);
+                    try {
+                        return NonnullPair.of(rawRecord, serializer.deserializeLazily(metaData, rawRecord.getPrimaryKey(), rawRecord.getRawRecord(), getTimer()));
+                    } catch (Exception ex) {
+                        throw deserializationError(ex, rawRecord, metaData);
+                    }
+                })
+                .filter(lazyRecord -> {
+                    final FDBRawRecord rawRecord = lazyRecord.getLeft();
+                    final LazyRecordView<Message> view = lazyRecord.getRight();
+                    final FDBStoredRecordBuilder<Message> partialRecord;
+                    try {
+                        partialRecord = FDBStoredRecord.newBuilder(view.getFields(fieldNames))
+                                .setPrimaryKey(rawRecord.getPrimaryKey())
+                                .setRecordType(metaData.getRecordTypeForDescriptor(view.getDescriptorForType()))
+                                .setSize(rawRecord);
+                    } catch (Exception ex) {
+                        throw deserializationError(ex, rawRecord, metaData);
+                    }
+                    if (rawRecord.hasVersion()) {
+                        partialRecord.setVersion(rawRecord.getVersion());
+                    }
+                    return filter.apply(partialRecord.build());
+                })
+                .mapPipelined(lazyRecord -> {
+                    final FDBRawRecord rawRecord = lazyRecord.getLeft();
+                    return deserializeRecord(lazyRecord.getRight()::getRecord, rawRecord, metaData, loadRecordVersionForScan(rawRecord, scanProperties));
+                }, pipelineSizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
+        return context.instrument(FDBStoreTimer.Events.SCAN_RECORDS, result);
+    }
+
+    @Nonnull
+    private Optional<CompletableFuture<FDBRecordVersion>> loadRecordVersionForScan(@Nonnull FDBRawRecord rawRecord, @Nonnull ScanProperties scanProperties) {
+        if (useOldVersionFormat()) {
+            // Older format versions: do a separate read to get the version.
+            return loadRecordVersionAsync(rawRecord.getPrimaryKey(), scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot());
+        } else {
+            // Newer format versions: the version is either in the record or it is not -- do not do another read.
+            return Optional.empty();
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    private RecordCursor<FDBRawRecord> scanRawRecords(@Nonnull RecordMetaData metaData,
+                                                      @Nullable final Tuple low, @Nullable final Tuple high,
+                                                      @Nonnull final EndpointType lowEndpoint, @Nonnull final EndpointType highEndpoint,
+                                                      @Nullable byte[] continuation,
+                                                      @Nonnull ScanProperties scanProperties) {
         final Subspace recordsSubspace = recordsSubspace();
         final SplitHelper.SizeInfo sizeInfo = new SplitHelper.SizeInfo();
         final RecordCursor<FDBRawRecord> rawRecords;
@@ -1246,18 +1576,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                     .limitRowsTo(scanProperties.getExecuteProperties().getReturnedRowLimit());
             }
         }
-        RecordCursor<FDBStoredRecord<M>> result = rawRecords.mapPipelined(rawRecord -> {
-            final Optional<CompletableFuture<FDBRecordVersion>> versionFutureOptional;
-            if (useOldVersionFormat()) {
-                // Older format versions: do a separate read to get the version.
-                versionFutureOptional = loadRecordVersionAsync(rawRecord.getPrimaryKey(), scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot());
-            } else {
-                // Newer format versions: the version is either in the record or it is not -- do not do another read.
-                versionFutureOptional = Optional.empty();
-            }
-            return deserializeRecord(typedSerializer, rawRecord, metaData, versionFutureOptional);
-        }, pipelineSizer.getPipelineSize(PipelineOperation.KEY_TO_RECORD));
-        return context.instrument(FDBStoreTimer.Events.SCAN_RECORDS, result);
+        return rawRecords;
     }
 
     @Override
@@ -1556,24 +1875,11 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
             if (oldRecord == null) {
                 return AsyncUtil.READY_FALSE;
             }
-            SplitHelper.deleteSplit(getRecordContext(), recordsSubspace(), primaryKey, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldRecord);
-            countKeysAndValues(FDBStoreTimer.Counts.DELETE_RECORD_KEY, FDBStoreTimer.Counts.DELETE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.DELETE_RECORD_VALUE_BYTES,
-                    oldRecord);
-            addRecordCount(metaData, oldRecord, LITTLE_ENDIAN_INT64_MINUS_ONE);
-            final boolean oldHasIncompleteVersion = oldRecord.hasVersion() && !oldRecord.getVersion().isComplete();
-            if (useOldVersionFormat()) {
-                byte[] versionKey = getSubspace().pack(recordVersionKey(primaryKey));
-                if (oldHasIncompleteVersion) {
-                    context.removeVersionMutation(versionKey);
-                } else if (metaData.isStoreRecordVersions()) {
-                    ensureContextActive().clear(versionKey);
-                }
-            }
+            final boolean oldHasIncompleteVersion = deleteStoredRecord(metaData, oldRecord);
             CompletableFuture<Void> updateIndexesFuture = updateSecondaryIndexes(oldRecord, null);
             if (oldHasIncompleteVersion) {
                 return updateIndexesFuture.thenApply(vignore -> {
-                    byte[] versionKey = getSubspace().pack(recordVersionKey(primaryKey));
-                    context.removeLocalVersion(versionKey);
+                    removeLocalVersion(primaryKey);
                     return true;
                 });
             } else {
@@ -1583,6 +1889,78 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return context.instrument(FDBStoreTimer.Events.DELETE_RECORD, result);
     }
 
+    /**
+     * Delete a batch of records, loading them all together and then updating each index for all the records at once
+     * with {@link IndexMaintainer#updateAll}. Indexes on synthetic record types are updated as each record is deleted.
+     * @param primaryKeys the primary keys of the records to delete
+     * @return a future that completes with the number of records that were present to be deleted
+     */
+    @Override
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public CompletableFuture<Integer> deleteRecordsAsync(@Nonnull Collection<Tuple> primaryKeys) {
+        return deleteTypedRecords(serializer, primaryKeys);
+    }
+
+    @Nonnull
+    @API(API.Status.INTERNAL)
+    protected <M extends Message> CompletableFuture<Integer> deleteTypedRecords(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                 @Nonnull Collection<Tuple> primaryKeys) {
+        final List<Tuple> distinctPrimaryKeys = new ArrayList<>(new LinkedHashSet<>(primaryKeys));
+        distinctPrimaryKeys.forEach(preloadCache::invalidate);
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final CompletableFuture<Integer> result = loadExistingRecords(typedSerializer, distinctPrimaryKeys).thenCompose(loadedRecords -> {
+            final List<FDBStoredRecord<M>> oldRecords = new ArrayList<>(loadedRecords.size());
+            final List<Tuple> incompleteVersionKeys = new ArrayList<>();
+            CompletableFuture<Void> deleted = AsyncUtil.DONE;
+            for (FDBStoredRecord<M> oldRecord : loadedRecords) {
+                if (oldRecord != null) {
+                    deleted = deleted.thenCompose(vignore -> {
+                        if (deleteStoredRecord(metaData, oldRecord)) {
+                            incompleteVersionKeys.add(oldRecord.getPrimaryKey());
+                        }
+                        return updateSyntheticIndexes(oldRecord, null);
+                    });
+                    oldRecords.add(oldRecord);
+                }
+            }
+            return deleted.thenCompose(vignore -> updateSecondaryIndexes(oldRecords, Collections.nCopies(oldRecords.size(), null))).thenApply(vignore -> {
+                incompleteVersionKeys.forEach(this::removeLocalVersion);
+                return oldRecords.size();
+            });
+        });
+        return context.instrument(FDBStoreTimer.Events.DELETE_RECORDS, result);
+    }
+
+    /**
+     * Clear a stored record and its version, but not its index entries.
+     * @param metaData the meta-data of the record store
+     * @param oldRecord the record to delete
+     * @return whether the record had an incomplete version, which needs to be removed after the indexes are updated
+     */
+    private <M extends Message> boolean deleteStoredRecord(@Nonnull RecordMetaData metaData, @Nonnull FDBStoredRecord<M> oldRecord) {
+        final Tuple primaryKey = oldRecord.getPrimaryKey();
+        SplitHelper.deleteSplit(getRecordContext(), recordsSubspace(), primaryKey, metaData.isSplitLongRecords(), omitUnsplitRecordSuffix, true, oldRecord);
+        countKeysAndValues(FDBStoreTimer.Counts.DELETE_RECORD_KEY, FDBStoreTimer.Counts.DELETE_RECORD_KEY_BYTES, FDBStoreTimer.Counts.DELETE_RECORD_VALUE_BYTES,
+                oldRecord);
+        addRecordCount(metaData, oldRecord, LITTLE_ENDIAN_INT64_MINUS_ONE);
+        final boolean oldHasIncompleteVersion = oldRecord.hasVersion() && !oldRecord.getVersion().isComplete();
+        if (useOldVersionFormat()) {
+            byte[] versionKey = getSubspace().pack(recordVersionKey(primaryKey));
+            if (oldHasIncompleteVersion) {
+                context.removeVersionMutation(versionKey);
+            } else if (metaData.isStoreRecordVersions()) {
+                ensureContextActive().clear(versionKey);
+            }
+        }
+        return oldHasIncompleteVersion;
+    }
+
+    private void removeLocalVersion(@Nonnull Tuple primaryKey) {
+        byte[] versionKey = getSubspace().pack(recordVersionKey(primaryKey));
+        context.removeLocalVersion(versionKey);
+    }
+
     /**
      * Delete the record store at the given {@link KeySpacePath}. This behaves like
      * {@link #deleteStore(FDBRecordContext, Subspace)} on the record store saved
@@ -4652,6 +5030,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     void clearIndexData(@Nonnull Index index) {
         context.clear(Range.startsWith(indexSubspace(index).pack())); // startsWith to handle ungrouped aggregate indexes
         context.clear(indexSecondarySubspace(index).range());
+        context.clear(indexStatisticsSubspace(index).range());
         IndexingRangeSet.forIndexBuild(this, index).clear();
         if (index.isUnique()) {
             context.clear(indexUniquenessViolationsSubspace(index).range());
@@ -4683,6 +5062,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         context.clear(getSubspace().range(Tuple.from(INDEX_RANGE_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         context.clear(getSubspace().pack(Tuple.from(INDEX_STATE_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         context.clear(getSubspace().range(Tuple.from(INDEX_UNIQUENESS_VIOLATIONS_KEY, formerIndex.getSubspaceTupleKey())));
+        context.clear(getSubspace().range(Tuple.from(INDEX_STATISTICS_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         if (getTimer() != null) {
             getTimer().recordSinceNanoTime(FDBStoreTimer.Events.REMOVE_FORMER_INDEX, startTime);
         }
@@ -21,10 +21,12 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.ExecuteState;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexFetchMethod;
 import com.apple.foundationdb.record.IndexScanType;
@@ -76,12 +78,18 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -617,6 +625,63 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
         return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_SAVE_RECORD, saveRecordAsync(rec, existenceCheck, version, behavior));
     }
 
+    /**
+     * Save a batch of records in a single transaction.
+     *
+     * Records are saved in order until the total size of their serialized values reaches
+     * {@link FDBRecordStoreProperties#BATCH_SAVE_MAX_BYTES}, so that a large batch does not exceed the transaction size limit.
+     * The records that were saved are returned; if that is fewer than were given, the rest can be saved in a new transaction.
+     * At least one record is always saved. If the existence check fails for any record, the returned future completes
+     * exceptionally and the transaction should not be committed.
+     * @param records the records to be saved, which must all have different primary keys
+     * @param existenceCheck when to throw an exception if a record with the same primary key does or does not already exist
+     * @return a future that completes with the stored record forms of the records that were saved, in the same order
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    default CompletableFuture<List<FDBStoredRecord<M>>> saveRecordsAsync(@Nonnull Collection<? extends M> records,
+                                                                         @Nonnull RecordExistenceCheck existenceCheck) {
+        final long maxBytes = getContext().getPropertyStorage().getPropertyValue(FDBRecordStoreProperties.BATCH_SAVE_MAX_BYTES);
+        final Iterator<? extends M> iterator = records.iterator();
+        final List<FDBStoredRecord<M>> saved = new ArrayList<>(records.size());
+        final AtomicLong totalBytes = new AtomicLong();
+        return AsyncUtil.whileTrue(() -> {
+            if (!iterator.hasNext() || totalBytes.get() >= maxBytes) {
+                return AsyncUtil.READY_FALSE;
+            }
+            return saveRecordAsync(iterator.next(), existenceCheck).thenApply(storedRecord -> {
+                saved.add(storedRecord);
+                totalBytes.addAndGet(storedRecord.getValueSize());
+                return true;
+            });
+        }, getExecutor()).thenApply(vignore -> saved);
+    }
+
+    /**
+     * Save a batch of records in a single transaction.
+     * @param records the records to be saved, which must all have different primary keys
+     * @return a future that completes with the stored record forms of the records that were saved, in the same order
+     * @see #saveRecordsAsync(Collection, RecordExistenceCheck)
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    default CompletableFuture<List<FDBStoredRecord<M>>> saveRecordsAsync(@Nonnull Collection<? extends M> records) {
+        return saveRecordsAsync(records, RecordExistenceCheck.NONE);
+    }
+
+    /**
+     * Save a batch of records in a single transaction.
+     * @param records the records to be saved, which must all have different primary keys
+     * @param existenceCheck when to throw an exception if a record with the same primary key does or does not already exist
+     * @return the stored record forms of the records that were saved, in the same order
+     * @see #saveRecordsAsync(Collection, RecordExistenceCheck)
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    default List<FDBStoredRecord<M>> saveRecords(@Nonnull Collection<? extends M> records, @Nonnull RecordExistenceCheck existenceCheck) {
+        return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_SAVE_RECORD, saveRecordsAsync(records, existenceCheck));
+    }
+
     /**
      * Save the given record and throw an exception if a record already exists with the same primary key.
      * @param rec the record to be saved
@@ -848,6 +913,31 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
         return scanRecords(range.getLow(), range.getHigh(), range.getLowEndpoint(), range.getHighEndpoint(), continuation, scanProperties);
     }
 
+    /**
+     * Scan the records in the database in a range, only returning those that match a filter.
+     *
+     * The filter is given a record whose message might only have the fields named by {@code fieldNames} set,
+     * so that a store can avoid fully deserializing records that do not match. So the filter must not look at
+     * any other fields. Any of the store's other record information, such as the primary key and record type, is set.
+     *
+     * @param range the range to scan
+     * @param continuation any continuation from a previous scan
+     * @param scanProperties skip, limit and other scan properties
+     * @param fieldNames the names of the top-level fields of the record used by the filter
+     * @param filter a predicate that returns {@code true} for records that should be returned
+     *
+     * @return a cursor that will scan everything in the range, picking up at continuation, and honoring the given scan properties,
+     * returning only those records that match the filter
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    default RecordCursor<FDBStoredRecord<M>> scanRecordsMatching(@Nonnull TupleRange range, @Nullable byte[] continuation,
+                                                                 @Nonnull ScanProperties scanProperties,
+                                                                 @Nonnull Collection<String> fieldNames,
+                                                                 @Nonnull Function<FDBStoredRecord<M>, Boolean> filter) {
+        return scanRecords(range, continuation, scanProperties).filter(filter);
+    }
+
     /**
      * Scan the records in the database in a range.
      *
@@ -1583,6 +1673,41 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
         return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_DELETE_RECORD, deleteRecordAsync(primaryKey));
     }
 
+    /**
+     * Delete a batch of records in a single transaction.
+     * Primary keys that appear more than once are only deleted once.
+     * @param primaryKeys the primary keys of the records to delete
+     * @return a future that completes with the number of records that were present to be deleted
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    default CompletableFuture<Integer> deleteRecordsAsync(@Nonnull Collection<Tuple> primaryKeys) {
+        final Iterator<Tuple> iterator = new LinkedHashSet<>(primaryKeys).iterator();
+        final AtomicInteger deleted = new AtomicInteger();
+        return AsyncUtil.whileTrue(() -> {
+            if (!iterator.hasNext()) {
+                return AsyncUtil.READY_FALSE;
+            }
+            return deleteRecordAsync(iterator.next()).thenApply(existed -> {
+                if (existed) {
+                    deleted.incrementAndGet();
+                }
+                return true;
+            });
+        }, getExecutor()).thenApply(vignore -> deleted.get());
+    }
+
+    /**
+     * Delete a batch of records in a single transaction.
+     * @param primaryKeys the primary keys of the records to delete
+     * @return the number of records that were present to be deleted
+     * @see #deleteRecordsAsync(Collection)
+     */
+    @API(API.Status.EXPERIMENTAL)
+    default int deleteRecords(@Nonnull Collection<Tuple> primaryKeys) {
+        return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_DELETE_RECORD, deleteRecordsAsync(primaryKeys));
+    }
+
     /**
      * Delete all the data in the record store.
      * <p>
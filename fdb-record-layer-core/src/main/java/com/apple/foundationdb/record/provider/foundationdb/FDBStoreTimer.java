@@ -94,6 +94,8 @@ public class FDBStoreTimer extends StoreTimer {
         COMMIT_FAILURE("commit transaction with failure"),
         /** The amount of time estimating the size of a key range. See {@link FDBRecordStore#estimateStoreSizeAsync()}. */
         ESTIMATE_SIZE("estimate the size of a key range"),
+        /** The amount of time taken sampling an index to build {@link com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics}. */
+        COLLECT_INDEX_STATISTICS("collect index statistics"),
         /** The amount of time taken persisting meta-data to a {@link FDBMetaDataStore}. */
         SAVE_META_DATA("save meta-data"),
         /** The amount of time taken loading meta-data from a {@link FDBMetaDataStore}. */
@@ -114,6 +116,11 @@ public class FDBStoreTimer extends StoreTimer {
          * for later committing.
          */
         SAVE_RECORD("save record"),
+        /**
+         * The amount of time taken saving a batch of records with {@link FDBRecordStoreBase#saveRecordsAsync}.
+         * This includes loading any existing records and secondary index maintenance for the whole batch.
+         */
+        SAVE_RECORDS("save records"),
         /**
          * The amount of time taken loading records.
          * This time includes fetching from the database and deserialization.
@@ -137,6 +144,10 @@ public class FDBStoreTimer extends StoreTimer {
          * for later committing.
          */
         DELETE_RECORD("delete record"),
+        /**
+         * The amount of time taken deleting a batch of records with {@link FDBRecordStoreBase#deleteRecordsAsync}.
+         */
+        DELETE_RECORDS("delete records"),
         // TODO: Are these index maintenance related ones really DetailEvents?
         /** The amount of time spent maintaining an index when the entire record is skipped by the {@link IndexMaintenanceFilter}. */
         SKIP_INDEX_RECORD_BY_PREDICATE("skip index record by index predicates"),
@@ -243,6 +254,8 @@ public class FDBStoreTimer extends StoreTimer {
         TIME_WINDOW_LEADERBOARD_GET_SUB_DIRECTORY("leaderboard get sub-directory"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardSaveSubDirectory}. */
         TIME_WINDOW_LEADERBOARD_SAVE_SUB_DIRECTORY("leaderboard save sub-directory"),
+        /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardShardCompaction}. */
+        TIME_WINDOW_LEADERBOARD_COMPACT_SHARDS("leaderboard compact shards"),
         /** The amount of time spent during backoff delay on retryable errors in {@link FDBDatabase#run}. */
         RETRY_DELAY("retry delay"),
         /** The total number of timeouts that have happened during asyncToSync and their durations. */
@@ -565,6 +578,14 @@ public class FDBStoreTimer extends StoreTimer {
         REVERSE_DIR_PERSISTENT_CACHE_HIT_COUNT("number of persistent cache hits", false),
         /** The number of times an {@link com.apple.foundationdb.async.RangeSet} is cleared. */
         RANGE_SET_CLEAR("range set clears", false),
+        /** The number of times a {@link com.apple.foundationdb.record.query.plan.QueryPlanCache} returned a cached plan. */
+        PLAN_CACHE_HIT("plan cache hit", false),
+        /** The number of times a {@link com.apple.foundationdb.record.query.plan.QueryPlanCache} had to plan a query. */
+        PLAN_CACHE_MISS("plan cache miss", false),
+        /** The number of cached plans discarded because the meta-data version or index states changed. */
+        PLAN_CACHE_INVALIDATION("plan cache invalidation", false),
+        /** The number of cached plans evicted because a {@link com.apple.foundationdb.record.query.plan.QueryPlanCache} was full. */
+        PLAN_CACHE_EVICTION("plan cache eviction", false),
         /** The number of query plans that use a covering index. */
         PLAN_COVERING_INDEX("number of covering index plans", false),
         /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan}. */
@@ -664,6 +685,8 @@ public class FDBStoreTimer extends StoreTimer {
         ONLINE_INDEX_BUILDER_RECORDS_SCANNED("number of records scanned by online index build", false),
         /** The number of records indexed by {@link OnlineIndexer}. */
         ONLINE_INDEX_BUILDER_RECORDS_INDEXED("number of records indexed by online index build", false),
+        /** The number of record ranges built concurrently by an {@link OnlineIndexer} with parallelism. */
+        ONLINE_INDEX_BUILDER_PARALLEL_SHARDS("number of record ranges built concurrently by online index build", false),
         /** The number of {@link OnlineIndexer} range scans terminated after hitting the scan limit. */
         ONLINE_INDEX_BUILDER_RANGES_BY_COUNT("number of indexer iterations terminated by scan limit", false),
         /** The number of {@link OnlineIndexer} range scans terminated after hitting the size limit. */
@@ -750,6 +773,14 @@ public class FDBStoreTimer extends StoreTimer {
         MULTIDIMENSIONAL_INTERMEDIATE_NODE_WRITES("intermediate nodes written", false),
         MULTIDIMENSIONAL_INTERMEDIATE_NODE_WRITE_BYTES("intermediate node bytes written", true),
         MULTIDIMENSIONAL_CHILD_NODE_DISCARDS("child node discards", false),
+        /** The number of intermediate R-tree nodes found in a {@link com.apple.foundationdb.record.provider.foundationdb.indexes.MultidimensionalNodeCache}. */
+        MULTIDIMENSIONAL_NODE_CACHE_HIT("multidimensional node cache hit", false),
+        /** The number of intermediate R-tree nodes that were not in a {@link com.apple.foundationdb.record.provider.foundationdb.indexes.MultidimensionalNodeCache}. */
+        MULTIDIMENSIONAL_NODE_CACHE_MISS("multidimensional node cache miss", false),
+        /** The number of cached R-tree nodes discarded because the version of their R-tree changed. */
+        MULTIDIMENSIONAL_NODE_CACHE_INVALIDATION("multidimensional node cache invalidation", false),
+        /** The number of cached R-tree nodes evicted because a {@link com.apple.foundationdb.record.provider.foundationdb.indexes.MultidimensionalNodeCache} was full. */
+        MULTIDIMENSIONAL_NODE_CACHE_EVICTION("multidimensional node cache eviction", false),
         /** Count of the locks created. */
         LOCKS_ATTEMPTED("number of attempts to register a lock", false),
         /** Count of the locks released. */
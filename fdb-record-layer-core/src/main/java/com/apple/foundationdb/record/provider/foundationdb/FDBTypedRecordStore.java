@@ -58,6 +58,7 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
@@ -143,6 +144,12 @@ public class FDBTypedRecordStore<M extends Message> implements FDBRecordStoreBas
         return untypedStore.saveTypedRecord(typedSerializer, rec, existenceCheck, version, behavior, true);
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<List<FDBStoredRecord<M>>> saveRecordsAsync(@Nonnull Collection<? extends M> records, @Nonnull RecordExistenceCheck existenceCheck) {
+        return untypedStore.saveTypedRecords(typedSerializer, records, existenceCheck);
+    }
+
     @Nonnull
     @Override
     public CompletableFuture<FDBStoredRecord<M>> loadRecordInternal(@Nonnull Tuple primaryKey, @Nonnull ExecuteState executeState, boolean snapshot) {
@@ -236,6 +243,12 @@ public class FDBTypedRecordStore<M extends Message> implements FDBRecordStoreBas
         return untypedStore.deleteTypedRecord(typedSerializer, primaryKey, false);
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<Integer> deleteRecordsAsync(@Nonnull Collection<Tuple> primaryKeys) {
+        return untypedStore.deleteTypedRecords(typedSerializer, primaryKeys);
+    }
+
     @Override
     public void deleteAllRecords() {
         untypedStore.deleteAllRecords();
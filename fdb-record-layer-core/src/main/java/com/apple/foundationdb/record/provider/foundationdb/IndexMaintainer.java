@@ -22,6 +22,8 @@ package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
@@ -35,6 +37,7 @@ import com.apple.foundationdb.record.metadata.IndexRecordFunction;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.provider.foundationdb.indexes.InvalidIndexEntry;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
+import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.protobuf.Message;
@@ -139,6 +142,54 @@ public abstract class IndexMaintainer {
     public abstract <M extends Message> CompletableFuture<Void> updateWhileWriteOnly(@Nullable FDBIndexableRecord<M> oldRecord,
                                                                                      @Nullable FDBIndexableRecord<M> newRecord);
 
+    /**
+     * Update the associated index for a batch of changed records, such as those saved by
+     * {@link FDBRecordStoreBase#saveRecordsAsync}. Each change is a pair of the previous stored record
+     * and the new record, either of which can be <code>null</code>, as for {@link #update}.
+     * The default implementation calls {@link #update} for each change in order, starting each one only
+     * after the previous one is done. Maintainers that can combine the writes or checks for several records
+     * can override this to do so.
+     * @param changes the old and new records for each changed record
+     * @param <M> type of message
+     * @return a future that is complete when all the index updates are done
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public <M extends Message> CompletableFuture<Void> updateAll(@Nonnull List<? extends Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>>> changes) {
+        CompletableFuture<Void> future = AsyncUtil.DONE;
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            if (MoreAsyncUtil.isCompletedNormally(future)) {
+                future = update(change.getLeft(), change.getRight());
+            } else {
+                future = future.thenCompose(vignore -> update(change.getLeft(), change.getRight()));
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Update the associated index for a batch of changed records while the index is in
+     * {@link com.apple.foundationdb.record.IndexState#WRITE_ONLY} mode.
+     * The default implementation calls {@link #updateWhileWriteOnly} for each change in order.
+     * @param changes the old and new records for each changed record
+     * @param <M> type of message
+     * @return a future that is complete when all the index updates are done
+     * @see #updateAll
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public <M extends Message> CompletableFuture<Void> updateAllWhileWriteOnly(@Nonnull List<? extends Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>>> changes) {
+        CompletableFuture<Void> future = AsyncUtil.DONE;
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            if (MoreAsyncUtil.isCompletedNormally(future)) {
+                future = updateWhileWriteOnly(change.getLeft(), change.getRight());
+            } else {
+                future = future.thenCompose(vignore -> updateWhileWriteOnly(change.getLeft(), change.getRight()));
+            }
+        }
+        return future;
+    }
+
 
     /**
      * Scans through the list of uniqueness violations within the database.
@@ -41,6 +41,7 @@ import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
@@ -50,6 +51,7 @@ import com.apple.foundationdb.record.provider.foundationdb.synchronizedsession.S
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromStoredRecordPlan;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordPlanner;
+import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.synchronizedsession.SynchronizedSession;
 import com.apple.foundationdb.synchronizedsession.SynchronizedSessionLockedException;
@@ -69,6 +71,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -111,7 +114,8 @@ public abstract class IndexingBase {
     private StoreTimerSnapshot lastProgressSnapshot = null;
     private boolean forceStampOverwrite = false;
     private final long startingTimeMillis;
-    private long lastTypeStampCheckMillis;
+    // Updated by the concurrent transactions of a parallel build.
+    private volatile long lastTypeStampCheckMillis;
     private Map<String, IndexingMerger> indexingMergerMap = null;
 
     IndexingBase(@Nonnull IndexingCommon common,
@@ -691,7 +695,7 @@ public abstract class IndexingBase {
                 LogMessageKeys.TIME_TO_WAIT_MILLIS, toWait);
     }
 
-    private boolean shouldLogBuildProgress() {
+    private synchronized boolean shouldLogBuildProgress() {
         long interval = common.config.getProgressLogIntervalMillis();
         long now = System.currentTimeMillis();
         if (interval < 0 || (interval != 0 && interval > (now - timeOfLastProgressLogMillis))) {
@@ -770,6 +774,7 @@ public abstract class IndexingBase {
         // Copying the state also guards against changes made by other online building from check version.
         AtomicLong recordsScannedCounter = new AtomicLong();
         final AtomicReference<RecordCursorResult<T>> nextResult = new AtomicReference<>(null);
+        final Map<Index, List<Pair<FDBStoredRecord<Message>, FDBStoredRecord<Message>>>> batchedRecords = new LinkedHashMap<>();
         deferAutoMergeDuringCommit(store);
 
         return validateTypeStamp(store)
@@ -779,12 +784,13 @@ public abstract class IndexingBase {
                                         policy.isReverseScanOrder() ?
                                         handleCursorResultReverse(store, result,
                                                 getRecordToIndex, nextResultCont,
-                                                recordsScannedCounter, hasMore, isIdempotent)
+                                                recordsScannedCounter, hasMore, batchedRecords, isIdempotent)
                                         :
                                         handleCursorResult(store, result,
                                                 getRecordToIndex, nextResult, nextResultCont,
-                                                recordsScannedCounter, hasMore, isIdempotent)
+                                                recordsScannedCounter, hasMore, batchedRecords, isIdempotent)
                                 ), cursor.getExecutor()))
+                .thenCompose(vignore -> updateBatchedMaintainers(store, batchedRecords))
                 .thenApply(vignore -> {
                     long recordsScannedInTransaction = recordsScannedCounter.get();
                     if (recordsScanned != null) {
@@ -809,6 +815,7 @@ public abstract class IndexingBase {
                                                               @Nonnull AtomicReference<RecordCursorResult<T>> nextResultCont,
                                                               @Nonnull AtomicLong recordsScannedCounter,
                                                               @Nonnull AtomicBoolean hasMore,
+                                                              @Nonnull Map<Index, List<Pair<FDBStoredRecord<Message>, FDBStoredRecord<Message>>>> batchedRecords,
                                                               final boolean isIdempotent) {
         RecordCursorResult<T> currResult;
         final boolean isExhausted;
@@ -860,7 +867,7 @@ public abstract class IndexingBase {
                     }
                     timerIncrement(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
 
-                    final CompletableFuture<Void> updateMaintainer = updateMaintainerBuilder(store, rec);
+                    final CompletableFuture<Void> updateMaintainer = updateMaintainerBuilder(store, rec, batchedRecords);
                     if (isExhausted) {
                         // we've just processed the last item
                         timerIncrement(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RANGES_BY_DEPLETION);
@@ -888,6 +895,7 @@ public abstract class IndexingBase {
                                                                      @Nonnull AtomicReference<RecordCursorResult<T>> nextResultCont,
                                                                      @Nonnull AtomicLong recordsScannedCounter,
                                                                      @Nonnull AtomicBoolean hasMore,
+                                                                     @Nonnull Map<Index, List<Pair<FDBStoredRecord<Message>, FDBStoredRecord<Message>>>> batchedRecords,
                                                                      final boolean isIdempotent) {
         // When setting the rangeSet the first item is inclusive, the last one is exclusive. Hence, if scanning in reverse order (which is rare),
         // the 'lastResultCont' item should also be processed
@@ -918,7 +926,7 @@ public abstract class IndexingBase {
                     }
                     timerIncrement(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
 
-                    final CompletableFuture<Void> updateMaintainer = updateMaintainerBuilder(store, rec);
+                    final CompletableFuture<Void> updateMaintainer = updateMaintainerBuilder(store, rec, batchedRecords);
                     return updateMaintainer.thenCompose(vignore ->
                             hadTransactionReachedLimits(store)
                                     .thenApply(shouldCommit -> {
@@ -1005,7 +1013,8 @@ public abstract class IndexingBase {
     }
 
     private CompletableFuture<Void> updateMaintainerBuilder(@Nonnull FDBRecordStore store,
-                                                            FDBStoredRecord<Message> rec) {
+                                                            FDBStoredRecord<Message> rec,
+                                                            @Nonnull Map<Index, List<Pair<FDBStoredRecord<Message>, FDBStoredRecord<Message>>>> batchedRecords) {
         return forEachTargetIndexContext(indexContext -> {
             if (!indexContext.recordTypes.contains(rec.getRecordType())) {
                 // This particular index is not affected by rec
@@ -1017,11 +1026,35 @@ public abstract class IndexingBase {
                 final IndexMaintainer maintainer = store.getIndexMaintainer(indexContext.index);
                 return syntheticPlan.execute(store, rec).forEachAsync(syntheticRecord -> maintainer.update(null, syntheticRecord), 1);
             }
+            if (isBatchedIndex(indexContext.index)) {
+                // This particular index is updated for all the records of the transaction at once
+                batchedRecords.computeIfAbsent(indexContext.index, ignore -> new ArrayList<>()).add(Pair.of(null, rec));
+                return AsyncUtil.DONE;
+            }
             // update simple index
             return store.getIndexMaintainer(indexContext.index).update(null, rec);
         });
     }
 
+    /**
+     * Whether the entries of an index are written for all the records indexed in a transaction at once, rather than
+     * one record at a time. A multidimensional index bulk loads its R-trees from such a batch.
+     * @param index the target index
+     * @return {@code true} if the records of a transaction are collected for this index
+     */
+    private static boolean isBatchedIndex(@Nonnull Index index) {
+        return IndexTypes.MULTIDIMENSIONAL.equals(index.getType());
+    }
+
+    private CompletableFuture<Void> updateBatchedMaintainers(@Nonnull FDBRecordStore store,
+                                                             @Nonnull Map<Index, List<Pair<FDBStoredRecord<Message>, FDBStoredRecord<Message>>>> batchedRecords) {
+        // The transaction's size limit is checked before these writes, so a transaction can exceed it by one batch,
+        // which is bounded by the number of records scanned in a transaction.
+        return AsyncUtil.whenAll(batchedRecords.entrySet().stream()
+                .map(entry -> store.getIndexMaintainer(entry.getKey()).updateAllWhileWriteOnly(entry.getValue()))
+                .collect(Collectors.toList()));
+    }
+
     protected CompletableFuture<Void> iterateAllRanges(List<Object> additionalLogMessageKeyValues,
                                                        BiFunction<FDBRecordStore, AtomicLong,  CompletableFuture<Boolean>> iterateRange,
                                                        @Nonnull SubspaceProvider subspaceProvider, @Nonnull Subspace subspace) {
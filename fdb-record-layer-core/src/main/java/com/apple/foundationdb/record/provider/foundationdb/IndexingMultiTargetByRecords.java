@@ -31,16 +31,21 @@ import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.RecordCursorResult;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.provider.foundationdb.indexing.IndexingRangeSet;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -54,6 +59,7 @@ import java.util.stream.Collectors;
  */
 @API(API.Status.INTERNAL)
 public class IndexingMultiTargetByRecords extends IndexingBase {
+    @Nonnull private static final Logger LOGGER = LoggerFactory.getLogger(IndexingMultiTargetByRecords.class);
     private IndexBuildProto.IndexBuildIndexingStamp myIndexingTypeStamp = null;
 
     IndexingMultiTargetByRecords(@Nonnull IndexingCommon common,
@@ -150,13 +156,81 @@ public class IndexingMultiTargetByRecords extends IndexingBase {
                 LogMessageKeys.RANGE_START, rangeStart,
                 LogMessageKeys.RANGE_END, rangeEnd);
 
+        if (policy.getParallelism() > 1 && !policy.isReverseScanOrder()) {
+            return maybePresetRangeFuture.thenCompose(ignore ->
+                    buildShardsInParallel(tupleRange, additionalLogMessageKeyValues, subspaceProvider, subspace));
+        }
         return maybePresetRangeFuture.thenCompose(ignore ->
                         iterateAllRanges(additionalLogMessageKeyValues, this::buildRangeOnly, subspaceProvider, subspace));
     }
 
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    private CompletableFuture<Void> buildShardsInParallel(@Nullable TupleRange tupleRange, @Nonnull List<Object> additionalLogMessageKeyValues,
+                                                          @Nonnull SubspaceProvider subspaceProvider, @Nonnull Subspace subspace) {
+        return getRunner().runAsync(context -> openRecordStore(context).thenCompose(store -> {
+            final RecordCursor<Tuple> cursor = store.getPrimaryKeyBoundaries(tupleRange);
+            return cursor.asList().whenComplete((vignore, eignore) -> cursor.close());
+        }), common.indexLogMessageKeyValues("IndexingMultiTargetByRecords::buildShardsInParallel")).thenCompose(boundaries -> {
+            final List<Range> shards = splitToShards(boundaries, policy.getParallelism());
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info(KeyValueLogMessage.build("building shards in parallel",
+                                LogMessageKeys.KEY_COUNT, boundaries.size(),
+                                LogMessageKeys.SPLIT_RANGES, shards.size())
+                        .addKeysAndValues(common.indexLogMessageKeyValues())
+                        .toString());
+            }
+            final List<CompletableFuture<Void>> shardFutures = new ArrayList<>(shards.size());
+            for (Range shard : shards) {
+                final List<Object> shardLogMessageKeyValues = new ArrayList<>(additionalLogMessageKeyValues);
+                shardLogMessageKeyValues.addAll(Arrays.asList(LogMessageKeys.RANGE, shard));
+                shardFutures.add(iterateAllRanges(shardLogMessageKeyValues,
+                        (store, recordsScanned) -> buildRangeOnly(store, recordsScanned, shard),
+                        subspaceProvider, subspace).thenRun(() -> {
+                            final FDBStoreTimer timer = getRunner().getTimer();
+                            if (timer != null) {
+                                timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_PARALLEL_SHARDS);
+                            }
+                        }));
+            }
+            return AsyncUtil.whenAll(shardFutures);
+        });
+    }
+
+    /**
+     * Split the records space to (at most) the given number of contiguous shards, each covering about the same number
+     * of the given boundaries. The first shard begins with the first key and the last one ends with the final key, so
+     * that together they cover all of the records.
+     * @param boundaries primary keys splitting the records space, in order
+     * @param parallelism the maximal number of shards
+     * @return the shards' ranges, in order
+     */
+    @VisibleForTesting
+    @Nonnull
+    static List<Range> splitToShards(@Nonnull List<Tuple> boundaries, int parallelism) {
+        final int shardCount = Math.max(1, Math.min(parallelism, boundaries.size() + 1));
+        final List<Range> shards = new ArrayList<>(shardCount);
+        byte[] begin = new byte[] {(byte)0x00};
+        for (int i = 1; i < shardCount; i++) {
+            final byte[] end = boundaries.get((int)((long)i * boundaries.size() / shardCount)).pack();
+            if (ByteArrayUtil.compareUnsigned(begin, end) < 0) {
+                shards.add(new Range(begin, end));
+                begin = end;
+            }
+        }
+        shards.add(new Range(begin, new byte[] {(byte)0xff}));
+        return shards;
+    }
+
     @Nonnull
     private CompletableFuture<Boolean> buildRangeOnly(@Nonnull FDBRecordStore store, @Nonnull AtomicLong recordsScanned) {
-        // return false when done
+        return buildRangeOnly(store, recordsScanned, null);
+    }
+
+    @Nonnull
+    private CompletableFuture<Boolean> buildRangeOnly(@Nonnull FDBRecordStore store, @Nonnull AtomicLong recordsScanned,
+                                                      @Nullable Range shard) {
+        // return false when done, or when the shard, if given, is done
         /* Multi target consistency:
          * 1. Identify missing ranges from only the first index
          * 2. Update all indexes' range sets as the indexes are built - each inserted range is validated as empty.
@@ -168,7 +242,10 @@ public class IndexingMultiTargetByRecords extends IndexingBase {
         final ScanProperties scanProperties = scanPropertiesWithLimits(isIdempotent);
         IndexingRangeSet rangeSet = IndexingRangeSet.forIndexBuild(store, common.getPrimaryIndex());
 
-        return rangeSet.firstMissingRangeAsync().thenCompose(range -> {
+        final CompletableFuture<Range> missingRangeFuture = shard == null
+                                                            ? rangeSet.firstMissingRangeAsync()
+                                                            : rangeSet.firstMissingRangeAsync(shard.begin, shard.end);
+        return missingRangeFuture.thenCompose(range -> {
             if (range == null) {
                 return AsyncUtil.READY_FALSE; // no more missing ranges - all done
             }
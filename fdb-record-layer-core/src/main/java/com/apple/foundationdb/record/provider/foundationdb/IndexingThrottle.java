@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.provider.foundationdb;
 
+import com.apple.foundationdb.FDBError;
 import com.apple.foundationdb.FDBException;
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.async.AsyncUtil;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
@@ -60,6 +62,14 @@ import java.util.stream.Collectors;
 public class IndexingThrottle {
 
     @Nonnull private static final Logger LOGGER = LoggerFactory.getLogger(IndexingThrottle.class);
+    // weight of the latest transaction in the smoothed latency and conflict rate
+    private static final double LATENCY_SMOOTHING = 0.25;
+    // the limit grows to the max limit in this many steps while under the target latency
+    private static final long LATENCY_INCREASE_STEPS = 20;
+    // the limit is cut to this percentage while over the target latency
+    private static final long LATENCY_DECREASE_PERCENT = 75;
+    private static final double MAX_CONFLICT_RATE_TO_INCREASE = 0.1;
+    private static final long MAX_LATENCY_DELAY_MILLIS = 1000;
     @Nonnull private final IndexingCommon common;
     @Nonnull private final Booker booker;
     private final IndexState expectedIndexState;
@@ -68,7 +78,7 @@ public class IndexingThrottle {
     static class Booker {
         /**
          * Keep track of success/failures and adjust transactions' scanned records limit when needed.
-         * Note that when adjustLimits=true, a single thread processing is assumed.
+         * The methods are synchronized, as a parallel index build shares one booker between its concurrent transactions.
          */
         @Nonnull private final IndexingCommon common;
         private long recordsLimit;
@@ -83,17 +93,23 @@ public class IndexingThrottle {
         private long recordsScannedSinceForcedDelayMilliSeconds = 0;
         private long consecutiveFailureCount = 0;
         private StoreTimerSnapshot storeTimerSnapshot = null;
+        // Latency driven adjustment, used only if the config has a target transaction latency
+        private long lastTransactionMillis = 0;
+        private double smoothedTransactionMillis = 0;
+        private long lastTransactionBytes = 0;
+        private double conflictRate = 0;
+        private long latencyDelayMilliseconds = 0;
 
         Booker(@Nonnull IndexingCommon common) {
             this.common = common;
             this.recordsLimit = common.config.getInitialLimit();
         }
 
-        long getRecordsLimit() {
+        synchronized long getRecordsLimit() {
             return recordsLimit;
         }
 
-        long waitTimeMilliseconds() {
+        synchronized long waitTimeMilliseconds() {
             // let delta = transaction(s) actual time in millis
             // let count = transaction(s) actual count
             // keeping the ratio:
@@ -103,33 +119,49 @@ public class IndexingThrottle {
             // - For simplicity and locality, assume that the next chunk starts at nowMillis+waitMillis
             // - Avoiding negative delta and restricting toWait's range implies self initialization
             // - Ignore failed transactions (they should be rare, and limited in number)
+            // - With a target transaction latency, wait at least the delay set by the last adjustment
+            final long latencyDelay = common.config.getTargetTransactionLatencyMillis() > 0 ? latencyDelayMilliseconds : 0;
             int recordsPerSecond = common.config.getRecordsPerSecond();
             if (recordsPerSecond == IndexingCommon.UNLIMITED) {
                 // in case config loader changes this value from UNLIMITED to limit
                 recordsScannedSinceForcedDelayMilliSeconds = 0;
                 forcedDelayTimestampMilliSeconds = 0;
-                return 0;
+                return latencyDelay;
             }
             final long now = System.currentTimeMillis();
             final long delta = Math.max(0, now - forcedDelayTimestampMilliSeconds);
-            final long toWait = Math.min(999, Math.max(0, (1000 * recordsScannedSinceForcedDelayMilliSeconds) / recordsPerSecond - delta)); // to avoid floor we could have added (recordsPerSecond / 2) to the numerator, but it's neglectable here
+            final long toWait = Math.max(latencyDelay, Math.min(999, Math.max(0, (1000 * recordsScannedSinceForcedDelayMilliSeconds) / recordsPerSecond - delta))); // to avoid floor we could have added (recordsPerSecond / 2) to the numerator, but it's neglectable here
             forcedDelayTimestampMilliSeconds = now + toWait;
             recordsScannedSinceForcedDelayMilliSeconds = 0;
             return toWait;
         }
 
-        public List<Object> logMessageKeyValues() {
-            return Arrays.asList(LogMessageKeys.LIMIT, recordsLimit,
+        synchronized long getLatencyDelayMilliseconds() {
+            return latencyDelayMilliseconds;
+        }
+
+        public synchronized List<Object> logMessageKeyValues() {
+            final List<Object> keyValues = new ArrayList<>(Arrays.asList(LogMessageKeys.LIMIT, recordsLimit,
                     LogMessageKeys.RECORDS_PER_SECOND, common.config.getRecordsPerSecond(),
                     LogMessageKeys.SUCCESSFUL_TRANSACTIONS_COUNT, countSuccessfulTransactions,
                     LogMessageKeys.FAILED_TRANSACTIONS_COUNT, countFailedTransactions,
                     LogMessageKeys.FAILED_TRANSACTIONS_COUNT_IN_RUNNER, countRunnerFailedTransactions,
                     LogMessageKeys.TOTAL_RECORDS_SCANNED, totalRecordsScannedSuccess,
                     LogMessageKeys.TOTAL_RECORDS_SCANNED_DURING_FAILURES, totalRecordsScannedFailure
-                    );
+                    ));
+            final long targetMillis = common.config.getTargetTransactionLatencyMillis();
+            if (targetMillis > 0) {
+                keyValues.addAll(Arrays.asList(LogMessageKeys.TARGET_TRANSACTION_LATENCY_MILLIS, targetMillis,
+                        LogMessageKeys.TRANSACTION_LATENCY_MILLIS, lastTransactionMillis,
+                        LogMessageKeys.SMOOTHED_TRANSACTION_LATENCY_MILLIS, Math.round(smoothedTransactionMillis),
+                        LogMessageKeys.TRANSACTION_SIZE_ESTIMATE, lastTransactionBytes,
+                        LogMessageKeys.CONFLICT_RATE, conflictRate,
+                        LogMessageKeys.LATENCY_DELAY_MILLIS, latencyDelayMilliseconds));
+            }
+            return keyValues;
         }
 
-        boolean mayRetryAfterHandlingException(@Nullable FDBException fdbException,
+        synchronized boolean mayRetryAfterHandlingException(@Nullable FDBException fdbException,
                                                @Nullable List<Object> additionalLogMessageKeyValues,
                                                int currTries,
                                                final boolean adjustLimits) {
@@ -144,9 +176,9 @@ public class IndexingThrottle {
             return true;
         }
 
-        void decreaseLimit(@Nonnull FDBException fdbException,
+        synchronized void decreaseLimit(@Nonnull FDBException fdbException,
                            @Nullable List<Object> additionalLogMessageKeyValues) {
-            // TODO: decrease the limit only for certain errors
+            // Only called for errors that IndexingBase.shouldLessenWork
             countFailedTransactions++;
             consecutiveFailureCount++;
             long oldLimit = recordsLimit;
@@ -180,21 +212,33 @@ public class IndexingThrottle {
                                                @Nonnull final AtomicLong recordsScanned,
                                                final boolean adjustLimits,
                                                final @Nullable List<Object> additionalLogMessageKeyValues) {
+            handleLimitsPostRunnerTransaction(exception, recordsScanned, adjustLimits, additionalLogMessageKeyValues, 0, 0);
+        }
+
+        synchronized void handleLimitsPostRunnerTransaction(@Nullable Throwable exception,
+                                                            @Nonnull final AtomicLong recordsScanned,
+                                                            final boolean adjustLimits,
+                                                            final @Nullable List<Object> additionalLogMessageKeyValues,
+                                                            final long transactionMillis,
+                                                            final long transactionBytes) {
             final long recordsScannedThisTransaction = recordsScanned.get();
             if (!adjustLimits) {
                 if (exception == null) {
-                    synchronized (this) { // In this mode, multi threads are allowed
-                        totalRecordsScannedSuccess += recordsScannedThisTransaction;
-                    }
+                    totalRecordsScannedSuccess += recordsScannedThisTransaction;
                 }
                 return; // no adjustments here
             }
-            // Here: assuming a single thread
+            final boolean adjustToLatency = common.config.getTargetTransactionLatencyMillis() > 0;
+            if (adjustToLatency) {
+                updateLatencyStatistics(exception, transactionMillis, transactionBytes);
+            }
             if (exception == null) {
                 countSuccessfulTransactions++;
                 totalRecordsScannedSuccess += recordsScannedThisTransaction;
                 recordsScannedSinceForcedDelayMilliSeconds += recordsScannedThisTransaction;
-                if (consecutiveSuccessCount >= common.config.getIncreaseLimitAfter()) {
+                if (adjustToLatency) {
+                    adjustLimitToLatency(additionalLogMessageKeyValues != null ? additionalLogMessageKeyValues : new ArrayList<>());
+                } else if (consecutiveSuccessCount >= common.config.getIncreaseLimitAfter()) {
                     increaseLimit(additionalLogMessageKeyValues != null ? additionalLogMessageKeyValues : new ArrayList<>());
                     consecutiveSuccessCount = 0; // do not increase again immediately after the next success
                 } else {
@@ -212,6 +256,52 @@ public class IndexingThrottle {
             }
         }
 
+        private void updateLatencyStatistics(@Nullable Throwable exception, long transactionMillis, long transactionBytes) {
+            lastTransactionMillis = transactionMillis;
+            lastTransactionBytes = transactionBytes;
+            final FDBException fdbException = getFDBException(exception);
+            final boolean conflict = fdbException != null && fdbException.getCode() == FDBError.NOT_COMMITTED.code();
+            conflictRate += LATENCY_SMOOTHING * ((conflict ? 1.0 : 0.0) - conflictRate);
+            if (exception == null) {
+                // Failed transactions may have stopped at any point, so their time says little about the work done
+                smoothedTransactionMillis = countSuccessfulTransactions == 0
+                                            ? transactionMillis
+                                            : smoothedTransactionMillis + LATENCY_SMOOTHING * (transactionMillis - smoothedTransactionMillis);
+            }
+        }
+
+        /**
+         * Additive increase, multiplicative decrease of the limit according to the smoothed transaction latency.
+         * While transactions are slower than the target, also wait between them for about as long as the excess, to
+         * let the cluster catch up. While they are faster, the limit only grows if there were few conflicts recently
+         * and the transactions were not already stopped by the write size limit (so that more records would be
+         * scanned in the next one).
+         */
+        private void adjustLimitToLatency(final @Nonnull List<Object> additionalLogMessageKeyValues) {
+            final long targetMillis = common.config.getTargetTransactionLatencyMillis();
+            final long maxLimit = common.config.getMaxLimit();
+            final long oldLimit = recordsLimit;
+            if (smoothedTransactionMillis > targetMillis) {
+                recordsLimit = Math.max(1, Math.min(maxLimit, (recordsLimit * LATENCY_DECREASE_PERCENT) / 100));
+                latencyDelayMilliseconds = Math.min(MAX_LATENCY_DELAY_MILLIS, Math.round(smoothedTransactionMillis) - targetMillis);
+            } else {
+                latencyDelayMilliseconds /= 2;
+                final long maxWriteLimitBytes = common.config.getMaxWriteLimitBytes();
+                final boolean limitedBySize = maxWriteLimitBytes > 0 && lastTransactionBytes >= maxWriteLimitBytes;
+                if (conflictRate < MAX_CONFLICT_RATE_TO_INCREASE && !limitedBySize) {
+                    recordsLimit = Math.min(maxLimit, recordsLimit + Math.max(1, maxLimit / LATENCY_INCREASE_STEPS));
+                }
+            }
+            if (recordsLimit != oldLimit && LOGGER.isDebugEnabled()) {
+                LOGGER.debug(KeyValueLogMessage.build("Adjusting limit of online index build to transaction latency",
+                                LogMessageKeys.OLD_LIMIT, oldLimit)
+                        .addKeysAndValues(additionalLogMessageKeyValues)
+                        .addKeysAndValues(logMessageKeyValues())
+                        .addKeysAndValues(common.indexLogMessageKeyValues())
+                        .toString());
+            }
+        }
+
         private void increaseLimit(final @Nonnull List<Object> additionalLogMessageKeyValues) {
             final long maxLimit = common.config.getMaxLimit();
             if (recordsLimit >= maxLimit) {
@@ -240,7 +330,7 @@ public class IndexingThrottle {
             return (4 * oldLimit) / 3;
         }
 
-        void refreshConfigLimits() {
+        synchronized void refreshConfigLimits() {
             // this is a rare event, called synchronized
             long maxLimit = common.config.getMaxLimit();
             if (recordsLimit > maxLimit) {
@@ -258,7 +348,7 @@ public class IndexingThrottle {
             }
         }
 
-        private void addStoreTimerAtFailureAndReset(KeyValueLogMessage message) {
+        private synchronized void addStoreTimerAtFailureAndReset(KeyValueLogMessage message) {
             final FDBStoreTimer timer = common.getRunner().getTimer();
             if (timer != null) {
                 StoreTimer metricsDiff = storeTimerSnapshot == null ? timer : StoreTimer.getDifference(timer, storeTimerSnapshot);
@@ -267,7 +357,7 @@ public class IndexingThrottle {
             }
         }
 
-        private void resetStoreTimerSnapshot() {
+        private synchronized void resetStoreTimerSnapshot() {
             final FDBStoreTimer timer = common.getRunner().getTimer();
             if (timer != null) {
                 storeTimerSnapshot = StoreTimerSnapshot.from(timer);
@@ -317,6 +407,8 @@ public class IndexingThrottle {
 
         AtomicInteger tries = new AtomicInteger(0);
         AtomicLong recordsScanned = new AtomicLong(0);
+        AtomicLong transactionStartNanos = new AtomicLong(0);
+        AtomicLong transactionBytes = new AtomicLong(0);
         CompletableFuture<R> ret = new CompletableFuture<>();
         booker.resetStoreTimerSnapshot();
         final ExponentialDelay delay = new ExponentialDelay(common.getRunner().getDatabase().getFactory().getInitialDelayMillis(),
@@ -324,17 +416,30 @@ public class IndexingThrottle {
         AsyncUtil.whileTrue(() -> {
             loadConfig();
             // TODO: eliminate the usage of the runner - call (and handle) every transaction here
-            return common.getRunner().runAsync(context -> common.getRecordStoreBuilder().copyBuilder().setContext(context).openAsync().thenCompose(store -> {
-                expectedIndexStatesOrThrow(store, context);
-                return buildFunction.apply(store, recordsScanned).thenApply(retVal -> {
-                    Set<Index> indexSet = store.getIndexDeferredMaintenanceControl().getMergeRequiredIndexes();
-                    if (indexSet != null) {
-                        mergeRequiredIndexes.addAll(indexSet);
-                    }
-                    return retVal;
+            final boolean measureTransactions = adjustLimits && common.config.getTargetTransactionLatencyMillis() > 0;
+            return common.getRunner().runAsync(context -> {
+                transactionStartNanos.set(System.nanoTime());
+                transactionBytes.set(0);
+                return common.getRecordStoreBuilder().copyBuilder().setContext(context).openAsync().thenCompose(store -> {
+                    expectedIndexStatesOrThrow(store, context);
+                    return buildFunction.apply(store, recordsScanned).thenCompose(retVal -> {
+                        Set<Index> indexSet = store.getIndexDeferredMaintenanceControl().getMergeRequiredIndexes();
+                        if (indexSet != null) {
+                            addMergeRequiredIndexes(indexSet);
+                        }
+                        if (!measureTransactions) {
+                            return CompletableFuture.completedFuture(retVal);
+                        }
+                        return context.getApproximateTransactionSize().thenApply(size -> {
+                            transactionBytes.set(size);
+                            return retVal;
+                        });
+                    });
                 });
-            }), (result, exception) -> {
-                booker.handleLimitsPostRunnerTransaction(exception, recordsScanned, adjustLimits, additionalLogMessageKeyValues);
+            }, (result, exception) -> {
+                final long transactionMillis = measureTransactions ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - transactionStartNanos.get()) : 0;
+                booker.handleLimitsPostRunnerTransaction(exception, recordsScanned, adjustLimits, additionalLogMessageKeyValues,
+                        transactionMillis, transactionBytes.get());
                 return Pair.of(result, exception);
             }, onlineIndexerLogMessageKeyValues).handle((value, e) -> {
                 if (e == null) {
@@ -421,7 +526,13 @@ public class IndexingThrottle {
     }
 
     public long getTotalRecordsScannedSuccessfully() {
-        return booker.totalRecordsScannedSuccess;
+        synchronized (booker) {
+            return booker.totalRecordsScannedSuccess;
+        }
+    }
+
+    private synchronized void addMergeRequiredIndexes(@Nonnull Set<Index> indexSet) {
+        mergeRequiredIndexes.addAll(indexSet);
     }
 
     public synchronized Set<Index> getAndResetMergeRequiredIndexes() {
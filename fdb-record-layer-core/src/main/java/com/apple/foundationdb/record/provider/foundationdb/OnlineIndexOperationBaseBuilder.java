@@ -706,6 +706,32 @@ public abstract class OnlineIndexOperationBaseBuilder<B extends OnlineIndexOpera
         return self();
     }
 
+    /**
+     * Set the target latency of a single transaction. When this is set, the number of records to process in a single
+     * transaction and the delay between transactions are adjusted to keep the observed latency around this target.
+     * <p>
+     * Note {@link #setConfigLoader(UnaryOperator)} is the recommended way of loading online index builder's parameters
+     * and the values set by this method will be overwritten if the supplier is set.
+     * </p>
+     * @param targetTransactionLatencyMillis the target latency, per transaction, in milliseconds
+     * @return this builder
+     * @see OnlineIndexOperationConfig.Builder#setTargetTransactionLatencyMillis(long)
+     */
+    @Nonnull
+    public B setTargetTransactionLatencyMillis(long targetTransactionLatencyMillis) {
+        configBuilder.setTargetTransactionLatencyMillis(targetTransactionLatencyMillis);
+        return self();
+    }
+
+    /**
+     * Get the target latency of a single transaction.
+     * @return the target latency, per transaction, in milliseconds
+     * @see #setTargetTransactionLatencyMillis(long)
+     */
+    public long getTargetTransactionLatencyMillis() {
+        return configBuilder.getTargetTransactionLatencyMillis();
+    }
+
     /**
      * Set the use of a synchronized session during the index operation. Synchronized sessions help performing
      * the multiple transactions operations in a resource efficient way.
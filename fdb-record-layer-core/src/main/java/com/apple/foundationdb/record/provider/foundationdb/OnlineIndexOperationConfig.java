@@ -67,6 +67,12 @@ public class OnlineIndexOperationConfig {
      * This is the default value.
      */
     public static final int DO_NOT_RE_INCREASE_LIMIT = -1;
+    /**
+     * If {@link #getTargetTransactionLatencyMillis()} is this value, the limit is not adjusted according to the observed
+     * transaction latency.
+     * This is the default value.
+     */
+    public static final long NO_TARGET_TRANSACTION_LATENCY = 0;
 
     private final int maxLimit;
     private final int initialLimit;
@@ -79,12 +85,13 @@ public class OnlineIndexOperationConfig {
     private final long transactionTimeLimitMilliseconds;
     private final boolean useSynchronizedSession;
     private final long leaseLengthMillis;
+    private final long targetTransactionLatencyMillis;
 
     public static final long UNLIMITED_TIME = 0;
 
     OnlineIndexOperationConfig(int maxLimit, int initialLimit, int maxRetries, int recordsPerSecond, long progressLogIntervalMillis, int increaseLimitAfter,
                                int maxWriteLimitBytes, long timeLimitMilliseconds, long transactionTimeLimitMilliseconds,
-                               boolean useSynchronizedSession, long leaseLengthMillis) {
+                               boolean useSynchronizedSession, long leaseLengthMillis, long targetTransactionLatencyMillis) {
         this.maxLimit = maxLimit;
         this.initialLimit = initialLimit;
         this.maxRetries = maxRetries;
@@ -96,6 +103,7 @@ public class OnlineIndexOperationConfig {
         this.transactionTimeLimitMilliseconds = transactionTimeLimitMilliseconds;
         this.useSynchronizedSession = useSynchronizedSession;
         this.leaseLengthMillis = leaseLengthMillis;
+        this.targetTransactionLatencyMillis = targetTransactionLatencyMillis;
     }
 
     /**
@@ -183,6 +191,17 @@ public class OnlineIndexOperationConfig {
         return transactionTimeLimitMilliseconds;
     }
 
+    /**
+     * Get the target latency of a single transaction. If set, the limit and the delay between transactions are adjusted
+     * to keep the observed transaction latency around this target.
+     * By default this is {@link #NO_TARGET_TRANSACTION_LATENCY}, which means that they are not.
+     *
+     * @return the target latency of a single transaction in milliseconds
+     */
+    public long getTargetTransactionLatencyMillis() {
+        return targetTransactionLatencyMillis;
+    }
+
     @Nonnull
     public static Builder newBuilder() {
         return new Builder();
@@ -214,7 +233,8 @@ public class OnlineIndexOperationConfig {
                 .setTimeLimitMilliseconds(timeLimitMilliseconds)
                 .setTransactionTimeLimitMilliseconds(this.transactionTimeLimitMilliseconds)
                 .setUseSynchronizedSession(useSynchronizedSession)
-                .setLeaseLengthMillis(leaseLengthMillis);
+                .setLeaseLengthMillis(leaseLengthMillis)
+                .setTargetTransactionLatencyMillis(targetTransactionLatencyMillis);
     }
 
     /**
@@ -235,6 +255,7 @@ public class OnlineIndexOperationConfig {
         private long transactionTimeLimitMilliseconds = DEFAULT_TRANSACTION_TIME_LIMIT;
         private long leaseLengthMillis = DEFAULT_LEASE_LENGTH_MILLIS;
         private boolean useSynchronizedSession = true;
+        private long targetTransactionLatencyMillis = NO_TARGET_TRANSACTION_LATENCY;
 
         protected Builder() {
 
@@ -510,6 +531,37 @@ public class OnlineIndexOperationConfig {
             return this;
         }
 
+        /**
+         * Get the target latency of a single transaction.
+         *
+         * @return the target latency of a single transaction in milliseconds
+         *
+         * @see #setTargetTransactionLatencyMillis(long)
+         */
+        public long getTargetTransactionLatencyMillis() {
+            return targetTransactionLatencyMillis;
+        }
+
+        /**
+         * Set the target latency of a single transaction, from its start until its commit completes. When this is set,
+         * the number of records to process in a single transaction is adjusted after each transaction: it grows by a
+         * fixed step while transactions are faster than the target and without conflicts, and is cut by a factor when
+         * they are slower or fail with a retriable error. While transactions are slower than the target, a delay is
+         * also added between them. This replaces the fixed steps of {@link #setIncreaseLimitAfter(int)}.
+         * The limit is still bounded by {@link #setMaxLimit(int)}, and the delay by {@link #setRecordsPerSecond(int)}
+         * only making it longer.
+         * A non-positive value, the default, disables this adjustment.
+         *
+         * @param targetTransactionLatencyMillis the target latency, per transaction, in milliseconds
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setTargetTransactionLatencyMillis(long targetTransactionLatencyMillis) {
+            this.targetTransactionLatencyMillis = Math.max(NO_TARGET_TRANSACTION_LATENCY, targetTransactionLatencyMillis);
+            return this;
+        }
+
         /**
          * Build a {@link OnlineIndexOperationConfig}.
          *
@@ -519,7 +571,7 @@ public class OnlineIndexOperationConfig {
         public OnlineIndexOperationConfig build() {
             return new OnlineIndexOperationConfig(maxLimit, initialLimit, maxRetries, recordsPerSecond, progressLogIntervalMillis, increaseLimitAfter,
                     maxWriteLimitBytes, timeLimitMilliseconds, transactionTimeLimitMilliseconds,
-                    useSynchronizedSession, leaseLengthMillis);
+                    useSynchronizedSession, leaseLengthMillis, targetTransactionLatencyMillis);
         }
     }
 }
@@ -1127,6 +1127,7 @@ public class OnlineIndexer implements AutoCloseable {
         private final String allowUnblockId;
         private final long initialMergesCountLimit;
         private final boolean reverseScanOrder;
+        private final int parallelism;
 
         /**
          * Possible actions when an index is already partially built.
@@ -1171,6 +1172,7 @@ public class OnlineIndexer implements AutoCloseable {
          * @param allowUnblockId if preset, allow unblocking only if the block ID matches this param
          * @param initialMergesCountLimit the initial max merges count for index merger
          * @param reverseScanOrder if true, scan records in reverse order
+         * @param parallelism the number of ranges to build concurrently in a records scan
          */
         @SuppressWarnings("squid:S00107") // too many parameters
         private IndexingPolicy(@Nullable String sourceIndex, @Nullable Object sourceIndexSubspaceKey, boolean forbidRecordScan,
@@ -1180,7 +1182,7 @@ public class OnlineIndexer implements AutoCloseable {
                                boolean mutualIndexing, List<Tuple> mutualIndexingBoundaries,
                                boolean allowUnblock, String allowUnblockId,
                                long initialMergesCountLimit,
-                               boolean reverseScanOrder) {
+                               boolean reverseScanOrder, int parallelism) {
             this.sourceIndex = sourceIndex;
             this.forbidRecordScan = forbidRecordScan;
             this.sourceIndexSubspaceKey = sourceIndexSubspaceKey;
@@ -1198,6 +1200,7 @@ public class OnlineIndexer implements AutoCloseable {
             this.allowUnblockId = allowUnblockId;
             this.initialMergesCountLimit = initialMergesCountLimit;
             this.reverseScanOrder = reverseScanOrder;
+            this.parallelism = parallelism;
         }
 
         /**
@@ -1270,6 +1273,7 @@ public class OnlineIndexer implements AutoCloseable {
                     .setAllowUnblock(allowUnblock, allowUnblockId)
                     .setInitialMergesCountLimit(initialMergesCountLimit)
                     .setReverseScanOrder(reverseScanOrder)
+                    .setParallelism(parallelism)
                     ;
         }
 
@@ -1393,6 +1397,16 @@ public class OnlineIndexer implements AutoCloseable {
             return reverseScanOrder;
         }
 
+        /**
+         * Get the number of ranges of records to build concurrently in a records scan.
+         * The default is 1 - which means that a single range is built at a time.
+         * @return the number of ranges to build concurrently
+         */
+        @API(API.Status.EXPERIMENTAL)
+        public int getParallelism() {
+            return parallelism;
+        }
+
         /**
          * Builder for {@link IndexingPolicy}.
          *
@@ -1425,6 +1439,7 @@ public class OnlineIndexer implements AutoCloseable {
             private String allowUnblockId = null;
             private long initialMergesCountLimit = 0;
             private boolean reverseScanOrder = false;
+            private int parallelism = 1;
 
             protected Builder() {
             }
@@ -1714,6 +1729,23 @@ public class OnlineIndexer implements AutoCloseable {
                 return this;
             }
 
+            /**
+             * Set the number of ranges of records to build concurrently. If greater than 1, a records scan splits the
+             * records space by its shard boundaries (see {@link FDBRecordStore#getPrimaryKeyBoundaries(TupleRange)})
+             * into this many parts, and builds each of them in its own series of transactions. The transactions share
+             * the limits of a single indexer: each of them scans up to {@link OnlineIndexer#getLimit()} records, and
+             * {@link OnlineIndexOperationConfig#getRecordsPerSecond()} applies to all of them together.
+             * This is ignored by mutual indexing, by indexing from a source index, and with a reverse scan order.
+             * The default is 1 - which means that a single range is built at a time.
+             * @param parallelism the number of ranges to build concurrently
+             * @return this builder
+             */
+            @API(API.Status.EXPERIMENTAL)
+            public Builder setParallelism(int parallelism) {
+                this.parallelism = Math.max(1, parallelism);
+                return this;
+            }
+
             public IndexingPolicy build() {
                 if (useMutualIndexingBoundaries != null) {
                     useMutualIndexing = true;
@@ -1723,7 +1755,7 @@ public class OnlineIndexer implements AutoCloseable {
                         doAllowUniqueuPendingState, doAllowTakeoverContinue, allowedTakeoverSet,
                         checkIndexingStampFrequency,
                         useMutualIndexing, useMutualIndexingBoundaries, allowUnblock, allowUnblockId,
-                        initialMergesCountLimit, reverseScanOrder);
+                        initialMergesCountLimit, reverseScanOrder, parallelism);
             }
         }
     }
@@ -71,6 +71,16 @@ public class MultiDimensionalIndexHelper {
         return builder.build();
     }
 
+    /**
+     * Get whether the R-trees of an index maintain the version that allows their nodes to be cached.
+     * @param index the index definition to get options from
+     * @return {@code true} if {@link IndexOptions#RTREE_USE_NODE_CACHE} is set
+     * @see MultidimensionalNodeCache
+     */
+    public static boolean isUseNodeCache(@Nonnull final Index index) {
+        return index.getBooleanOption(IndexOptions.RTREE_USE_NODE_CACHE, false);
+    }
+
     /**
      * Instrumentation events specific to R-tree index maintenance.
      */
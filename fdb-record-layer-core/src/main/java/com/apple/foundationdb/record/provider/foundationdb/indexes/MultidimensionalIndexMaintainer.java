@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.provider.foundationdb.indexes;
 
 import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.ReadTransaction;
 import com.apple.foundationdb.Transaction;
@@ -61,17 +62,20 @@ import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression
 import com.apple.foundationdb.record.metadata.expressions.ThenKeyExpression;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.record.provider.foundationdb.IndexScanBounds;
 import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
 import com.apple.foundationdb.record.provider.foundationdb.MultidimensionalIndexScanBounds;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
+import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
+import com.apple.foundationdb.tuple.Versionstamp;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 import com.google.common.collect.Lists;
@@ -82,10 +86,17 @@ import com.google.protobuf.Message;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -96,12 +107,16 @@ import java.util.stream.Collectors;
 @API(API.Status.EXPERIMENTAL)
 public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
     private static final byte nodeSlotIndexSubspaceIndicator = 0x00;
+    private static final byte versionSubspaceIndicator = 0x01;
+    private static final String MODIFIED_VERSION_KEYS_COMMIT_CHECK = "MultidimensionalIndexMaintainer.modifiedVersionKeys";
     @Nonnull
     private final RTree.Config config;
+    private final boolean useNodeCache;
 
     public MultidimensionalIndexMaintainer(IndexMaintainerState state) {
         super(state);
         this.config = MultiDimensionalIndexHelper.getConfig(state.index);
+        this.useNodeCache = MultiDimensionalIndexHelper.isUseNodeCache(state.index);
     }
 
     @SuppressWarnings("resource")
@@ -125,6 +140,7 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         final CursorLimitManager cursorLimitManager = new CursorLimitManager(state.context, innerScanProperties);
         final Subspace indexSubspace = getIndexSubspace();
         final Subspace nodeSlotIndexSubspace = getNodeSlotIndexSubspace();
+        final Subspace versionSubspace = getVersionSubspace();
         final FDBStoreTimer timer = Objects.requireNonNull(state.context.getTimer());
 
         //
@@ -136,13 +152,16 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
                         (prefixTuple, innerContinuation) -> {
                             final Subspace rtSubspace;
                             final Subspace rtNodeSlotIndexSubspace;
+                            final byte[] versionKey;
                             if (prefixTuple != null) {
                                 Verify.verify(prefixTuple.size() == prefixSize);
                                 rtSubspace = indexSubspace.subspace(prefixTuple);
                                 rtNodeSlotIndexSubspace = nodeSlotIndexSubspace.subspace(prefixTuple);
+                                versionKey = versionSubspace.pack(prefixTuple);
                             } else {
                                 rtSubspace = indexSubspace;
                                 rtNodeSlotIndexSubspace = nodeSlotIndexSubspace;
+                                versionKey = versionSubspace.pack();
                             }
 
                             final Continuation parsedContinuation = Continuation.fromBytes(innerContinuation);
@@ -150,16 +169,24 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
                                     parsedContinuation == null ? null : parsedContinuation.getLastHilbertValue();
                             final Tuple lastKey = parsedContinuation == null ? null : parsedContinuation.getLastKey();
 
-                            final RTree rTree = new RTree(rtSubspace, rtNodeSlotIndexSubspace, getExecutor(), config,
-                                    RTreeHilbertCurveHelpers::hilbertValue, NodeHelpers::newRandomNodeId,
-                                    OnWriteListener.NOOP, new OnRead(cursorLimitManager, timer));
                             final ReadTransaction transaction = state.context.readTransaction(true);
                             return new LazyCursor<>(state.context.acquireReadLock(new LockIdentifier(rtSubspace))
-                                    .thenApply(lock -> new AsyncLockCursor<>(lock, new ItemSlotCursor(getExecutor(),
-                                            rTree.scan(transaction, lastHilbertValue, lastKey,
-                                                    mDScanBounds::overlapsMbrApproximately,
-                                                    (low, high) -> mDScanBounds.getSuffixRange().overlaps(low, high)),
-                                            cursorLimitManager, timer))), state.context.getExecutor())
+                                    .thenCompose(lock -> newOnRead(transaction, cursorLimitManager, timer, rtSubspace, versionKey)
+                                            .whenComplete((onRead, err) -> {
+                                                if (err != null) {
+                                                    lock.release();
+                                                }
+                                            })
+                                            .thenApply(onRead -> {
+                                                final RTree rTree = new RTree(rtSubspace, rtNodeSlotIndexSubspace, getExecutor(), config,
+                                                        RTreeHilbertCurveHelpers::hilbertValue, NodeHelpers::newRandomNodeId,
+                                                        OnWriteListener.NOOP, onRead);
+                                                return new AsyncLockCursor<>(lock, new ItemSlotCursor(getExecutor(),
+                                                        rTree.scan(transaction, lastHilbertValue, lastKey,
+                                                                mDScanBounds::overlapsMbrApproximately,
+                                                                (low, high) -> mDScanBounds.getSuffixRange().overlaps(low, high)),
+                                                        cursorLimitManager, timer));
+                                            })), state.context.getExecutor())
                                     .filter(itemSlot -> lastHilbertValue == null || lastKey == null ||
                                                         itemSlot.compareHilbertValueAndKey(lastHilbertValue, lastKey) > 0)
                                     .filter(itemSlot -> mDScanBounds.containsPosition(itemSlot.getPosition()))
@@ -252,35 +279,13 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         final DimensionsKeyExpression dimensionsKeyExpression = getDimensionsKeyExpression(state.index.getRootExpression());
         final int prefixSize = dimensionsKeyExpression.getPrefixSize();
         final int dimensionsSize = dimensionsKeyExpression.getDimensionsSize();
-        final Subspace indexSubspace = getIndexSubspace();
-        final Subspace nodeSlotIndexSubspace = getNodeSlotIndexSubspace();
         final var futures = indexEntries.stream().map(indexEntry -> {
             final var indexKeyItems = indexEntry.getKey().getItems();
-            final Tuple prefixKey = Tuple.fromList(indexKeyItems.subList(0, prefixSize));
-
-            final Subspace rtSubspace;
-            final Subspace rtNodeSlotIndexSubspace;
-            if (prefixSize > 0) {
-                rtSubspace = indexSubspace.subspace(prefixKey);
-                rtNodeSlotIndexSubspace = nodeSlotIndexSubspace.subspace(prefixKey);
-            } else {
-                rtSubspace = indexSubspace;
-                rtNodeSlotIndexSubspace = nodeSlotIndexSubspace;
-            }
+            final Subspace rtSubspace = getRTreeSubspace(indexKeyItems, prefixSize);
             return state.context.doWithWriteLock(new LockIdentifier(rtSubspace), () -> {
-                final RTree.Point point =
-                        validatePoint(new RTree.Point(Tuple.fromList(indexKeyItems.subList(prefixSize, prefixSize + dimensionsSize))));
-
-                final List<Object> primaryKeyParts = Lists.newArrayList(savedRecord.getPrimaryKey().getItems());
-                state.index.trimPrimaryKey(primaryKeyParts);
-                final List<Object> keySuffixParts =
-                        Lists.newArrayList(indexKeyItems.subList(prefixSize + dimensionsSize, indexKeyItems.size()));
-                keySuffixParts.addAll(primaryKeyParts);
-                final Tuple keySuffix = Tuple.fromList(keySuffixParts);
-                final FDBStoreTimer timer = Objects.requireNonNull(getTimer());
-                final RTree rTree = new RTree(rtSubspace, rtNodeSlotIndexSubspace, getExecutor(), config,
-                        RTreeHilbertCurveHelpers::hilbertValue, NodeHelpers::newRandomNodeId, new OnWrite(timer),
-                        OnReadListener.NOOP);
+                final RTree.Point point = getPoint(indexKeyItems, prefixSize, dimensionsSize);
+                final Tuple keySuffix = getKeySuffix(savedRecord, indexKeyItems, prefixSize, dimensionsSize);
+                final RTree rTree = newRTreeForUpdate(indexKeyItems, prefixSize);
                 if (remove) {
                     return rTree.delete(state.transaction, point, keySuffix);
                 } else {
@@ -294,6 +299,122 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         return AsyncUtil.whenAll(futures);
     }
 
+    /**
+     * Update the index for a batch of changed records while the index is being built. All index entries that are
+     * removed are deleted first. The index entries that are added are then collected per R-tree and written with
+     * {@link RTree#bulkLoad}, which packs an R-tree bottom-up if it is still empty. All writes are done by the time
+     * the returned future completes, so they are part of any size accounting by the caller, just like those of
+     * {@link #update}. Batches that change the same record more than once are updated one change at a time.
+     * @param changes the old and new records for each changed record
+     * @param <M> type of message
+     * @return a future that is complete when all the index updates are done
+     */
+    @Nonnull
+    @Override
+    public <M extends Message> CompletableFuture<Void> updateAllWhileWriteOnly(@Nonnull final List<? extends Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>>> changes) {
+        final Set<Tuple> primaryKeys = new HashSet<>();
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            final FDBIndexableRecord<M> record = change.getRight() != null ? change.getRight() : change.getLeft();
+            if (record != null && !primaryKeys.add(record.getPrimaryKey())) {
+                return super.updateAllWhileWriteOnly(changes);
+            }
+        }
+
+        final DimensionsKeyExpression dimensionsKeyExpression = getDimensionsKeyExpression(state.index.getRootExpression());
+        final int prefixSize = dimensionsKeyExpression.getPrefixSize();
+        final int dimensionsSize = dimensionsKeyExpression.getDimensionsSize();
+        CompletableFuture<Void> future = AsyncUtil.DONE;
+        final Map<Subspace, List<ItemSlot>> insertsBySubspace = new LinkedHashMap<>();
+        final Map<Subspace, RTree> rTreesBySubspace = new HashMap<>();
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            final FDBIndexableRecord<M> oldRecord = change.getLeft();
+            final FDBIndexableRecord<M> newRecord = change.getRight();
+            List<IndexEntry> oldIndexEntries = filteredIndexEntries(oldRecord);
+            List<IndexEntry> newIndexEntries = filteredIndexEntries(newRecord);
+            if (oldIndexEntries != null && newIndexEntries != null && skipUpdateForUnchangedKeys()) {
+                final List<IndexEntry> commonKeys = commonKeys(oldIndexEntries, newIndexEntries);
+                if (!commonKeys.isEmpty()) {
+                    oldIndexEntries = makeMutable(oldIndexEntries);
+                    oldIndexEntries.removeAll(commonKeys);
+                    newIndexEntries = makeMutable(newIndexEntries);
+                    newIndexEntries.removeAll(commonKeys);
+                }
+            }
+            if (oldIndexEntries != null && !oldIndexEntries.isEmpty()) {
+                future = future.thenCompose(updateIndexKeysFunction(Objects.requireNonNull(oldRecord), true, oldIndexEntries));
+            }
+            if (newIndexEntries != null) {
+                for (IndexEntry indexEntry : newIndexEntries) {
+                    final var indexKeyItems = indexEntry.getKey().getItems();
+                    final Subspace rtSubspace = getRTreeSubspace(indexKeyItems, prefixSize);
+                    final RTree rTree = rTreesBySubspace.computeIfAbsent(rtSubspace, ignored -> newRTreeForUpdate(indexKeyItems, prefixSize));
+                    insertsBySubspace.computeIfAbsent(rtSubspace, ignored -> new ArrayList<>())
+                            .add(rTree.newItemSlot(getPoint(indexKeyItems, prefixSize, dimensionsSize),
+                                    getKeySuffix(Objects.requireNonNull(newRecord), indexKeyItems, prefixSize, dimensionsSize),
+                                    indexEntry.getValue()));
+                }
+            }
+        }
+        if (insertsBySubspace.isEmpty()) {
+            return future;
+        }
+        return future.thenCompose(vignore -> AsyncUtil.whenAll(insertsBySubspace.entrySet().stream()
+                .map(entry -> state.context.doWithWriteLock(new LockIdentifier(entry.getKey()),
+                        () -> rTreesBySubspace.get(entry.getKey()).bulkLoad(state.transaction, entry.getValue())))
+                .collect(Collectors.toList())));
+    }
+
+    @Nonnull
+    private Subspace getRTreeSubspace(@Nonnull final List<Object> indexKeyItems, final int prefixSize) {
+        final Subspace indexSubspace = getIndexSubspace();
+        return prefixSize > 0 ? indexSubspace.subspace(Tuple.fromList(indexKeyItems.subList(0, prefixSize))) : indexSubspace;
+    }
+
+    @Nonnull
+    private static RTree.Point getPoint(@Nonnull final List<Object> indexKeyItems, final int prefixSize, final int dimensionsSize) {
+        return validatePoint(new RTree.Point(Tuple.fromList(indexKeyItems.subList(prefixSize, prefixSize + dimensionsSize))));
+    }
+
+    @Nonnull
+    private <M extends Message> Tuple getKeySuffix(@Nonnull final FDBIndexableRecord<M> savedRecord,
+                                                   @Nonnull final List<Object> indexKeyItems,
+                                                   final int prefixSize, final int dimensionsSize) {
+        final List<Object> primaryKeyParts = Lists.newArrayList(savedRecord.getPrimaryKey().getItems());
+        state.index.trimPrimaryKey(primaryKeyParts);
+        final List<Object> keySuffixParts =
+                Lists.newArrayList(indexKeyItems.subList(prefixSize + dimensionsSize, indexKeyItems.size()));
+        keySuffixParts.addAll(primaryKeyParts);
+        return Tuple.fromList(keySuffixParts);
+    }
+
+    /**
+     * Create the R-tree that an index entry goes into, for modifying it in this transaction.
+     * @param indexKeyItems the items of the key of the index entry
+     * @param prefixSize the size of the prefix of the index
+     * @return a new R-tree that records its writes with the timer of the context
+     */
+    @Nonnull
+    private RTree newRTreeForUpdate(@Nonnull final List<Object> indexKeyItems, final int prefixSize) {
+        final Subspace rtSubspace;
+        final Subspace rtNodeSlotIndexSubspace;
+        final byte[] versionKey;
+        if (prefixSize > 0) {
+            final Tuple prefixKey = Tuple.fromList(indexKeyItems.subList(0, prefixSize));
+            rtSubspace = getIndexSubspace().subspace(prefixKey);
+            rtNodeSlotIndexSubspace = getNodeSlotIndexSubspace().subspace(prefixKey);
+            versionKey = getVersionSubspace().pack(prefixKey);
+        } else {
+            rtSubspace = getIndexSubspace();
+            rtNodeSlotIndexSubspace = getNodeSlotIndexSubspace();
+            versionKey = getVersionSubspace().pack();
+        }
+        final FDBStoreTimer timer = Objects.requireNonNull(getTimer());
+        final Runnable onModification = useNodeCache ? () -> markModified(versionKey) : null;
+        return new RTree(rtSubspace, rtNodeSlotIndexSubspace, getExecutor(), config,
+                RTreeHilbertCurveHelpers::hilbertValue, NodeHelpers::newRandomNodeId, new OnWrite(timer, onModification),
+                OnReadListener.NOOP);
+    }
+
     @Override
     public boolean canDeleteWhere(@Nonnull final QueryToKeyMatcher matcher, @Nonnull final Key.Evaluated evaluated) {
         if (!super.canDeleteWhere(matcher, evaluated)) {
@@ -311,6 +432,9 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
             final Subspace nodeSlotIndexSubspace = getNodeSlotIndexSubspace();
             final byte[] key = nodeSlotIndexSubspace.pack(prefix);
             state.context.clear(new Range(key, ByteArrayUtil.strinc(key)));
+            // Without a version, the nodes of the cleared R-trees are not cached until they are modified again.
+            final byte[] versionKey = getVersionSubspace().pack(prefix);
+            state.context.clear(new Range(versionKey, ByteArrayUtil.strinc(versionKey)));
             return v;
         });
     }
@@ -320,6 +444,62 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         return getSecondarySubspace().subspace(Tuple.from(nodeSlotIndexSubspaceIndicator));
     }
 
+    @Nonnull
+    private Subspace getVersionSubspace() {
+        return getSecondarySubspace().subspace(Tuple.from(versionSubspaceIndicator));
+    }
+
+    /**
+     * Give an R-tree that is modified by this transaction a new version when the transaction commits, so that nodes
+     * cached by a {@link MultidimensionalNodeCache} before are not used anymore. The version is a versionstamp, so
+     * it is never repeated, even after the version has been cleared.
+     * @param versionKey the key of the version of the R-tree
+     */
+    private void markModified(@Nonnull final byte[] versionKey) {
+        final ModifiedVersionKeys modifiedVersionKeys = (ModifiedVersionKeys)state.context.getOrCreateCommitCheck(
+                MODIFIED_VERSION_KEYS_COMMIT_CHECK, ignored -> new ModifiedVersionKeys());
+        if (modifiedVersionKeys.versionKeys.add(versionKey)) {
+            state.context.addVersionMutation(MutationType.SET_VERSIONSTAMPED_VALUE, versionKey,
+                    Tuple.from(Versionstamp.incomplete()).packWithVersionstamp());
+        }
+    }
+
+    @Nullable
+    private Set<byte[]> getModifiedVersionKeys() {
+        final FDBRecordContext.CommitCheckAsync commitCheck = state.context.getCommitCheck(MODIFIED_VERSION_KEYS_COMMIT_CHECK);
+        return commitCheck == null ? null : ((ModifiedVersionKeys)commitCheck).versionKeys;
+    }
+
+    /**
+     * Create the listener for a scan of an R-tree. If the index uses a node cache, there is a
+     * {@link MultidimensionalNodeCache} for the context, and this transaction has not modified the R-tree, the
+     * listener serves intermediate nodes from the cache for the current version of the R-tree.
+     * @param transaction the transaction used by the scan
+     * @param cursorLimitManager the limit manager of the scan
+     * @param timer the timer of the context
+     * @param rtSubspace the subspace of the R-tree
+     * @param versionKey the key of the version of the R-tree
+     * @return a future with the listener
+     */
+    @Nonnull
+    private CompletableFuture<OnRead> newOnRead(@Nonnull final ReadTransaction transaction,
+                                                @Nonnull final CursorLimitManager cursorLimitManager,
+                                                @Nonnull final FDBStoreTimer timer,
+                                                @Nonnull final Subspace rtSubspace,
+                                                @Nonnull final byte[] versionKey) {
+        final MultidimensionalNodeCache nodeCache = useNodeCache ? MultidimensionalNodeCache.forContext(state.context) : null;
+        if (nodeCache == null) {
+            return CompletableFuture.completedFuture(new OnRead(cursorLimitManager, timer));
+        }
+        final Set<byte[]> modifiedVersionKeys = getModifiedVersionKeys();
+        if (modifiedVersionKeys != null && modifiedVersionKeys.contains(versionKey)) {
+            return CompletableFuture.completedFuture(new OnRead(cursorLimitManager, timer));
+        }
+        return transaction.get(versionKey).thenApply(version -> version == null
+                                                                ? new OnRead(cursorLimitManager, timer)
+                                                                : new OnRead(cursorLimitManager, timer, nodeCache, rtSubspace.pack(), version));
+    }
+
     /**
      * Traverse from the root of a key expression of a multidimensional index to the {@link DimensionsKeyExpression}.
      * @param root the root {@link KeyExpression} of the index definition
@@ -355,11 +535,37 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         private final CursorLimitManager cursorLimitManager;
         @Nonnull
         private final FDBStoreTimer timer;
+        @Nullable
+        private final MultidimensionalNodeCache nodeCache;
+        @Nullable
+        private final byte[] treeKey;
+        @Nullable
+        private final byte[] version;
 
         public OnRead(@Nonnull final CursorLimitManager cursorLimitManager,
                       @Nonnull final FDBStoreTimer timer) {
+            this(cursorLimitManager, timer, null, null, null);
+        }
+
+        public OnRead(@Nonnull final CursorLimitManager cursorLimitManager,
+                      @Nonnull final FDBStoreTimer timer,
+                      @Nullable final MultidimensionalNodeCache nodeCache,
+                      @Nullable final byte[] treeKey,
+                      @Nullable final byte[] version) {
             this.cursorLimitManager = cursorLimitManager;
             this.timer = timer;
+            this.nodeCache = nodeCache;
+            this.treeKey = treeKey;
+            this.version = version;
+        }
+
+        @Nullable
+        @Override
+        public Node onBeforeNodeRead(@Nonnull final byte[] nodeId) {
+            if (nodeCache == null) {
+                return null;
+            }
+            return nodeCache.getNode(Objects.requireNonNull(treeKey), Objects.requireNonNull(version), nodeId, timer);
         }
 
         @Override
@@ -375,6 +581,9 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
                     break;
                 case INTERMEDIATE:
                     timer.increment(FDBStoreTimer.Counts.MULTIDIMENSIONAL_INTERMEDIATE_NODE_READS);
+                    if (nodeCache != null) {
+                        nodeCache.putNode(Objects.requireNonNull(treeKey), Objects.requireNonNull(version), node, timer);
+                    }
                     break;
                 default:
                     throw new RecordCoreException("unsupported kind of node");
@@ -411,12 +620,40 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
         }
     }
 
+    /**
+     * The version keys of the R-trees modified by a transaction. This is kept with the transaction's commit checks,
+     * which can be created atomically by name, and does not check anything at commit.
+     */
+    private static class ModifiedVersionKeys implements FDBRecordContext.CommitCheckAsync {
+        @Nonnull
+        private final Set<byte[]> versionKeys = new ConcurrentSkipListSet<>(ByteArrayUtil::compareUnsigned);
+
+        @Nonnull
+        @Override
+        public CompletableFuture<Void> checkAsync() {
+            return AsyncUtil.DONE;
+        }
+    }
+
     static class OnWrite implements OnWriteListener {
         @Nonnull
         private final FDBStoreTimer timer;
+        @Nullable
+        private final Runnable onModification;
 
         public OnWrite(@Nonnull final FDBStoreTimer timer) {
+            this(timer, null);
+        }
+
+        public OnWrite(@Nonnull final FDBStoreTimer timer, @Nullable final Runnable onModification) {
             this.timer = timer;
+            this.onModification = onModification;
+        }
+
+        private void modified() {
+            if (onModification != null) {
+                onModification.run();
+            }
         }
 
         @Override
@@ -426,6 +663,7 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
 
         @Override
         public void onNodeWritten(@Nonnull final Node node) {
+            modified();
             switch (node.getKind()) {
                 case LEAF:
                     timer.increment(FDBStoreTimer.Counts.MULTIDIMENSIONAL_LEAF_NODE_WRITES);
@@ -440,6 +678,7 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
 
         @Override
         public void onKeyValueWritten(@Nonnull final Node node, @Nullable final byte[] key, @Nullable final byte[] value) {
+            modified();
             final int keyLength = key == null ? 0 : key.length;
             final int valueLength = value == null ? 0 : value.length;
 
@@ -459,6 +698,16 @@ public class MultidimensionalIndexMaintainer extends StandardIndexMaintainer {
                     throw new RecordCoreException("unsupported kind of node");
             }
         }
+
+        @Override
+        public void onNodeCleared(@Nonnull final Node node) {
+            modified();
+        }
+
+        @Override
+        public void onKeyCleared(@Nonnull final Node node, @Nullable final byte[] key) {
+            modified();
+        }
     }
 
     static class ItemSlotCursor extends AsyncIteratorCursor<ItemSlot> {
@@ -186,6 +186,13 @@ public class MultidimensionalIndexMaintainerFactory implements IndexMaintainerFa
                         }
                         changedOptions.remove(IndexOptions.RTREE_USE_NODE_SLOT_INDEX);
                     }
+                    if (changedOptions.contains(IndexOptions.RTREE_USE_NODE_CACHE)) {
+                        if (MultiDimensionalIndexHelper.isUseNodeCache(oldIndex) != MultiDimensionalIndexHelper.isUseNodeCache(index)) {
+                            throw new MetaDataException("rtree use node cache changed",
+                                    LogMessageKeys.INDEX_NAME, index.getName());
+                        }
+                        changedOptions.remove(IndexOptions.RTREE_USE_NODE_CACHE);
+                    }
                 }
                 super.validateChangedOptions(oldIndex, changedOptions);
             }
@@ -0,0 +1,210 @@
+/*
+ * MultidimensionalNodeCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.rtree.Node;
+import com.apple.foundationdb.async.rtree.NodeKind;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of the intermediate nodes of the R-trees of multidimensional indexes, which can be
+ * shared by many transactions so that repeated scans do not fetch the root and upper levels of an R-tree every time.
+ *
+ * <p>
+ * Only indexes with the {@link IndexOptions#RTREE_USE_NODE_CACHE} option use the cache. Each R-tree of such an index
+ * keeps a version that is set to a new, never repeated value by every transaction that modifies it. Entries are keyed
+ * by the R-tree and the node id, and remember the version of the R-tree they were read at. A scan reads the current
+ * version of the R-tree first, and only uses entries with that version; an entry with another version is discarded.
+ * A transaction that has itself modified an R-tree does not use the cache for that R-tree. Leaf nodes are never
+ * cached.
+ * </p>
+ *
+ * <p>
+ * Hits, misses, invalidations and evictions are reported through the {@link StoreTimer} of the scanning context.
+ * Because evictions happen asynchronously with respect to any particular caller, they are accumulated by the cache
+ * and reported to the next timer that is supplied.
+ * </p>
+ *
+ * To use the cache for the scans of a context, call {@link #setForContext}. Note that the R-trees are identified by
+ * their subspace, so a single cache should only be shared between contexts of the same database.
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class MultidimensionalNodeCache {
+    public static final Object NODE_CACHE_CONTEXT_KEY = new Object();
+    /**
+     * The default maximum number of nodes retained by the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 10_000L;
+
+    @Nonnull
+    private final Cache<Tuple, Entry> cache;
+    private final long maxSize;
+    @Nonnull
+    private final AtomicLong unreportedEvictions;
+
+    public MultidimensionalNodeCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public MultidimensionalNodeCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.unreportedEvictions = new AtomicLong();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    private void onRemoval(@Nonnull RemovalNotification<Tuple, Entry> notification) {
+        if (notification.wasEvicted()) {
+            unreportedEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get any node cache for the given context.
+     * @param context the record context in which to find the node cache
+     * @return the node cache set in the context or {@code null} if none has been set
+     * @see #setForContext
+     */
+    @Nullable
+    public static MultidimensionalNodeCache forContext(@Nonnull FDBRecordContext context) {
+        return context.getInSession(NODE_CACHE_CONTEXT_KEY, MultidimensionalNodeCache.class);
+    }
+
+    /**
+     * Set this node cache in the given context, so that scans of multidimensional indexes in that context use it.
+     * @param context the record context in which to put the node cache
+     */
+    public void setForContext(@Nonnull FDBRecordContext context) {
+        context.putInSessionIfAbsent(NODE_CACHE_CONTEXT_KEY, this);
+    }
+
+    /**
+     * Get the maximum number of nodes stored by the cache.
+     * @return the maximum number of nodes stored by the cache
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the approximate number of nodes currently stored by the cache.
+     * @return the approximate number of cached nodes
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all nodes from the cache.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get a node of an R-tree from the cache if it was cached at the given version of the R-tree.
+     * @param treeKey the key of the subspace of the R-tree
+     * @param version the current version of the R-tree
+     * @param nodeId the id of the node
+     * @param timer timer used to record cache statistics or {@code null}
+     * @return the cached node or {@code null} if there is no node cached at that version
+     */
+    @Nullable
+    public Node getNode(@Nonnull byte[] treeKey, @Nonnull byte[] version, @Nonnull byte[] nodeId,
+                        @Nullable StoreTimer timer) {
+        final Tuple key = Tuple.from(treeKey, nodeId);
+        try {
+            final Entry existing = cache.getIfPresent(key);
+            if (existing != null) {
+                if (Arrays.equals(existing.version, version)) {
+                    increment(timer, FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_HIT);
+                    return existing.node;
+                }
+                cache.asMap().remove(key, existing);
+                increment(timer, FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_INVALIDATION);
+            }
+            return null;
+        } finally {
+            reportEvictions(timer);
+        }
+    }
+
+    /**
+     * Add a node of an R-tree that had to be fetched at the given version of the R-tree to the cache, which counts
+     * as a miss. Leaf nodes are ignored, so {@link #getNode} can be called for any node without skewing the
+     * statistics. The node must not be modified afterwards.
+     * @param treeKey the key of the subspace of the R-tree
+     * @param version the version of the R-tree at which the node was read
+     * @param node the node
+     * @param timer timer used to record cache statistics or {@code null}
+     */
+    public void putNode(@Nonnull byte[] treeKey, @Nonnull byte[] version, @Nonnull Node node,
+                        @Nullable StoreTimer timer) {
+        if (node.getKind() == NodeKind.INTERMEDIATE) {
+            increment(timer, FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_MISS);
+            cache.put(Tuple.from(treeKey, node.getId()), new Entry(version, node));
+        }
+    }
+
+    private void reportEvictions(@Nullable StoreTimer timer) {
+        if (timer != null && unreportedEvictions.get() > 0) {
+            final long evictions = unreportedEvictions.getAndSet(0L);
+            if (evictions > 0) {
+                timer.increment(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_EVICTION, (int)Math.min(evictions, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    private static void increment(@Nullable StoreTimer timer, @Nonnull StoreTimer.Count count) {
+        if (timer != null) {
+            timer.increment(count);
+        }
+    }
+
+    private static class Entry {
+        @Nonnull
+        private final byte[] version;
+        @Nonnull
+        private final Node node;
+
+        private Entry(@Nonnull byte[] version, @Nonnull Node node) {
+            this.version = version;
+            this.node = node;
+        }
+    }
+}
@@ -48,6 +48,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Helper functions for index maintainers that use a {@link RankedSet}.
@@ -119,6 +120,16 @@ public class RankedSetIndexHelper {
                                                                       @Nonnull Subspace rankSubspace,
                                                                       @Nonnull RankedSet.Config config,
                                                                       @Nonnull TupleRange rankRange) {
+        return rankRangeToScoreRange(state, groupPrefixSize, rankSubspace,
+                subspace -> new InstrumentedRankedSet(state, subspace, config), rankRange);
+    }
+
+    @Nonnull
+    public static CompletableFuture<TupleRange> rankRangeToScoreRange(@Nonnull IndexMaintainerState state,
+                                                                      int groupPrefixSize,
+                                                                      @Nonnull Subspace rankSubspace,
+                                                                      @Nonnull Function<Subspace, RankedSet> rankedSetFactory,
+                                                                      @Nonnull TupleRange rankRange) {
         final Tuple prefix = groupPrefix(groupPrefixSize, rankRange, rankSubspace);
         if (prefix != null) {
             rankSubspace = rankSubspace.subspace(prefix);
@@ -145,7 +156,7 @@ public class RankedSetIndexHelper {
             return CompletableFuture.completedFuture(TupleRange.allOf(prefix));
         }
 
-        final RankedSet rankedSet = new InstrumentedRankedSet(state, rankSubspace, config);
+        final RankedSet rankedSet = rankedSetFactory.apply(rankSubspace);
         return init(state, rankedSet).thenCompose(v -> {
             CompletableFuture<Tuple> lowScoreFuture = scoreForRank(state, rankedSet, startFromBeginning ? 0L : lowRankNum, null);
             CompletableFuture<Tuple> highScoreFuture = scoreForRank(state, rankedSet, highRankNum, null);
@@ -252,11 +263,19 @@ public class RankedSetIndexHelper {
                                                           @Nonnull Tuple valueKey,
                                                           @Nonnull Tuple scoreKey,
                                                           boolean remove) {
-        final RankedSet rankedSet = new InstrumentedRankedSet(state, rankSubspace, config);
+        return updateRankedSet(state, new InstrumentedRankedSet(state, rankSubspace, config), valueKey, scoreKey, remove);
+    }
+
+    @Nonnull
+    public static CompletableFuture<Void> updateRankedSet(@Nonnull IndexMaintainerState state,
+                                                          @Nonnull RankedSet rankedSet,
+                                                          @Nonnull Tuple valueKey,
+                                                          @Nonnull Tuple scoreKey,
+                                                          boolean remove) {
         final byte[] score = scoreKey.pack();
         CompletableFuture<Void> result = init(state, rankedSet).thenCompose(v -> {
             if (remove) {
-                if (config.isCountDuplicates()) {
+                if (rankedSet.getConfig().isCountDuplicates()) {
                     // Decrement count and possibly remove.
                     return removeFromRankedSet(state, rankedSet, score);
                 } else {
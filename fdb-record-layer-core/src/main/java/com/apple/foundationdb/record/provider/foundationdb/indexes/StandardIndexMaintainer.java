@@ -822,7 +822,7 @@ public abstract class StandardIndexMaintainer extends IndexMaintainer {
     @Override
     public <M extends Message> List<IndexEntry> evaluateIndex(@Nonnull FDBRecord<M> record) {
         final KeyExpression rootExpression = state.index.getRootExpression();
-        final List<Key.Evaluated> indexKeys = rootExpression.evaluate(record);
+        final List<Key.Evaluated> indexKeys = state.store.getRecordMetaData().getCompiledRootExpression(state.index).evaluate(record);
 
         // A KeyWithValue expression returns a value that is both the key and the value of the index,
         // so we have to tease them apart.
@@ -28,6 +28,7 @@ import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.async.RankedSet;
+import com.apple.foundationdb.async.ShardedRankedSet;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.FunctionNames;
@@ -42,7 +43,9 @@ import com.apple.foundationdb.record.TimeWindowLeaderboardProto;
 import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexRecordFunction;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
@@ -81,6 +84,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -94,10 +98,38 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
     private static final Tuple SUB_DIRECTORY_PREFIX = Tuple.from((Object)null); // Must not conflict with leaderboard subspace keys.
 
     private final RankedSet.Config config;
+    private final int shards;
 
     public TimeWindowLeaderboardIndexMaintainer(IndexMaintainerState state) {
         super(state);
         this.config = RankedSetIndexHelper.getConfig(state.index);
+        this.shards = getShards(state.index);
+    }
+
+    /**
+     * Get the number of shards over which the ranked set of each leaderboard group is spread.
+     * @param index the index definition to get options from
+     * @return the value of the {@link IndexOptions#TIME_WINDOW_LEADERBOARD_SHARDS} option or {@code 1} if not set
+     */
+    public static int getShards(@Nonnull Index index) {
+        final String shardsOption = index.getOption(IndexOptions.TIME_WINDOW_LEADERBOARD_SHARDS);
+        return shardsOption == null ? 1 : Integer.parseInt(shardsOption);
+    }
+
+    /**
+     * Get the ranked set for one group of one leaderboard.
+     * @param rankSubspace the subspace of the ranked set
+     * @param leaderboardConfig the configuration of the ranked set
+     * @return a {@link ShardedRankedSet} if the index has more than one shard, otherwise an ordinary ranked set
+     */
+    @Nonnull
+    protected RankedSet newRankedSet(@Nonnull Subspace rankSubspace, @Nonnull RankedSet.Config leaderboardConfig) {
+        if (shards > 1) {
+            return new ShardedRankedSet(rankSubspace, getExecutor(), leaderboardConfig, shards,
+                    subspace -> new RankedSetIndexHelper.InstrumentedRankedSet(state, subspace, leaderboardConfig));
+        } else {
+            return new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, leaderboardConfig);
+        }
     }
 
     @Nonnull
@@ -222,7 +254,7 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                 final Subspace leaderboardSubspace = extraSubspace.subspace(leaderboard.getSubspaceKey());
                 final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
                 return RankedSetIndexHelper.rankRangeToScoreRange(state, groupPrefixSize,
-                        leaderboardSubspace, leaderboardConfig, leaderboardRange);
+                        leaderboardSubspace, subspace -> newRankedSet(subspace, leaderboardConfig), leaderboardRange);
             });
         }
         // Add leaderboard's key to the front and take it off of the results.
@@ -393,8 +425,8 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                                 // indexed in this rankSubspace. Compare/contrast: RankIndexMaintainer::updateIndexKeys
                                 final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
                                 final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-                                futures.add(RankedSetIndexHelper.updateRankedSet(state, rankSubspace,
-                                        leaderboardConfig, entryKey, indexKey.scoreKey, remove));
+                                futures.add(RankedSetIndexHelper.updateRankedSet(state, newRankedSet(rankSubspace, leaderboardConfig),
+                                        entryKey, indexKey.scoreKey, remove));
                             }
                         }
                     }
@@ -520,7 +552,7 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
             final Subspace extraSubspace = getSecondarySubspace();
             final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
             final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-            final RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, leaderboardConfig);
+            final RankedSet rankedSet = newRankedSet(rankSubspace, leaderboardConfig);
             return function.apply(leaderboard, rankedSet, groupKey, values);
         });
     }
@@ -568,7 +600,7 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                             final Subspace extraSubspace = getSecondarySubspace();
                             final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
                             final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-                            final RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, leaderboardConfig);
+                            final RankedSet rankedSet = newRankedSet(rankSubspace, leaderboardConfig);
                             // Undo any negation needed to find entry.
                             final Tuple entry = highScoreFirst ? negateScoreForHighScoreFirst(indexKey.scoreKey, 0) : indexKey.scoreKey;
                             return RankedSetIndexHelper.rankForScore(state, rankedSet, indexKey.scoreKey, true).thenApply(rank -> Pair.of(rank, entry));
@@ -626,6 +658,11 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
             result = loadDirectory().thenCompose(directory -> trimScores(directory, trim.getScores(), trim.isIncludesGroup()))
                 .thenApply(TimeWindowLeaderboardScoreTrimResult::new);
             event = FDBStoreTimer.Events.TIME_WINDOW_LEADERBOARD_TRIM_SCORES;
+        } else if (operation instanceof TimeWindowLeaderboardShardCompaction) {
+            final TimeWindowLeaderboardShardCompaction compaction = (TimeWindowLeaderboardShardCompaction)operation;
+            result = loadDirectory().thenCompose(directory -> compactShards(directory, compaction.getGroup(), compaction.getKeyLimit()))
+                .thenApply(TimeWindowLeaderboardShardCompactionResult::new);
+            event = FDBStoreTimer.Events.TIME_WINDOW_LEADERBOARD_COMPACT_SHARDS;
         } else if (operation instanceof TimeWindowLeaderboardDirectoryOperation) {
             result = loadDirectory().thenApply(TimeWindowLeaderboardDirectoryResult::new);
             event = FDBStoreTimer.Events.TIME_WINDOW_LEADERBOARD_GET_DIRECTORY;
@@ -647,6 +684,41 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
         return result;
     }
 
+    /**
+     * Move scores from the shards of the ranked sets of one group into their base sets, over all leaderboards.
+     * @param directory the leaderboard directory
+     * @param group the group key
+     * @param keyLimit the maximum number of scores to move
+     * @return a future that completes with the number of scores moved
+     */
+    @Nonnull
+    protected CompletableFuture<Integer> compactShards(@Nullable TimeWindowLeaderboardDirectory directory,
+                                                      @Nonnull Tuple group, int keyLimit) {
+        if (directory == null || shards <= 1) {
+            return CompletableFuture.completedFuture(0);
+        }
+        final Subspace extraSubspace = getSecondarySubspace();
+        final Iterator<TimeWindowLeaderboard> leaderboards = directory.getLeaderboards().values().stream()
+                .flatMap(Collection::stream).iterator();
+        final AtomicInteger moved = new AtomicInteger();
+        return AsyncUtil.whileTrue(() -> {
+            if (!leaderboards.hasNext() || moved.get() >= keyLimit) {
+                return AsyncUtil.READY_FALSE;
+            }
+            final TimeWindowLeaderboard leaderboard = leaderboards.next();
+            final Subspace rankSubspace = extraSubspace.subspace(leaderboard.getSubspaceKey().addAll(group));
+            final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
+            final RankedSet rankedSet = newRankedSet(rankSubspace, leaderboardConfig);
+            if (!(rankedSet instanceof ShardedRankedSet)) {
+                return AsyncUtil.READY_TRUE;
+            }
+            return ((ShardedRankedSet)rankedSet).compact(state.transaction, keyLimit - moved.get()).thenApply(keys -> {
+                moved.addAndGet(keys);
+                return true;
+            });
+        }, getExecutor()).thenApply(vignore -> moved.get());
+    }
+
     protected class UpdateState {
         private final TimeWindowLeaderboardWindowUpdate update;
         private TimeWindowLeaderboardDirectory directory;
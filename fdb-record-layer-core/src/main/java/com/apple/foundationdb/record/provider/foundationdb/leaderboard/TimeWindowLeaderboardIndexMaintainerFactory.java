@@ -21,9 +21,12 @@
 package com.apple.foundationdb.record.provider.foundationdb.leaderboard;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.IndexValidator;
+import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.MetaDataValidator;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerFactory;
@@ -56,6 +59,25 @@ public class TimeWindowLeaderboardIndexMaintainerFactory implements IndexMaintai
                 super.validate(metaDataValidator);
                 validateGrouping(1);
                 validateNotVersion();
+                validateShards();
+            }
+
+            private void validateShards() {
+                final String shardsOption = index.getOption(IndexOptions.TIME_WINDOW_LEADERBOARD_SHARDS);
+                if (shardsOption != null) {
+                    int shards;
+                    try {
+                        shards = Integer.parseInt(shardsOption);
+                    } catch (NumberFormatException ex) {
+                        shards = 0;
+                    }
+                    if (shards < 1) {
+                        throw new MetaDataException("time window leaderboard shards must be a positive integer",
+                                LogMessageKeys.INDEX_NAME, index.getName(),
+                                LogMessageKeys.INDEX_OPTION, IndexOptions.TIME_WINDOW_LEADERBOARD_SHARDS,
+                                LogMessageKeys.VALUE, shardsOption);
+                    }
+                }
             }
         };
     }
@@ -0,0 +1,52 @@
+/*
+ * TimeWindowLeaderboardShardCompaction.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.leaderboard;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.provider.foundationdb.IndexOperation;
+import com.apple.foundationdb.tuple.Tuple;
+
+/**
+ * Fold the shards of the ranked sets of one group into their base sets, for an index with more than one
+ * {@link IndexOptions#TIME_WINDOW_LEADERBOARD_SHARDS shard}.
+ *
+ * At most {@code keyLimit} scores are moved, over all time windows. The number actually moved is returned in
+ * {@link TimeWindowLeaderboardShardCompactionResult}; when it is less than the limit, the shards of the group are empty.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class TimeWindowLeaderboardShardCompaction extends IndexOperation {
+    private final Tuple group;
+    private final int keyLimit;
+
+    public TimeWindowLeaderboardShardCompaction(Tuple group, int keyLimit) {
+        this.group = group;
+        this.keyLimit = keyLimit;
+    }
+
+    public Tuple getGroup() {
+        return group;
+    }
+
+    public int getKeyLimit() {
+        return keyLimit;
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * IndexStatistics.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.statistics;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexStatisticsProto;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sampled statistics about the entries of a single index, as gathered by an {@link IndexStatisticsCollector}.
+ *
+ * <p>
+ * The statistics consist of an estimate of the total number of entries, an estimate of the number of distinct values
+ * of the leading column, and an equi-depth histogram over that leading column. They are used to estimate how many
+ * index entries a scan with a given set of {@link ScanComparisons} will read. Only the leading column is tracked;
+ * comparisons on later columns are assigned fixed default selectivities.
+ * </p>
+ *
+ * <p>
+ * Statistics are persisted in the record store's {@link FDBRecordStore#indexStatisticsSubspace(Index) statistics
+ * subspace} for the index and are cleared whenever the index is cleared. They remember the
+ * {@link Index#getLastModifiedVersion() last modified version} of the index so that statistics gathered for an older
+ * definition of the index are not used.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatistics {
+    /**
+     * Fraction of entries assumed to match an equality comparison on a column not covered by the histogram.
+     */
+    public static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    /**
+     * Fraction of entries assumed to match inequality comparisons whose bounds cannot be evaluated against the histogram.
+     */
+    public static final double DEFAULT_INEQUALITY_SELECTIVITY = 1.0 / 3.0;
+
+    @Nonnull
+    private final String indexName;
+    private final int indexLastModifiedVersion;
+    private final long estimatedEntryCount;
+    private final long estimatedSizeBytes;
+    private final long sampleSize;
+    private final long estimatedDistinctCount;
+    private final long collectedTimeMillis;
+    @Nonnull
+    private final List<Bucket> buckets;
+
+    @SuppressWarnings("squid:S00107") // many parameters, but the class is constructed by collector and deserializer only
+    public IndexStatistics(@Nonnull String indexName, int indexLastModifiedVersion,
+                           long estimatedEntryCount, long estimatedSizeBytes, long sampleSize,
+                           long estimatedDistinctCount, long collectedTimeMillis, @Nonnull List<Bucket> buckets) {
+        this.indexName = indexName;
+        this.indexLastModifiedVersion = indexLastModifiedVersion;
+        this.estimatedEntryCount = estimatedEntryCount;
+        this.estimatedSizeBytes = estimatedSizeBytes;
+        this.sampleSize = sampleSize;
+        this.estimatedDistinctCount = estimatedDistinctCount;
+        this.collectedTimeMillis = collectedTimeMillis;
+        this.buckets = ImmutableList.copyOf(buckets);
+    }
+
+    @Nonnull
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public int getIndexLastModifiedVersion() {
+        return indexLastModifiedVersion;
+    }
+
+    public long getEstimatedEntryCount() {
+        return estimatedEntryCount;
+    }
+
+    public long getEstimatedSizeBytes() {
+        return estimatedSizeBytes;
+    }
+
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    public long getEstimatedDistinctCount() {
+        return estimatedDistinctCount;
+    }
+
+    public long getCollectedTimeMillis() {
+        return collectedTimeMillis;
+    }
+
+    @Nonnull
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Get whether these statistics were gathered for the current definition of the given index.
+     * @param index the index
+     * @return {@code true} if these statistics describe the given index
+     */
+    public boolean isCurrentFor(@Nonnull Index index) {
+        return indexName.equals(index.getName()) && indexLastModifiedVersion == index.getLastModifiedVersion();
+    }
+
+    /**
+     * Estimate the number of index entries read by a scan of this index with the given comparisons.
+     * @param comparisons the scan comparisons of an index scan
+     * @return the estimated number of entries that will be read
+     */
+    public double estimateEntries(@Nonnull ScanComparisons comparisons) {
+        final List<Comparisons.Comparison> equalities = comparisons.getEqualityComparisons();
+        double estimate;
+        if (equalities.isEmpty()) {
+            estimate = estimatedEntryCount * estimateLeadingRangeFraction(comparisons.getInequalityComparisons());
+        } else {
+            estimate = estimateEquality(literalComparand(equalities.get(0)));
+            for (int i = 1; i < equalities.size(); i++) {
+                estimate *= DEFAULT_EQUALITY_SELECTIVITY;
+            }
+            if (!comparisons.getInequalityComparisons().isEmpty()) {
+                estimate *= DEFAULT_INEQUALITY_SELECTIVITY;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Estimate the number of entries whose leading column equals the given value.
+     * @param value the value of the leading column or {@code null} if it is not known at planning time
+     * @return the estimated number of entries with that value
+     */
+    public double estimateEquality(@Nullable Object value) {
+        if (value == null || buckets.isEmpty()) {
+            return averageEntriesPerValue();
+        }
+        final Tuple key = Tuple.from(value);
+        for (Bucket bucket : buckets) {
+            if (TupleHelpers.compare(key, bucket.getUpperBound()) <= 0) {
+                return (double)bucket.getCount() / Math.max(1L, bucket.getDistinctCount());
+            }
+        }
+        // Beyond the largest sampled value, which may have been added since the sample or missed by it.
+        return averageEntriesPerValue();
+    }
+
+    private double averageEntriesPerValue() {
+        return (double)estimatedEntryCount / Math.max(1L, estimatedDistinctCount);
+    }
+
+    /**
+     * Estimate the fraction of entries whose leading column lies within a range.
+     * Buckets that only partially overlap the range are counted as half contained.
+     * @param low the lower bound or {@code null} if unbounded
+     * @param high the upper bound or {@code null} if unbounded
+     * @return the estimated fraction of the index between the given bounds
+     */
+    public double estimateRangeFraction(@Nullable Object low, @Nullable Object high) {
+        if (buckets.isEmpty()) {
+            return low == null && high == null ? 1.0 : DEFAULT_INEQUALITY_SELECTIVITY;
+        }
+        final Tuple lowKey = low == null ? null : Tuple.from(low);
+        final Tuple highKey = high == null ? null : Tuple.from(high);
+        long total = 0;
+        double matching = 0.0;
+        Tuple previousUpper = null;
+        for (Bucket bucket : buckets) {
+            total += bucket.getCount();
+            final Tuple upper = bucket.getUpperBound();
+            final boolean aboveLow = lowKey == null || (previousUpper != null && TupleHelpers.compare(previousUpper, lowKey) >= 0);
+            final boolean belowHigh = highKey == null || TupleHelpers.compare(upper, highKey) <= 0;
+            final boolean disjoint = (lowKey != null && TupleHelpers.compare(upper, lowKey) < 0) ||
+                                     (highKey != null && previousUpper != null && TupleHelpers.compare(previousUpper, highKey) >= 0);
+            if (!disjoint) {
+                matching += aboveLow && belowHigh ? bucket.getCount() : bucket.getCount() / 2.0;
+            }
+            previousUpper = upper;
+        }
+        return total == 0 ? 0.0 : matching / total;
+    }
+
+    private double estimateLeadingRangeFraction(@Nonnull Iterable<Comparisons.Comparison> inequalities) {
+        Object low = null;
+        Object high = null;
+        double fraction = 1.0;
+        for (Comparisons.Comparison comparison : inequalities) {
+            final Object comparand = literalComparand(comparison);
+            switch (comparison.getType()) {
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQUALS:
+                    if (comparand == null) {
+                        fraction *= DEFAULT_INEQUALITY_SELECTIVITY;
+                    } else {
+                        low = comparand;
+                    }
+                    break;
+                case LESS_THAN:
+                case LESS_THAN_OR_EQUALS:
+                    if (comparand == null) {
+                        fraction *= DEFAULT_INEQUALITY_SELECTIVITY;
+                    } else {
+                        high = comparand;
+                    }
+                    break;
+                default:
+                    fraction *= DEFAULT_INEQUALITY_SELECTIVITY;
+                    break;
+            }
+        }
+        if (low != null || high != null) {
+            fraction *= estimateRangeFraction(low, high);
+        }
+        return fraction;
+    }
+
+    @Nullable
+    private static Object literalComparand(@Nonnull Comparisons.Comparison comparison) {
+        if (comparison instanceof Comparisons.SimpleComparison) {
+            return ScanComparisons.toTupleItem(((Comparisons.SimpleComparison)comparison).getComparand());
+        }
+        return null;
+    }
+
+    @Nonnull
+    public IndexStatisticsProto.IndexStatistics toProto() {
+        final IndexStatisticsProto.IndexStatistics.Builder builder = IndexStatisticsProto.IndexStatistics.newBuilder()
+                .setIndexName(indexName)
+                .setIndexLastModifiedVersion(indexLastModifiedVersion)
+                .setEstimatedEntryCount(estimatedEntryCount)
+                .setEstimatedSizeBytes(estimatedSizeBytes)
+                .setSampleSize(sampleSize)
+                .setEstimatedDistinctCount(estimatedDistinctCount)
+                .setCollectedTimeMillis(collectedTimeMillis);
+        for (Bucket bucket : buckets) {
+            builder.addBucket(IndexStatisticsProto.IndexStatistics.Bucket.newBuilder()
+                    .setUpperBound(ByteString.copyFrom(bucket.getUpperBound().pack()))
+                    .setCount(bucket.getCount())
+                    .setDistinctCount(bucket.getDistinctCount()));
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    public static IndexStatistics fromProto(@Nonnull IndexStatisticsProto.IndexStatistics proto) {
+        final ImmutableList.Builder<Bucket> buckets = ImmutableList.builder();
+        for (IndexStatisticsProto.IndexStatistics.Bucket bucket : proto.getBucketList()) {
+            buckets.add(new Bucket(Tuple.fromBytes(bucket.getUpperBound().toByteArray()), bucket.getCount(), bucket.getDistinctCount()));
+        }
+        return new IndexStatistics(proto.getIndexName(), proto.getIndexLastModifiedVersion(),
+                proto.getEstimatedEntryCount(), proto.getEstimatedSizeBytes(), proto.getSampleSize(),
+                proto.getEstimatedDistinctCount(), proto.getCollectedTimeMillis(), buckets.build());
+    }
+
+    /**
+     * Save these statistics in the given record store, replacing any previous statistics for the index.
+     * @param store the record store containing the index
+     * @param index the index that these statistics describe
+     */
+    public void save(@Nonnull FDBRecordStore store, @Nonnull Index index) {
+        if (!isCurrentFor(index)) {
+            throw new RecordCoreException("statistics do not match index")
+                    .addLogInfo("statisticsIndexName", indexName, "indexName", index.getName());
+        }
+        store.getContext().ensureActive().set(store.indexStatisticsSubspace(index).pack(), toProto().toByteArray());
+    }
+
+    /**
+     * Load the statistics for an index from the given record store.
+     * A snapshot read is used, so a later update of the statistics does not conflict with this transaction.
+     * @param store the record store containing the index
+     * @param index the index whose statistics to load
+     * @return a future that completes to the current statistics for the index or {@code null} if there are none
+     */
+    @Nonnull
+    public static CompletableFuture<IndexStatistics> loadAsync(@Nonnull FDBRecordStore store, @Nonnull Index index) {
+        return store.getContext().readTransaction(true).get(store.indexStatisticsSubspace(index).pack()).thenApply(bytes -> {
+            if (bytes == null) {
+                return null;
+            }
+            final IndexStatistics statistics;
+            try {
+                statistics = fromProto(IndexStatisticsProto.IndexStatistics.parseFrom(bytes));
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("invalid index statistics", ex)
+                        .addLogInfo("indexName", index.getName());
+            }
+            return statistics.isCurrentFor(index) ? statistics : null;
+        });
+    }
+
+    /**
+     * Load the statistics for all of the store's indexes that have current statistics, in the form expected by
+     * {@link com.apple.foundationdb.record.query.plan.cascades.CascadesPlanner#setIndexStatistics}.
+     * @param store the record store
+     * @return a future that completes to a map from index name to statistics
+     */
+    @Nonnull
+    public static CompletableFuture<Map<String, IndexStatistics>> loadAllAsync(@Nonnull FDBRecordStore store) {
+        final Map<String, IndexStatistics> result = new HashMap<>();
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (Index index : store.getRecordMetaData().getAllIndexes()) {
+            future = future.thenCombine(loadAsync(store, index), (ignore, statistics) -> {
+                if (statistics != null) {
+                    result.put(index.getName(), statistics);
+                }
+                return null;
+            });
+        }
+        return future.thenApply(ignore -> result);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexStatistics{" + indexName +
+               ", entries=" + estimatedEntryCount +
+               ", distinct=" + estimatedDistinctCount +
+               ", buckets=" + buckets.size() + "}";
+    }
+
+    /**
+     * A bucket of the equi-depth histogram over the leading column of the index.
+     */
+    public static class Bucket {
+        @Nonnull
+        private final Tuple upperBound;
+        private final long count;
+        private final long distinctCount;
+
+        public Bucket(@Nonnull Tuple upperBound, long count, long distinctCount) {
+            this.upperBound = upperBound;
+            this.count = count;
+            this.distinctCount = distinctCount;
+        }
+
+        /**
+         * Get the largest leading column value in this bucket, as a single element tuple.
+         * @return the inclusive upper bound of the bucket
+         */
+        @Nonnull
+        public Tuple getUpperBound() {
+            return upperBound;
+        }
+
+        /**
+         * Get the estimated number of entries in this bucket.
+         * @return the estimated number of entries
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the estimated number of distinct leading column values in this bucket.
+         * @return the estimated number of distinct values
+         */
+        public long getDistinctCount() {
+            return distinctCount;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + upperBound + ": " + count + "/" + distinctCount + ")";
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * IndexStatisticsCollector.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.statistics;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gather {@link IndexStatistics} for an index by sampling its entries.
+ *
+ * <p>
+ * The total size of the index is estimated using {@link ReadTransaction#getEstimatedRangeSizeBytes}, the same
+ * estimate used by {@link FDBRecordStore#estimateRecordsSizeAsync}. The index range is then divided at the
+ * cluster's shard boundaries, as in {@link FDBRecordStore#getPrimaryKeyBoundaries(Tuple, Tuple)}, into up to
+ * {@code sampleCount} ranges. Each range is divided again with {@link ReadTransaction#getRangeSplitPoints} into
+ * up to {@link #PROBES_PER_RANGE} chunks of about equal size, and the same share of the range's {@code entriesPerSample}
+ * entries is read at the start of each chunk, so that the sample spans the whole range rather than just its first
+ * entries. An index that fits in a single shard is sampled the same way, up to the same total number of entries as
+ * all the shards together. The average size of the sampled entries is used to extrapolate the total number of entries, much as
+ * {@link com.apple.foundationdb.record.provider.foundationdb.cursors.SizeStatisticsCollectorCursor} reports averages
+ * from a full scan. If every chunk could be read completely, the statistics are exact.
+ * </p>
+ *
+ * <p>
+ * The number of distinct values of the leading column is extrapolated from the sample using the guaranteed-error
+ * estimator, which scales up values that were seen once in the sample and counts values that were seen more often
+ * as they are.
+ * </p>
+ *
+ * <p>
+ * All reads are snapshot reads of at most {@code sampleCount * entriesPerSample} entries, so collecting statistics
+ * fits comfortably in a single transaction and does not conflict with concurrent updates to the index.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatisticsCollector {
+    /**
+     * The default number of places in the index at which to sample.
+     */
+    public static final int DEFAULT_SAMPLE_COUNT = 64;
+    /**
+     * The default number of entries read at each sample position.
+     */
+    public static final int DEFAULT_ENTRIES_PER_SAMPLE = 100;
+    /**
+     * The default number of histogram buckets.
+     */
+    public static final int DEFAULT_BUCKET_COUNT = 32;
+
+    /**
+     * The largest number of places within each sampled range at which entries are read.
+     */
+    public static final int PROBES_PER_RANGE = 10;
+
+    // Do not ask for split points that are finer than this, since the size estimates are not precise below it.
+    private static final long MIN_CHUNK_SIZE_BYTES = 64 * 1024L;
+
+    @Nonnull
+    private final FDBRecordStore store;
+    @Nonnull
+    private final Index index;
+    private final int sampleCount;
+    private final int entriesPerSample;
+    private final int bucketCount;
+
+    public IndexStatisticsCollector(@Nonnull FDBRecordStore store, @Nonnull Index index) {
+        this(store, index, DEFAULT_SAMPLE_COUNT, DEFAULT_ENTRIES_PER_SAMPLE, DEFAULT_BUCKET_COUNT);
+    }
+
+    public IndexStatisticsCollector(@Nonnull FDBRecordStore store, @Nonnull Index index,
+                                    int sampleCount, int entriesPerSample, int bucketCount) {
+        this.store = store;
+        this.index = index;
+        this.sampleCount = sampleCount;
+        this.entriesPerSample = entriesPerSample;
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Sample the index and compute its statistics. The statistics are not saved; use
+     * {@link IndexStatistics#save} for that.
+     * @return a future that completes to the sampled statistics
+     */
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    public CompletableFuture<IndexStatistics> collectAsync() {
+        final long startTime = System.nanoTime();
+        final Subspace indexSubspace = store.indexSubspace(index);
+        final Range range = indexSubspace.range();
+        final Transaction tr = store.ensureContextActive();
+        final ReadTransaction snapshot = tr.snapshot();
+        final CloseableAsyncIterator<byte[]> boundaryKeys = store.getContext().getDatabase().getLocalityProvider()
+                .getBoundaryKeys(tr, range.begin, range.end);
+        final CompletableFuture<IndexStatistics> future = snapshot.getEstimatedRangeSizeBytes(range).thenCombine(
+                RecordCursor.fromIterator(store.getExecutor(), boundaryKeys).asList(),
+                (estimatedSize, shardBoundaries) -> new SampleBounds(estimatedSize, sampleBoundaries(range, shardBoundaries)))
+                .thenCompose(bounds -> {
+                    final List<byte[]> boundaries = bounds.boundaries;
+                    final int rangeCount = boundaries.size() - 1;
+                    // A single range means the whole index is in one shard, so sample as much of it as we would have of all the shards.
+                    final int limit = rangeCount == 1 ? sampleCount * entriesPerSample : entriesPerSample;
+                    final long chunkSize = Math.max(MIN_CHUNK_SIZE_BYTES, bounds.estimatedSize / ((long)rangeCount * PROBES_PER_RANGE));
+                    final List<CompletableFuture<Sample>> samples = new ArrayList<>(rangeCount);
+                    for (int i = 0; i < rangeCount; i++) {
+                        samples.add(sampleRange(snapshot, boundaries.get(i), boundaries.get(i + 1), chunkSize, limit));
+                    }
+                    return AsyncUtil.getAll(samples).thenApply(sampleResults -> {
+                        final List<Tuple> keys = new ArrayList<>();
+                        long sampledBytes = 0;
+                        boolean complete = true;
+                        for (Sample sample : sampleResults) {
+                            complete &= sample.complete;
+                            for (KeyValue kv : sample.keyValues) {
+                                keys.add(indexSubspace.unpack(kv.getKey()));
+                                sampledBytes += kv.getKey().length + kv.getValue().length;
+                            }
+                        }
+                        return fromSample(index, bounds.estimatedSize, keys, sampledBytes, complete, bucketCount);
+                    });
+                });
+        return store.getContext().instrument(FDBStoreTimer.Events.COLLECT_INDEX_STATISTICS, future, startTime);
+    }
+
+    /**
+     * Turn the shard boundaries into the boundaries of the ranges to sample, thinning them out evenly if there are
+     * more shards than samples.
+     */
+    @Nonnull
+    private List<byte[]> sampleBoundaries(@Nonnull Range range, @Nonnull List<byte[]> shardBoundaries) {
+        return thinBoundaries(range.begin, range.end, shardBoundaries, sampleCount);
+    }
+
+    /**
+     * Read entries at the start of up to {@link #PROBES_PER_RANGE} chunks spread evenly across a range, taking an equal
+     * share of {@code limit} from each.
+     */
+    @Nonnull
+    private static CompletableFuture<Sample> sampleRange(@Nonnull ReadTransaction snapshot, @Nonnull byte[] begin, @Nonnull byte[] end,
+                                                         long chunkSize, int limit) {
+        return snapshot.getRangeSplitPoints(begin, end, chunkSize).thenCompose(splitPoints -> {
+            final List<byte[]> probes = thinBoundaries(begin, end, splitPoints.getKeys(), Math.min(PROBES_PER_RANGE, limit));
+            final int probeLimit = Math.max(1, limit / (probes.size() - 1));
+            final List<CompletableFuture<List<KeyValue>>> reads = new ArrayList<>(probes.size() - 1);
+            for (int i = 0; i < probes.size() - 1; i++) {
+                reads.add(snapshot.getRange(probes.get(i), probes.get(i + 1), probeLimit).asList());
+            }
+            return AsyncUtil.getAll(reads).thenApply(results -> {
+                final List<KeyValue> keyValues = new ArrayList<>();
+                boolean complete = true;
+                for (List<KeyValue> result : results) {
+                    if (result.size() >= probeLimit) {
+                        complete = false;
+                    }
+                    keyValues.addAll(result);
+                }
+                return new Sample(keyValues, complete);
+            });
+        });
+    }
+
+    /**
+     * Get the boundaries of at most {@code maxRanges} ranges from {@code begin} to {@code end}, using an evenly spaced
+     * selection of the given split points that lie strictly between them.
+     */
+    @Nonnull
+    private static List<byte[]> thinBoundaries(@Nonnull byte[] begin, @Nonnull byte[] end,
+                                               @Nonnull List<byte[]> splitPoints, int maxRanges) {
+        final List<byte[]> inner = new ArrayList<>(splitPoints.size());
+        for (byte[] splitPoint : splitPoints) {
+            if (ByteArrayUtil.compareUnsigned(begin, splitPoint) < 0 && ByteArrayUtil.compareUnsigned(splitPoint, end) < 0) {
+                inner.add(splitPoint);
+            }
+        }
+        final List<byte[]> boundaries = new ArrayList<>();
+        boundaries.add(begin);
+        if (inner.size() < maxRanges) {
+            boundaries.addAll(inner);
+        } else {
+            final double step = (double)inner.size() / maxRanges;
+            for (int i = 1; i < maxRanges; i++) {
+                boundaries.add(inner.get((int)(i * step)));
+            }
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+
+    private static class Sample {
+        @Nonnull
+        private final List<KeyValue> keyValues;
+        private final boolean complete;
+
+        Sample(@Nonnull List<KeyValue> keyValues, boolean complete) {
+            this.keyValues = keyValues;
+            this.complete = complete;
+        }
+    }
+
+    private static class SampleBounds {
+        private final long estimatedSize;
+        @Nonnull
+        private final List<byte[]> boundaries;
+
+        SampleBounds(long estimatedSize, @Nonnull List<byte[]> boundaries) {
+            this.estimatedSize = estimatedSize;
+            this.boundaries = boundaries;
+        }
+    }
+
+    /**
+     * Compute statistics from a sample of index keys.
+     * @param index the sampled index
+     * @param estimatedSizeBytes the estimated size of the entire index
+     * @param keys the sampled index keys, in any order
+     * @param sampledBytes the total size of the sampled keys and values
+     * @param complete whether the sample contains every entry of the index
+     * @param bucketCount the maximum number of histogram buckets
+     * @return the statistics extrapolated from the sample
+     */
+    @Nonnull
+    static IndexStatistics fromSample(@Nonnull Index index, long estimatedSizeBytes, @Nonnull List<Tuple> keys,
+                                      long sampledBytes, boolean complete, int bucketCount) {
+        final TreeMap<Tuple, Long> frequencies = new TreeMap<>();
+        for (Tuple key : keys) {
+            if (!key.isEmpty()) {
+                frequencies.merge(Tuple.from(key.get(0)), 1L, Long::sum);
+            }
+        }
+        final long sampleSize = keys.size();
+        final long estimatedEntryCount;
+        if (complete || sampleSize == 0) {
+            estimatedEntryCount = sampleSize;
+        } else {
+            estimatedEntryCount = Math.max(sampleSize, Math.round(estimatedSizeBytes / ((double)sampledBytes / sampleSize)));
+        }
+        final double scale = sampleSize == 0 ? 1.0 : (double)estimatedEntryCount / sampleSize;
+
+        final List<IndexStatistics.Bucket> buckets = new ArrayList<>();
+        final long targetDepth = Math.max(1L, (sampleSize + bucketCount - 1) / Math.max(1, bucketCount));
+        long bucketEntries = 0;
+        long bucketSingletons = 0;
+        long bucketRepeated = 0;
+        long totalSingletons = 0;
+        long totalRepeated = 0;
+        int remaining = frequencies.size();
+        for (Map.Entry<Tuple, Long> entry : frequencies.entrySet()) {
+            remaining--;
+            bucketEntries += entry.getValue();
+            if (entry.getValue() == 1L) {
+                bucketSingletons++;
+                totalSingletons++;
+            } else {
+                bucketRepeated++;
+                totalRepeated++;
+            }
+            if (bucketEntries >= targetDepth || remaining == 0) {
+                final long count = Math.round(bucketEntries * scale);
+                final long distinct = estimateDistinct(bucketSingletons, bucketRepeated, scale, count);
+                buckets.add(new IndexStatistics.Bucket(entry.getKey(), count, distinct));
+                bucketEntries = 0;
+                bucketSingletons = 0;
+                bucketRepeated = 0;
+            }
+        }
+        final long estimatedDistinctCount = estimateDistinct(totalSingletons, totalRepeated, scale, estimatedEntryCount);
+        return new IndexStatistics(index.getName(), index.getLastModifiedVersion(), estimatedEntryCount,
+                estimatedSizeBytes, sampleSize, estimatedDistinctCount, System.currentTimeMillis(), buckets);
+    }
+
+    private static long estimateDistinct(long singletons, long repeated, double scale, long upperLimit) {
+        final long estimate = Math.round(Math.sqrt(scale) * singletons) + repeated;
+        return Math.max(Math.min(estimate, upperLimit), Math.min(1L, upperLimit));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * CachingQueryPlanner.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.query.ParameterRelationshipGraph;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link QueryPlanner} that consults a shared {@link QueryPlanCache} before delegating to another planner,
+ * such as a {@link RecordQueryPlanner} or a {@link com.apple.foundationdb.record.query.plan.cascades.CascadesPlanner}.
+ *
+ * <p>
+ * Planners are usually created per record store and so per transaction, whereas the cache is meant to outlive
+ * them. A typical use is therefore to keep one {@link QueryPlanCache} per meta-data source and wrap each newly
+ * created planner with it:
+ * </p>
+ * <pre><code>
+ * QueryPlanner planner = new CachingQueryPlanner(
+ *         new RecordQueryPlanner(store.getRecordMetaData(), store.getRecordStoreState(), store.getTimer()),
+ *         planCache, store.getTimer());
+ * </code></pre>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class CachingQueryPlanner implements QueryPlanner {
+    @Nonnull
+    private final QueryPlanner delegate;
+    @Nonnull
+    private final QueryPlanCache cache;
+    @Nullable
+    private final StoreTimer timer;
+
+    public CachingQueryPlanner(@Nonnull QueryPlanner delegate, @Nonnull QueryPlanCache cache, @Nullable StoreTimer timer) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.timer = timer;
+    }
+
+    /**
+     * Get the planner used to plan queries that are not in the cache.
+     * @return the underlying planner
+     */
+    @Nonnull
+    public QueryPlanner getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the cache used by this planner.
+     * @return the plan cache
+     */
+    @Nonnull
+    public QueryPlanCache getCache() {
+        return cache;
+    }
+
+    @Nonnull
+    @Override
+    public RecordQueryPlan plan(@Nonnull RecordQuery query, @Nonnull ParameterRelationshipGraph parameterRelationshipGraph) {
+        return planQuery(query, parameterRelationshipGraph).getPlan();
+    }
+
+    @Nonnull
+    @Override
+    public QueryPlanResult planQuery(@Nonnull RecordQuery query, @Nonnull ParameterRelationshipGraph parameterRelationshipGraph) {
+        return cache.getOrPlan(delegate, query, parameterRelationshipGraph, timer,
+                () -> delegate.planQuery(query, parameterRelationshipGraph));
+    }
+
+    @Nonnull
+    @Override
+    public RecordMetaData getRecordMetaData() {
+        return delegate.getRecordMetaData();
+    }
+
+    @Nonnull
+    @Override
+    public RecordStoreState getRecordStoreState() {
+        return delegate.getRecordStoreState();
+    }
+
+    @Override
+    public void setIndexScanPreference(@Nonnull IndexScanPreference indexScanPreference) {
+        delegate.setIndexScanPreference(indexScanPreference);
+    }
+
+    @Nonnull
+    @Override
+    public RecordQueryPlannerConfiguration getConfiguration() {
+        return delegate.getConfiguration();
+    }
+
+    @Override
+    public void setConfiguration(@Nonnull RecordQueryPlannerConfiguration configuration) {
+        delegate.setConfiguration(configuration);
+    }
+}
@@ -35,6 +35,8 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartia
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFirstOrDefaultPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInComparandJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInParameterJoinPlan;
@@ -312,6 +314,26 @@ public class PlanStringRepresentation implements RecordQueryPlanVisitor<PlanStri
                 .append(")");
     }
 
+    @Nonnull
+    @Override
+    public PlanStringRepresentation visitHashAggregationPlan(@Nonnull RecordQueryHashAggregationPlan element) {
+        return visit(element.getChild())
+                .append(" | HASH AGGREGATE BY ")
+                .append(element.getAggregateValue())
+                .append(", GROUP BY ")
+                .append(element.getGroupingValue());
+    }
+
+    @Nonnull
+    @Override
+    public PlanStringRepresentation visitHashJoinPlan(@Nonnull RecordQueryHashJoinPlan element) {
+        return append("hashJoin(")
+                .visit(element.getProbeQuantifier().getRangesOverPlan())
+                .append(", ")
+                .visit(element.getBuildQuantifier().getRangesOverPlan())
+                .append(")");
+    }
+
     @Nonnull
     private PlanStringRepresentation visitInJoinPlan(@Nonnull RecordQueryInJoinPlan element) {
         final InSource inSource = element.getInSource();
@@ -0,0 +1,271 @@
+/*
+ * QueryPlanCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.QueryHashable;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordPlannerConfigurationProto;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.ParameterRelationshipGraph;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryPlannerSortConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, thread-safe cache of {@link QueryPlanResult}s that can be shared by many {@link QueryPlanner}s,
+ * typically one per record store opened in a transaction.
+ *
+ * <p>
+ * Entries are keyed by the {@link RecordQuery} (whose {@link QueryHashable#queryHash query hash} is used to spread
+ * entries) together with the parameter relationship graph and the planner configuration. Since comparisons against
+ * parameters only reference the parameter name, all executions of a query that only differ in their parameter
+ * bindings share a single cached plan.
+ * </p>
+ *
+ * <p>
+ * Each entry remembers the {@link RecordMetaData#getVersion() meta-data version} and the index states of the
+ * {@link RecordStoreState} it was planned against. If either has changed when the entry is next looked up, the
+ * entry is invalidated and the query is planned again. Note that this means a single cache should only be shared
+ * between stores using meta-data from the same source, as the meta-data version is the only part of the meta-data
+ * that is compared.
+ * </p>
+ *
+ * <p>
+ * Hits, misses, invalidations and evictions are reported through the {@link StoreTimer} given to
+ * {@link #getOrPlan}. Because evictions happen asynchronously with respect to any particular caller, they are
+ * accumulated by the cache and reported to the next timer that is supplied.
+ * </p>
+ *
+ * @see CachingQueryPlanner
+ */
+@API(API.Status.EXPERIMENTAL)
+public class QueryPlanCache {
+    /**
+     * The default maximum number of plans retained by the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 1024L;
+
+    @Nonnull
+    private final Cache<Key, Entry> cache;
+    private final long maxSize;
+    @Nonnull
+    private final AtomicLong unreportedEvictions;
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public QueryPlanCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.unreportedEvictions = new AtomicLong();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    private void onRemoval(@Nonnull RemovalNotification<Key, Entry> notification) {
+        if (notification.wasEvicted()) {
+            unreportedEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the maximum number of plans stored by the cache.
+     * @return the maximum number of plans stored by the cache
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the approximate number of plans currently stored by the cache.
+     * @return the approximate number of cached plans
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all plans from the cache.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Remove all plans that were planned against a meta-data version other than the given one.
+     * Stale entries are also removed lazily when they are looked up, but this allows callers that learn about a
+     * meta-data change to release the memory held by the old plans promptly.
+     * @param metaDataVersion the current meta-data version
+     */
+    public void invalidateOtherVersions(int metaDataVersion) {
+        cache.asMap().values().removeIf(entry -> entry.metaDataVersion != metaDataVersion);
+    }
+
+    /**
+     * Get the plan for the given query from the cache or, if there is no valid cached plan, plan it with the given
+     * supplier and add the result to the cache.
+     * @param planner the planner whose meta-data, store state and configuration the plan must be valid for
+     * @param query the query to plan
+     * @param parameterRelationshipGraph the parameter relationship graph given to the planner
+     * @param timer timer used to record cache statistics or {@code null}
+     * @param planSupplier supplier that actually plans the query on a cache miss
+     * @return the (possibly cached) plan result
+     */
+    @Nonnull
+    public QueryPlanResult getOrPlan(@Nonnull QueryPlanner planner,
+                                     @Nonnull RecordQuery query,
+                                     @Nonnull ParameterRelationshipGraph parameterRelationshipGraph,
+                                     @Nullable StoreTimer timer,
+                                     @Nonnull Supplier<QueryPlanResult> planSupplier) {
+        final Key key = new Key(query, parameterRelationshipGraph, planner.getConfiguration());
+        final int metaDataVersion = planner.getRecordMetaData().getVersion();
+        final Map<String, IndexState> indexStates = nonReadableIndexStates(planner.getRecordStoreState());
+        try {
+            final Entry existing = cache.getIfPresent(key);
+            if (existing != null) {
+                if (existing.isValidFor(metaDataVersion, indexStates)) {
+                    increment(timer, FDBStoreTimer.Counts.PLAN_CACHE_HIT);
+                    return existing.planResult;
+                }
+                cache.asMap().remove(key, existing);
+                increment(timer, FDBStoreTimer.Counts.PLAN_CACHE_INVALIDATION);
+            }
+            increment(timer, FDBStoreTimer.Counts.PLAN_CACHE_MISS);
+            final QueryPlanResult planResult = planSupplier.get();
+            cache.put(key, new Entry(metaDataVersion, indexStates, planResult));
+            return planResult;
+        } finally {
+            reportEvictions(timer);
+        }
+    }
+
+    @Nonnull
+    private static Map<String, IndexState> nonReadableIndexStates(@Nonnull RecordStoreState recordStoreState) {
+        // Readable is the default state, so it may or may not be present explicitly in the map.
+        final ImmutableMap.Builder<String, IndexState> builder = ImmutableMap.builder();
+        for (Map.Entry<String, IndexState> entry : recordStoreState.getIndexStates().entrySet()) {
+            if (entry.getValue() != IndexState.READABLE) {
+                builder.put(entry);
+            }
+        }
+        return builder.build();
+    }
+
+    private void reportEvictions(@Nullable StoreTimer timer) {
+        if (timer != null && unreportedEvictions.get() > 0) {
+            final long evictions = unreportedEvictions.getAndSet(0L);
+            if (evictions > 0) {
+                timer.increment(FDBStoreTimer.Counts.PLAN_CACHE_EVICTION, (int)Math.min(evictions, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    private static void increment(@Nullable StoreTimer timer, @Nonnull StoreTimer.Count count) {
+        if (timer != null) {
+            timer.increment(count);
+        }
+    }
+
+    /**
+     * Cache key. Everything that affects the shape of a plan other than the meta-data and store state, which are
+     * validated separately so that changes to them replace the entry rather than leaving it to age out.
+     */
+    private static final class Key {
+        @Nonnull
+        private final RecordQuery query;
+        @Nonnull
+        private final ParameterRelationshipGraph parameterRelationshipGraph;
+        @Nonnull
+        private final RecordPlannerConfigurationProto.PlannerConfiguration configuration;
+        @Nullable
+        private final RecordQueryPlannerSortConfiguration sortConfiguration;
+        private final int queryHash;
+
+        private Key(@Nonnull RecordQuery query, @Nonnull ParameterRelationshipGraph parameterRelationshipGraph,
+                    @Nonnull RecordQueryPlannerConfiguration configuration) {
+            this.query = query;
+            this.parameterRelationshipGraph = parameterRelationshipGraph;
+            this.configuration = configuration.toProto();
+            this.sortConfiguration = configuration.getSortConfiguration();
+            this.queryHash = query.queryHash(QueryHashable.QueryHashKind.STRUCTURAL_WITH_LITERALS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key)o;
+            return queryHash == key.queryHash &&
+                   query.equals(key.query) &&
+                   parameterRelationshipGraph.equals(key.parameterRelationshipGraph) &&
+                   configuration.equals(key.configuration) &&
+                   Objects.equals(sortConfiguration, key.sortConfiguration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(queryHash, parameterRelationshipGraph, configuration);
+        }
+
+        @Override
+        public String toString() {
+            return query.toString();
+        }
+    }
+
+    private static final class Entry {
+        private final int metaDataVersion;
+        @Nonnull
+        private final Map<String, IndexState> indexStates;
+        @Nonnull
+        private final QueryPlanResult planResult;
+
+        private Entry(int metaDataVersion, @Nonnull Map<String, IndexState> indexStates, @Nonnull QueryPlanResult planResult) {
+            this.metaDataVersion = metaDataVersion;
+            this.indexStates = indexStates;
+            this.planResult = planResult;
+        }
+
+        private boolean isValidFor(int metaDataVersion, @Nonnull Map<String, IndexState> indexStates) {
+            return this.metaDataVersion == metaDataVersion && this.indexStates.equals(indexStates);
+        }
+    }
+}
@@ -21,7 +21,9 @@
 package com.apple.foundationdb.record.query.plan.cascades;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
 import com.apple.foundationdb.record.query.plan.QueryPlanner.IndexScanPreference;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlannerConfiguration;
@@ -36,18 +38,26 @@ import com.apple.foundationdb.record.query.plan.cascades.properties.RelationalEx
 import com.apple.foundationdb.record.query.plan.cascades.properties.TypeFilterCountProperty;
 import com.apple.foundationdb.record.query.plan.cascades.properties.UnmatchedFieldsCountProperty;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryCoveringIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.InSource;
+import com.apple.foundationdb.record.query.plan.plans.InValuesSource;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartialRecordPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInUnionPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithIndex;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 import javax.annotation.Nonnull;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.OptionalDouble;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -56,6 +66,20 @@ import static com.apple.foundationdb.record.Bindings.Internal.CORRELATION;
 
 /**
  * A comparator implementing the current heuristic cost model for the {@link CascadesPlanner}.
+ *
+ * <p>
+ * If {@link IndexStatistics} are available for the indexes involved, plans whose data accesses are all index scans
+ * are first compared by the estimated number of index entries they read. Only a difference of at least
+ * {@link #STATISTICS_SIGNIFICANCE_FACTOR} is considered decisive, as the estimates are based on samples; otherwise,
+ * the structural heuristics are used.
+ * </p>
+ *
+ * <p>
+ * A {@link RecordQueryHashJoinPlan} is only preferred over the equivalent nested loop join when the statistics show
+ * that it reads significantly fewer entries, since it has to read its entire build side whereas the nested loop join
+ * can often look up each outer row's matches using an index. Likewise, a {@link RecordQueryHashAggregationPlan} loses
+ * to a streaming aggregation over an input that is already ordered by the grouping values.
+ * </p>
  */
 @API(API.Status.EXPERIMENTAL)
 public class CascadesCostModel implements Comparator<RelationalExpression> {
@@ -66,13 +90,36 @@ public class CascadesCostModel implements Comparator<RelationalExpression> {
                     RecordQueryPlanWithIndex.class,
                     RecordQueryCoveringIndexPlan.class,
                     RecordQueryFetchFromPartialRecordPlan.class,
-                    RecordQueryInJoinPlan.class);
+                    RecordQueryInJoinPlan.class,
+                    RecordQueryFlatMapPlan.class,
+                    RecordQueryHashJoinPlan.class,
+                    RecordQueryHashAggregationPlan.class);
+
+    /**
+     * How many times more entries one plan must be estimated to read than another before the statistics alone
+     * decide between them.
+     */
+    public static final double STATISTICS_SIGNIFICANCE_FACTOR = 2.0;
+
+    /**
+     * The number of index entries that starting the inner scan of a nested loop join is considered to be worth,
+     * in addition to the entries it actually reads.
+     */
+    public static final double NESTED_LOOP_PROBE_COST = 1.0;
 
     @Nonnull
     private final RecordQueryPlannerConfiguration configuration;
+    @Nonnull
+    private final Map<String, IndexStatistics> indexStatistics;
 
     public CascadesCostModel(@Nonnull RecordQueryPlannerConfiguration configuration) {
+        this(configuration, ImmutableMap.of());
+    }
+
+    public CascadesCostModel(@Nonnull RecordQueryPlannerConfiguration configuration,
+                             @Nonnull Map<String, IndexStatistics> indexStatistics) {
         this.configuration = configuration;
+        this.indexStatistics = indexStatistics;
     }
 
     @Override
@@ -118,6 +165,21 @@ public class CascadesCostModel implements Comparator<RelationalExpression> {
             }
         }
 
+        if (!indexStatistics.isEmpty()) {
+            final OptionalInt estimatedEntriesCompare = compareEstimatedEntries(a, b, planOpsMapA, planOpsMapB);
+            if (estimatedEntriesCompare.isPresent()) {
+                return estimatedEntriesCompare.getAsInt();
+            }
+        }
+
+        final int hashOperatorCountCompare =
+                Integer.compare(count(planOpsMapA, RecordQueryHashJoinPlan.class, RecordQueryHashAggregationPlan.class),
+                        count(planOpsMapB, RecordQueryHashJoinPlan.class, RecordQueryHashAggregationPlan.class));
+        if (hashOperatorCountCompare != 0) {
+            // fewer hash joins and hash aggregations win
+            return hashOperatorCountCompare;
+        }
+
         int unsatisfiedFilterCompare = Long.compare(NormalizedResidualPredicateProperty.countNormalizedConjuncts(a),
                 NormalizedResidualPredicateProperty.countNormalizedConjuncts(b));
         if (unsatisfiedFilterCompare != 0) {
@@ -262,6 +324,144 @@ public class CascadesCostModel implements Comparator<RelationalExpression> {
                         });
     }
 
+    @Nonnull
+    private OptionalInt compareEstimatedEntries(@Nonnull RelationalExpression a,
+                                                @Nonnull RelationalExpression b,
+                                                @Nonnull Map<Class<? extends RelationalExpression>, Set<RelationalExpression>> planOpsMapA,
+                                                @Nonnull Map<Class<? extends RelationalExpression>, Set<RelationalExpression>> planOpsMapB) {
+        final OptionalDouble estimateA = estimateEntriesRead(a, planOpsMapA);
+        if (estimateA.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        final OptionalDouble estimateB = estimateEntriesRead(b, planOpsMapB);
+        if (estimateB.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        // Add one to each so that two tiny estimates do not look significantly different.
+        final double entriesA = estimateA.getAsDouble() + 1.0;
+        final double entriesB = estimateB.getAsDouble() + 1.0;
+        if (entriesA * STATISTICS_SIGNIFICANCE_FACTOR <= entriesB) {
+            return OptionalInt.of(-1);
+        }
+        if (entriesB * STATISTICS_SIGNIFICANCE_FACTOR <= entriesA) {
+            return OptionalInt.of(1);
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Estimate the total number of index entries read by all the data accesses of a plan. Intersections and unions
+     * read all of their legs, so the estimates of the individual scans are added up. Scans underneath in-joins and
+     * in-unions are repeated once per in-value. For joins, see {@link #estimateJoinEntriesRead}.
+     * @param expression the plan
+     * @param planOpsMap the interesting operators of the plan
+     * @return the estimated number of entries read or {@code OptionalDouble.empty()} if some data access cannot be
+     *         estimated from the available statistics
+     */
+    @Nonnull
+    private OptionalDouble estimateEntriesRead(@Nonnull RelationalExpression expression,
+                                               @Nonnull Map<Class<? extends RelationalExpression>, Set<RelationalExpression>> planOpsMap) {
+        if (count(planOpsMap, RecordQueryScanPlan.class) > 0) {
+            return OptionalDouble.empty();
+        }
+        if (count(planOpsMap, RecordQueryFlatMapPlan.class, RecordQueryHashJoinPlan.class) > 0) {
+            return estimateJoinEntriesRead(expression);
+        }
+        double multiplier = 1.0;
+        for (RelationalExpression inPlan : FindExpressionProperty.slice(planOpsMap, RecordQueryInJoinPlan.class)) {
+            final OptionalInt inValuesCount = countInValues(((RecordQueryInJoinPlan)inPlan).getInSource());
+            if (inValuesCount.isEmpty()) {
+                return OptionalDouble.empty();
+            }
+            multiplier *= inValuesCount.getAsInt();
+        }
+        for (RelationalExpression inPlan : FindExpressionProperty.findExpressions(RecordQueryInUnionPlan.class, expression)) {
+            for (InSource inSource : ((RecordQueryInUnionPlan)inPlan).getInSources()) {
+                final OptionalInt inValuesCount = countInValues(inSource);
+                if (inValuesCount.isEmpty()) {
+                    return OptionalDouble.empty();
+                }
+                multiplier *= inValuesCount.getAsInt();
+            }
+        }
+        double total = 0.0;
+        final Set<? extends RelationalExpression> dataAccesses =
+                FindExpressionProperty.slice(planOpsMap, RecordQueryPlanWithIndex.class, RecordQueryCoveringIndexPlan.class);
+        if (dataAccesses.isEmpty()) {
+            return OptionalDouble.empty();
+        }
+        for (RelationalExpression dataAccess : dataAccesses) {
+            RelationalExpression indexAccess = dataAccess;
+            if (indexAccess instanceof RecordQueryCoveringIndexPlan) {
+                indexAccess = ((RecordQueryCoveringIndexPlan)indexAccess).getIndexPlan();
+            }
+            if (!(indexAccess instanceof RecordQueryIndexPlan)) {
+                return OptionalDouble.empty();
+            }
+            final RecordQueryIndexPlan indexPlan = (RecordQueryIndexPlan)indexAccess;
+            final IndexStatistics statistics = indexStatistics.get(indexPlan.getIndexName());
+            if (statistics == null || indexPlan.getScanType() != IndexScanType.BY_VALUE || !indexPlan.hasScanComparisons()) {
+                return OptionalDouble.empty();
+            }
+            total += statistics.estimateEntries(indexPlan.getScanComparisons());
+        }
+        return OptionalDouble.of(total * multiplier);
+    }
+
+    /**
+     * Estimate the total number of index entries read by a plan that contains joins. The number of entries read by a
+     * join's outer side is taken as the number of rows it produces. A nested loop join then reads its inner side once
+     * per outer row, whereas a hash join reads each side once. Where the planner has more than one alternative for a
+     * child, the cheapest one is used.
+     * @param expression the plan
+     * @return the estimated number of entries read or {@code OptionalDouble.empty()} if some data access cannot be
+     *         estimated from the available statistics
+     */
+    @Nonnull
+    private OptionalDouble estimateJoinEntriesRead(@Nonnull RelationalExpression expression) {
+        if (expression instanceof RecordQueryFlatMapPlan) {
+            final RecordQueryFlatMapPlan flatMapPlan = (RecordQueryFlatMapPlan)expression;
+            final OptionalDouble outer = estimateReferenceEntriesRead(flatMapPlan.getOuterQuantifier().getRangesOver());
+            final OptionalDouble inner = estimateReferenceEntriesRead(flatMapPlan.getInnerQuantifier().getRangesOver());
+            if (outer.isEmpty() || inner.isEmpty()) {
+                return OptionalDouble.empty();
+            }
+            return OptionalDouble.of(outer.getAsDouble() + outer.getAsDouble() * (inner.getAsDouble() + NESTED_LOOP_PROBE_COST));
+        }
+        final Map<Class<? extends RelationalExpression>, Set<RelationalExpression>> planOpsMap =
+                FindExpressionProperty.evaluate(interestingPlanClasses, expression);
+        if (count(planOpsMap, RecordQueryFlatMapPlan.class, RecordQueryHashJoinPlan.class) == 0) {
+            return estimateEntriesRead(expression, planOpsMap);
+        }
+        // A hash join reads each of its children once, as does anything else above a join.
+        double total = 0.0;
+        for (Quantifier quantifier : expression.getQuantifiers()) {
+            final OptionalDouble child = estimateReferenceEntriesRead(quantifier.getRangesOver());
+            if (child.isEmpty()) {
+                return OptionalDouble.empty();
+            }
+            total += child.getAsDouble();
+        }
+        return OptionalDouble.of(total);
+    }
+
+    @Nonnull
+    private OptionalDouble estimateReferenceEntriesRead(@Nonnull Reference reference) {
+        return reference.getMembers().stream()
+                .map(this::estimateJoinEntriesRead)
+                .filter(OptionalDouble::isPresent)
+                .mapToDouble(OptionalDouble::getAsDouble)
+                .min();
+    }
+
+    @Nonnull
+    private static OptionalInt countInValues(@Nonnull InSource inSource) {
+        if (inSource instanceof InValuesSource) {
+            return OptionalInt.of(((InValuesSource)inSource).getValues().size());
+        }
+        return OptionalInt.empty();
+    }
+
     /**
      * Method to break a tie between a plan using singular index scan and one using a singular primary scan.
      * <br>
@@ -26,6 +26,7 @@ import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordStoreState;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics;
 import com.apple.foundationdb.record.query.IndexQueryabilityFilter;
 import com.apple.foundationdb.record.query.ParameterRelationshipGraph;
 import com.apple.foundationdb.record.query.RecordQuery;
@@ -49,6 +50,7 @@ import com.apple.foundationdb.record.query.plan.plans.QueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +58,7 @@ import javax.annotation.Nonnull;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Deque;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -211,6 +214,8 @@ public class CascadesPlanner implements QueryPlanner {
     private Traversal traversal;
     @Nonnull
     private Deque<Task> taskStack; // Use a Dequeue instead of a Stack because we don't need synchronization.
+    @Nonnull
+    private Map<String, IndexStatistics> indexStatistics;
     // total tasks executed for the current plan
     private int taskCount;
     // max size of the task queue encountered during the planning
@@ -225,6 +230,7 @@ public class CascadesPlanner implements QueryPlanner {
         this.metaData = metaData;
         this.recordStoreState = recordStoreState;
         this.ruleSet = ruleSet;
+        this.indexStatistics = ImmutableMap.of();
         // Placeholders until we get a query.
         this.currentRoot = Reference.empty();
         this.traversal = Traversal.withRoot(currentRoot);
@@ -296,6 +302,23 @@ public class CascadesPlanner implements QueryPlanner {
         this.configuration = configuration;
     }
 
+    /**
+     * Set the index statistics used by the {@link CascadesCostModel} to compare plans by the estimated number of
+     * index entries they read. Statistics for a record store can be loaded with
+     * {@link IndexStatistics#loadAllAsync}. Note that a {@link com.apple.foundationdb.record.query.plan.QueryPlanCache}
+     * does not take statistics into account, so plans cached before new statistics were set continue to be used
+     * until they are otherwise invalidated.
+     * @param indexStatistics a map from index name to the statistics for that index
+     */
+    public void setIndexStatistics(@Nonnull final Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = ImmutableMap.copyOf(indexStatistics);
+    }
+
+    @Nonnull
+    public Map<String, IndexStatistics> getIndexStatistics() {
+        return indexStatistics;
+    }
+
     private boolean isTaskQueueSizeExceeded(final RecordQueryPlannerConfiguration configuration, final int queueSize) {
         return ((configuration.getMaxTaskQueueSize() > 0) && (queueSize > configuration.getMaxTaskQueueSize()));
     }
@@ -508,7 +531,7 @@ public class CascadesPlanner implements QueryPlanner {
             } else {
                 RelationalExpression bestMember = null;
                 for (RelationalExpression member : group.getMembers()) {
-                    if (bestMember == null || new CascadesCostModel(configuration).compare(member, bestMember) < 0) {
+                    if (bestMember == null || new CascadesCostModel(configuration, indexStatistics).compare(member, bestMember) < 0) {
                         if (bestMember != null) {
                             // best member is being pruned
                             traversal.removeExpression(group, bestMember);
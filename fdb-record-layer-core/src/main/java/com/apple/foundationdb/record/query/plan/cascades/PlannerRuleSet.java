@@ -35,6 +35,8 @@ import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementInJoinRu
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementInUnionRule;
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementInsertRule;
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementIntersectionRule;
+import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementHashAggregationRule;
+import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementHashJoinRule;
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementNestedLoopJoinRule;
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementPhysicalScanRule;
 import com.apple.foundationdb.record.query.plan.cascades.rules.ImplementSimpleSelectRule;
@@ -162,9 +164,11 @@ public class PlannerRuleSet {
             new ImplementSimpleSelectRule(),
             new ImplementExplodeRule(),
             new ImplementNestedLoopJoinRule(),
+            new ImplementHashJoinRule(),
             new PartitionSelectRule(),
             new PartitionBinarySelectRule(),
             new ImplementStreamingAggregationRule(),
+            new ImplementHashAggregationRule(),
             new ImplementDeleteRule(),
             new ImplementInsertRule(),
             new ImplementUpdateRule()
@@ -84,6 +84,11 @@ public class NodeInfo {
             NodeIcon.COMPUTATION_OPERATOR,
             "Nested Loop Join",
             "A nested loop join operator performs a relational join between its two input operands by reevaluating the right (inner) side for each left (outer) record.");
+    public static final NodeInfo HASH_JOIN_OPERATOR = new NodeInfo(
+            "HashJoinOperator",
+            NodeIcon.COMPUTATION_OPERATOR,
+            "Hash Join",
+            "A hash join operator performs an equi-join between its two input operands by loading the right (build) side into a hash table and probing it with each left (probe) record.");
     public static final NodeInfo LOAD_BY_KEYS_OPERATOR = new NodeInfo(
             "LoadByKeysOperator",
             NodeIcon.DATA_ACCESS_OPERATOR,
@@ -179,6 +184,11 @@ public class NodeInfo {
             NodeIcon.COMPUTATION_OPERATOR,
             "Streaming Aggregate",
             "A streaming aggregate operator accumulates values from its input and applies a function to produce new values (e.g. SUM, MAX). It also groups the inputs by its grouping parameters.");
+    public static final NodeInfo HASH_AGGREGATE_OPERATOR = new NodeInfo(
+            "HashAggregateOperator",
+            NodeIcon.COMPUTATION_OPERATOR,
+            "Hash Aggregate",
+            "A hash aggregate operator groups the values from its input by its grouping parameters in a hash table, which does not require the input to be ordered, and applies a function to produce new values (e.g. SUM, MAX) for each group.");
     public static final NodeInfo COMPARATOR_OPERATOR = new NodeInfo(
             "ComparatorOperator",
             NodeIcon.COMPUTATION_OPERATOR,
@@ -237,6 +247,8 @@ public class NodeInfo {
                 INDEX_SCAN_OPERATOR,
                 INTERSECTION_OPERATOR,
                 NESTED_LOOP_JOIN_OPERATOR,
+                HASH_JOIN_OPERATOR,
+                HASH_AGGREGATE_OPERATOR,
                 LOAD_BY_KEYS_OPERATOR,
                 PREDICATE_FILTER_OPERATOR,
                 SCAN_OPERATOR,
@@ -46,6 +46,8 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartia
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFirstOrDefaultPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInComparandJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInParameterJoinPlan;
@@ -680,6 +682,12 @@ public class RecordQueryPlanMatchers {
         return childrenPlans(RecordQueryMapPlan.class, downstream);
     }
 
+    @Nonnull
+    public static BindingMatcher<RecordQueryHashJoinPlan> hashJoinPlan(@Nonnull final BindingMatcher<? extends RecordQueryPlan> probeDownstream,
+                                                                       @Nonnull final BindingMatcher<? extends RecordQueryPlan> buildDownstream) {
+        return childrenPlans(RecordQueryHashJoinPlan.class, exactly(probeDownstream, buildDownstream));
+    }
+
     @Nonnull
     public static BindingMatcher<RecordQueryFlatMapPlan> flatMapResult(@Nonnull BindingMatcher<? extends Value> downstream) {
         return typedWithDownstream(RecordQueryFlatMapPlan.class,
@@ -714,6 +722,11 @@ public class RecordQueryPlanMatchers {
         return childrenPlans(RecordQueryStreamingAggregationPlan.class, all(downstream));
     }
 
+    @Nonnull
+    public static BindingMatcher<RecordQueryHashAggregationPlan> hashAggregationPlan(@Nonnull final BindingMatcher<? extends RecordQueryPlan> downstream) {
+        return childrenPlans(RecordQueryHashAggregationPlan.class, all(downstream));
+    }
+
     @Nonnull
     public static BindingMatcher<RecordQueryStreamingAggregationPlan> aggregations(@Nonnull BindingMatcher<? extends Value> downstream) {
         return typedWithDownstream(RecordQueryStreamingAggregationPlan.class,
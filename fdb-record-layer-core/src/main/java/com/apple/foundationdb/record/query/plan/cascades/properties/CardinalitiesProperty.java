@@ -62,6 +62,8 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartia
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFirstOrDefaultPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInComparandJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInParameterJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInUnionOnKeyExpressionPlan;
@@ -400,6 +402,27 @@ public class CardinalitiesProperty implements ExpressionProperty<CardinalitiesPr
         return outerCardinalities.times(innerCardinalities);
     }
 
+    @Nonnull
+    @Override
+    public Cardinalities visitRecordQueryHashAggregationPlan(@Nonnull final RecordQueryHashAggregationPlan hashAggregationPlan) {
+        // if the grouping value is constant, the cardinality ranges between 0 and 1.
+        if (hashAggregationPlan.getGroupingValue().isConstant()) {
+            return new Cardinalities(Cardinality.ofCardinality(0L), Cardinality.ofCardinality(1L));
+        }
+        return Cardinalities.unknownMaxCardinality();
+    }
+
+    @Nonnull
+    @Override
+    public Cardinalities visitRecordQueryHashJoinPlan(@Nonnull final RecordQueryHashJoinPlan hashJoinPlan) {
+        final var fromChildren = fromChildren(hashJoinPlan);
+        final var probeCardinalities = fromChildren.get(0);
+        final var buildCardinalities = fromChildren.get(1);
+
+        return new Cardinalities(Cardinality.ofCardinality(0L),
+                probeCardinalities.times(buildCardinalities).getMaxCardinality());
+    }
+
     @Nonnull
     @Override
     public Cardinalities visitRecordQueryStreamingAggregationPlan(@Nonnull final RecordQueryStreamingAggregationPlan element) {
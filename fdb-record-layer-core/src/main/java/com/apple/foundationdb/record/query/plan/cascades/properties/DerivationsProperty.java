@@ -26,6 +26,7 @@ import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
 import com.apple.foundationdb.record.query.plan.bitmap.ComposedBitmapIndexQueryPlan;
 import com.apple.foundationdb.record.query.plan.cascades.AliasMap;
+import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
 import com.apple.foundationdb.record.query.plan.cascades.Reference;
 import com.apple.foundationdb.record.query.plan.cascades.PlanProperty;
 import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
@@ -49,6 +50,8 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartia
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFirstOrDefaultPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInComparandJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInParameterJoinPlan;
@@ -64,6 +67,7 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryLoadByKeysPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryMapPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanVisitor;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithChild;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithComparisonKeyValues;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithComparisons;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPredicatesFilterPlan;
@@ -89,6 +93,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Objects;
 
@@ -555,28 +560,87 @@ public class DerivationsProperty implements PlanProperty<DerivationsProperty.Der
                             .build());
         }
 
+        @Nonnull
+        @Override
+        public Derivations visitHashJoinPlan(@Nonnull final RecordQueryHashJoinPlan hashJoinPlan) {
+            final var probeQuantifier = hashJoinPlan.getProbeQuantifier();
+            final var buildQuantifier = hashJoinPlan.getBuildQuantifier();
+            final var probeDerivations = derivationsFromQuantifier(probeQuantifier);
+            final var buildDerivations = derivationsFromQuantifier(buildQuantifier);
+
+            // The build side is not correlated to the probe side, so only the result value needs de-correlating.
+            final var resultValue = hashJoinPlan.getResultValue();
+            final var decorrelatedResultValuesBuilder = ImmutableList.<Value>builder();
+            for (final var probeResultValue : probeDerivations.getResultValues()) {
+                for (final var buildResultValue : buildDerivations.getResultValues()) {
+                    final var resultsTranslationMap = TranslationMap.builder()
+                            .when(probeQuantifier.getAlias()).then((sourceAlias, leafValue) -> probeResultValue)
+                            .when(buildQuantifier.getAlias()).then((sourceAlias, leafValue) -> buildResultValue)
+                            .build();
+                    decorrelatedResultValuesBuilder.add(resultValue.translateCorrelationsAndSimplify(resultsTranslationMap));
+
+                    if (!resultValue.isCorrelatedTo(buildQuantifier.getAlias())) {
+                        // would just lead to duplicated Values
+                        break;
+                    }
+                }
+
+                if (!resultValue.isCorrelatedTo(probeQuantifier.getAlias())) {
+                    // would just lead to duplicated Values
+                    break;
+                }
+            }
+
+            final var decorrelatedResultValues = decorrelatedResultValuesBuilder.build();
+
+            return new Derivations(decorrelatedResultValues,
+                    ImmutableList.<Value>builder()
+                            .addAll(probeDerivations.getLocalValues())
+                            .addAll(buildDerivations.getLocalValues())
+                            .addAll(decorrelatedResultValues)
+                            .build());
+        }
+
         @Nonnull
         @Override
         public Derivations visitStreamingAggregationPlan(@Nonnull final RecordQueryStreamingAggregationPlan streamingAggregationPlan) {
+            return derivationsForAggregation(streamingAggregationPlan, streamingAggregationPlan.getInner(),
+                    streamingAggregationPlan.getGroupingValue(), streamingAggregationPlan.getGroupingKeyAlias(),
+                    streamingAggregationPlan.getAggregateValue(), streamingAggregationPlan.getAggregateAlias());
+        }
+
+        @Nonnull
+        @Override
+        public Derivations visitHashAggregationPlan(@Nonnull final RecordQueryHashAggregationPlan hashAggregationPlan) {
+            return derivationsForAggregation(hashAggregationPlan, hashAggregationPlan.getInner(),
+                    hashAggregationPlan.getGroupingValue(), hashAggregationPlan.getGroupingKeyAlias(),
+                    hashAggregationPlan.getAggregateValue(), hashAggregationPlan.getAggregateAlias());
+        }
+
+        @Nonnull
+        private Derivations derivationsForAggregation(@Nonnull final RecordQueryPlanWithChild aggregationPlan,
+                                                      @Nonnull final Quantifier.Physical innerQuantifier,
+                                                      @Nullable final Value groupingValue,
+                                                      @Nonnull final CorrelationIdentifier groupingKeyAlias,
+                                                      @Nonnull final Value aggregateValue,
+                                                      @Nonnull final CorrelationIdentifier aggregateAlias) {
             //
             // get the result value and translate the groupings and aggregations into it
             //
-            final var resultValue = streamingAggregationPlan.getResultValue();
+            final var resultValue = aggregationPlan.getResultValue();
             final var resultTranslationMap = TranslationMap.builder();
 
-            final var groupingValue = streamingAggregationPlan.getGroupingValue();
             if (groupingValue != null) {
                 resultTranslationMap
-                        .when(streamingAggregationPlan.getGroupingKeyAlias())
-                        .then((sourceAlias, leafValue) -> streamingAggregationPlan.getGroupingValue());
+                        .when(groupingKeyAlias)
+                        .then((sourceAlias, leafValue) -> groupingValue);
             }
 
-            resultTranslationMap.when(streamingAggregationPlan.getAggregateAlias())
-                    .then((sourceAlias, leafValue) -> streamingAggregationPlan.getAggregateValue());
+            resultTranslationMap.when(aggregateAlias)
+                    .then((sourceAlias, leafValue) -> aggregateValue);
 
             final var expandedResultValue = resultValue.translateCorrelationsAndSimplify(resultTranslationMap.build());
-            final var childDerivations = derivationsFromSingleChild(streamingAggregationPlan);
-            final var innerQuantifier = streamingAggregationPlan.getInner();
+            final var childDerivations = derivationsFromSingleChild(aggregationPlan);
             final var decorrelatedResultValuesBuilder = ImmutableList.<Value>builder();
             for (final var childResultValue : childDerivations.getResultValues()) {
                 final var translationMap = TranslationMap.builder()
@@ -47,6 +47,8 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryFetchFromPartia
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFirstOrDefaultPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFlatMapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInComparandJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInJoinPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryInParameterJoinPlan;
@@ -492,6 +494,20 @@ public class OrderingProperty implements PlanProperty<Ordering> {
             return Ordering.concatOrderings(outerOrdering, innerOrdering);
         }
 
+        @Nonnull
+        @Override
+        public Ordering visitHashAggregationPlan(@Nonnull final RecordQueryHashAggregationPlan hashAggregationPlan) {
+            // groups come out of the hash table in no particular order
+            return Ordering.empty();
+        }
+
+        @Nonnull
+        @Override
+        public Ordering visitHashJoinPlan(@Nonnull final RecordQueryHashJoinPlan hashJoinPlan) {
+            // Probe order is only kept when the build side fits in memory, which is not known until execution.
+            return Ordering.empty();
+        }
+
         @Nonnull
         @Override
         public Ordering visitStreamingAggregationPlan(@Nonnull final RecordQueryStreamingAggregationPlan streamingAggregationPlan) {
@@ -0,0 +1,115 @@
+/*
+ * ImplementHashAggregationRule.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.cascades.rules;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.cursors.aggregate.HashGrouping;
+import com.apple.foundationdb.record.query.plan.cascades.AliasMap;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesRule;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesRuleCall;
+import com.apple.foundationdb.record.query.plan.cascades.PlanPartition;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.Reference;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.GroupByExpression;
+import com.apple.foundationdb.record.query.plan.cascades.matching.structure.BindingMatcher;
+import com.apple.foundationdb.record.query.plan.cascades.matching.structure.ReferenceMatchers;
+import com.apple.foundationdb.record.query.plan.cascades.properties.OrderingProperty;
+import com.apple.foundationdb.record.query.plan.cascades.values.AggregateValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.Values;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import javax.annotation.Nonnull;
+
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.AnyMatcher.any;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.MultiMatcher.all;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.QuantifierMatchers.forEachQuantifierOverRef;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RelationalExpressionMatchers.groupByExpression;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers.recordConstructorValue;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers.streamableAggregateValue;
+
+/**
+ * Rule for implementing logical {@code GROUP BY} into a physical hash aggregate operator {@link RecordQueryHashAggregationPlan}.
+ *
+ * The hash aggregate is only used over plans whose ordering does not satisfy the grouping values, since those are
+ * exactly the plans that {@link ImplementStreamingAggregationRule} cannot aggregate. Without this rule, a group by
+ * over such an input can only be planned if something else provides the ordering, such as an index or a sort.
+ */
+@API(API.Status.EXPERIMENTAL)
+@SuppressWarnings("PMD.TooManyStaticImports")
+public class ImplementHashAggregationRule extends CascadesRule<GroupByExpression> {
+    @Nonnull
+    private static final BindingMatcher<Reference> lowerRefMatcher = ReferenceMatchers.anyRef();
+    @Nonnull
+    private static final BindingMatcher<Quantifier.ForEach> innerQuantifierMatcher = forEachQuantifierOverRef(lowerRefMatcher);
+    @Nonnull
+    private static final BindingMatcher<GroupByExpression> root =
+            groupByExpression(recordConstructorValue(all(streamableAggregateValue())), any(innerQuantifierMatcher));
+
+    public ImplementHashAggregationRule() {
+        super(root);
+    }
+
+    @Override
+    public void onMatch(@Nonnull final CascadesRuleCall call) {
+        final var bindings = call.getBindings();
+
+        final var groupByExpression = bindings.get(root);
+        final var groupingValue = groupByExpression.getGroupingValue();
+        if (groupingValue == null || !HashGrouping.isSupported(groupByExpression.getAggregateValue())) {
+            return;
+        }
+
+        final var correlatedTo = groupByExpression.getCorrelatedTo();
+        final var innerQuantifier = Iterables.getOnlyElement(groupByExpression.getQuantifiers());
+        final var currentGroupingValue = groupingValue.rebase(AliasMap.ofAliases(innerQuantifier.getAlias(), Quantifier.current()));
+        final var requiredOrderingKeyValues =
+                Values.primitiveAccessorsForType(currentGroupingValue.getResultType(), () -> currentGroupingValue, correlatedTo)
+                        .stream()
+                        .collect(ImmutableSet.toImmutableSet());
+
+        final var innerReference = innerQuantifier.getRangesOver();
+        final var planPartitions = PlanPartition.rollUpTo(innerReference.getPlanPartitions(), OrderingProperty.ORDERING);
+
+        final ImmutableList.Builder<RecordQueryPlan> unorderedPlansBuilder = ImmutableList.builder();
+        for (final var planPartition : planPartitions) {
+            final var providedOrdering = planPartition.getAttributeValue(OrderingProperty.ORDERING);
+            if (!providedOrdering.satisfiesGroupingValues(requiredOrderingKeyValues)) {
+                unorderedPlansBuilder.addAll(planPartition.getPlans());
+            }
+        }
+        final var unorderedPlans = unorderedPlansBuilder.build();
+        if (unorderedPlans.isEmpty()) {
+            return;
+        }
+
+        final var newInnerPlanReference = call.memoizeMemberPlans(innerReference, unorderedPlans);
+        final var newPlanQuantifier = Quantifier.physical(newInnerPlanReference);
+        final var aliasMap = AliasMap.ofAliases(innerQuantifier.getAlias(), newPlanQuantifier.getAlias());
+        call.yieldExpression(RecordQueryHashAggregationPlan.of(newPlanQuantifier,
+                groupingValue.rebase(aliasMap),
+                (AggregateValue)groupByExpression.getAggregateValue().rebase(aliasMap),
+                groupByExpression.getResultValueFunction()));
+    }
+}
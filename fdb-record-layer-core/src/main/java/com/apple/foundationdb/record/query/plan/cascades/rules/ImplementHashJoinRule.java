@@ -0,0 +1,212 @@
+/*
+ * ImplementHashJoinRule.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.cascades.rules;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesRule;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesRuleCall;
+import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
+import com.apple.foundationdb.record.query.plan.cascades.PlanPartition;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.Reference;
+import com.apple.foundationdb.record.query.plan.cascades.RequestedOrderingConstraint;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.SelectExpression;
+import com.apple.foundationdb.record.query.plan.cascades.matching.structure.BindingMatcher;
+import com.apple.foundationdb.record.query.plan.cascades.predicates.AndPredicate;
+import com.apple.foundationdb.record.query.plan.cascades.predicates.QueryPredicate;
+import com.apple.foundationdb.record.query.plan.cascades.predicates.ValuePredicate;
+import com.apple.foundationdb.record.query.plan.cascades.values.Value;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPredicatesFilterPlan;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Set;
+
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.MultiMatcher.all;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.AnyMatcher.any;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.QuantifierMatchers.forEachQuantifierOverRef;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ReferenceMatchers.anyPlanPartition;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ReferenceMatchers.planPartitions;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ReferenceMatchers.rollUp;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ReferenceMatchers.where;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RelationalExpressionMatchers.canBeImplemented;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RelationalExpressionMatchers.selectExpression;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.SetMatcher.exactlyInAnyOrder;
+import static com.apple.foundationdb.record.query.plan.cascades.properties.StoredRecordProperty.STORED_RECORD;
+
+/**
+ * A rule that implements an equi-join of its (already implemented) children as a {@link RecordQueryHashJoinPlan}.
+ *
+ * <p>
+ * The rule applies when every predicate that refers to both children is an equality between a value of one child
+ * and a value of the other, the inner (build) child produces stored records, and it is not correlated to the outer
+ * (probe) child. Predicates that refer to only one of the children are applied as filters below the join. Whether the
+ * resulting plan is preferred over the {@link ImplementNestedLoopJoinRule nested loop join} of the same children is
+ * left to the cost model.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+@SuppressWarnings("PMD.TooManyStaticImports")
+public class ImplementHashJoinRule extends CascadesRule<SelectExpression> {
+    @Nonnull
+    private static final BindingMatcher<PlanPartition> probePlanPartitionsMatcher = anyPlanPartition();
+
+    @Nonnull
+    private static final BindingMatcher<Reference> probeReferenceMatcher =
+            planPartitions(rollUp(all(probePlanPartitionsMatcher)));
+    @Nonnull
+    private static final BindingMatcher<Quantifier.ForEach> probeQuantifierMatcher = forEachQuantifierOverRef(probeReferenceMatcher);
+    @Nonnull
+    private static final BindingMatcher<PlanPartition> buildPlanPartitionsMatcher = anyPlanPartition();
+
+    @Nonnull
+    private static final BindingMatcher<Reference> buildReferenceMatcher =
+            planPartitions(where(planPartition -> planPartition.getAttributeValue(STORED_RECORD),
+                    any(buildPlanPartitionsMatcher)));
+    @Nonnull
+    private static final BindingMatcher<Quantifier.ForEach> buildQuantifierMatcher = forEachQuantifierOverRef(buildReferenceMatcher);
+    @Nonnull
+    private static final BindingMatcher<SelectExpression> root =
+            selectExpression(exactlyInAnyOrder(probeQuantifierMatcher, buildQuantifierMatcher)).where(canBeImplemented());
+
+    public ImplementHashJoinRule() {
+        super(root, ImmutableSet.of(RequestedOrderingConstraint.REQUESTED_ORDERING));
+    }
+
+    @Override
+    public void onMatch(@Nonnull final CascadesRuleCall call) {
+        if (call.getPlannerConstraint(RequestedOrderingConstraint.REQUESTED_ORDERING).isEmpty()) {
+            return;
+        }
+        final var bindings = call.getBindings();
+        final var selectExpression = bindings.get(root);
+
+        final var probeAlias = bindings.get(probeQuantifierMatcher).getAlias();
+        final var buildAlias = bindings.get(buildQuantifierMatcher).getAlias();
+
+        final var fullCorrelationOrder =
+                selectExpression.getCorrelationOrder().getTransitiveClosure();
+        if (fullCorrelationOrder.get(buildAlias).contains(probeAlias) ||
+                fullCorrelationOrder.get(probeAlias).contains(buildAlias)) {
+            // the build side has to be evaluated independently of the probe side, bail
+            return;
+        }
+
+        final var aliasToQuantifierMap = selectExpression.getAliasToQuantifierMap();
+        final var probePredicatesBuilder = ImmutableList.<QueryPredicate>builder();
+        final var buildPredicatesBuilder = ImmutableList.<QueryPredicate>builder();
+        final var probeKeyValuesBuilder = ImmutableList.<Value>builder();
+        final var buildKeyValuesBuilder = ImmutableList.<Value>builder();
+        boolean hasKey = false;
+
+        for (final var predicate : selectExpression.getPredicates()) {
+            final var correlatedToInExpression =
+                    Sets.intersection(predicate.getCorrelatedTo(), aliasToQuantifierMap.keySet());
+            final var residualPredicate = predicate.toResidualPredicate();
+            if (!correlatedToInExpression.contains(buildAlias)) {
+                probePredicatesBuilder.add(residualPredicate);
+            } else if (!correlatedToInExpression.contains(probeAlias)) {
+                buildPredicatesBuilder.add(residualPredicate);
+            } else {
+                for (final var conjunct : conjuncts(residualPredicate)) {
+                    if (!addKeyValues(conjunct, probeAlias, buildAlias, aliasToQuantifierMap.keySet(),
+                            probeKeyValuesBuilder, buildKeyValuesBuilder)) {
+                        // a join predicate that cannot be answered by looking up a key, bail
+                        return;
+                    }
+                    hasKey = true;
+                }
+            }
+        }
+
+        if (!hasKey) {
+            // a cross product is better left to the nested loop join
+            return;
+        }
+
+        var probeRef = call.memoizeMemberPlans(bindings.get(probeReferenceMatcher),
+                bindings.get(probePlanPartitionsMatcher).getPlans());
+        final List<QueryPredicate> probePredicates = probePredicatesBuilder.build();
+        if (!probePredicates.isEmpty()) {
+            probeRef = call.memoizePlans(new RecordQueryPredicatesFilterPlan(
+                    Quantifier.physicalBuilder().withAlias(probeAlias).build(probeRef), probePredicates));
+        }
+
+        var buildRef = call.memoizeMemberPlans(bindings.get(buildReferenceMatcher),
+                bindings.get(buildPlanPartitionsMatcher).getPlans());
+        final List<QueryPredicate> buildPredicates = buildPredicatesBuilder.build();
+        if (!buildPredicates.isEmpty()) {
+            buildRef = call.memoizePlans(new RecordQueryPredicatesFilterPlan(
+                    Quantifier.physicalBuilder().withAlias(buildAlias).build(buildRef), buildPredicates));
+        }
+
+        call.yieldExpression(new RecordQueryHashJoinPlan(
+                Quantifier.physicalBuilder().withAlias(probeAlias).build(probeRef),
+                Quantifier.physicalBuilder().withAlias(buildAlias).build(buildRef),
+                probeKeyValuesBuilder.build(),
+                buildKeyValuesBuilder.build(),
+                selectExpression.getResultValue()));
+    }
+
+    @Nonnull
+    private static List<? extends QueryPredicate> conjuncts(@Nonnull QueryPredicate predicate) {
+        if (predicate instanceof AndPredicate) {
+            return ((AndPredicate)predicate).getChildren();
+        }
+        return ImmutableList.of(predicate);
+    }
+
+    private static boolean addKeyValues(@Nonnull QueryPredicate predicate,
+                                        @Nonnull CorrelationIdentifier probeAlias,
+                                        @Nonnull CorrelationIdentifier buildAlias,
+                                        @Nonnull Set<CorrelationIdentifier> aliasesInExpression,
+                                        @Nonnull ImmutableList.Builder<Value> probeKeyValuesBuilder,
+                                        @Nonnull ImmutableList.Builder<Value> buildKeyValuesBuilder) {
+        if (!(predicate instanceof ValuePredicate)) {
+            return false;
+        }
+        final var valuePredicate = (ValuePredicate)predicate;
+        final var comparison = valuePredicate.getComparison();
+        if (comparison.getType() != Comparisons.Type.EQUALS || !(comparison instanceof Comparisons.ValueComparison)) {
+            return false;
+        }
+        final var value = valuePredicate.getValue();
+        final var comparandValue = ((Comparisons.ValueComparison)comparison).getComparandValue();
+        final var valueCorrelatedTo = Sets.intersection(value.getCorrelatedTo(), aliasesInExpression);
+        final var comparandCorrelatedTo = Sets.intersection(comparandValue.getCorrelatedTo(), aliasesInExpression);
+        if (valueCorrelatedTo.equals(ImmutableSet.of(probeAlias)) && comparandCorrelatedTo.equals(ImmutableSet.of(buildAlias))) {
+            probeKeyValuesBuilder.add(value);
+            buildKeyValuesBuilder.add(comparandValue);
+            return true;
+        }
+        if (valueCorrelatedTo.equals(ImmutableSet.of(buildAlias)) && comparandCorrelatedTo.equals(ImmutableSet.of(probeAlias))) {
+            probeKeyValuesBuilder.add(comparandValue);
+            buildKeyValuesBuilder.add(value);
+            return true;
+        }
+        return false;
+    }
+}
@@ -118,6 +118,11 @@ public class CountValue extends AbstractValue implements AggregateValue, Streama
         return new SumAccumulator(operator);
     }
 
+    @Nonnull
+    public PhysicalOperator getOperator() {
+        return operator;
+    }
+
     @Nonnull
     @Override
     public String explain(@Nonnull final Formatter formatter) {
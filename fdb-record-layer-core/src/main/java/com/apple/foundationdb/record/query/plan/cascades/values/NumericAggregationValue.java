@@ -127,6 +127,11 @@ public abstract class NumericAggregationValue extends AbstractValue implements V
         return Type.primitiveType(operator.getResultTypeCode());
     }
 
+    @Nonnull
+    public PhysicalOperator getOperator() {
+        return operator;
+    }
+
     @Nonnull
     @Override
     public Value getChild() {
@@ -22,14 +22,23 @@ package com.apple.foundationdb.record.query.plan.plans;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
 import com.apple.foundationdb.record.ObjectPlanHash;
 import com.apple.foundationdb.record.PlanHashable;
 import com.apple.foundationdb.record.PlanSerializationContext;
 import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.planprotos.PRecordQueryPlan;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.record.query.expressions.AndOrComponent;
+import com.apple.foundationdb.record.query.expressions.BaseField;
+import com.apple.foundationdb.record.query.expressions.ComponentWithSingleChild;
+import com.apple.foundationdb.record.query.expressions.NotComponent;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
+import com.apple.foundationdb.record.query.expressions.RecordTypeKeyComparison;
 import com.apple.foundationdb.record.query.plan.PlanStringRepresentation;
 import com.apple.foundationdb.record.query.plan.cascades.AliasMap;
 import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
@@ -51,10 +60,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * A query plan that filters out records from a child plan that do not satisfy a filter component.
@@ -69,6 +80,8 @@ public class RecordQueryFilterPlan extends RecordQueryFilterPlanBase {
     private final List<QueryComponent> filters;
     @Nonnull
     private final QueryComponent conjunctedFilter;
+    @Nullable
+    private final Set<String> lazyFieldNames;
 
     public RecordQueryFilterPlan(@Nonnull RecordQueryPlan inner, @Nonnull List<QueryComponent> filters) {
         this(Quantifier.physical(Reference.of(inner)), filters);
@@ -83,6 +96,71 @@ public class RecordQueryFilterPlan extends RecordQueryFilterPlanBase {
         super(inner);
         this.filters = ImmutableList.copyOf(filters);
         this.conjunctedFilter = this.filters.size() == 1 ? Iterables.getOnlyElement(this.filters) : Query.and(this.filters);
+        this.lazyFieldNames = lazyFieldNames(conjunctedFilter);
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<QueryResult> executePlan(@Nonnull final FDBRecordStoreBase<M> store,
+                                                                     @Nonnull final EvaluationContext context,
+                                                                     @Nullable final byte[] continuation,
+                                                                     @Nonnull final ExecuteProperties executeProperties) {
+        if (lazyFieldNames != null && !hasAsyncFilter() &&
+                Boolean.TRUE.equals(store.getContext().getPropertyStorage().getPropertyValue(FDBRecordStoreProperties.LAZY_FILTER_DESERIALIZATION))) {
+            // Check the filter while scanning, before the records are fully deserialized.
+            final Function<FDBStoredRecord<M>, Boolean> filter = instrumentFilter(rec -> conjunctedFilter.eval(store, context, rec),
+                    store.getTimer(), inCounts, duringEvents, successCounts, failureCounts);
+            final RecordQueryPlan innerPlan = getInnerPlan();
+            final RecordCursor<QueryResult> results;
+            if (innerPlan instanceof RecordQueryScanPlan) {
+                results = ((RecordQueryScanPlan)innerPlan).executeMatching(store, context, continuation, executeProperties.clearSkipAndLimit(),
+                        lazyFieldNames, filter);
+            } else if (innerPlan instanceof RecordQueryTypeFilterPlan) {
+                results = ((RecordQueryTypeFilterPlan)innerPlan).executeMatching(store, context, continuation, executeProperties.clearSkipAndLimit(),
+                        lazyFieldNames, filter);
+            } else {
+                results = null;
+            }
+            if (results != null) {
+                return results.skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+            }
+        }
+        return super.executePlan(store, context, continuation, executeProperties);
+    }
+
+    /**
+     * Get the names of the top-level fields that a filter uses.
+     * @param filter a filter on records
+     * @return the names of the fields or {@code null} if the filter might use more of the record than just its fields
+     */
+    @Nullable
+    private static Set<String> lazyFieldNames(@Nonnull QueryComponent filter) {
+        final Set<String> fieldNames = new HashSet<>();
+        return addFieldNames(filter, fieldNames) ? ImmutableSet.copyOf(fieldNames) : null;
+    }
+
+    private static boolean addFieldNames(@Nonnull QueryComponent component, @Nonnull Set<String> fieldNames) {
+        if (component instanceof AndOrComponent) {
+            for (QueryComponent child : ((AndOrComponent)component).getChildren()) {
+                if (!addFieldNames(child, fieldNames)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (component instanceof NotComponent) {
+            return addFieldNames(((NotComponent)component).getChild(), fieldNames);
+        } else if (component instanceof RecordTypeKeyComparison) {
+            // Only uses the message's descriptor.
+            return true;
+        } else if (component instanceof BaseField) {
+            fieldNames.add(((BaseField)component).getFieldName());
+            // A child component is evaluated against the field's value, which is always parsed completely. But it
+            // must only look at that and not at the rest of the record.
+            return !(component instanceof ComponentWithSingleChild) ||
+                   addFieldNames(((ComponentWithSingleChild)component).getChild(), new HashSet<>());
+        } else {
+            return false;
+        }
     }
 
     @Override
@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * A base class for all query plans that filter based on predicates.
@@ -52,13 +53,13 @@ public abstract class RecordQueryFilterPlanBase implements RecordQueryPlanWithCh
     private final Quantifier.Physical inner;
 
     @Nonnull
-    private static final Set<StoreTimer.Count> inCounts = ImmutableSet.of(FDBStoreTimer.Counts.QUERY_FILTER_GIVEN, FDBStoreTimer.Counts.QUERY_FILTER_PLAN_GIVEN);
+    static final Set<StoreTimer.Count> inCounts = ImmutableSet.of(FDBStoreTimer.Counts.QUERY_FILTER_GIVEN, FDBStoreTimer.Counts.QUERY_FILTER_PLAN_GIVEN);
     @Nonnull
-    private static final Set<StoreTimer.Event> duringEvents = Collections.singleton(FDBStoreTimer.Events.QUERY_FILTER);
+    static final Set<StoreTimer.Event> duringEvents = Collections.singleton(FDBStoreTimer.Events.QUERY_FILTER);
     @Nonnull
-    private static final Set<StoreTimer.Count> successCounts = ImmutableSet.of(FDBStoreTimer.Counts.QUERY_FILTER_PASSED, FDBStoreTimer.Counts.QUERY_FILTER_PLAN_PASSED);
+    static final Set<StoreTimer.Count> successCounts = ImmutableSet.of(FDBStoreTimer.Counts.QUERY_FILTER_PASSED, FDBStoreTimer.Counts.QUERY_FILTER_PLAN_PASSED);
     @Nonnull
-    private static final Set<StoreTimer.Count> failureCounts = Collections.singleton(FDBStoreTimer.Counts.QUERY_DISCARDED);
+    static final Set<StoreTimer.Count> failureCounts = Collections.singleton(FDBStoreTimer.Counts.QUERY_DISCARDED);
 
     protected RecordQueryFilterPlanBase(@Nonnull final PlanSerializationContext serializationContext,
                                         @Nonnull final PRecordQueryFilterPlanBase recordQueryFilterPlanBaseProto) {
@@ -104,6 +105,29 @@ public abstract class RecordQueryFilterPlanBase implements RecordQueryPlanWithCh
         }
     }
 
+    /**
+     * Wrap a filter predicate to record the same counts and events as {@link RecordCursor#filterInstrumented}, for filters
+     * that are not applied to a cursor directly.
+     */
+    @Nonnull
+    static <T> Function<T, Boolean> instrumentFilter(@Nonnull Function<T, Boolean> pred, @Nullable StoreTimer timer,
+                                                     @Nonnull Set<StoreTimer.Count> inSet,
+                                                     @Nonnull Set<StoreTimer.Event> duringSet,
+                                                     @Nonnull Set<StoreTimer.Count> successSet,
+                                                     @Nonnull Set<StoreTimer.Count> failureSet) {
+        if (timer == null) {
+            return pred;
+        }
+        return value -> {
+            timer.increment(inSet);
+            final long startTime = System.nanoTime();
+            final Boolean result = pred.apply(value);
+            timer.record(duringSet, System.nanoTime() - startTime);
+            timer.increment(Boolean.TRUE.equals(result) ? successSet : failureSet);
+            return result;
+        };
+    }
+
     @Nonnull
     public Quantifier.Physical getInner() {
         return inner;
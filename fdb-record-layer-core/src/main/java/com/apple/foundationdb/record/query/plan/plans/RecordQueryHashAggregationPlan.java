@@ -0,0 +1,439 @@
+/*
+ * RecordQueryHashAggregationPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.ObjectPlanHash;
+import com.apple.foundationdb.record.PlanDeserializer;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.PlanSerializationContext;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.cursors.aggregate.HashGrouping;
+import com.apple.foundationdb.record.planprotos.PRecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.planprotos.PRecordQueryPlan;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.plan.PlanStringRepresentation;
+import com.apple.foundationdb.record.query.plan.cascades.AliasMap;
+import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.Reference;
+import com.apple.foundationdb.record.query.plan.cascades.explain.Attribute;
+import com.apple.foundationdb.record.query.plan.cascades.explain.NodeInfo;
+import com.apple.foundationdb.record.query.plan.cascades.explain.PlannerGraph;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.GroupByExpression;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.RelationalExpression;
+import com.apple.foundationdb.record.query.plan.cascades.typing.Type;
+import com.apple.foundationdb.record.query.plan.cascades.values.AggregateValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.ObjectValue;
+import com.apple.foundationdb.record.query.plan.cascades.values.Value;
+import com.apple.foundationdb.record.query.plan.cascades.values.translation.TranslationMap;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryHashAggregateAdapter;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQuerySortAdapter;
+import com.apple.foundationdb.record.sorting.HashAggregateCursor;
+import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * A query plan that applies aggregate functions to its inputs and places them into groups, like
+ * {@link RecordQueryStreamingAggregationPlan}, but without requiring its input to be ordered by the grouping key.
+ * Groups are kept in a hash table of partial aggregates, which spills to disk when there are more than
+ * {@link #getMaxGroupsInMemory()} groups. The results are returned in no particular order.
+ * <p>
+ * Only aggregates supported by {@link HashGrouping#isSupported} can be planned this way, and there must be a grouping
+ * key, since an aggregation without grouping is already a single streaming group.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+public class RecordQueryHashAggregationPlan implements RecordQueryPlanWithChild {
+    private static final ObjectPlanHash BASE_HASH = new ObjectPlanHash("Record-Query-Hash-Aggregator-Plan");
+
+    public static final int DEFAULT_MAX_GROUPS_IN_MEMORY = RecordQuerySortAdapter.DEFAULT_MAX_RECORD_COUNT_IN_MEMORY;
+
+    @Nonnull
+    private final Quantifier.Physical inner;
+    @Nonnull
+    private final AggregateValue aggregateValue;
+    @Nonnull
+    private final Value groupingKeyValue;
+    @Nonnull
+    private final CorrelationIdentifier groupingKeyAlias;
+    @Nonnull
+    private final CorrelationIdentifier aggregateAlias;
+    @Nonnull
+    private final Value completeResultValue;
+    private final int maxGroupsInMemory;
+
+    /**
+     * Construct a new plan.
+     *
+     * @param inner the quantifier that this plan owns
+     * @param groupingKeyValue the {@link Value} to group by
+     * @param aggregateValue the {@link AggregateValue} to aggregate by grouping key
+     * @param groupingKeyAlias the identifier of {@code groupingKeyValue}
+     * @param aggregateAlias the identifier of {@code aggregateValue}
+     * @param completeResultValue the {@link Value} of the aggregate results
+     * @param maxGroupsInMemory the number of groups to hold in memory before spilling partial aggregates to disk
+     */
+    @SuppressWarnings("squid:S00107")
+    private RecordQueryHashAggregationPlan(@Nonnull final Quantifier.Physical inner,
+                                           @Nonnull final Value groupingKeyValue,
+                                           @Nonnull final AggregateValue aggregateValue,
+                                           @Nonnull final CorrelationIdentifier groupingKeyAlias,
+                                           @Nonnull final CorrelationIdentifier aggregateAlias,
+                                           @Nonnull final Value completeResultValue,
+                                           final int maxGroupsInMemory) {
+        this.inner = inner;
+        this.groupingKeyValue = groupingKeyValue;
+        this.aggregateValue = aggregateValue;
+        this.groupingKeyAlias = groupingKeyAlias;
+        this.aggregateAlias = aggregateAlias;
+        this.completeResultValue = completeResultValue;
+        this.maxGroupsInMemory = maxGroupsInMemory;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <M extends Message> RecordCursor<QueryResult> executePlan(@Nonnull FDBRecordStoreBase<M> store,
+                                                                     @Nonnull EvaluationContext context,
+                                                                     @Nullable byte[] continuation,
+                                                                     @Nonnull ExecuteProperties executeProperties) {
+        final var nestedExecuteProperties = executeProperties.clearSkipAndLimit();
+        final var hashGrouping =
+                new HashGrouping<>(groupingKeyValue,
+                        aggregateValue,
+                        completeResultValue,
+                        groupingKeyAlias,
+                        aggregateAlias,
+                        (FDBRecordStoreBase<Message>)store,
+                        context,
+                        inner.getAlias());
+        final var adapter = new RecordQueryHashAggregateAdapter(maxGroupsInMemory, store.getRecordMetaData().getVersion());
+        return HashAggregateCursor.create(adapter,
+                innerContinuation -> getInnerPlan().executePlan(store, context, innerContinuation, nestedExecuteProperties),
+                hashGrouping, store.getTimer(), store.getExecutor(), continuation)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    @Override
+    public boolean isReverse() {
+        return getInnerPlan().isReverse();
+    }
+
+    @Nonnull
+    @Override
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of(inner);
+    }
+
+    @Nonnull
+    public Quantifier.Physical getInner() {
+        return inner;
+    }
+
+    @Nonnull
+    @Override
+    public Set<Type> getDynamicTypes() {
+        return ImmutableSet.copyOf(Iterables.concat(
+                RecordQueryPlanWithChild.super.getDynamicTypes(),
+                groupingKeyValue.getDynamicTypes(),
+                aggregateValue.getDynamicTypes()));
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return PlanStringRepresentation.toString(this);
+    }
+
+    @Nonnull
+    @Override
+    public Set<CorrelationIdentifier> getCorrelatedToWithoutChildren() {
+        return ImmutableSet.copyOf(Iterables.concat(groupingKeyValue.getCorrelatedTo(), aggregateValue.getCorrelatedTo()));
+    }
+
+    @Nonnull
+    @Override
+    public RecordQueryHashAggregationPlan translateCorrelations(@Nonnull final TranslationMap translationMap,
+                                                                @Nonnull final List<? extends Quantifier> translatedQuantifiers) {
+        final var translatedGroupingKeyValue = groupingKeyValue.translateCorrelations(translationMap);
+        final var translatedAggregateValue = (AggregateValue)aggregateValue.translateCorrelations(translationMap);
+
+        return new RecordQueryHashAggregationPlan(Iterables.getOnlyElement(translatedQuantifiers).narrow(Quantifier.Physical.class),
+                translatedGroupingKeyValue,
+                translatedAggregateValue,
+                groupingKeyAlias,
+                aggregateAlias,
+                completeResultValue,
+                maxGroupsInMemory);
+    }
+
+    @Nonnull
+    @Override
+    public RecordQueryHashAggregationPlan withChild(@Nonnull final Reference childRef) {
+        return new RecordQueryHashAggregationPlan(Quantifier.physical(childRef, inner.getAlias()),
+                groupingKeyValue,
+                aggregateValue,
+                groupingKeyAlias,
+                aggregateAlias,
+                completeResultValue,
+                maxGroupsInMemory);
+    }
+
+    @Nonnull
+    @Override
+    public Value getResultValue() {
+        return completeResultValue;
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override
+    public boolean equals(final Object other) {
+        return structuralEquals(other);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression,
+                                         @Nonnull final AliasMap equivalencesMap) {
+        if (this == otherExpression) {
+            return true;
+        }
+        if (getClass() != otherExpression.getClass()) {
+            return false;
+        }
+
+        final var otherHashAggregationPlan = (RecordQueryHashAggregationPlan)otherExpression;
+
+        if (maxGroupsInMemory != otherHashAggregationPlan.getMaxGroupsInMemory()) {
+            return false;
+        }
+
+        if (!groupingKeyValue.semanticEquals(otherHashAggregationPlan.getGroupingValue(), equivalencesMap)) {
+            return false;
+        }
+
+        if (!aggregateValue.semanticEquals(otherHashAggregationPlan.getAggregateValue(), equivalencesMap)) {
+            return false;
+        }
+
+        final var extendedEquivalencesMap = equivalencesMap.toBuilder()
+                .put(groupingKeyAlias, otherHashAggregationPlan.getGroupingKeyAlias())
+                .put(aggregateAlias, otherHashAggregationPlan.getAggregateAlias())
+                .build();
+
+        // Results are combination of groupCriteria and aggregateValues
+        return semanticEqualsForResults(otherExpression, extendedEquivalencesMap);
+    }
+
+    @Override
+    public int hashCode() {
+        return structuralHashCode();
+    }
+
+    @Override
+    public int hashCodeWithoutChildren() {
+        return Objects.hash(BASE_HASH, groupingKeyValue, aggregateValue, completeResultValue, maxGroupsInMemory);
+    }
+
+    @Override
+    public int planHash(@Nonnull final PlanHashMode mode) {
+        return PlanHashable.objectsPlanHash(mode, BASE_HASH, getInnerPlan(), groupingKeyValue, aggregateValue, completeResultValue);
+    }
+
+    @Nonnull
+    public RecordQueryPlan getInnerPlan() {
+        return inner.getRangesOverPlan();
+    }
+
+    @Override
+    @Nonnull
+    public RecordQueryPlan getChild() {
+        return getInnerPlan();
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_AGGREGATE);
+        getInnerPlan().logPlanStructure(timer);
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + getInnerPlan().getComplexity();
+    }
+
+    /**
+     * Rewrite the planner graph for better visualization of a query index plan.
+     *
+     * @param childGraphs planner graphs of children expression that already have been computed
+     *
+     * @return the rewritten planner graph that models the plan as a node that uses the expression attribute
+     * to depict the record types this operator filters.
+     */
+    @Nonnull
+    @Override
+    public PlannerGraph rewritePlannerGraph(@Nonnull List<? extends PlannerGraph> childGraphs) {
+        return PlannerGraph.fromNodeAndChildGraphs(
+                new PlannerGraph.OperatorNodeWithInfo(this,
+                        NodeInfo.HASH_AGGREGATE_OPERATOR,
+                        ImmutableList.of("COLLECT {{agg}}", "GROUP BY {{groupingKey}}"),
+                        ImmutableMap.of("agg", Attribute.gml(aggregateValue.toString()), "groupingKey", Attribute.gml(groupingKeyValue.toString()))),
+                childGraphs);
+    }
+
+    @Nonnull
+    public AggregateValue getAggregateValue() {
+        return aggregateValue;
+    }
+
+    @Nonnull
+    public CorrelationIdentifier getAggregateAlias() {
+        return aggregateAlias;
+    }
+
+    @Nonnull
+    public Value getGroupingValue() {
+        return groupingKeyValue;
+    }
+
+    @Nonnull
+    public CorrelationIdentifier getGroupingKeyAlias() {
+        return groupingKeyAlias;
+    }
+
+    @Nonnull
+    public Value getCompleteResultValue() {
+        return completeResultValue;
+    }
+
+    public int getMaxGroupsInMemory() {
+        return maxGroupsInMemory;
+    }
+
+    /**
+     * Get a copy of this plan that holds a different number of groups in memory before spilling.
+     * @param maxGroupsInMemory the number of groups to hold in memory before spilling partial aggregates to disk
+     * @return a new plan that is the same as this one except for when it spills
+     */
+    @Nonnull
+    public RecordQueryHashAggregationPlan withMaxGroupsInMemory(final int maxGroupsInMemory) {
+        return new RecordQueryHashAggregationPlan(inner, groupingKeyValue, aggregateValue, groupingKeyAlias, aggregateAlias,
+                completeResultValue, maxGroupsInMemory);
+    }
+
+    @Nonnull
+    @Override
+    public PRecordQueryHashAggregationPlan toProto(@Nonnull final PlanSerializationContext serializationContext) {
+        return PRecordQueryHashAggregationPlan.newBuilder()
+                .setInner(inner.toProto(serializationContext))
+                .setAggregateValue(aggregateValue.toValueProto(serializationContext))
+                .setGroupingKeyValue(groupingKeyValue.toValueProto(serializationContext))
+                .setGroupingKeyAlias(groupingKeyAlias.getId())
+                .setAggregateAlias(aggregateAlias.getId())
+                .setCompleteResultValue(completeResultValue.toValueProto(serializationContext))
+                .setMaxGroupsInMemory(maxGroupsInMemory)
+                .build();
+    }
+
+    @Nonnull
+    @Override
+    public PRecordQueryPlan toRecordQueryPlanProto(@Nonnull final PlanSerializationContext serializationContext) {
+        return PRecordQueryPlan.newBuilder().setHashAggregationPlan(toProto(serializationContext)).build();
+    }
+
+    @Nonnull
+    public static RecordQueryHashAggregationPlan fromProto(@Nonnull final PlanSerializationContext serializationContext,
+                                                           @Nonnull final PRecordQueryHashAggregationPlan recordQueryHashAggregationPlanProto) {
+        return new RecordQueryHashAggregationPlan(Quantifier.Physical.fromProto(serializationContext, Objects.requireNonNull(recordQueryHashAggregationPlanProto.getInner())),
+                Value.fromValueProto(serializationContext, Objects.requireNonNull(recordQueryHashAggregationPlanProto.getGroupingKeyValue())),
+                (AggregateValue)Value.fromValueProto(serializationContext, Objects.requireNonNull(recordQueryHashAggregationPlanProto.getAggregateValue())),
+                CorrelationIdentifier.of(Objects.requireNonNull(recordQueryHashAggregationPlanProto.getGroupingKeyAlias())),
+                CorrelationIdentifier.of(Objects.requireNonNull(recordQueryHashAggregationPlanProto.getAggregateAlias())),
+                Value.fromValueProto(serializationContext, Objects.requireNonNull(recordQueryHashAggregationPlanProto.getCompleteResultValue())),
+                recordQueryHashAggregationPlanProto.hasMaxGroupsInMemory() ? recordQueryHashAggregationPlanProto.getMaxGroupsInMemory() : DEFAULT_MAX_GROUPS_IN_MEMORY);
+    }
+
+    @Nonnull
+    public static RecordQueryHashAggregationPlan of(@Nonnull final Quantifier.Physical inner,
+                                                    @Nonnull final Value groupingKeyValue,
+                                                    @Nonnull final AggregateValue aggregateValue,
+                                                    @Nonnull final BiFunction<Value, Value, Value> resultValueFunction) {
+        return of(inner, groupingKeyValue, aggregateValue, resultValueFunction, DEFAULT_MAX_GROUPS_IN_MEMORY);
+    }
+
+    @Nonnull
+    public static RecordQueryHashAggregationPlan of(@Nonnull final Quantifier.Physical inner,
+                                                    @Nonnull final Value groupingKeyValue,
+                                                    @Nonnull final AggregateValue aggregateValue,
+                                                    @Nonnull final BiFunction<Value, Value, Value> resultValueFunction,
+                                                    final int maxGroupsInMemory) {
+        final var groupingKeyAlias = CorrelationIdentifier.uniqueID();
+        final var aggregateAlias = CorrelationIdentifier.uniqueID();
+
+        final var referencedGroupingKeyValue = ObjectValue.of(groupingKeyAlias, groupingKeyValue.getResultType());
+        final var referencedAggregateValue = ObjectValue.of(aggregateAlias, aggregateValue.getResultType());
+
+        return new RecordQueryHashAggregationPlan(inner, groupingKeyValue, aggregateValue, groupingKeyAlias, aggregateAlias,
+                resultValueFunction.apply(referencedGroupingKeyValue, referencedAggregateValue), maxGroupsInMemory);
+    }
+
+    @Nonnull
+    public static RecordQueryHashAggregationPlan ofFlattened(@Nonnull final Quantifier.Physical inner,
+                                                             @Nonnull final Value groupingKeyValue,
+                                                             @Nonnull final AggregateValue aggregateValue) {
+        return of(inner, groupingKeyValue, aggregateValue, GroupByExpression::flattenedResults);
+    }
+
+    /**
+     * Deserializer.
+     */
+    @AutoService(PlanDeserializer.class)
+    public static class Deserializer implements PlanDeserializer<PRecordQueryHashAggregationPlan, RecordQueryHashAggregationPlan> {
+        @Nonnull
+        @Override
+        public Class<PRecordQueryHashAggregationPlan> getProtoMessageClass() {
+            return PRecordQueryHashAggregationPlan.class;
+        }
+
+        @Nonnull
+        @Override
+        public RecordQueryHashAggregationPlan fromProto(@Nonnull final PlanSerializationContext serializationContext,
+                                                        @Nonnull final PRecordQueryHashAggregationPlan recordQueryHashAggregationPlanProto) {
+            return RecordQueryHashAggregationPlan.fromProto(serializationContext, recordQueryHashAggregationPlanProto);
+        }
+    }
+}
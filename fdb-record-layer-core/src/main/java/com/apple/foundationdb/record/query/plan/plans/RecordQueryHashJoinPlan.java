@@ -0,0 +1,434 @@
+/*
+ * RecordQueryHashJoinPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.ObjectPlanHash;
+import com.apple.foundationdb.record.PlanDeserializer;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.PlanSerializationContext;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.planprotos.PRecordQueryHashJoinPlan;
+import com.apple.foundationdb.record.planprotos.PRecordQueryPlan;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.query.plan.AvailableFields;
+import com.apple.foundationdb.record.query.plan.PlanStringRepresentation;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.record.query.plan.cascades.AliasMap;
+import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
+import com.apple.foundationdb.record.query.plan.cascades.Memoizer;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifiers;
+import com.apple.foundationdb.record.query.plan.cascades.explain.Attribute;
+import com.apple.foundationdb.record.query.plan.cascades.explain.NodeInfo;
+import com.apple.foundationdb.record.query.plan.cascades.explain.PlannerGraph;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.RelationalExpression;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.RelationalExpressionWithChildren;
+import com.apple.foundationdb.record.query.plan.cascades.values.Value;
+import com.apple.foundationdb.record.query.plan.cascades.values.translation.TranslationMap;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryHashJoinAdapter;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQuerySortAdapter;
+import com.apple.foundationdb.record.sorting.HashJoinCursor;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.auto.service.AutoService;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Streams;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A query plan that joins two children on the equality of key values by loading one of them, the <em>build</em>
+ * side, into a hash table and looking up each result of the other, the <em>probe</em> side, in it.
+ *
+ * <p>
+ * Unlike {@link RecordQueryFlatMapPlan}, which executes its inner plan once for each outer result, both children
+ * are executed once, as long as the build side fits in memory. The build side must therefore not be correlated to the
+ * probe side, and it must produce stored records, which can be spilled to files if there are more of them than
+ * {@link #getMaxBuildRecordsInMemory()}. In that case, the probe side is executed once for each chunk of that many
+ * build records. See {@link HashJoinCursor}.
+ * </p>
+ *
+ * <p>
+ * Results are returned in the order of the probe side, with the matches of each probe result in join key order,
+ * but only if the build side fits in memory.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryHashJoinPlan implements RecordQueryPlanWithChildren, RelationalExpressionWithChildren {
+    private static final ObjectPlanHash BASE_HASH = new ObjectPlanHash("Record-Query-Hash-Join-Plan");
+
+    /**
+     * The default number of build records held in memory.
+     */
+    public static final int DEFAULT_MAX_BUILD_RECORDS_IN_MEMORY = RecordQuerySortAdapter.DEFAULT_MAX_RECORD_COUNT_IN_MEMORY;
+
+    @Nonnull
+    private final Quantifier.Physical probeQuantifier;
+    @Nonnull
+    private final Quantifier.Physical buildQuantifier;
+    @Nonnull
+    private final List<Value> probeKeyValues;
+    @Nonnull
+    private final List<Value> buildKeyValues;
+    @Nonnull
+    private final Value resultValue;
+    private final int maxBuildRecordsInMemory;
+    @Nonnull
+    private final Supplier<Integer> hashCodeWithoutChildrenSupplier;
+    @Nonnull
+    private final Supplier<Set<CorrelationIdentifier>> correlatedToWithoutChildrenSupplier;
+
+    public RecordQueryHashJoinPlan(@Nonnull final Quantifier.Physical probeQuantifier,
+                                   @Nonnull final Quantifier.Physical buildQuantifier,
+                                   @Nonnull final List<? extends Value> probeKeyValues,
+                                   @Nonnull final List<? extends Value> buildKeyValues,
+                                   @Nonnull final Value resultValue) {
+        this(probeQuantifier, buildQuantifier, probeKeyValues, buildKeyValues, resultValue, DEFAULT_MAX_BUILD_RECORDS_IN_MEMORY);
+    }
+
+    public RecordQueryHashJoinPlan(@Nonnull final Quantifier.Physical probeQuantifier,
+                                   @Nonnull final Quantifier.Physical buildQuantifier,
+                                   @Nonnull final List<? extends Value> probeKeyValues,
+                                   @Nonnull final List<? extends Value> buildKeyValues,
+                                   @Nonnull final Value resultValue,
+                                   final int maxBuildRecordsInMemory) {
+        Verify.verify(!probeKeyValues.isEmpty() && probeKeyValues.size() == buildKeyValues.size());
+        this.probeQuantifier = probeQuantifier;
+        this.buildQuantifier = buildQuantifier;
+        this.probeKeyValues = ImmutableList.copyOf(probeKeyValues);
+        this.buildKeyValues = ImmutableList.copyOf(buildKeyValues);
+        this.resultValue = resultValue;
+        this.maxBuildRecordsInMemory = maxBuildRecordsInMemory;
+        this.hashCodeWithoutChildrenSupplier = Suppliers.memoize(this::computeHashCodeWithoutChildren);
+        this.correlatedToWithoutChildrenSupplier = Suppliers.memoize(this::computeCorrelatedToWithoutChildren);
+    }
+
+    @Nonnull
+    public Quantifier.Physical getProbeQuantifier() {
+        return probeQuantifier;
+    }
+
+    @Nonnull
+    public Quantifier.Physical getBuildQuantifier() {
+        return buildQuantifier;
+    }
+
+    @Nonnull
+    public List<Value> getProbeKeyValues() {
+        return probeKeyValues;
+    }
+
+    @Nonnull
+    public List<Value> getBuildKeyValues() {
+        return buildKeyValues;
+    }
+
+    public int getMaxBuildRecordsInMemory() {
+        return maxBuildRecordsInMemory;
+    }
+
+    @SuppressWarnings("resource")
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<QueryResult> executePlan(@Nonnull final FDBRecordStoreBase<M> store,
+                                                                     @Nonnull final EvaluationContext context,
+                                                                     @Nullable final byte[] continuation,
+                                                                     @Nonnull final ExecuteProperties executeProperties) {
+        final var nestedExecuteProperties = executeProperties.clearSkipAndLimit();
+        final CorrelationIdentifier buildAlias = buildQuantifier.getAlias();
+        final CorrelationIdentifier probeAlias = probeQuantifier.getAlias();
+        final RecordQueryHashJoinAdapter<M> adapter = new RecordQueryHashJoinAdapter<>(maxBuildRecordsInMemory,
+                record -> joinKey(store, context.withBinding(buildAlias, QueryResult.fromQueriedRecord(record)), buildKeyValues),
+                store);
+        return HashJoinCursor.<Tuple, FDBQueriedRecord<M>, QueryResult, QueryResult>create(adapter,
+                buildContinuation -> buildQuantifier.getRangesOverPlan()
+                        .executePlan(store, context, buildContinuation, nestedExecuteProperties)
+                        .map(QueryResult::<M>getQueriedRecord)
+                        // Records with a null key component can never match, so leave them out of the hash table.
+                        .filter(record -> adapter.joinKey(record) != null),
+                probeContinuation -> probeQuantifier.getRangesOverPlan()
+                        .executePlan(store, context, probeContinuation, nestedExecuteProperties),
+                adapter::joinKey,
+                probeResult -> joinKey(store, context.withBinding(probeAlias, probeResult), probeKeyValues),
+                (probeResult, buildRecord) -> {
+                    final EvaluationContext nestedContext = context.withBinding(probeAlias, probeResult)
+                            .withBinding(buildAlias, QueryResult.fromQueriedRecord(buildRecord));
+                    return QueryResult.ofComputed(resultValue.eval(store, nestedContext));
+                },
+                store.getTimer(), store.getExecutor(), continuation)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    @Nullable
+    private static <M extends Message> Tuple joinKey(@Nonnull FDBRecordStoreBase<M> store,
+                                                     @Nonnull EvaluationContext context,
+                                                     @Nonnull List<Value> keyValues) {
+        final List<Object> items = new ArrayList<>(keyValues.size());
+        for (Value keyValue : keyValues) {
+            final Object item = keyValue.eval(store, context);
+            if (item == null) {
+                return null;
+            }
+            items.add(ScanComparisons.toTupleItem(item));
+        }
+        return Tuple.fromList(items);
+    }
+
+    @Override
+    public int getRelationalChildCount() {
+        return 2;
+    }
+
+    @Override
+    public boolean canCorrelate() {
+        return true;
+    }
+
+    @Nonnull
+    @Override
+    public List<RecordQueryPlan> getChildren() {
+        return ImmutableList.of(probeQuantifier.getRangesOverPlan(), buildQuantifier.getRangesOverPlan());
+    }
+
+    @Nonnull
+    @Override
+    public AvailableFields getAvailableFields() {
+        return AvailableFields.NO_FIELDS;
+    }
+
+    @Nonnull
+    @Override
+    public Set<CorrelationIdentifier> getCorrelatedToWithoutChildren() {
+        return correlatedToWithoutChildrenSupplier.get();
+    }
+
+    @Nonnull
+    private Set<CorrelationIdentifier> computeCorrelatedToWithoutChildren() {
+        final ImmutableSet.Builder<CorrelationIdentifier> builder = ImmutableSet.builder();
+        builder.addAll(resultValue.getCorrelatedTo());
+        probeKeyValues.forEach(value -> builder.addAll(value.getCorrelatedTo()));
+        buildKeyValues.forEach(value -> builder.addAll(value.getCorrelatedTo()));
+        return builder.build();
+    }
+
+    @Nonnull
+    @Override
+    public RecordQueryHashJoinPlan translateCorrelations(@Nonnull final TranslationMap translationMap, @Nonnull final List<? extends Quantifier> translatedQuantifiers) {
+        Verify.verify(translatedQuantifiers.size() == 2);
+        return new RecordQueryHashJoinPlan(translatedQuantifiers.get(0).narrow(Quantifier.Physical.class),
+                translatedQuantifiers.get(1).narrow(Quantifier.Physical.class),
+                translateValues(probeKeyValues, translationMap),
+                translateValues(buildKeyValues, translationMap),
+                resultValue.translateCorrelations(translationMap),
+                maxBuildRecordsInMemory);
+    }
+
+    @Nonnull
+    private static List<Value> translateValues(@Nonnull List<Value> values, @Nonnull TranslationMap translationMap) {
+        return values.stream().map(value -> value.translateCorrelations(translationMap)).collect(ImmutableList.toImmutableList());
+    }
+
+    @Override
+    public boolean isReverse() {
+        return Quantifiers.isReversed(Quantifiers.narrow(Quantifier.Physical.class, getQuantifiers()));
+    }
+
+    @Override
+    public RecordQueryHashJoinPlan strictlySorted(@Nonnull Memoizer memoizer) {
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public Value getResultValue() {
+        return resultValue;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return PlanStringRepresentation.toString(this);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression,
+                                         @Nonnull final AliasMap aliasMap) {
+        if (this == otherExpression) {
+            return true;
+        }
+        if (getClass() != otherExpression.getClass()) {
+            return false;
+        }
+        final RecordQueryHashJoinPlan other = (RecordQueryHashJoinPlan)otherExpression;
+        return maxBuildRecordsInMemory == other.maxBuildRecordsInMemory &&
+               semanticEqualsForResults(otherExpression, aliasMap) &&
+               semanticEqualsValues(probeKeyValues, other.probeKeyValues, aliasMap) &&
+               semanticEqualsValues(buildKeyValues, other.buildKeyValues, aliasMap);
+    }
+
+    private static boolean semanticEqualsValues(@Nonnull List<Value> values, @Nonnull List<Value> otherValues,
+                                                @Nonnull AliasMap aliasMap) {
+        if (values.size() != otherValues.size()) {
+            return false;
+        }
+        return Streams.zip(values.stream(), otherValues.stream(),
+                (value, otherValue) -> value.semanticEquals(otherValue, aliasMap))
+                .allMatch(isSame -> isSame);
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override
+    public boolean equals(final Object other) {
+        return structuralEquals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return structuralHashCode();
+    }
+
+    @Override
+    public int hashCodeWithoutChildren() {
+        return hashCodeWithoutChildrenSupplier.get();
+    }
+
+    private int computeHashCodeWithoutChildren() {
+        return Objects.hash(getResultValue(), probeKeyValues, buildKeyValues, maxBuildRecordsInMemory);
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        // nothing to increment
+    }
+
+    @Override
+    public int getComplexity() {
+        return probeQuantifier.getRangesOverPlan().getComplexity() + buildQuantifier.getRangesOverPlan().getComplexity();
+    }
+
+    @Override
+    public int planHash(@Nonnull final PlanHashMode mode) {
+        switch (mode.getKind()) {
+            case LEGACY:
+            case FOR_CONTINUATION:
+                return PlanHashable.objectsPlanHash(mode, BASE_HASH, getChildren(), probeKeyValues, buildKeyValues, getResultValue());
+            default:
+                throw new UnsupportedOperationException("Hash kind " + mode.name() + " is not supported");
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of(probeQuantifier, buildQuantifier);
+    }
+
+    @Nonnull
+    @Override
+    public PlannerGraph rewritePlannerGraph(@Nonnull final List<? extends PlannerGraph> childGraphs) {
+        return PlannerGraph.fromNodeAndChildGraphs(
+                new PlannerGraph.OperatorNodeWithInfo(this,
+                        NodeInfo.HASH_JOIN_OPERATOR,
+                        ImmutableList.of("HASH JOIN ON {{probeKey}} = {{buildKey}}"),
+                        ImmutableMap.of("probeKey", Attribute.gml(probeKeyValues.toString()),
+                                "buildKey", Attribute.gml(buildKeyValues.toString()))),
+                childGraphs,
+                getQuantifiers());
+    }
+
+    @Nonnull
+    @Override
+    public PRecordQueryHashJoinPlan toProto(@Nonnull final PlanSerializationContext serializationContext) {
+        final PRecordQueryHashJoinPlan.Builder builder = PRecordQueryHashJoinPlan.newBuilder()
+                .setProbeQuantifier(probeQuantifier.toProto(serializationContext))
+                .setBuildQuantifier(buildQuantifier.toProto(serializationContext))
+                .setResultValue(resultValue.toValueProto(serializationContext))
+                .setMaxBuildRecordsInMemory(maxBuildRecordsInMemory);
+        for (Value probeKeyValue : probeKeyValues) {
+            builder.addProbeKeyValues(probeKeyValue.toValueProto(serializationContext));
+        }
+        for (Value buildKeyValue : buildKeyValues) {
+            builder.addBuildKeyValues(buildKeyValue.toValueProto(serializationContext));
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    @Override
+    public PRecordQueryPlan toRecordQueryPlanProto(@Nonnull final PlanSerializationContext serializationContext) {
+        return PRecordQueryPlan.newBuilder().setHashJoinPlan(toProto(serializationContext)).build();
+    }
+
+    @Nonnull
+    public static RecordQueryHashJoinPlan fromProto(@Nonnull final PlanSerializationContext serializationContext,
+                                                    @Nonnull final PRecordQueryHashJoinPlan recordQueryHashJoinPlanProto) {
+        final ImmutableList.Builder<Value> probeKeyValues = ImmutableList.builder();
+        for (int i = 0; i < recordQueryHashJoinPlanProto.getProbeKeyValuesCount(); i++) {
+            probeKeyValues.add(Value.fromValueProto(serializationContext, recordQueryHashJoinPlanProto.getProbeKeyValues(i)));
+        }
+        final ImmutableList.Builder<Value> buildKeyValues = ImmutableList.builder();
+        for (int i = 0; i < recordQueryHashJoinPlanProto.getBuildKeyValuesCount(); i++) {
+            buildKeyValues.add(Value.fromValueProto(serializationContext, recordQueryHashJoinPlanProto.getBuildKeyValues(i)));
+        }
+        return new RecordQueryHashJoinPlan(Quantifier.Physical.fromProto(serializationContext, Objects.requireNonNull(recordQueryHashJoinPlanProto.getProbeQuantifier())),
+                Quantifier.Physical.fromProto(serializationContext, Objects.requireNonNull(recordQueryHashJoinPlanProto.getBuildQuantifier())),
+                probeKeyValues.build(),
+                buildKeyValues.build(),
+                Value.fromValueProto(serializationContext, Objects.requireNonNull(recordQueryHashJoinPlanProto.getResultValue())),
+                recordQueryHashJoinPlanProto.hasMaxBuildRecordsInMemory()
+                ? recordQueryHashJoinPlanProto.getMaxBuildRecordsInMemory() : DEFAULT_MAX_BUILD_RECORDS_IN_MEMORY);
+    }
+
+    /**
+     * Deserializer.
+     */
+    @AutoService(PlanDeserializer.class)
+    public static class Deserializer implements PlanDeserializer<PRecordQueryHashJoinPlan, RecordQueryHashJoinPlan> {
+        @Nonnull
+        @Override
+        public Class<PRecordQueryHashJoinPlan> getProtoMessageClass() {
+            return PRecordQueryHashJoinPlan.class;
+        }
+
+        @Nonnull
+        @Override
+        public RecordQueryHashJoinPlan fromProto(@Nonnull final PlanSerializationContext serializationContext,
+                                                 @Nonnull final PRecordQueryHashJoinPlan recordQueryHashJoinPlanProto) {
+            return RecordQueryHashJoinPlan.fromProto(serializationContext, recordQueryHashJoinPlanProto);
+        }
+    }
+}
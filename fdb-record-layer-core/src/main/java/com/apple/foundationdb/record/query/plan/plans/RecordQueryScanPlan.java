@@ -36,6 +36,7 @@ import com.apple.foundationdb.record.planprotos.PRecordQueryScanPlan;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.query.plan.AvailableFields;
 import com.apple.foundationdb.record.query.plan.PlanStringRepresentation;
 import com.apple.foundationdb.record.query.plan.ScanComparisons;
@@ -65,11 +66,13 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -187,6 +190,32 @@ public class RecordQueryScanPlan implements RecordQueryPlanWithNoChildren, Recor
                 .map(QueryResult::fromQueriedRecord);
     }
 
+    /**
+     * Execute this plan, only returning records that match a filter. The filter is checked before records are fully
+     * deserialized, so it must only use the given top-level fields.
+     * @param <M> type used to represent stored records
+     * @param store record store from which to fetch records
+     * @param context evaluation context containing parameter bindings
+     * @param continuation continuation from a previous execution of this same plan
+     * @param executeProperties limits on execution
+     * @param fieldNames the names of the fields used by the filter
+     * @param filter a predicate that returns {@code true} for records that should be returned
+     * @return a cursor of records that match the filter
+     * @see FDBRecordStoreBase#scanRecordsMatching
+     */
+    @Nonnull
+    public <M extends Message> RecordCursor<QueryResult> executeMatching(@Nonnull final FDBRecordStoreBase<M> store,
+                                                                         @Nonnull final EvaluationContext context,
+                                                                         @Nullable final byte[] continuation,
+                                                                         @Nonnull final ExecuteProperties executeProperties,
+                                                                         @Nonnull final Collection<String> fieldNames,
+                                                                         @Nonnull final Function<FDBStoredRecord<M>, Boolean> filter) {
+        final TupleRange range = comparisons.toTupleRange(store, context);
+        return store.scanRecordsMatching(range, continuation, executeProperties.asScanProperties(reverse), fieldNames, filter)
+                .map(store::queriedRecord)
+                .map(QueryResult::fromQueriedRecord);
+    }
+
     @Nullable
     public Set<String> getRecordTypes() {
         return recordTypes;
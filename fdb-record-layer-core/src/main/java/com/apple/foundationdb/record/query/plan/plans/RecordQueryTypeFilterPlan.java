@@ -33,6 +33,7 @@ import com.apple.foundationdb.record.planprotos.PRecordQueryTypeFilterPlan;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.query.plan.PlanStringRepresentation;
 import com.apple.foundationdb.record.query.plan.cascades.CorrelationIdentifier;
 import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
@@ -63,6 +64,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * A query plan that filters out records from a child plan that are not of the designated record type(s).
@@ -113,6 +115,38 @@ public class RecordQueryTypeFilterPlan implements RecordQueryPlanWithChild, Type
                 .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
     }
 
+    /**
+     * Execute this plan, only returning records of the right type that match another filter, if this plan filters a record scan.
+     * Both filters are checked before records are fully deserialized, so the other filter must only use the given top-level fields.
+     * @param <M> type used to represent stored records
+     * @param store record store from which to fetch records
+     * @param context evaluation context containing parameter bindings
+     * @param continuation continuation from a previous execution of this same plan
+     * @param executeProperties limits on execution
+     * @param fieldNames the names of the fields used by the filter
+     * @param filter a predicate that returns {@code true} for records that should be returned
+     * @return a cursor of records that match the filter or {@code null} if the inner plan is not a {@link RecordQueryScanPlan}
+     * @see RecordQueryScanPlan#executeMatching
+     */
+    @Nullable
+    public <M extends Message> RecordCursor<QueryResult> executeMatching(@Nonnull final FDBRecordStoreBase<M> store,
+                                                                         @Nonnull final EvaluationContext context,
+                                                                         @Nullable final byte[] continuation,
+                                                                         @Nonnull final ExecuteProperties executeProperties,
+                                                                         @Nonnull final Collection<String> fieldNames,
+                                                                         @Nonnull final Function<FDBStoredRecord<M>, Boolean> filter) {
+        if (!(getInnerPlan() instanceof RecordQueryScanPlan)) {
+            return null;
+        }
+        final Function<FDBStoredRecord<M>, Boolean> typeFilter = RecordQueryFilterPlanBase.instrumentFilter(
+                rec -> recordTypes.contains(rec.getRecordType().getName()), store.getTimer(),
+                inCounts, duringEvents, successCounts, failureCounts);
+        return ((RecordQueryScanPlan)getInnerPlan())
+                .executeMatching(store, context, continuation, executeProperties.clearSkipAndLimit(), fieldNames,
+                        rec -> Boolean.TRUE.equals(typeFilter.apply(rec)) && Boolean.TRUE.equals(filter.apply(rec)))
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
     @Override
     public boolean isReverse() {
         return getInnerPlan().isReverse();
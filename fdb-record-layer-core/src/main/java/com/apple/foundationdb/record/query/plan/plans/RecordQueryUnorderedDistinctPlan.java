@@ -28,7 +28,6 @@ import com.apple.foundationdb.record.PlanDeserializer;
 import com.apple.foundationdb.record.PlanHashable;
 import com.apple.foundationdb.record.PlanSerializationContext;
 import com.apple.foundationdb.record.RecordCursor;
-import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.planprotos.PRecordQueryPlan;
 import com.apple.foundationdb.record.planprotos.PRecordQueryUnorderedDistinctPlan;
@@ -46,6 +45,9 @@ import com.apple.foundationdb.record.query.plan.cascades.explain.PlannerGraph;
 import com.apple.foundationdb.record.query.plan.cascades.expressions.RelationalExpression;
 import com.apple.foundationdb.record.query.plan.cascades.values.Value;
 import com.apple.foundationdb.record.query.plan.cascades.values.translation.TranslationMap;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryDistinctAdapter;
+import com.apple.foundationdb.record.sorting.DistinctCursor;
+import com.apple.foundationdb.record.sorting.SpillingDistinctSet;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -58,13 +60,14 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 /**
  * A query plan that removes duplicates by means of a hash table of previously seen values.
+ * The table spills to a file once it uses more memory than
+ * {@link com.apple.foundationdb.record.FDBRecordStoreProperties#UNORDERED_DISTINCT_MEMORY_BUDGET}.
  */
 @API(API.Status.INTERNAL)
 public class RecordQueryUnorderedDistinctPlan implements RecordQueryPlanWithChild {
@@ -101,10 +104,10 @@ public class RecordQueryUnorderedDistinctPlan implements RecordQueryPlanWithChil
                                                                      @Nonnull final EvaluationContext context,
                                                                      @Nullable final byte[] continuation,
                                                                      @Nonnull final ExecuteProperties executeProperties) {
-        final Set<Key.Evaluated> seen = new HashSet<>();
-        return getInner().executePlan(store, context, continuation, executeProperties.clearSkipAndLimit())
-                .filterInstrumented(result -> seen.add(getComparisonKey().evaluateMessageSingleton(null, result.getMessage())),
-                        store.getTimer(), Collections.emptySet(), duringEvents, uniqueCounts, duplicateCounts)
+        final SpillingDistinctSet seen = RecordQueryDistinctAdapter.newDistinctSet(store);
+        return new DistinctCursor<>(getInner().executePlan(store, context, continuation, executeProperties.clearSkipAndLimit()),
+                result -> getComparisonKey().evaluateMessageSingleton(null, result.getMessage()).toTuple().pack(),
+                seen, store.getTimer(), duringEvents, uniqueCounts, duplicateCounts)
                 .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
     }
 
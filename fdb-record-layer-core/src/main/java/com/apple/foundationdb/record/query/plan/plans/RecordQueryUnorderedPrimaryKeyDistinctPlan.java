@@ -43,7 +43,9 @@ import com.apple.foundationdb.record.query.plan.cascades.explain.PlannerGraph;
 import com.apple.foundationdb.record.query.plan.cascades.expressions.RelationalExpression;
 import com.apple.foundationdb.record.query.plan.cascades.values.Value;
 import com.apple.foundationdb.record.query.plan.cascades.values.translation.TranslationMap;
-import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryDistinctAdapter;
+import com.apple.foundationdb.record.sorting.DistinctCursor;
+import com.apple.foundationdb.record.sorting.SpillingDistinctSet;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -55,13 +57,14 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 /**
  * A query plan that removes duplicates by means of a hash table of primary keys already seen.
+ * The table spills to a file once it uses more memory than
+ * {@link com.apple.foundationdb.record.FDBRecordStoreProperties#UNORDERED_DISTINCT_MEMORY_BUDGET}.
  */
 @API(API.Status.INTERNAL)
 public class RecordQueryUnorderedPrimaryKeyDistinctPlan implements RecordQueryPlanWithChild {
@@ -93,10 +96,10 @@ public class RecordQueryUnorderedPrimaryKeyDistinctPlan implements RecordQueryPl
                                                                      @Nonnull final EvaluationContext context,
                                                                      @Nullable final byte[] continuation,
                                                                      @Nonnull final ExecuteProperties executeProperties) {
-        final Set<Tuple> seen = new HashSet<>();
-        return getInner().executePlan(store, context, continuation, executeProperties.clearSkipAndLimit())
-                .filterInstrumented(result -> seen.add(Objects.requireNonNull(result.getPrimaryKey())), store.getTimer(),
-                        Collections.emptySet(), duringEvents, uniqueCounts, duplicateCounts)
+        final SpillingDistinctSet seen = RecordQueryDistinctAdapter.newDistinctSet(store);
+        return new DistinctCursor<>(getInner().executePlan(store, context, continuation, executeProperties.clearSkipAndLimit()),
+                result -> Objects.requireNonNull(result.getPrimaryKey()).pack(), seen, store.getTimer(),
+                duringEvents, uniqueCounts, duplicateCounts)
                 .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
     }
 
@@ -0,0 +1,209 @@
+/*
+ * RecordQueryDistinctAdapter.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.provider.common.CipherPool;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.sorting.FileSortAdapter;
+import com.apple.foundationdb.record.sorting.MemorySorter;
+import com.apple.foundationdb.record.sorting.SpillingDistinctSet;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.google.common.base.Suppliers;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.KeyGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A {@link FileSortAdapter} for spilling the keys seen by a {@link SpillingDistinctSet} to files.
+ *
+ * Keys are packed tuples ordered as unsigned bytes. The spill files only live as long as the cursor that made them,
+ * so they are encrypted with a key generated for each adapter, like those of {@link RecordQuerySortPlan}.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryDistinctAdapter implements FileSortAdapter<byte[], byte[]> {
+    // Spilling goes through a tree map of this many keys at a time.
+    public static final int DEFAULT_MAX_KEY_COUNT_IN_MEMORY = 100_000;
+
+    private final int metaDataVersion;
+
+    @Nullable
+    private Key encryptionKey;
+    private static final Supplier<SecureRandom> RANDOM = Suppliers.memoize(SecureRandom::new);
+
+    public RecordQueryDistinctAdapter(int metaDataVersion) {
+        this.metaDataVersion = metaDataVersion;
+    }
+
+    /**
+     * Create a new distinct set for a query against the given store, using the memory budget from the
+     * {@link FDBRecordStoreProperties#UNORDERED_DISTINCT_MEMORY_BUDGET} property of its context.
+     * @param store the record store being queried
+     * @return a new distinct set, which the caller must close
+     */
+    @Nonnull
+    public static SpillingDistinctSet newDistinctSet(@Nonnull FDBRecordStoreBase<?> store) {
+        final long memoryBudget = Objects.requireNonNull(store.getContext().getPropertyStorage()
+                .getPropertyValue(FDBRecordStoreProperties.UNORDERED_DISTINCT_MEMORY_BUDGET));
+        return new SpillingDistinctSet(new RecordQueryDistinctAdapter(store.getRecordMetaData().getVersion()),
+                memoryBudget, store.getTimer(), store.getExecutor());
+    }
+
+    @Override
+    public int compare(@Nonnull byte[] o1, @Nonnull byte[] o2) {
+        return ByteArrayUtil.compareUnsigned(o1, o2);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] generateKey(@Nonnull byte[] value) {
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serializeKey(@Nonnull byte[] key) {
+        return key;
+    }
+
+    @Override
+    public boolean isSerializedOrderReversed() {
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] deserializeKey(@Nonnull byte[] key) {
+        return key;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serializeValue(@Nonnull byte[] value) {
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] deserializeValue(@Nonnull byte[] bytes) {
+        return bytes;
+    }
+
+    @Override
+    public int getMaxRecordCountInMemory() {
+        return DEFAULT_MAX_KEY_COUNT_IN_MEMORY;
+    }
+
+    @Nonnull
+    @Override
+    public MemorySorter.RecordCountInMemoryLimitMode getRecordCountInMemoryLimitMode() {
+        return MemorySorter.RecordCountInMemoryLimitMode.STOP;
+    }
+
+    @Nonnull
+    @Override
+    public MemorySortComparator<byte[]> getComparator(@Nullable byte[] minimumKey) {
+        return new OrderComparator<>(this, minimumKey);
+    }
+
+    @Nonnull
+    @Override
+    public File generateFilename() throws IOException {
+        return File.createTempFile("fdb", ".bin");
+    }
+
+    @Override
+    public int getMetaDataVersion() {
+        return metaDataVersion;
+    }
+
+    @Override
+    public void writeValue(@Nonnull byte[] value, @Nonnull CodedOutputStream stream) throws IOException {
+        // The key is written again as the value; compression mostly removes the repetition.
+        stream.writeByteArrayNoTag(value);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] readValue(@Nonnull CodedInputStream stream) throws IOException {
+        return stream.readByteArray();
+    }
+
+    @Override
+    public int getMinFileRecordCount() {
+        // Every spill goes to a file.
+        return 0;
+    }
+
+    @Override
+    public int getMaxFileCount() {
+        return RecordQuerySortAdapter.DEFAULT_MAX_FILE_COUNT;
+    }
+
+    @Override
+    public int getRecordCountPerSection() {
+        return RecordQuerySortAdapter.DEFAULT_RECORD_COUNT_PER_SECTION;
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public String getEncryptionCipherName() {
+        return CipherPool.DEFAULT_CIPHER;
+    }
+
+    @Nullable
+    @Override
+    public synchronized Key getEncryptionKey() {
+        if (encryptionKey == null) {
+            try {
+                final KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+                keyGen.init(128, RANDOM.get());
+                encryptionKey = keyGen.generateKey();
+            } catch (GeneralSecurityException ex) {
+                throw new RecordCoreException(ex);
+            }
+        }
+        return encryptionKey;
+    }
+
+    @Nullable
+    @Override
+    public SecureRandom getSecureRandom() {
+        return RANDOM.get();
+    }
+}
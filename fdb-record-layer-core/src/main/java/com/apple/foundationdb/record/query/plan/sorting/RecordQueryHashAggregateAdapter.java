@@ -0,0 +1,182 @@
+/*
+ * RecordQueryHashAggregateAdapter.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordSortingProto;
+import com.apple.foundationdb.record.sorting.FileSortAdapter;
+import com.apple.foundationdb.record.sorting.HashAggregateCursor;
+import com.apple.foundationdb.record.sorting.MemorySorter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Comparator;
+
+/**
+ * A {@link FileSortAdapter} for spilling the partial aggregates of a {@link HashAggregateCursor}.
+ *
+ * Groups are ordered by their serialized key, so that spilled entries for the same group are adjacent after merging.
+ * Spill files are compressed but not encrypted, since they need to be readable when resuming from a continuation
+ * with a new adapter.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryHashAggregateAdapter implements FileSortAdapter<ByteString, RecordSortingProto.HashAggregateGroup> {
+    private static final Comparator<ByteString> KEY_COMPARATOR = ByteString.unsignedLexicographicalComparator();
+
+    private final int maxGroupsInMemory;
+    private final int metaDataVersion;
+
+    public RecordQueryHashAggregateAdapter(int maxGroupsInMemory, int metaDataVersion) {
+        this.maxGroupsInMemory = maxGroupsInMemory;
+        this.metaDataVersion = metaDataVersion;
+    }
+
+    @Override
+    public int compare(@Nonnull ByteString o1, @Nonnull ByteString o2) {
+        return KEY_COMPARATOR.compare(o1, o2);
+    }
+
+    @Nonnull
+    @Override
+    public ByteString generateKey(@Nonnull RecordSortingProto.HashAggregateGroup value) {
+        return value.getKey();
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serializeKey(@Nonnull ByteString key) {
+        return key.toByteArray();
+    }
+
+    @Override
+    public boolean isSerializedOrderReversed() {
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public ByteString deserializeKey(@Nonnull byte[] key) {
+        return ByteString.copyFrom(key);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] serializeValue(@Nonnull RecordSortingProto.HashAggregateGroup value) {
+        return value.toByteArray();
+    }
+
+    @Nonnull
+    @Override
+    public RecordSortingProto.HashAggregateGroup deserializeValue(@Nonnull byte[] bytes) {
+        try {
+            return RecordSortingProto.HashAggregateGroup.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException ex) {
+            throw new RecordCoreException(ex);
+        }
+    }
+
+    @Override
+    public int getMaxRecordCountInMemory() {
+        return maxGroupsInMemory;
+    }
+
+    @Nonnull
+    @Override
+    public MemorySorter.RecordCountInMemoryLimitMode getRecordCountInMemoryLimitMode() {
+        return MemorySorter.RecordCountInMemoryLimitMode.STOP;
+    }
+
+    @Nonnull
+    @Override
+    public MemorySortComparator<ByteString> getComparator(@Nullable ByteString minimumKey) {
+        return new OrderComparator<>(this, minimumKey);
+    }
+
+    @Nonnull
+    @Override
+    public File generateFilename() throws IOException {
+        return File.createTempFile("fdb", ".bin");
+    }
+
+    @Override
+    public int getMetaDataVersion() {
+        return metaDataVersion;
+    }
+
+    @Override
+    public void writeValue(@Nonnull RecordSortingProto.HashAggregateGroup value, @Nonnull CodedOutputStream stream) throws IOException {
+        stream.writeMessageNoTag(value);
+    }
+
+    @Nonnull
+    @Override
+    public RecordSortingProto.HashAggregateGroup readValue(@Nonnull CodedInputStream stream) throws IOException {
+        return RecordSortingProto.HashAggregateGroup.parseFrom(stream.readBytes());
+    }
+
+    @Override
+    public int getMinFileRecordCount() {
+        // Every spill goes to a file.
+        return 0;
+    }
+
+    @Override
+    public int getMaxFileCount() {
+        return RecordQuerySortAdapter.DEFAULT_MAX_FILE_COUNT;
+    }
+
+    @Override
+    public int getRecordCountPerSection() {
+        return RecordQuerySortAdapter.DEFAULT_RECORD_COUNT_PER_SECTION;
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public String getEncryptionCipherName() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Key getEncryptionKey() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public SecureRandom getSecureRandom() {
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * RecordQueryHashJoinAdapter.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.sorting.HashJoinCursor;
+import com.apple.foundationdb.record.sorting.MemorySortAdapter;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link RecordQuerySortAdapter} for loading the build side of a {@link HashJoinCursor}.
+ *
+ * Build records are kept in the order of their join key followed by their primary key, which makes the key unique
+ * for each record, as the cursor requires. Spilled files are written exactly as for sorting.
+ * @param <M> type used to represent stored records
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryHashJoinAdapter<M extends Message> extends RecordQuerySortAdapter<M> {
+    // The sort key is only consulted for its direction.
+    private static final RecordQuerySortKey JOIN_KEY_ORDER = new RecordQuerySortKey(EmptyKeyExpression.EMPTY, false);
+
+    private final int maxRecordCountInMemory;
+    @Nonnull
+    private final Function<FDBQueriedRecord<M>, Tuple> joinKeyFunction;
+
+    public RecordQueryHashJoinAdapter(int maxRecordCountInMemory,
+                                      @Nonnull Function<FDBQueriedRecord<M>, Tuple> joinKeyFunction,
+                                      @Nonnull FDBRecordStoreBase<M> recordStore) {
+        super(maxRecordCountInMemory, false, MemorySortAdapter.OrderComparator::new, JOIN_KEY_ORDER, recordStore);
+        this.maxRecordCountInMemory = maxRecordCountInMemory;
+        this.joinKeyFunction = joinKeyFunction;
+    }
+
+    /**
+     * Get the join key of a build record.
+     * @param value a build record
+     * @return the join key or {@code null} if the record cannot match anything
+     */
+    @Nullable
+    public Tuple joinKey(@Nonnull FDBQueriedRecord<M> value) {
+        return joinKeyFunction.apply(value);
+    }
+
+    @Nonnull
+    @Override
+    public Tuple generateKey(@Nonnull FDBQueriedRecord<M> value) {
+        return Objects.requireNonNull(joinKey(value)).addAll(value.getPrimaryKey());
+    }
+
+    @Override
+    public int getMaxRecordCountInMemory() {
+        return maxRecordCountInMemory;
+    }
+
+    @Override
+    public int getMinFileRecordCount() {
+        return maxRecordCountInMemory;
+    }
+}
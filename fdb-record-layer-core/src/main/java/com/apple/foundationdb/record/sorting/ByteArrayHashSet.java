@@ -0,0 +1,215 @@
+/*
+ * ByteArrayHashSet.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreException;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of byte arrays, such as packed tuples, using open addressing.
+ *
+ * The contents of all the members are copied into a single growable byte array, so that the set does not hold a separate
+ * object for each member. The hash table itself is a pair of {@code int} arrays holding the position of each member in
+ * that byte array and its hash code. This makes the memory used by the set predictable, see {@link #getMemoryFootprint}.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ByteArrayHashSet implements Iterable<byte[]> {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_CONTENTS_SIZE = 1024;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    // Position of each member in contents plus one, so that zero means an empty slot.
+    @Nonnull
+    private int[] slots;
+    @Nonnull
+    private int[] hashes;
+    @Nonnull
+    private byte[] contents;
+    private int contentsSize;
+    private int size;
+
+    public ByteArrayHashSet() {
+        slots = new int[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        contents = new byte[INITIAL_CONTENTS_SIZE];
+    }
+
+    /**
+     * Add a member to the set.
+     * @param key the member to add, which is copied into the set
+     * @return {@code true} if the set did not already contain the given member
+     */
+    public boolean add(@Nonnull byte[] key) {
+        final int hash = hash(key);
+        final int mask = slots.length - 1;
+        int index = hash & mask;
+        while (slots[index] != 0) {
+            if (hashes[index] == hash && matches(slots[index] - 1, key)) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = append(key) + 1;
+        hashes[index] = hash;
+        size++;
+        // Keep the load factor at most one half so that probe sequences stay short.
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Get whether the set contains the given member.
+     * @param key the member to look for
+     * @return {@code true} if the set contains the given member
+     */
+    public boolean contains(@Nonnull byte[] key) {
+        final int hash = hash(key);
+        final int mask = slots.length - 1;
+        int index = hash & mask;
+        while (slots[index] != 0) {
+            if (hashes[index] == hash && matches(slots[index] - 1, key)) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of members in the set.
+     * @return the number of members
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the approximate number of bytes of memory held by the set.
+     * This counts the allocated size of the arrays, not just the part in use.
+     * @return the memory footprint in bytes
+     */
+    public long getMemoryFootprint() {
+        return (long)contents.length + (long)(slots.length + hashes.length) * Integer.BYTES;
+    }
+
+    /**
+     * Get an iterator over copies of the members of the set, in no particular order.
+     * The set must not be changed while iterating.
+     * @return an iterator over the members
+     */
+    @Nonnull
+    @Override
+    public Iterator<byte[]> iterator() {
+        return new Iterator<>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < contentsSize;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int length = readLength(position);
+                final byte[] key = Arrays.copyOfRange(contents, position + LENGTH_BYTES, position + LENGTH_BYTES + length);
+                position += LENGTH_BYTES + length;
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Remove all the members from the set and release the memory they used.
+     */
+    public void clear() {
+        slots = new int[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        contents = new byte[INITIAL_CONTENTS_SIZE];
+        contentsSize = 0;
+        size = 0;
+    }
+
+    private static int hash(@Nonnull byte[] key) {
+        final int hash = Arrays.hashCode(key) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean matches(int position, @Nonnull byte[] key) {
+        final int length = readLength(position);
+        return length == key.length &&
+               Arrays.equals(contents, position + LENGTH_BYTES, position + LENGTH_BYTES + length, key, 0, key.length);
+    }
+
+    private int readLength(int position) {
+        return ((contents[position] & 0xFF) << 24) | ((contents[position + 1] & 0xFF) << 16) |
+               ((contents[position + 2] & 0xFF) << 8) | (contents[position + 3] & 0xFF);
+    }
+
+    private int append(@Nonnull byte[] key) {
+        final int needed = contentsSize + LENGTH_BYTES + key.length;
+        if (needed < 0) {
+            throw new RecordCoreException("byte array hash set is too large");
+        }
+        if (needed > contents.length) {
+            contents = Arrays.copyOf(contents, (int)Math.min(Integer.MAX_VALUE - 8, Math.max((long)contents.length * 2, needed)));
+        }
+        final int position = contentsSize;
+        contents[position] = (byte)(key.length >>> 24);
+        contents[position + 1] = (byte)(key.length >>> 16);
+        contents[position + 2] = (byte)(key.length >>> 8);
+        contents[position + 3] = (byte)key.length;
+        System.arraycopy(key, 0, contents, position + LENGTH_BYTES, key.length);
+        contentsSize = needed;
+        return position;
+    }
+
+    private void rehash(int capacity) {
+        final int[] oldSlots = slots;
+        final int[] oldHashes = hashes;
+        slots = new int[capacity];
+        hashes = new int[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int index = oldHashes[i] & mask;
+                while (slots[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = oldSlots[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * DistinctCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A cursor that removes duplicates from another cursor by remembering the keys it has returned in a
+ * {@link SpillingDistinctSet}.
+ *
+ * The order of the inner cursor is preserved and its continuations are returned unchanged. The set is closed,
+ * deleting any spill files, when this cursor is closed, so duplicates are only removed within a single execution.
+ * @param <T> the type of elements of the cursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class DistinctCursor<T> implements RecordCursor<T> {
+    @Nonnull
+    private final RecordCursor<T> filtered;
+    @Nonnull
+    private final SpillingDistinctSet seen;
+
+    /**
+     * Create a new distinct cursor.
+     * @param inner the cursor whose elements may contain duplicates
+     * @param keyFunction a function returning the key that determines whether elements are duplicates
+     * @param seen the set of keys already seen, which is owned by the new cursor
+     * @param timer a timer to record the filter events and counts
+     * @param duringEvents events to record the time spent checking keys
+     * @param uniqueCounts counts incremented for elements that are returned
+     * @param duplicateCounts counts incremented for elements that are skipped as duplicates
+     */
+    public DistinctCursor(@Nonnull RecordCursor<T> inner, @Nonnull Function<T, byte[]> keyFunction,
+                          @Nonnull SpillingDistinctSet seen, @Nullable StoreTimer timer,
+                          @Nonnull Set<StoreTimer.Event> duringEvents,
+                          @Nonnull Set<StoreTimer.Count> uniqueCounts,
+                          @Nonnull Set<StoreTimer.Count> duplicateCounts) {
+        this.seen = seen;
+        // A pipeline size of one keeps the keys added to the set in the order of the inner cursor.
+        this.filtered = inner.filterAsyncInstrumented(value -> seen.add(keyFunction.apply(value)), 1,
+                timer, Collections.emptySet(), duringEvents, uniqueCounts, duplicateCounts);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<T>> onNext() {
+        return filtered.onNext();
+    }
+
+    @Override
+    public void close() {
+        filtered.close();
+        seen.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return filtered.isClosed();
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return filtered.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            filtered.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+}
@@ -29,6 +29,7 @@ import com.apple.foundationdb.record.RecordSortingProto;
 import com.apple.foundationdb.record.provider.common.CipherPool;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.google.common.io.ByteStreams;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.ExtensionRegistryLite;
@@ -40,10 +41,12 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.IvParameterSpec;
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -58,7 +61,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
@@ -75,18 +80,32 @@ import java.util.zip.InflaterInputStream;
  *
  * Files can be optionally compressed and encrypted. This applies at the section level: the section
  * headers are cleartext and the keys and records are not individually compressed / encrypted.
+ * Since version 2 of the file format, sections are compressed before they are encrypted, so that
+ * compression is still effective for encrypted files.
  *
  * If the input set is small enough, it can remain in memory in the tree map
  * and can be returned directly from there.
+ *
+ * When the tree map fills up, it is saved to a file in the background while loading continues into a second
+ * tree map, so the peak memory use is up to twice the adapter's {@link MemorySortAdapter#getMaxRecordCountInMemory}.
  * @param <K> type of key
  * @param <V> type of value
  */
 @API(API.Status.EXPERIMENTAL)
 public class FileSorter<K, V>  {
-    public static final int SORT_FILE_VERSION = 1;
+    public static final int SORT_FILE_VERSION = 2;
+    // Version 1 files, which encrypted sections before compressing them, can still be read.
+    public static final int MIN_SORT_FILE_VERSION = 1;
+    // Size of the buffers used for compressing, decompressing and reading encrypted sections.
+    static final int STREAM_BUFFER_SIZE = 8192;
 
     @Nonnull
-    private final MemorySorter<K, V> mapSorter;
+    private MemorySorter<K, V> mapSorter;
+    // The other tree map, which is being saved to a file while loading continues into mapSorter.
+    @Nullable
+    private MemorySorter<K, V> savingSorter;
+    @Nonnull
+    private CompletableFuture<Void> pendingSave = AsyncUtil.DONE;
     @Nonnull
     private final FileSortAdapter<K, V> adapter;
     @Nullable
@@ -154,32 +173,68 @@ public class FileSorter<K, V>  {
     }
 
     public CompletableFuture<LoadResult> load(@Nonnull RecordCursor<V> source) {
+        return load(source, true);
+    }
+
+    /**
+     * Load the source into sorted files, adding at least one sorted run to {@link #getFiles} unless the source is empty.
+     * Unlike {@link #load}, nothing is kept in memory and the files are not merged into a single file at the end, only
+     * when there are more than {@link FileSortAdapter#getMaxFileCount} of them. A caller that loads several times can
+     * then merge all the runs once when reading them back.
+     * @param source the values to sort
+     * @return a future that completes with the result of loading
+     */
+    public CompletableFuture<LoadResult> loadRuns(@Nonnull RecordCursor<V> source) {
+        return load(source, false);
+    }
+
+    private CompletableFuture<LoadResult> load(@Nonnull RecordCursor<V> source, boolean consolidate) {
         loadResult = null;
         return AsyncUtil.whileTrue(() -> mapSorter.load(source, null).thenCompose(mapResult -> {
             if (mapResult.isFull()) {
-                return CompletableFuture.runAsync(() -> saveToNextFile(adapter.getMaxFileCount()), executor).thenApply(vignore -> true);
-            }
-            if (mapResult.getSourceNoNextReason().isOutOfBand()) {
-                loadResult = new LoadResult(false, false, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
-                return AsyncUtil.READY_FALSE;
-            } else if (files.isEmpty() && mapSorter.getMap().size() < adapter.getMinFileRecordCount()) {
-                loadResult = new LoadResult(true, true, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
-                return AsyncUtil.READY_FALSE;
-            } else {
-                loadResult = new LoadResult(true, false, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
-                // Save from memory and, if necessary, consolidate into a single file.
-                return CompletableFuture.runAsync(() -> saveToNextFile(1), executor).thenApply(vignore -> false);
+                // Only one save at a time, since they all add to the same list of files.
+                return pendingSave.thenApply(vignore -> {
+                    startSave();
+                    return true;
+                });
             }
+            // Everything else needs the files from any save still in progress.
+            return pendingSave.thenCompose(vignore -> afterLoad(mapResult, consolidate));
         }), executor).thenApply(vignore -> loadResult);
     }
 
+    // Swap in the spare tree map and save the full one in the background.
+    private void startSave() {
+        final MemorySorter<K, V> fullSorter = mapSorter;
+        mapSorter = savingSorter == null ? new MemorySorter<>(adapter, timer) : savingSorter;
+        savingSorter = fullSorter;
+        pendingSave = CompletableFuture.runAsync(() -> saveToNextFile(fullSorter, adapter.getMaxFileCount()), executor);
+    }
+
+    @Nonnull
+    private CompletableFuture<Boolean> afterLoad(@Nonnull MemoryScratchpad.LoadResult<K> mapResult, boolean consolidate) {
+        if (mapResult.getSourceNoNextReason().isOutOfBand()) {
+            loadResult = new LoadResult(false, false, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
+            return AsyncUtil.READY_FALSE;
+        } else if (consolidate && files.isEmpty() && mapSorter.getMap().size() < adapter.getMinFileRecordCount()) {
+            loadResult = new LoadResult(true, true, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
+            return AsyncUtil.READY_FALSE;
+        } else {
+            loadResult = new LoadResult(true, false, mapResult.getSourceContinuation(), mapResult.getSourceNoNextReason());
+            // Save from memory and, if necessary, consolidate into a single file.
+            final MemorySorter<K, V> lastSorter = mapSorter;
+            final int maxNumFiles = consolidate ? 1 : adapter.getMaxFileCount();
+            return CompletableFuture.runAsync(() -> saveToNextFile(lastSorter, maxNumFiles), executor).thenApply(vignore -> false);
+        }
+    }
+
     @SuppressWarnings({"PMD.CompareObjectsWithEquals", "PMD.CloseResource"})
-    private void saveToNextFile(int maxNumFiles) {
+    private void saveToNextFile(@Nonnull MemorySorter<K, V> sorter, int maxNumFiles) {
         final long startTime = System.nanoTime();
         final boolean compress = adapter.isCompressed();
         final java.security.Key encryptionKey = adapter.getEncryptionKey();
         Cipher cipher = null;
-        if (!mapSorter.getMap().isEmpty()) {
+        if (!sorter.getMap().isEmpty()) {
             File file;
             try {
                 file = adapter.generateFilename();
@@ -219,7 +274,7 @@ public class FileSorter<K, V>  {
                         timer.recordSinceNanoTime(SortEvents.Events.FILE_SORT_OPEN_FILE, startTime);
                     }
                     int numberOfRecords = 0;
-                    for (Map.Entry<K, V> keyAndValue : mapSorter.getMap().entrySet()) {
+                    for (Map.Entry<K, V> keyAndValue : sorter.getMap().entrySet()) {
                         final long recordStartTime = System.nanoTime();
                         entryStream.writeByteArrayNoTag(adapter.serializeKey(keyAndValue.getKey()));
                         adapter.writeValue(keyAndValue.getValue(), entryStream);
@@ -255,7 +310,7 @@ public class FileSorter<K, V>  {
                 }
             }
             files.add(file);
-            mapSorter.getMap().clear();
+            sorter.getMap().clear();
         }
         if (files.size() > maxNumFiles) {
             File file;
@@ -288,34 +343,77 @@ public class FileSorter<K, V>  {
         cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
     }
 
+    static void checkFileVersion(@Nonnull RecordSortingProto.SortFileHeader.Builder fileHeader, @Nonnull FileSortAdapter<?, ?> adapter) {
+        if (fileHeader.getVersion() < MIN_SORT_FILE_VERSION || fileHeader.getVersion() > SORT_FILE_VERSION) {
+            throw new RecordCoreException("file header version mismatch");
+        }
+        if (fileHeader.getMetaDataVersion() != adapter.getMetaDataVersion()) {
+            throw new RecordCoreException("file meta-data version mismatch");
+        }
+    }
+
+    // Compress first, so that there is something left to compress, and then encrypt.
     @Nonnull
     @SuppressWarnings("PMD.CloseResource")
     static OutputStream wrapOutputStream(@Nonnull FileOutputStream fileStream,
                                          @Nullable Cipher cipher, boolean compress) {
         OutputStream stream = new NoCloseFilterStream(fileStream);
-        if (compress) {
-            stream = new DeflaterOutputStream(stream);
-        }
         if (cipher != null) {
             stream = new CipherOutputStream(stream, cipher);
         }
+        if (compress) {
+            stream = new FastDeflaterOutputStream(stream);
+        }
         return stream;
     }
 
+    // Each section of a compressed file after version 1 is inflated with the reader's own inflater, which is reset here
+    // and which the reader must end when it is closed, since an inflater passed in is not released by the stream.
     @Nonnull
     @SuppressWarnings("PMD.CloseResource")
     static InputStream wrapInputStream(@Nonnull FileInputStream fileStream,
-                                       @Nullable Cipher cipher, boolean compressed) {
-        InputStream stream = fileStream;
-        if (compressed) {
-            stream = new InflaterInputStream(stream);
+                                       @Nullable Cipher cipher, @Nullable Inflater inflater,
+                                       int fileVersion, long sectionLength) {
+        final boolean compressed = inflater != null;
+        if (fileVersion == 1) {
+            InputStream stream = fileStream;
+            if (compressed) {
+                stream = new InflaterInputStream(stream);
+            }
+            if (cipher != null) {
+                stream = new ReadingSkipFilterStream(new CipherInputStream(stream, cipher));
+            }
+            return stream;
         }
+        // The cipher must not go past the end of the section, or it would try to decrypt the next section header.
+        InputStream stream = ByteStreams.limit(new BufferedInputStream(fileStream, STREAM_BUFFER_SIZE), sectionLength);
         if (cipher != null) {
-            stream = new CipherInputStream(stream, cipher);
+            stream = new ReadingSkipFilterStream(new CipherInputStream(stream, cipher));
+        }
+        if (compressed) {
+            inflater.reset();
+            stream = new InflaterInputStream(stream, inflater, STREAM_BUFFER_SIZE);
         }
         return stream;
     }
 
+    // Spill files are only read back once or twice, so favor speed over size. Unlike the default compressor,
+    // one passed in is not released on close, so do that here.
+    private static class FastDeflaterOutputStream extends DeflaterOutputStream {
+        public FastDeflaterOutputStream(@Nonnull OutputStream stream) {
+            super(stream, new Deflater(Deflater.BEST_SPEED), STREAM_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
     // Both DeflaterOutputStream and CipherOutputStream have the problem that close() does finish work that isn't otherwise
     // available as a flush()-type operation. So close down those streams while keeping the actual FileOutputStream open.
     // Since those streams are pretty thin wrappers around Deflater and Cipher, an alternative would be to implement better
@@ -345,12 +443,15 @@ public class FileSorter<K, V>  {
         final java.security.Key encryptionKey;
         @Nullable
         final Cipher cipher;
+        @Nullable
+        final Inflater inflater;
 
         @Nullable
         byte[] key;
         @Nullable
         byte[] value;
 
+        final int fileVersion;
         long sectionFilePosition;
         int sectionRecordEnd;
         int fileRecordEnd;
@@ -371,13 +472,10 @@ public class FileSorter<K, V>  {
             }
             final RecordSortingProto.SortFileHeader.Builder builder =  RecordSortingProto.SortFileHeader.newBuilder();
             headerStream.readMessage(builder, ExtensionRegistryLite.getEmptyRegistry());
-            if (builder.getVersion() != FileSorter.SORT_FILE_VERSION) {
-                throw new RecordCoreException("file header version mismatch");
-            }
-            if (builder.getMetaDataVersion() != adapter.getMetaDataVersion()) {
-                throw new RecordCoreException("file meta-data version mismatch");
-            }
+            checkFileVersion(builder, adapter);
+            fileVersion = builder.getVersion();
             fileRecordEnd = builder.getNumberOfRecords();
+            inflater = compressed ? new Inflater() : null;
         }
 
         @SuppressWarnings("PMD.CloseResource")
@@ -408,7 +506,7 @@ public class FileSorter<K, V>  {
                     if (cipher != null) {
                         initCipherDecrypt(cipher, encryptionKey, builder);
                     }
-                    InputStream inputStream = wrapInputStream(fileStream, cipher, compressed);
+                    InputStream inputStream = wrapInputStream(fileStream, cipher, inflater, fileVersion, builder.getNumberOfBytes());
                     entryStream = CodedInputStream.newInstance(inputStream);
                 }
             }
@@ -422,6 +520,9 @@ public class FileSorter<K, V>  {
             if (cipher != null) {
                 CipherPool.returnCipher(cipher);
             }
+            if (inflater != null) {
+                inflater.end();
+            }
             fileStream.close();
         }
     }
@@ -457,6 +558,7 @@ public class FileSorter<K, V>  {
         long fileHeaderEnd;
         long sectionHeaderPosition;
         long sectionRecordsPosition;
+        boolean closed;
 
         public OutputState(@Nonnull File file, @Nonnull FileSortAdapter<?, ?> adapter) throws IOException, GeneralSecurityException {
             this.file = file;
@@ -520,6 +622,11 @@ public class FileSorter<K, V>  {
 
         @Override
         public void close() throws IOException {
+            // Called a second time on cleanup, when the cipher must not be returned to the pool again.
+            if (closed) {
+                return;
+            }
+            closed = true;
             if (cipher != null) {
                 CipherPool.returnCipher(cipher);
             }
@@ -559,6 +666,34 @@ public class FileSorter<K, V>  {
         }
     }
 
+    // CipherInputStream.skip() only skips what has already been decrypted and then returns zero, which CodedInputStream
+    // does not handle correctly when skipping over a key, since it then discards too much.
+    // So skip by reading instead, as the base InputStream does.
+    private static class ReadingSkipFilterStream extends FilterInputStream {
+        private static final int SKIP_BUFFER_SIZE = 2048;
+
+        public ReadingSkipFilterStream(@Nonnull InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            final byte[] buffer = new byte[(int)Math.min(n, SKIP_BUFFER_SIZE)];
+            long remaining = n;
+            while (remaining > 0) {
+                final int read = read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+    }
+
     // TODO: If there were a limit on the total number of records saved, then each file could be limited to
     // that number and merge could stop when it is reached.
     @SuppressWarnings({"PMD.EmptyCatchBlock", "PMD.CloseResource", "PMD.UseTryWithResources"})
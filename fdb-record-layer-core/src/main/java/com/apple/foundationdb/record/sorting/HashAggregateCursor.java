@@ -0,0 +1,419 @@
+/*
+ * HashAggregateCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorStartContinuation;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.RecordSortingProto;
+import com.apple.foundationdb.record.cursors.aggregate.AccumulatorState;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.google.protobuf.ByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Aggregate the values of a cursor into groups without requiring the input to be ordered by group.
+ *
+ * <p>
+ * The whole input is loaded into a hash table from serialized group key to the {@link AccumulatorState}s of the group.
+ * If the table grows beyond {@link FileSortAdapter#getMaxRecordCountInMemory()} groups, the partial aggregates in it
+ * are spilled to a file using a {@link FileSorter} and the table starts over empty. Each spill adds a separate run
+ * ordered by group key, so spilling does not rewrite what was spilled before; runs are only merged by the sorter if
+ * there are more than {@link FileSortAdapter#getMaxFileCount()} of them. When the input is exhausted, the groups are
+ * returned from memory if nothing was spilled. Otherwise, the remaining groups are spilled too and all the runs are
+ * merged once as they are read back, combining the partial aggregates of the entries for the same group.
+ * </p>
+ *
+ * <p>
+ * Groups are returned in no particular order. Like {@link FileSortCursor}, the continuation of this cursor can include
+ * partial aggregates held in memory and the names of files with spilled partial aggregates. Files are deleted once all
+ * the groups have been returned or the cursor is closed before returning any continuation that refers to them.
+ * </p>
+ * @param <V> type of input value
+ * @param <R> type of aggregated result
+ */
+@API(API.Status.EXPERIMENTAL)
+public class HashAggregateCursor<V, R> implements RecordCursor<R> {
+    @Nonnull
+    private final FileSortAdapter<ByteString, RecordSortingProto.HashAggregateGroup> adapter;
+    @Nonnull
+    private final FileSorter<ByteString, RecordSortingProto.HashAggregateGroup> sorter;
+    @Nonnull
+    private final RecordCursor<V> inner;
+    @Nonnull
+    private final Aggregator<V, R> aggregator;
+    @Nullable
+    private final StoreTimer timer;
+    @Nonnull
+    private final Executor executor;
+
+    private boolean loading;
+    @Nonnull
+    private RecordCursorContinuation innerContinuation;
+    @Nonnull
+    private Map<ByteString, List<AccumulatorState<?, ?>>> table;
+
+    @Nullable
+    private List<Map.Entry<ByteString, List<AccumulatorState<?, ?>>>> inMemoryGroups;
+    private int groupPosition;
+
+    @Nullable
+    private List<File> spillFiles;
+    @Nonnull
+    private List<Integer> recordPositions;
+    @Nullable
+    private List<SpillRun> spillRuns;
+    @Nullable
+    private PriorityQueue<SpillRun> pendingRuns;
+
+    @Nullable
+    private RecordCursorResult<R> nextResult;
+    private boolean filesInContinuation;
+    private boolean closed;
+
+    /**
+     * How the values of the input are grouped and aggregated.
+     * @param <V> type of input value
+     * @param <R> type of aggregated result
+     */
+    public interface Aggregator<V, R> {
+        /**
+         * Get the serialized group key of an input value. Values with equal keys belong to the same group.
+         * @param value an input value
+         * @return the serialized group key
+         */
+        @Nonnull
+        ByteString groupKey(@Nonnull V value);
+
+        /**
+         * Get fresh accumulator states for a new group.
+         * @return a list of states, one for each aggregate
+         */
+        @Nonnull
+        List<AccumulatorState<?, ?>> newStates();
+
+        /**
+         * Accumulate an input value into the states of its group.
+         * @param value an input value
+         * @param states the states of the value's group
+         */
+        void accumulate(@Nonnull V value, @Nonnull List<AccumulatorState<?, ?>> states);
+
+        /**
+         * Produce the result for a completed group.
+         * @param groupKey the serialized group key
+         * @param states the states of the group
+         * @return the aggregated result
+         */
+        @Nonnull
+        R finish(@Nonnull ByteString groupKey, @Nonnull List<AccumulatorState<?, ?>> states);
+    }
+
+    private HashAggregateCursor(@Nonnull FileSortAdapter<ByteString, RecordSortingProto.HashAggregateGroup> adapter,
+                                @Nonnull FileSorter<ByteString, RecordSortingProto.HashAggregateGroup> sorter,
+                                @Nonnull RecordCursor<V> inner, @Nonnull Aggregator<V, R> aggregator,
+                                @Nullable StoreTimer timer, @Nonnull Executor executor,
+                                @Nonnull HashAggregateCursorContinuation continuation) {
+        this.adapter = adapter;
+        this.sorter = sorter;
+        this.inner = inner;
+        this.aggregator = aggregator;
+        this.timer = timer;
+        this.executor = executor;
+        this.loading = continuation.isLoading();
+        this.innerContinuation = continuation.getInnerContinuation();
+        this.table = new HashMap<>();
+        this.recordPositions = Collections.emptyList();
+        for (RecordSortingProto.HashAggregateGroup group : continuation.getInMemoryGroups()) {
+            table.put(group.getKey(), restoreStates(group));
+        }
+        if (!loading) {
+            if (continuation.getFiles().isEmpty()) {
+                inMemoryGroups = new ArrayList<>(table.entrySet());
+            } else {
+                spillFiles = continuation.getFiles();
+                recordPositions = continuation.getRecordPositions();
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<R>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        if (loading) {
+            return AsyncUtil.whileTrue(() -> inner.onNext().thenCompose(innerResult -> {
+                innerContinuation = innerResult.getContinuation();
+                if (innerResult.hasNext()) {
+                    final V value = innerResult.get();
+                    final List<AccumulatorState<?, ?>> states = table.computeIfAbsent(aggregator.groupKey(value), k -> aggregator.newStates());
+                    aggregator.accumulate(value, states);
+                    if (table.size() > adapter.getMaxRecordCountInMemory()) {
+                        return spill().thenApply(vignore -> true);
+                    }
+                    return AsyncUtil.READY_TRUE;
+                }
+                if (innerResult.getNoNextReason().isOutOfBand()) {
+                    // The input did not complete; save what was aggregated so far so that loading can resume.
+                    final HashAggregateCursorContinuation continuation = new HashAggregateCursorContinuation(false, true,
+                            table.entrySet(), sorter.getFiles(), innerContinuation, Collections.emptyList());
+                    filesInContinuation = !sorter.getFiles().isEmpty();
+                    nextResult = RecordCursorResult.withoutNextValue(continuation, innerResult.getNoNextReason());
+                    return AsyncUtil.READY_FALSE;
+                }
+                loading = false;
+                if (sorter.getFiles().isEmpty()) {
+                    inMemoryGroups = new ArrayList<>(table.entrySet());
+                    return AsyncUtil.READY_FALSE;
+                }
+                return spill().thenApply(vignore -> {
+                    spillFiles = new ArrayList<>(sorter.getFiles());
+                    return false;
+                });
+            }), executor).thenApply(vignore -> loading ? nextResult : nextGroup());
+        }
+        return CompletableFuture.completedFuture(nextGroup());
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> spill() {
+        final List<RecordSortingProto.HashAggregateGroup> groups = new ArrayList<>(table.size());
+        for (Map.Entry<ByteString, List<AccumulatorState<?, ?>>> entry : table.entrySet()) {
+            groups.add(HashAggregateCursorContinuation.toGroupProto(entry.getKey(), entry.getValue()));
+        }
+        table = new HashMap<>();
+        return sorter.loadRuns(RecordCursor.fromList(executor, groups)).thenAccept(loadResult -> {
+            if (sorter.getFiles().isEmpty()) {
+                throw new RecordCoreException("hash aggregate spill did not produce a file");
+            }
+        });
+    }
+
+    @Nonnull
+    private RecordCursorResult<R> nextGroup() {
+        if (spillFiles == null) {
+            if (groupPosition < inMemoryGroups.size()) {
+                final Map.Entry<ByteString, List<AccumulatorState<?, ?>>> group = inMemoryGroups.get(groupPosition++);
+                nextResult = RecordCursorResult.withNextValue(aggregator.finish(group.getKey(), group.getValue()),
+                        new HashAggregateCursorContinuation(false, false, inMemoryGroups.subList(groupPosition, inMemoryGroups.size()),
+                                Collections.emptyList(), RecordCursorStartContinuation.START, Collections.emptyList()));
+            } else {
+                nextResult = RecordCursorResult.exhausted();
+            }
+            return nextResult;
+        }
+        try {
+            if (pendingRuns == null) {
+                openSpillRuns();
+            }
+            final SpillRun firstRun = pendingRuns.poll();
+            if (firstRun == null) {
+                nextResult = RecordCursorResult.exhausted();
+                deleteFiles();
+                return nextResult;
+            }
+            // Combine all the entries for this group, which are at the head of one or more runs.
+            final ByteString key = Objects.requireNonNull(firstRun.group).getKey();
+            final List<AccumulatorState<?, ?>> states = restoreStates(firstRun.group);
+            advance(firstRun);
+            while (!pendingRuns.isEmpty() && Objects.requireNonNull(pendingRuns.peek().group).getKey().equals(key)) {
+                final SpillRun run = pendingRuns.poll();
+                mergeStates(states, Objects.requireNonNull(run.group));
+                advance(run);
+            }
+            final List<Integer> positions = new ArrayList<>(spillRuns.size());
+            for (SpillRun run : spillRuns) {
+                positions.add(run.getRecordPosition());
+            }
+            filesInContinuation = true;
+            nextResult = RecordCursorResult.withNextValue(aggregator.finish(key, states),
+                    new HashAggregateCursorContinuation(false, false, Collections.emptyList(),
+                            spillFiles, RecordCursorStartContinuation.START, positions));
+            return nextResult;
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new RecordCoreException(ex);
+        }
+    }
+
+    private void openSpillRuns() throws IOException, GeneralSecurityException {
+        final List<File> files = Objects.requireNonNull(spillFiles);
+        spillRuns = new ArrayList<>(files.size());
+        pendingRuns = new PriorityQueue<>(Math.max(1, files.size()), (run1, run2) ->
+                adapter.compare(Objects.requireNonNull(run1.group).getKey(), Objects.requireNonNull(run2.group).getKey()));
+        for (int i = 0; i < files.size(); i++) {
+            final int recordPosition = i < recordPositions.size() ? recordPositions.get(i) : 0;
+            final SpillRun run = new SpillRun(new SortedFileReader<>(files.get(i), adapter, timer,
+                    recordPosition, Integer.MAX_VALUE - recordPosition));
+            spillRuns.add(run);
+            advance(run);
+        }
+    }
+
+    private void advance(@Nonnull SpillRun run) throws IOException, GeneralSecurityException {
+        run.group = run.reader.read();
+        if (run.group != null) {
+            Objects.requireNonNull(pendingRuns).add(run);
+        }
+    }
+
+    @Nonnull
+    private List<AccumulatorState<?, ?>> restoreStates(@Nonnull RecordSortingProto.HashAggregateGroup group) {
+        final List<AccumulatorState<?, ?>> states = aggregator.newStates();
+        mergeStates(states, group);
+        return states;
+    }
+
+    private static void mergeStates(@Nonnull List<AccumulatorState<?, ?>> states,
+                                    @Nonnull RecordSortingProto.HashAggregateGroup group) {
+        final List<RecordCursorProto.AccumulatorState> partials = group.getStatesList();
+        if (partials.size() != states.size()) {
+            throw new RecordCoreException("hash aggregate partial state does not match aggregates");
+        }
+        for (int i = 0; i < states.size(); i++) {
+            states.get(i).mergeFrom(partials.get(i));
+        }
+    }
+
+    private void deleteFiles() {
+        filesInContinuation = false;
+        closeFileReader();
+        try {
+            sorter.deleteFiles();
+        } catch (IOException ex) {
+            throw new RecordCoreException(ex);
+        }
+        sorter.getFiles().clear();
+    }
+
+    private void closeFileReader() {
+        if (spillRuns != null) {
+            try {
+                for (SpillRun run : spillRuns) {
+                    run.reader.close();
+                }
+            } catch (IOException ex) {
+                throw new RecordCoreException(ex);
+            } finally {
+                spillRuns = null;
+                pendingRuns = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+        closeFileReader();
+        if (!filesInContinuation) {
+            deleteFiles();
+        }
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public boolean accept(@Nonnull final RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    /**
+     * A reader of one spilled run and the entry at its head, which has been read but not yet combined into a group.
+     */
+    private static class SpillRun {
+        @Nonnull
+        private final SortedFileReader<RecordSortingProto.HashAggregateGroup> reader;
+        @Nullable
+        private RecordSortingProto.HashAggregateGroup group;
+
+        SpillRun(@Nonnull SortedFileReader<RecordSortingProto.HashAggregateGroup> reader) {
+            this.reader = reader;
+        }
+
+        // The position of the head entry, which the continuation must start from again.
+        int getRecordPosition() {
+            return reader.getRecordPosition() - (group == null ? 0 : 1);
+        }
+    }
+
+    /**
+     * Create a hash aggregate cursor.
+     * @param adapter the adapter used to spill partial aggregates to files
+     * @param innerCursorFunction a function from a continuation to a cursor over the input
+     * @param aggregator how input values are grouped and aggregated
+     * @param timer timer for recording file events
+     * @param executor executor for asynchronous work
+     * @param continuation the continuation from a previous cursor or {@code null} to start from the beginning
+     * @param <V> type of input value
+     * @param <R> type of aggregated result
+     * @return a new cursor aggregating the input
+     */
+    @Nonnull
+    public static <V, R> HashAggregateCursor<V, R> create(@Nonnull FileSortAdapter<ByteString, RecordSortingProto.HashAggregateGroup> adapter,
+                                                          @Nonnull Function<byte[], RecordCursor<V>> innerCursorFunction,
+                                                          @Nonnull Aggregator<V, R> aggregator,
+                                                          @Nullable StoreTimer timer,
+                                                          @Nonnull Executor executor,
+                                                          @Nullable byte[] continuation) {
+        final HashAggregateCursorContinuation parsedContinuation = HashAggregateCursorContinuation.from(continuation);
+        final RecordCursor<V> inner = parsedContinuation.isLoading()
+                                      ? innerCursorFunction.apply(parsedContinuation.getInnerContinuation().toBytes())
+                                      : RecordCursor.empty(executor);
+        final FileSorter<ByteString, RecordSortingProto.HashAggregateGroup> sorter = new FileSorter<>(adapter, timer, executor);
+        sorter.getFiles().addAll(parsedContinuation.getFiles());
+        return new HashAggregateCursor<>(adapter, sorter, inner, aggregator, timer, executor, parsedContinuation);
+    }
+}
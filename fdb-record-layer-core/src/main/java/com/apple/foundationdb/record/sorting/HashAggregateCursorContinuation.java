@@ -0,0 +1,204 @@
+/*
+ * HashAggregateCursorContinuation.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.ByteArrayContinuation;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorStartContinuation;
+import com.apple.foundationdb.record.RecordSortingProto;
+import com.apple.foundationdb.record.cursors.aggregate.AccumulatorState;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Continuation for {@link HashAggregateCursor}.
+ *
+ * While the input is still loading, this records the partial aggregates of the groups held in memory, any files of
+ * groups already spilled and the continuation of the input cursor. Once returning results, it records either the
+ * groups not yet returned (if they all fit in memory) or the spilled files and the position in each of them of the
+ * next entry not yet merged into a returned group.
+ * Partial aggregates are only serialized if the continuation is actually used.
+ */
+@API(API.Status.EXPERIMENTAL)
+class HashAggregateCursorContinuation implements RecordCursorContinuation {
+    private final boolean exhausted;
+    private final boolean loading;
+    @Nonnull
+    private final Collection<Map.Entry<ByteString, List<AccumulatorState<?, ?>>>> groups;
+    @Nonnull
+    private final List<File> files;
+    @Nonnull
+    private final RecordCursorContinuation innerContinuation;
+    @Nonnull
+    private final List<Integer> recordPositions;
+
+    @Nullable
+    private RecordSortingProto.HashAggregateContinuation cachedProto;
+    @Nullable
+    private byte[] cachedBytes;
+
+    HashAggregateCursorContinuation(boolean exhausted, boolean loading,
+                                    @Nonnull Collection<Map.Entry<ByteString, List<AccumulatorState<?, ?>>>> groups,
+                                    @Nonnull List<File> files,
+                                    @Nonnull RecordCursorContinuation innerContinuation,
+                                    @Nonnull List<Integer> recordPositions) {
+        this.exhausted = exhausted;
+        this.loading = loading;
+        this.groups = groups;
+        this.files = files;
+        this.innerContinuation = innerContinuation;
+        this.recordPositions = recordPositions;
+    }
+
+    @Nonnull
+    static HashAggregateCursorContinuation exhausted() {
+        return new HashAggregateCursorContinuation(true, false, Collections.emptyList(), Collections.emptyList(),
+                RecordCursorStartContinuation.START, Collections.emptyList());
+    }
+
+    @Nonnull
+    static RecordSortingProto.HashAggregateGroup toGroupProto(@Nonnull ByteString key,
+                                                              @Nonnull List<AccumulatorState<?, ?>> states) {
+        final RecordSortingProto.HashAggregateGroup.Builder builder = RecordSortingProto.HashAggregateGroup.newBuilder()
+                .setKey(key);
+        for (AccumulatorState<?, ?> state : states) {
+            builder.addStates(state.toProto());
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    RecordSortingProto.HashAggregateContinuation toProto() {
+        if (cachedProto == null) {
+            RecordSortingProto.HashAggregateContinuation.Builder builder = RecordSortingProto.HashAggregateContinuation.newBuilder();
+            if (loading) {
+                builder.setLoading(true);
+            }
+            for (Map.Entry<ByteString, List<AccumulatorState<?, ?>>> group : groups) {
+                builder.addInMemoryGroups(toGroupProto(group.getKey(), group.getValue()));
+            }
+            for (File file : files) {
+                builder.addFiles(file.getPath());
+            }
+            final ByteString innerBytes = innerContinuation.toByteString();
+            if (!innerBytes.isEmpty()) {
+                builder.setContinuation(innerBytes);
+            }
+            builder.addAllRecordPositions(recordPositions);
+            cachedProto = builder.build();
+        }
+        return cachedProto;
+    }
+
+    @Nonnull
+    @Override
+    public ByteString toByteString() {
+        if (isEnd()) {
+            return ByteString.EMPTY;
+        }
+        return toProto().toByteString();
+    }
+
+    @Override
+    @Nullable
+    public byte[] toBytes() {
+        if (isEnd()) {
+            return null;
+        }
+        if (cachedBytes == null) {
+            cachedBytes = toByteString().toByteArray();
+        }
+        return cachedBytes;
+    }
+
+    @Nonnull
+    static HashAggregateCursorContinuation from(@Nullable byte[] unparsed) {
+        if (unparsed == null) {
+            return new HashAggregateCursorContinuation(false, true, Collections.emptyList(), Collections.emptyList(),
+                    RecordCursorStartContinuation.START, Collections.emptyList());
+        }
+        final RecordSortingProto.HashAggregateContinuation parsed;
+        try {
+            parsed = RecordSortingProto.HashAggregateContinuation.parseFrom(unparsed);
+        } catch (InvalidProtocolBufferException ex) {
+            throw new RecordCoreException("invalid continuation", ex)
+                    .addLogInfo(LogMessageKeys.RAW_BYTES, ByteArrayUtil2.loggable(unparsed));
+        }
+        // A continuation from before spilled runs were merged on read has a single file and a single position.
+        final List<Integer> recordPositions = parsed.getRecordPositionsCount() > 0 || !parsed.hasRecordPosition()
+                                              ? parsed.getRecordPositionsList()
+                                              : Collections.singletonList(parsed.getRecordPosition());
+        final HashAggregateCursorContinuation result = new HashAggregateCursorContinuation(
+                false, parsed.getLoading(), Collections.emptyList(),
+                parsed.getFilesList().stream().map(File::new).collect(Collectors.toList()),
+                parsed.hasContinuation() ? ByteArrayContinuation.fromNullable(parsed.getContinuation().toByteArray()) : RecordCursorStartContinuation.START,
+                recordPositions);
+        result.cachedProto = parsed;
+        result.cachedBytes = unparsed;
+        return result;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    @Nonnull
+    public List<RecordSortingProto.HashAggregateGroup> getInMemoryGroups() {
+        return toProto().getInMemoryGroupsList();
+    }
+
+    @Nonnull
+    public List<File> getFiles() {
+        return files;
+    }
+
+    @Nonnull
+    RecordCursorContinuation getInnerContinuation() {
+        return innerContinuation;
+    }
+
+    /**
+     * Get the position in each spilled file of the next entry that has not been returned as part of a group.
+     * @return a list of record positions, which may be shorter than the list of files if the missing positions are zero
+     */
+    @Nonnull
+    public List<Integer> getRecordPositions() {
+        return recordPositions;
+    }
+
+    @Override
+    public boolean isEnd() {
+        return exhausted;
+    }
+}
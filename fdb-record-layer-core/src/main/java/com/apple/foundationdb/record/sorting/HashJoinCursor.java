@@ -0,0 +1,389 @@
+/*
+ * HashJoinCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorStartContinuation;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Join two cursors by building a hash table from one of them and probing it with each element of the other.
+ *
+ * <p>
+ * The build side is first loaded completely using a {@link FileSorter}. If it has no more than
+ * {@link FileSortAdapter#getMaxRecordCountInMemory()} values, the hash table holds all of them. Otherwise, the loaded
+ * values are spilled to a single file and the join proceeds in chunks of that many values: the hash table is filled
+ * from the next chunk of the file and the whole probe side is read again. So a build side that fits in memory means
+ * that each side is read once, and a bigger build side costs an extra pass over the probe side per chunk.
+ * </p>
+ *
+ * <p>
+ * For a given probe value, matches are returned in the order of the adapter's keys, which must therefore be unique
+ * for each build value. Probe values whose key is {@code null} never match anything.
+ * </p>
+ *
+ * <p>
+ * Like {@link FileSortCursor}, the continuation of this cursor can include build values held in memory and the names
+ * of files with spilled build values. Files are deleted once the join is complete or the cursor is closed before
+ * returning any continuation that refers to them. A continuation that is never resumed leaves its files behind in the
+ * adapter's temporary location.
+ * </p>
+ * @param <K> type of build sort key
+ * @param <V> type of build value
+ * @param <P> type of probe value
+ * @param <R> type of joined result
+ */
+@API(API.Status.EXPERIMENTAL)
+public class HashJoinCursor<K, V, P, R> implements RecordCursor<R> {
+    @Nonnull
+    private final FileSortAdapter<K, V> adapter;
+    @Nonnull
+    private final FileSorter<K, V> sorter;
+    @Nonnull
+    private final RecordCursor<V> buildCursor;
+    @Nonnull
+    private final Function<byte[], RecordCursor<P>> probeCursorFunction;
+    @Nonnull
+    private final Function<V, Object> buildKeyFunction;
+    @Nonnull
+    private final Function<P, Object> probeKeyFunction;
+    @Nonnull
+    private final BiFunction<P, V, R> combiner;
+    @Nullable
+    private final StoreTimer timer;
+    @Nonnull
+    private final Executor executor;
+
+    private boolean loading;
+    @Nonnull
+    private RecordCursorContinuation buildContinuation;
+
+    @Nullable
+    private Collection<V> inMemoryRecords;
+    @Nullable
+    private File spillFile;
+    private int chunkPosition;
+    private boolean lastChunk;
+    @Nullable
+    private Map<Object, List<V>> table;
+
+    @Nullable
+    private RecordCursor<P> probeCursor;
+    @Nonnull
+    private RecordCursorContinuation priorProbeContinuation;
+    @Nullable
+    private RecordCursorResult<P> currentProbe;
+    @Nonnull
+    private List<V> currentMatches;
+    private int matchPosition;
+    private int resumeMatchPosition;
+
+    @Nullable
+    private RecordCursorResult<R> nextResult;
+    private boolean filesInContinuation;
+    private boolean closed;
+
+    @SuppressWarnings("squid:S00107")
+    private HashJoinCursor(@Nonnull FileSortAdapter<K, V> adapter, @Nonnull FileSorter<K, V> sorter,
+                           @Nonnull RecordCursor<V> buildCursor,
+                           @Nonnull Function<byte[], RecordCursor<P>> probeCursorFunction,
+                           @Nonnull Function<V, Object> buildKeyFunction,
+                           @Nonnull Function<P, Object> probeKeyFunction,
+                           @Nonnull BiFunction<P, V, R> combiner,
+                           @Nullable StoreTimer timer, @Nonnull Executor executor,
+                           @Nonnull HashJoinCursorContinuation<K, V> continuation) {
+        this.adapter = adapter;
+        this.sorter = sorter;
+        this.buildCursor = buildCursor;
+        this.probeCursorFunction = probeCursorFunction;
+        this.buildKeyFunction = buildKeyFunction;
+        this.probeKeyFunction = probeKeyFunction;
+        this.combiner = combiner;
+        this.timer = timer;
+        this.executor = executor;
+        this.loading = continuation.isLoading();
+        this.buildContinuation = continuation.getBuildContinuation();
+        if (!loading) {
+            if (continuation.getFiles().isEmpty()) {
+                inMemoryRecords = continuation.getInMemoryRecords();
+            } else {
+                spillFile = continuation.getFiles().get(0);
+                chunkPosition = continuation.getChunkPosition();
+            }
+        }
+        this.priorProbeContinuation = continuation.getProbeContinuation();
+        this.currentMatches = Collections.emptyList();
+        this.resumeMatchPosition = continuation.getMatchPosition();
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<R>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        if (loading) {
+            return sorter.load(buildCursor).thenCompose(loadResult -> {
+                buildContinuation = loadResult.getSourceContinuation();
+                if (loadResult.getSourceNoNextReason().isOutOfBand()) {
+                    // The build cursor did not complete; save what was loaded so far so that loading can resume.
+                    final HashJoinCursorContinuation<K, V> continuation = new HashJoinCursorContinuation<>(adapter,
+                            false, true, sorter.getMapSorter().getMap().values(), sorter.getFiles(),
+                            buildContinuation, 0, priorProbeContinuation, 0);
+                    filesInContinuation = !sorter.getFiles().isEmpty();
+                    nextResult = RecordCursorResult.withoutNextValue(continuation, loadResult.getSourceNoNextReason());
+                    return CompletableFuture.completedFuture(nextResult);
+                }
+                loading = false;
+                if (loadResult.isInMemory()) {
+                    inMemoryRecords = sorter.getMapSorter().getMap().values();
+                } else {
+                    if (sorter.getFiles().size() != 1) {
+                        throw new RecordCoreException("hash join loading did not produce exactly one file");
+                    }
+                    spillFile = sorter.getFiles().get(0);
+                }
+                return nextFromProbe();
+            });
+        }
+        return nextFromProbe();
+    }
+
+    @Nonnull
+    private CompletableFuture<RecordCursorResult<R>> nextFromProbe() {
+        if (table == null) {
+            loadTable();
+        }
+        return AsyncUtil.whileTrue(() -> {
+            if (matchPosition < currentMatches.size()) {
+                final R joined = combiner.apply(currentProbe.get(), currentMatches.get(matchPosition));
+                matchPosition++;
+                nextResult = RecordCursorResult.withNextValue(joined, probingContinuation(priorProbeContinuation, matchPosition));
+                return AsyncUtil.READY_FALSE;
+            }
+            if (currentProbe != null) {
+                priorProbeContinuation = currentProbe.getContinuation();
+                currentProbe = null;
+                currentMatches = Collections.emptyList();
+            }
+            if (probeCursor == null) {
+                probeCursor = probeCursorFunction.apply(priorProbeContinuation.toBytes());
+            }
+            return probeCursor.onNext().thenApply(probeResult -> {
+                if (probeResult.hasNext()) {
+                    currentProbe = probeResult;
+                    currentMatches = lookup(probeResult.get());
+                    matchPosition = resumeMatchPosition;
+                    resumeMatchPosition = 0;
+                    return true;
+                }
+                if (probeResult.getNoNextReason().isOutOfBand()) {
+                    nextResult = RecordCursorResult.withoutNextValue(probingContinuation(probeResult.getContinuation(), 0),
+                            probeResult.getNoNextReason());
+                    return false;
+                }
+                if (!lastChunk) {
+                    // Go around the probe side again with the next chunk of the build side.
+                    probeCursor.close();
+                    probeCursor = null;
+                    priorProbeContinuation = RecordCursorStartContinuation.START;
+                    chunkPosition += adapter.getMaxRecordCountInMemory();
+                    loadTable();
+                    return true;
+                }
+                nextResult = RecordCursorResult.exhausted();
+                deleteFiles();
+                return false;
+            });
+        }, executor).thenApply(vignore -> nextResult);
+    }
+
+    @Nonnull
+    private List<V> lookup(@Nonnull P probeValue) {
+        final Object key = probeKeyFunction.apply(probeValue);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return table.getOrDefault(key, Collections.emptyList());
+    }
+
+    private void loadTable() {
+        table = new HashMap<>();
+        if (spillFile == null) {
+            lastChunk = true;
+            for (V value : inMemoryRecords) {
+                addToTable(value);
+            }
+            return;
+        }
+        final int chunkSize = adapter.getMaxRecordCountInMemory();
+        // Read one extra value to tell whether there is another chunk after this one.
+        try (SortedFileReader<V> reader = new SortedFileReader<>(spillFile, adapter, timer, chunkPosition, chunkSize + 1)) {
+            lastChunk = true;
+            for (int i = 0; i <= chunkSize; i++) {
+                final V value = reader.read();
+                if (value == null) {
+                    break;
+                }
+                if (i == chunkSize) {
+                    lastChunk = false;
+                } else {
+                    addToTable(value);
+                }
+            }
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new RecordCoreException(ex);
+        }
+    }
+
+    private void addToTable(@Nonnull V value) {
+        final Object key = buildKeyFunction.apply(value);
+        if (key != null) {
+            table.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+    }
+
+    @Nonnull
+    private HashJoinCursorContinuation<K, V> probingContinuation(@Nonnull RecordCursorContinuation probeContinuation,
+                                                                 int matchPosition) {
+        final List<File> files;
+        final Collection<V> records;
+        if (spillFile == null) {
+            files = Collections.emptyList();
+            records = inMemoryRecords;
+        } else {
+            files = Collections.singletonList(spillFile);
+            records = Collections.emptyList();
+            filesInContinuation = true;
+        }
+        return new HashJoinCursorContinuation<>(adapter, false, false, records, files,
+                RecordCursorStartContinuation.START, chunkPosition, probeContinuation, matchPosition);
+    }
+
+    private void deleteFiles() {
+        filesInContinuation = false;
+        try {
+            sorter.deleteFiles();
+        } catch (IOException ex) {
+            throw new RecordCoreException(ex);
+        }
+        sorter.getFiles().clear();
+    }
+
+    @Override
+    public void close() {
+        buildCursor.close();
+        if (probeCursor != null) {
+            probeCursor.close();
+        }
+        if (!filesInContinuation) {
+            deleteFiles();
+        }
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public boolean accept(@Nonnull final RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            buildCursor.accept(visitor);
+            if (probeCursor != null) {
+                probeCursor.accept(visitor);
+            }
+        }
+        return visitor.visitLeave(this);
+    }
+
+    /**
+     * Create a hash join cursor.
+     * @param adapter the adapter used to load the build side and, if necessary, spill it to a file
+     * @param buildCursorFunction a function from a continuation to a cursor over the build side
+     * @param probeCursorFunction a function from a continuation to a cursor over the probe side
+     * @param buildKeyFunction a function from a build value to its join key
+     * @param probeKeyFunction a function from a probe value to its join key
+     * @param combiner a function to combine a probe value and a matching build value into a result
+     * @param timer timer for recording file events
+     * @param executor executor for asynchronous work
+     * @param continuation the continuation from a previous cursor or {@code null} to start from the beginning
+     * @param <K> type of build sort key
+     * @param <V> type of build value
+     * @param <P> type of probe value
+     * @param <R> type of joined result
+     * @return a new cursor joining the two sides
+     */
+    @Nonnull
+    @SuppressWarnings("squid:S00107")
+    public static <K, V, P, R> HashJoinCursor<K, V, P, R> create(@Nonnull FileSortAdapter<K, V> adapter,
+                                                                 @Nonnull Function<byte[], RecordCursor<V>> buildCursorFunction,
+                                                                 @Nonnull Function<byte[], RecordCursor<P>> probeCursorFunction,
+                                                                 @Nonnull Function<V, Object> buildKeyFunction,
+                                                                 @Nonnull Function<P, Object> probeKeyFunction,
+                                                                 @Nonnull BiFunction<P, V, R> combiner,
+                                                                 @Nullable StoreTimer timer,
+                                                                 @Nonnull Executor executor,
+                                                                 @Nullable byte[] continuation) {
+        final HashJoinCursorContinuation<K, V> parsedContinuation = HashJoinCursorContinuation.from(continuation, adapter);
+        final RecordCursor<V> buildCursor = parsedContinuation.isLoading()
+                                            ? buildCursorFunction.apply(parsedContinuation.getBuildContinuation().toBytes())
+                                            : RecordCursor.empty(executor);
+        final FileSorter<K, V> sorter = new FileSorter<>(adapter, timer, executor);
+        if (parsedContinuation.isLoading()) {
+            for (V record : parsedContinuation.getInMemoryRecords()) {
+                sorter.getMapSorter().addValue(record);
+            }
+        }
+        sorter.getFiles().addAll(parsedContinuation.getFiles());
+        return new HashJoinCursor<>(adapter, sorter, buildCursor, probeCursorFunction,
+                buildKeyFunction, probeKeyFunction, combiner, timer, executor, parsedContinuation);
+    }
+}
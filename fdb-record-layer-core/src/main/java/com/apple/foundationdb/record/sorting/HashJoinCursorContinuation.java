@@ -0,0 +1,215 @@
+/*
+ * HashJoinCursorContinuation.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.ByteArrayContinuation;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorStartContinuation;
+import com.apple.foundationdb.record.RecordSortingProto;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.ZeroCopyByteString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Continuation for {@link HashJoinCursor}.
+ *
+ * While the build side is still loading, this records the build records held in memory, any files already spilled
+ * and the continuation of the build cursor, just like {@link FileSortCursorContinuation}. Once probing, it records
+ * either all the build records (if they fit in memory) or the spilled file and which chunk of it is being probed,
+ * together with the probe cursor continuation and how many matches of the current probe value were returned.
+ * @param <K> type of key
+ * @param <V> type of build value
+ */
+@API(API.Status.EXPERIMENTAL)
+class HashJoinCursorContinuation<K, V> implements RecordCursorContinuation {
+    @Nonnull
+    private final FileSortAdapter<K, V> adapter;
+
+    private final boolean exhausted;
+    private final boolean loading;
+    @Nonnull
+    private final Collection<V> inMemoryRecords;
+    @Nonnull
+    private final List<File> files;
+    @Nonnull
+    private final RecordCursorContinuation buildContinuation;
+    private final int chunkPosition;
+    @Nonnull
+    private final RecordCursorContinuation probeContinuation;
+    private final int matchPosition;
+
+    @Nullable
+    private RecordSortingProto.HashJoinContinuation cachedProto;
+    @Nullable
+    private byte[] cachedBytes;
+
+    @SuppressWarnings("squid:S00107")
+    HashJoinCursorContinuation(@Nonnull FileSortAdapter<K, V> adapter,
+                               boolean exhausted, boolean loading,
+                               @Nonnull Collection<V> inMemoryRecords, @Nonnull List<File> files,
+                               @Nonnull RecordCursorContinuation buildContinuation, int chunkPosition,
+                               @Nonnull RecordCursorContinuation probeContinuation, int matchPosition) {
+        this.adapter = adapter;
+        this.exhausted = exhausted;
+        this.loading = loading;
+        this.inMemoryRecords = inMemoryRecords;
+        this.files = files;
+        this.buildContinuation = buildContinuation;
+        this.chunkPosition = chunkPosition;
+        this.probeContinuation = probeContinuation;
+        this.matchPosition = matchPosition;
+    }
+
+    @Nonnull
+    static <K, V> HashJoinCursorContinuation<K, V> exhausted(@Nonnull FileSortAdapter<K, V> adapter) {
+        return new HashJoinCursorContinuation<>(adapter, true, false, Collections.emptyList(), Collections.emptyList(),
+                RecordCursorStartContinuation.START, 0, RecordCursorStartContinuation.START, 0);
+    }
+
+    @Nonnull
+    RecordSortingProto.HashJoinContinuation toProto() {
+        if (cachedProto == null) {
+            RecordSortingProto.HashJoinContinuation.Builder builder = RecordSortingProto.HashJoinContinuation.newBuilder();
+            if (loading) {
+                builder.setLoading(true);
+            }
+            for (V record : inMemoryRecords) {
+                builder.addInMemoryRecords(ZeroCopyByteString.wrap(adapter.serializeValue(record)));
+            }
+            for (File file : files) {
+                builder.addFiles(file.getPath());
+            }
+            final ByteString buildBytes = buildContinuation.toByteString();
+            if (!buildBytes.isEmpty()) {
+                builder.setBuildContinuation(buildBytes);
+            }
+            if (chunkPosition > 0) {
+                builder.setChunkPosition(chunkPosition);
+            }
+            final ByteString probeBytes = probeContinuation.toByteString();
+            if (!probeBytes.isEmpty()) {
+                builder.setProbeContinuation(probeBytes);
+            }
+            if (matchPosition > 0) {
+                builder.setMatchPosition(matchPosition);
+            }
+            cachedProto = builder.build();
+        }
+        return cachedProto;
+    }
+
+    @Nonnull
+    @Override
+    public ByteString toByteString() {
+        if (isEnd()) {
+            return ByteString.EMPTY;
+        }
+        return toProto().toByteString();
+    }
+
+    @Override
+    @Nullable
+    public byte[] toBytes() {
+        if (isEnd()) {
+            return null;
+        }
+        if (cachedBytes == null) {
+            cachedBytes = toByteString().toByteArray();
+        }
+        return cachedBytes;
+    }
+
+    @Nonnull
+    static <K, V> HashJoinCursorContinuation<K, V> from(@Nullable byte[] unparsed,
+                                                        @Nonnull FileSortAdapter<K, V> adapter) {
+        if (unparsed == null) {
+            return new HashJoinCursorContinuation<>(adapter, false, true, Collections.emptyList(), Collections.emptyList(),
+                    RecordCursorStartContinuation.START, 0, RecordCursorStartContinuation.START, 0);
+        }
+        final RecordSortingProto.HashJoinContinuation parsed;
+        try {
+            parsed = RecordSortingProto.HashJoinContinuation.parseFrom(unparsed);
+        } catch (InvalidProtocolBufferException ex) {
+            throw new RecordCoreException("invalid continuation", ex)
+                    .addLogInfo(LogMessageKeys.RAW_BYTES, ByteArrayUtil2.loggable(unparsed));
+        }
+        final HashJoinCursorContinuation<K, V> result = new HashJoinCursorContinuation<>(
+                adapter, false, parsed.getLoading(),
+                parsed.getInMemoryRecordsList().stream().map(bs -> adapter.deserializeValue(bs.toByteArray())).collect(Collectors.toList()),
+                parsed.getFilesList().stream().map(File::new).collect(Collectors.toList()),
+                parsed.hasBuildContinuation() ? ByteArrayContinuation.fromNullable(parsed.getBuildContinuation().toByteArray()) : RecordCursorStartContinuation.START,
+                parsed.getChunkPosition(),
+                parsed.hasProbeContinuation() ? ByteArrayContinuation.fromNullable(parsed.getProbeContinuation().toByteArray()) : RecordCursorStartContinuation.START,
+                parsed.getMatchPosition());
+        result.cachedProto = parsed;
+        result.cachedBytes = unparsed;
+        return result;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    @Nonnull
+    public Collection<V> getInMemoryRecords() {
+        return inMemoryRecords;
+    }
+
+    @Nonnull
+    public List<File> getFiles() {
+        return files;
+    }
+
+    @Nonnull
+    RecordCursorContinuation getBuildContinuation() {
+        return buildContinuation;
+    }
+
+    public int getChunkPosition() {
+        return chunkPosition;
+    }
+
+    @Nonnull
+    RecordCursorContinuation getProbeContinuation() {
+        return probeContinuation;
+    }
+
+    public int getMatchPosition() {
+        return matchPosition;
+    }
+
+    @Override
+    public boolean isEnd() {
+        return exhausted;
+    }
+}
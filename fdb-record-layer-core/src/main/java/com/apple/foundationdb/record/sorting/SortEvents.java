@@ -45,7 +45,9 @@ public class SortEvents {
         FILE_SORT_MERGE_FILES("file sort merge files"),
         FILE_SORT_SKIP_SECTION("file sort skip section"),
         FILE_SORT_SKIP_RECORD("file sort skip record"),
-        FILE_SORT_LOAD_RECORD("file sort load record");
+        FILE_SORT_LOAD_RECORD("file sort load record"),
+        DISTINCT_SET_SPILL("distinct set spill to file"),
+        DISTINCT_SET_FILE_LOOKUP("distinct set lookup in file");
 
         private final String title;
         private final String logKey;
@@ -75,7 +77,9 @@ public class SortEvents {
      * Instrumentation counts related to sorting.
      */
     public enum Counts implements StoreTimer.Count {
-        FILE_SORT_FILE_BYTES("file sort file bytes", true);
+        FILE_SORT_FILE_BYTES("file sort file bytes", true),
+        DISTINCT_SET_BYTES("distinct set bytes in memory", true),
+        DISTINCT_SET_SPILLED_KEYS("distinct set keys spilled to file");
 
         private final String title;
         private final String logKey;
@@ -84,7 +88,7 @@ public class SortEvents {
         Counts(String title, String logKey, boolean isSize) {
             this.title = title;
             this.logKey = (logKey != null) ? logKey : StoreTimer.Count.super.logKey();
-            this.isSize = false;
+            this.isSize = isSize;
         }
 
         Counts(String title, boolean isSize) {
@@ -21,7 +21,6 @@
 package com.apple.foundationdb.record.sorting;
 
 import com.apple.foundationdb.annotation.API;
-import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordSortingProto;
 import com.apple.foundationdb.record.provider.common.CipherPool;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
@@ -37,6 +36,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.security.GeneralSecurityException;
+import java.util.zip.Inflater;
 
 /**
  * Read values from files written by {@link FileSorter}. Keys are skipped.
@@ -55,8 +55,11 @@ public class SortedFileReader<V> implements AutoCloseable {
     @Nullable
     private final Cipher cipher;
     @Nullable
+    private final Inflater inflater;
+    @Nullable
     private final StoreTimer timer;
 
+    private int fileVersion;
     private int sectionRecordStart;
     private int sectionRecordEnd;
     private int fileRecordEnd;
@@ -84,6 +87,7 @@ public class SortedFileReader<V> implements AutoCloseable {
         } else {
             cipher = null;
         }
+        inflater = compressed ? new Inflater() : null;
         this.timer = timer;
         skipLimit(skip, limit);
     }
@@ -92,12 +96,8 @@ public class SortedFileReader<V> implements AutoCloseable {
     private void skipLimit(int skip, int limit) throws IOException, GeneralSecurityException {
         final RecordSortingProto.SortFileHeader.Builder fileHeader = RecordSortingProto.SortFileHeader.newBuilder();
         headerStream.readMessage(fileHeader, ExtensionRegistryLite.getEmptyRegistry());
-        if (fileHeader.getVersion() != FileSorter.SORT_FILE_VERSION) {
-            throw new RecordCoreException("file header version mismatch");
-        }
-        if (fileHeader.getMetaDataVersion() != adapter.getMetaDataVersion()) {
-            throw new RecordCoreException("file meta-data version mismatch");
-        }
+        FileSorter.checkFileVersion(fileHeader, adapter);
+        fileVersion = fileHeader.getVersion();
         sectionFileStart = headerStream.getTotalBytesRead();
         headerStream.resetSizeCounter();
         sectionFileEnd = sectionFileStart;  // As though end of previous one.
@@ -126,7 +126,7 @@ public class SortedFileReader<V> implements AutoCloseable {
                             FileSorter.initCipherDecrypt(cipher, encryptionKey, sectionHeader);
                         }
                         fileChannel.position(sectionFileStart + headerStream.getTotalBytesRead());
-                        InputStream inputStream = FileSorter.wrapInputStream(fileStream, cipher, compressed);
+                        InputStream inputStream = FileSorter.wrapInputStream(fileStream, cipher, inflater, fileVersion, sectionHeader.getNumberOfBytes());
                         entryStream = CodedInputStream.newInstance(inputStream);
                     } else {
                         entryStream = headerStream;
@@ -188,7 +188,7 @@ public class SortedFileReader<V> implements AutoCloseable {
                     FileSorter.initCipherDecrypt(cipher, encryptionKey, sectionHeader);
                 }
                 fileChannel.position(sectionRecordsPosition);
-                InputStream inputStream = FileSorter.wrapInputStream(fileStream, cipher, compressed);
+                InputStream inputStream = FileSorter.wrapInputStream(fileStream, cipher, inflater, fileVersion, sectionHeader.getNumberOfBytes());
                 entryStream = CodedInputStream.newInstance(inputStream);
             }
         }
@@ -216,6 +216,9 @@ public class SortedFileReader<V> implements AutoCloseable {
 
     @Override
     public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
         fileStream.close();
     }
 }
@@ -0,0 +1,306 @@
+/*
+ * SpillingDistinctSet.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A set of byte arrays with a bounded memory footprint, for removing duplicates from a stream of records.
+ *
+ * Members are kept in a {@link ByteArrayHashSet} until its {@linkplain ByteArrayHashSet#getMemoryFootprint footprint}
+ * exceeds the memory budget. Then they are written out using a {@link FileSorter} into a new sorted file, so that each
+ * spill only reads back the keys it wrote. To check whether a key is in one of those files, the set keeps the first key
+ * of every {@linkplain FileSortAdapter#getRecordCountPerSection section} of each file, so that only one section needs to
+ * be read, and a Bloom filter for each file, so that most new keys do not need to read any file at all.
+ *
+ * Reading a spill file is blocking file I/O, so lookups that cannot be answered from memory are done on the executor,
+ * not on the thread that called {@link #add}.
+ *
+ * The adapter's keys and values are both the members themselves, since {@link SortedFileReader} only returns values.
+ */
+@API(API.Status.EXPERIMENTAL)
+public class SpillingDistinctSet implements AutoCloseable {
+    private static final int BLOOM_FILTER_BITS_PER_KEY = 8;
+    private static final int BLOOM_FILTER_HASHES = 3;
+
+    @Nonnull
+    private final FileSortAdapter<byte[], byte[]> adapter;
+    private final long memoryBudget;
+    @Nullable
+    private final StoreTimer timer;
+    @Nonnull
+    private final Executor executor;
+    @Nonnull
+    private final ByteArrayHashSet inMemory;
+    @Nonnull
+    private final List<SpilledFile> spilledFiles;
+
+    private int spilledCount;
+    private long maxMemoryFootprint;
+    private boolean closed;
+
+    public SpillingDistinctSet(@Nonnull FileSortAdapter<byte[], byte[]> adapter, long memoryBudget,
+                               @Nullable StoreTimer timer, @Nonnull Executor executor) {
+        this.adapter = adapter;
+        this.memoryBudget = memoryBudget;
+        this.timer = timer;
+        this.executor = executor;
+        this.inMemory = new ByteArrayHashSet();
+        this.spilledFiles = new ArrayList<>();
+    }
+
+    /**
+     * Add a member to the set, spilling to a file if that puts the set over its memory budget.
+     * @param key the member to add
+     * @return a future that completes to {@code true} if the set did not already contain the given member
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> add(@Nonnull byte[] key) {
+        if (inMemory.contains(key)) {
+            return AsyncUtil.READY_FALSE;
+        }
+        final List<SpilledFile> candidates = new ArrayList<>();
+        for (SpilledFile spilledFile : spilledFiles) {
+            if (spilledFile.mightContain(key)) {
+                candidates.add(spilledFile);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return addNew(key);
+        }
+        return CompletableFuture.supplyAsync(() -> spilledContains(candidates, key), executor)
+                .thenCompose(contains -> contains ? AsyncUtil.READY_FALSE : addNew(key));
+    }
+
+    @Nonnull
+    private CompletableFuture<Boolean> addNew(@Nonnull byte[] key) {
+        inMemory.add(key);
+        final long footprint = inMemory.getMemoryFootprint();
+        if (footprint > maxMemoryFootprint) {
+            maxMemoryFootprint = footprint;
+        }
+        if (footprint <= memoryBudget) {
+            return AsyncUtil.READY_TRUE;
+        }
+        return spill().thenApply(vignore -> true);
+    }
+
+    /**
+     * Get the number of members of the set that have been written to a file.
+     * @return the number of spilled members
+     */
+    public int getSpilledCount() {
+        return spilledCount;
+    }
+
+    /**
+     * Get the largest memory footprint of the in-memory part of the set so far.
+     * @return the maximum number of bytes of memory held by the set
+     */
+    public long getMaxMemoryFootprint() {
+        return maxMemoryFootprint;
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> spill() {
+        final long startTime = System.nanoTime();
+        final FileSorter<byte[], byte[]> sorter = new FileSorter<>(adapter, timer, executor);
+        final int keyCount = inMemory.size();
+        return sorter.load(RecordCursor.fromIterator(executor, inMemory.iterator())).thenApplyAsync(loadResult -> {
+            if (timer != null) {
+                timer.increment(SortEvents.Counts.DISTINCT_SET_SPILLED_KEYS, keyCount);
+            }
+            inMemory.clear();
+            spilledFiles.add(indexSpilledFile(sorter, keyCount));
+            spilledCount += keyCount;
+            if (timer != null) {
+                timer.recordSinceNanoTime(SortEvents.Events.DISTINCT_SET_SPILL, startTime);
+            }
+            return null;
+        }, executor);
+    }
+
+    // Read through the newly spilled file to find the start of each section and fill its Bloom filter.
+    @Nonnull
+    private SpilledFile indexSpilledFile(@Nonnull FileSorter<byte[], byte[]> sorter, int keyCount) {
+        final List<File> files = sorter.getFiles();
+        if (files.size() != 1) {
+            throw new RecordCoreException("distinct set should have spilled to a single file")
+                    .addLogInfo("files", files.size());
+        }
+        final SpilledFile spilledFile = new SpilledFile(sorter, files.get(0), keyCount, adapter.getRecordCountPerSection());
+        try (SortedFileReader<byte[]> reader = new SortedFileReader<>(spilledFile.file, adapter, timer, 0, Integer.MAX_VALUE)) {
+            int position = 0;
+            while (true) {
+                final byte[] key = reader.read();
+                if (key == null) {
+                    break;
+                }
+                if (position % spilledFile.recordsPerSection == 0) {
+                    spilledFile.sectionStartKeys.add(key);
+                }
+                addToBloomFilter(spilledFile.bloomFilter, spilledFile.bloomFilterSize, key);
+                position++;
+            }
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new RecordCoreException(ex);
+        }
+        return spilledFile;
+    }
+
+    private boolean spilledContains(@Nonnull List<SpilledFile> candidates, @Nonnull byte[] key) {
+        for (SpilledFile spilledFile : candidates) {
+            if (spilledFile.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class SpilledFile {
+        @Nonnull
+        private final FileSorter<byte[], byte[]> sorter;
+        @Nonnull
+        private final File file;
+        private final int recordsPerSection;
+        @Nonnull
+        private final List<byte[]> sectionStartKeys;
+        @Nonnull
+        private final BitSet bloomFilter;
+        private final int bloomFilterSize;
+
+        SpilledFile(@Nonnull FileSorter<byte[], byte[]> sorter, @Nonnull File file, int keyCount, int recordsPerSection) {
+            this.sorter = sorter;
+            this.file = file;
+            this.recordsPerSection = recordsPerSection;
+            this.sectionStartKeys = new ArrayList<>(keyCount / recordsPerSection + 1);
+            this.bloomFilterSize = Math.max(Long.SIZE, keyCount * BLOOM_FILTER_BITS_PER_KEY);
+            this.bloomFilter = new BitSet(bloomFilterSize);
+        }
+
+        boolean mightContain(@Nonnull byte[] key) {
+            return SpillingDistinctSet.mightContain(bloomFilter, bloomFilterSize, key);
+        }
+
+        boolean contains(@Nonnull byte[] key) {
+            // Find the last section starting at or before the key.
+            int low = 0;
+            int high = sectionStartKeys.size() - 1;
+            int section = -1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int comp = ByteArrayUtil.compareUnsigned(sectionStartKeys.get(mid), key);
+                if (comp == 0) {
+                    return true;
+                } else if (comp < 0) {
+                    section = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (section < 0) {
+                return false;
+            }
+            final long startTime = System.nanoTime();
+            try (SortedFileReader<byte[]> reader = new SortedFileReader<>(file, adapter, timer,
+                    section * recordsPerSection, recordsPerSection)) {
+                while (true) {
+                    final byte[] spilled = reader.read();
+                    if (spilled == null) {
+                        return false;
+                    }
+                    final int comp = ByteArrayUtil.compareUnsigned(spilled, key);
+                    if (comp >= 0) {
+                        return comp == 0;
+                    }
+                }
+            } catch (IOException | GeneralSecurityException ex) {
+                throw new RecordCoreException(ex);
+            } finally {
+                if (timer != null) {
+                    timer.recordSinceNanoTime(SortEvents.Events.DISTINCT_SET_FILE_LOOKUP, startTime);
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            sorter.deleteFiles();
+        }
+    }
+
+    private static void addToBloomFilter(@Nonnull BitSet bits, int size, @Nonnull byte[] key) {
+        final int hash1 = Arrays.hashCode(key);
+        final int hash2 = hash1 * 0x9E3779B9 ^ key.length;
+        for (int i = 0; i < BLOOM_FILTER_HASHES; i++) {
+            bits.set(Math.floorMod(hash1 + i * hash2, size));
+        }
+    }
+
+    private static boolean mightContain(@Nonnull BitSet bits, int size, @Nonnull byte[] key) {
+        final int hash1 = Arrays.hashCode(key);
+        final int hash2 = hash1 * 0x9E3779B9 ^ key.length;
+        for (int i = 0; i < BLOOM_FILTER_HASHES; i++) {
+            if (!bits.get(Math.floorMod(hash1 + i * hash2, size))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (timer != null) {
+            timer.increment(SortEvents.Counts.DISTINCT_SET_BYTES, (int)Math.min(maxMemoryFootprint, Integer.MAX_VALUE));
+        }
+        inMemory.clear();
+        try {
+            for (SpilledFile spilledFile : spilledFiles) {
+                spilledFile.delete();
+            }
+        } catch (IOException ex) {
+            throw new RecordCoreException(ex);
+        } finally {
+            spilledFiles.clear();
+        }
+    }
+}
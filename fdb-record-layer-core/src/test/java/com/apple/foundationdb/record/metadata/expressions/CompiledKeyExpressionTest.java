@@ -0,0 +1,148 @@
+/*
+ * CompiledKeyExpressionTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.metadata.expressions;
+
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.UnstoredRecord;
+import com.apple.foundationdb.record.metadata.ExpressionTestsProto.NestedField;
+import com.apple.foundationdb.record.metadata.ExpressionTestsProto.TestScalarFieldAccess;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression.FanType;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.keyWithValue;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.value;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CompiledKeyExpression}, which must always evaluate the same as the expression itself.
+ */
+class CompiledKeyExpressionTest {
+    private static final NestedField NESTED = NestedField.newBuilder()
+            .setRegularOldField("outer")
+            .setRegularIntField(1)
+            .addRepeatedField("r1").addRepeatedField("r2")
+            .setNesty(NestedField.newBuilder()
+                    .setRegularOldField("middle")
+                    .setNesty(NestedField.newBuilder().setRegularIntField(3)))
+            .setNesty2(NestedField.OtherNested.newBuilder()
+                    .setNesty3(NestedField.OtherNested.ThirdNested.newBuilder().setLastField("last")))
+            .build();
+    private static final NestedField EMPTY_NESTED = NestedField.getDefaultInstance();
+    private static final TestScalarFieldAccess SCALARS = TestScalarFieldAccess.newBuilder()
+            .setField("a")
+            .addRepeatMe("x").addRepeatMe("y")
+            .setBytesField(ByteString.copyFromUtf8("bytes"))
+            .setUuidField(TupleFieldsHelper.toProto(UUID.fromString("710b0c2e-1d74-4e3c-8f2a-1e0a2d0c7c3b")))
+            .build();
+
+    static Stream<Arguments> compiled() {
+        return Stream.of(
+                field("regular_old_field"),
+                field("regular_int_field", FanType.None, Key.Evaluated.NullStandin.NOT_NULL),
+                field("regular_old_field", FanType.None, Key.Evaluated.NullStandin.NULL_UNIQUE),
+                field("repeated_field", FanType.Concatenate),
+                field("regular_old_field", FanType.Concatenate),
+                field("no_such_field"),
+                concatenateFields("regular_old_field", "regular_int_field"),
+                field("nesty").nest("regular_old_field"),
+                field("nesty").nest(field("nesty").nest("regular_int_field")),
+                field("nesty", FanType.None, Key.Evaluated.NullStandin.NOT_NULL).nest("regular_int_field"),
+                field("nesty2").nest(field("nesty3").nest("last_field")),
+                concat(field("regular_int_field"), field("nesty").nest(concatenateFields("regular_old_field", "regular_int_field")),
+                        field("repeated_field", FanType.Concatenate)),
+                concat(field("regular_old_field"), EmptyKeyExpression.EMPTY),
+                concatenateFields("regular_old_field", "regular_int_field").group(1),
+                keyWithValue(concat(field("regular_old_field"), field("regular_int_field"),
+                        field("repeated_field", FanType.Concatenate)), 2)
+        ).flatMap(expression -> Stream.of(NESTED, EMPTY_NESTED).map(message -> Arguments.of(expression, message)));
+    }
+
+    @ParameterizedTest(name = "compiled [expression = {0}, message = {1}]")
+    @MethodSource
+    void compiled(KeyExpression expression, Message message) {
+        final CompiledKeyExpression compiled = CompiledKeyExpression.compile(expression);
+        assertTrue(compiled.isCompiledFor(message.getDescriptorForType()));
+        assertSameEvaluation(expression, compiled, message);
+        // A dynamic message with the same descriptor evaluates the same.
+        assertSameEvaluation(expression, compiled, DynamicMessage.newBuilder(message).build());
+    }
+
+    static Stream<Arguments> notCompiled() {
+        return Stream.of(
+                field("repeated_field", FanType.FanOut),
+                field("regular_old_field", FanType.FanOut),
+                concat(field("regular_old_field"), field("repeated_field", FanType.FanOut)),
+                field("repeated_nesty", FanType.FanOut).nest("regular_old_field"),
+                concat(value(1L), field("regular_old_field"))
+        ).flatMap(expression -> Stream.of(NESTED, EMPTY_NESTED).map(message -> Arguments.of(expression, message)));
+    }
+
+    @ParameterizedTest(name = "notCompiled [expression = {0}, message = {1}]")
+    @MethodSource
+    void notCompiled(KeyExpression expression, Message message) {
+        final CompiledKeyExpression compiled = CompiledKeyExpression.compile(expression);
+        assertFalse(compiled.isCompiledFor(message.getDescriptorForType()));
+        assertSameEvaluation(expression, compiled, message);
+    }
+
+    @Test
+    void scalarFields() {
+        final KeyExpression expression = concat(field("field"), field("bytes_field"), field("uuid_field"),
+                field("repeat_me", FanType.Concatenate));
+        final CompiledKeyExpression compiled = CompiledKeyExpression.compile(expression);
+        assertTrue(compiled.isCompiledFor(TestScalarFieldAccess.getDescriptor()));
+        assertSameEvaluation(expression, compiled, SCALARS);
+        assertSameEvaluation(expression, compiled, TestScalarFieldAccess.getDefaultInstance());
+        // The same compiled expression can be used for different record types.
+        assertSameEvaluation(expression, compiled, NESTED);
+    }
+
+    @Test
+    void repeatedWithoutFanType() {
+        final KeyExpression expression = field("repeated_field");
+        final CompiledKeyExpression compiled = CompiledKeyExpression.compile(expression);
+        assertFalse(compiled.isCompiledFor(NestedField.getDescriptor()));
+        assertThrows(RecordCoreException.class, () -> expression.evaluate(new UnstoredRecord<>(NESTED)));
+        assertThrows(RecordCoreException.class, () -> compiled.evaluate(new UnstoredRecord<>(NESTED)));
+    }
+
+    private static void assertSameEvaluation(KeyExpression expression, CompiledKeyExpression compiled, Message message) {
+        final List<Key.Evaluated> expected = expression.evaluate(new UnstoredRecord<>(message));
+        assertEquals(expected, compiled.evaluate(new UnstoredRecord<>(message)));
+    }
+}
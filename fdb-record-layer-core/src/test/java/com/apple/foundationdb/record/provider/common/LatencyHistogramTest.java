@@ -0,0 +1,124 @@
+/*
+ * LatencyHistogramTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram} and its use by {@link StoreTimer}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    void buckets() {
+        long previousUpperBound = -1;
+        for (int i = 0; i < 1000; i++) {
+            final long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertTrue(upperBound > previousUpperBound);
+            assertEquals(i, LatencyHistogram.bucketIndex(upperBound));
+            assertEquals(i, LatencyHistogram.bucketIndex(previousUpperBound + 1));
+            previousUpperBound = upperBound;
+        }
+        assertEquals(0, LatencyHistogram.bucketIndex(-5L));
+        assertEquals(LatencyHistogram.bucketIndex(1L << 40), LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getValueAtPercentile(99));
+        final Random random = new Random(1066);
+        // Mostly around a millisecond, with one in a hundred around a second.
+        for (int i = 0; i < 100_000; i++) {
+            final long value = i % 100 == 0 ? 1_000_000_000L : 1_000_000L;
+            histogram.record(value + random.nextInt(1000));
+        }
+        assertEquals(100_000L, histogram.getCount());
+        assertWithin(1_000_000L, histogram.getValueAtPercentile(50));
+        assertWithin(1_000_000L, histogram.getValueAtPercentile(98.9));
+        assertWithin(1_000_000_000L, histogram.getValueAtPercentile(99.9));
+        assertWithin(1_000_000_000L, histogram.getValueAtPercentile(100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, () -> actual + " should be close to " + expected);
+    }
+
+    @Test
+    void copyAndDifference() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(10_000L);
+        }
+        final LatencyHistogram copy = histogram.copy();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(5_000_000L);
+        }
+        assertEquals(100L, copy.getCount());
+        final LatencyHistogram difference = LatencyHistogram.difference(histogram, copy);
+        assertEquals(100L, difference.getCount());
+        assertWithin(5_000_000L, difference.getValueAtPercentile(1));
+        difference.add(copy);
+        assertEquals(200L, difference.getCount());
+        assertEquals(histogram.getValueAtPercentile(50), difference.getValueAtPercentile(50));
+    }
+
+    @Test
+    void storeTimer() {
+        final StoreTimer timer = new StoreTimer();
+        timer.record(FDBStoreTimer.Events.LOAD_RECORD, 1_000L);
+        assertNull(timer.getLatencyHistogram(FDBStoreTimer.Events.LOAD_RECORD));
+
+        timer.setLatencyHistogramsEnabled(true);
+        timer.record(FDBStoreTimer.Events.SAVE_RECORD, 2_000_000L);
+        timer.increment(FDBStoreTimer.Counts.SAVE_RECORD_KEY);
+        assertNull(timer.getLatencyHistogram(FDBStoreTimer.Counts.SAVE_RECORD_KEY));
+        final LatencyHistogram histogram = timer.getLatencyHistogram(FDBStoreTimer.Events.SAVE_RECORD);
+        assertNotNull(histogram);
+        assertEquals(1L, histogram.getCount());
+
+        final StoreTimerSnapshot snapshot = StoreTimerSnapshot.from(timer);
+        for (int i = 0; i < 10; i++) {
+            timer.record(FDBStoreTimer.Events.SAVE_RECORD, 50_000_000L);
+        }
+        assertEquals(1L, snapshot.getCounterSnapshot(FDBStoreTimer.Events.SAVE_RECORD).getHistogram().getCount());
+        final StoreTimer difference = StoreTimer.getDifference(timer, snapshot);
+        final LatencyHistogram differenceHistogram = difference.getLatencyHistogram(FDBStoreTimer.Events.SAVE_RECORD);
+        assertNotNull(differenceHistogram);
+        assertEquals(10L, differenceHistogram.getCount());
+        assertWithin(50_000_000L, differenceHistogram.getValueAtPercentile(50));
+
+        final Map<String, Number> keysAndValues = timer.getKeysAndValues();
+        assertWithin(50_000L, keysAndValues.get(FDBStoreTimer.Events.SAVE_RECORD.logKeyWithSuffix("_p50_micros")).longValue());
+        assertTrue(keysAndValues.containsKey(FDBStoreTimer.Events.SAVE_RECORD.logKeyWithSuffix("_p999_micros")));
+        assertFalse(keysAndValues.containsKey(FDBStoreTimer.Events.LOAD_RECORD.logKeyWithSuffix("_p50_micros")));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * LazyRecordViewTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TestRecords1Proto.MySimpleRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LazyRecordView} and {@link RecordSerializer#deserializeLazily}.
+ */
+public class LazyRecordViewTest {
+    private static final MySimpleRecord RECORD = MySimpleRecord.newBuilder()
+            .setRecNo(1066L)
+            .setStrValueIndexed("some text that does not need to be parsed")
+            .setNumValue2(42)
+            .addRepeater(1).addRepeater(2).addRepeater(3)
+            .setNumValue3Indexed(7)
+            .build();
+    private static RecordMetaData metaData;
+
+    @BeforeAll
+    public static void setUpMetaData() {
+        metaData = RecordMetaData.build(TestRecords1Proto.getDescriptor());
+    }
+
+    private static byte[] serialize(RecordSerializer<Message> serializer) {
+        return serializer.serialize(metaData, metaData.getRecordType("MySimpleRecord"), RECORD, null);
+    }
+
+    @Test
+    public void partialFields() {
+        final StoreTimer timer = new StoreTimer();
+        final RecordSerializer<Message> serializer = DynamicMessageRecordSerializer.instance();
+        final LazyRecordView<Message> view = serializer.deserializeLazily(metaData, Tuple.from(1066L), serialize(serializer), timer);
+        assertEquals(MySimpleRecord.getDescriptor(), view.getDescriptorForType());
+        assertFalse(view.isParsed());
+
+        final Message fields = view.getFields(Arrays.asList("num_value_2", "repeater", "no_such_field"));
+        assertEquals(MySimpleRecord.getDescriptor(), fields.getDescriptorForType());
+        final MySimpleRecord partial = MySimpleRecord.newBuilder().mergeFrom(fields).build();
+        assertEquals(MySimpleRecord.newBuilder().setNumValue2(42).addAllRepeater(List.of(1, 2, 3)).build(), partial);
+        assertFalse(view.isParsed());
+        assertEquals(1, timer.getCount(RecordSerializer.Events.DESERIALIZE_PROTOBUF_FIELDS));
+        assertEquals(0, timer.getCount(RecordSerializer.Events.DESERIALIZE_PROTOBUF_RECORD));
+
+        assertEquals(0, view.getFields(Collections.emptyList()).getAllFields().size());
+
+        final Message record = view.getRecord();
+        assertEquals(RECORD, MySimpleRecord.newBuilder().mergeFrom(record).build());
+        assertTrue(view.isParsed());
+        assertSame(record, view.getRecord());
+        assertSame(record, view.getFields(Collections.singletonList("rec_no")));
+        assertEquals(1, timer.getCount(RecordSerializer.Events.DESERIALIZE_PROTOBUF_RECORD));
+    }
+
+    @Test
+    public void transformed() {
+        final RecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionLevel(9)
+                .build();
+        final byte[] serialized = serialize(serializer);
+        final LazyRecordView<Message> view = serializer.deserializeLazily(metaData, Tuple.from(1066L), serialized, null);
+        assertFalse(view.isParsed());
+        final Message fields = view.getFields(Collections.singletonList("str_value_indexed"));
+        assertEquals(RECORD.getStrValueIndexed(), fields.getField(MySimpleRecord.getDescriptor().findFieldByName("str_value_indexed")));
+        assertFalse(fields.hasField(MySimpleRecord.getDescriptor().findFieldByName("rec_no")));
+        assertEquals(serializer.deserialize(metaData, Tuple.from(1066L), serialized, null), view.getRecord());
+    }
+
+    @Test
+    public void defaultIsEager() {
+        final RecordSerializer<Message> serializer = new MessageBuilderRecordSerializer(TestRecords1Proto.RecordTypeUnion::newBuilder);
+        final LazyRecordView<Message> view = serializer.deserializeLazily(metaData, Tuple.from(1066L), serialize(serializer), null);
+        assertTrue(view.isParsed());
+        assertEquals(RECORD, view.getRecord());
+        assertSame(view.getRecord(), view.getFields(Collections.singletonList("num_value_2")));
+    }
+
+    @Test
+    public void malformedUnion() {
+        final RecordSerializer<Message> serializer = DynamicMessageRecordSerializer.instance();
+        // Two record fields in the union are not allowed, so the view is not lazy and reports the error right away.
+        final byte[] serialized = TestRecords1Proto.RecordTypeUnion.newBuilder()
+                .setMySimpleRecord(RECORD)
+                .setMyOtherRecord(TestRecords1Proto.MyOtherRecord.newBuilder().setRecNo(1L))
+                .build().toByteArray();
+        final RecordSerializationException ex = assertThrows(RecordSerializationException.class,
+                () -> serializer.deserializeLazily(metaData, Tuple.from(1066L), serialized, null));
+        assertNotNull(ex.getMessage());
+        assertThrows(RecordSerializationException.class,
+                () -> serializer.deserializeLazily(metaData, Tuple.from(1066L), new byte[] { 0x0a, 0x7f, 0x01 }, null));
+    }
+}
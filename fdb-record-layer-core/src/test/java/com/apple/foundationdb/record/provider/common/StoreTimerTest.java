@@ -0,0 +1,113 @@
+/*
+ * StoreTimerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.common;
+
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link StoreTimer} that do not need a database.
+ */
+public class StoreTimerTest {
+
+    /**
+     * An event that is not an enum constant.
+     */
+    private static final StoreTimer.Count OTHER_COUNT = new StoreTimer.Count() {
+        @Override
+        public String name() {
+            return "OTHER_COUNT";
+        }
+
+        @Override
+        public String title() {
+            return "other count";
+        }
+
+        @Override
+        public boolean isSize() {
+            return false;
+        }
+    };
+
+    @Test
+    void concurrentUpdates() {
+        final StoreTimer timer = new FDBStoreTimer();
+        final int threads = 8;
+        final int perThread = 10_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        timer.record(FDBStoreTimer.Events.LOAD_RECORD, 3L);
+                        timer.increment(FDBStoreTimer.Counts.LOAD_RECORD_KEY);
+                        timer.increment(OTHER_COUNT, 2);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * perThread, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+        assertEquals(3L * threads * perThread, timer.getTimeNanos(FDBStoreTimer.Events.LOAD_RECORD));
+        assertEquals(threads * perThread, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        assertEquals(2 * threads * perThread, timer.getCount(OTHER_COUNT));
+        assertTrue(timer.getEvents().contains(FDBStoreTimer.Events.LOAD_RECORD));
+    }
+
+    @Test
+    void enumCountersAfterReset() {
+        final StoreTimer timer = new StoreTimer();
+        timer.increment(FDBStoreTimer.Counts.LOAD_RECORD_KEY, 5);
+        final StoreTimer.Counter counter = timer.getCounter(FDBStoreTimer.Counts.LOAD_RECORD_KEY);
+        assertSame(counter, timer.getCounter(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        timer.reset();
+        assertNull(timer.getCounter(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        assertEquals(0, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        timer.increment(FDBStoreTimer.Counts.LOAD_RECORD_KEY);
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        assertEquals(1, timer.getKeysAndValues().get(FDBStoreTimer.Counts.LOAD_RECORD_KEY.logKeyWithSuffix("_count")).intValue());
+
+        // Counters copied into another timer are found there too.
+        final StoreTimer other = new StoreTimer();
+        other.add(timer);
+        assertEquals(1, other.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        final StoreTimerSnapshot snapshot = StoreTimerSnapshot.from(timer);
+        timer.increment(FDBStoreTimer.Counts.LOAD_RECORD_KEY);
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+        final StoreTimer difference = StoreTimer.getDifference(timer, snapshot);
+        assertEquals(1, difference.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY));
+    }
+}
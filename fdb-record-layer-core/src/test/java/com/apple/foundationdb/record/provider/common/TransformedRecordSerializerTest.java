@@ -262,6 +262,88 @@ public class TransformedRecordSerializerTest {
         assertThat(validationException.getCause().getMessage(), containsString("unknown compression version"));
     }
 
+    @Test
+    public void alternateCompressionCodec() {
+        final RecordCompressionCodec codec = new VersionedDeflateCodec(2);
+        TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(codec)
+                .build();
+        MySimpleRecord simpleRecord = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(SONNET_108).build();
+        byte[] serialized = serialize(serializer, simpleRecord);
+        assertTrue(isCompressed(serialized));
+        assertEquals(2, serialized[1]);
+        assertEquals(simpleRecord, deserialize(serializer, Tuple.from(1066L), serialized));
+
+        // A serializer that does not know about the codec cannot read the record.
+        TransformedRecordSerializer<Message> defaultSerializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .build();
+        RecordSerializationException e = assertThrows(RecordSerializationException.class,
+                () -> deserialize(defaultSerializer, Tuple.from(1066L), serialized));
+        assertThat(e.getMessage(), containsString("unknown compression version"));
+
+        // One that only reads with it can read both formats.
+        TransformedRecordSerializer<Message> readingSerializer = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .addCompressionCodec(codec)
+                .build();
+        assertEquals(simpleRecord, deserialize(readingSerializer, Tuple.from(1066L), serialized));
+        byte[] defaultSerialized = serialize(readingSerializer, simpleRecord);
+        assertEquals(DeflateRecordCompressionCodec.COMPRESSION_VERSION, defaultSerialized[1]);
+        assertEquals(simpleRecord, deserialize(serializer, Tuple.from(1066L), defaultSerialized));
+
+        assertThrows(RecordCoreArgumentException.class,
+                () -> TransformedRecordSerializer.newDefaultBuilder().addCompressionCodec(new VersionedDeflateCodec(0)));
+    }
+
+    @Test
+    public void defaultCompressionLevel() {
+        MySimpleRecord simpleRecord = MySimpleRecord.newBuilder().setRecNo(1066L).setStrValueIndexed(SONNET_108).build();
+        TransformedRecordSerializer<Message> defaultLevel = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .build();
+        TransformedRecordSerializer<Message> explicitLevel = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionLevel(DeflateRecordCompressionCodec.DEFAULT_COMPRESSION_LEVEL)
+                .build();
+        assertArrayEquals(serialize(explicitLevel, simpleRecord), serialize(defaultLevel, simpleRecord));
+
+        // Without a level, the codec's own default is used.
+        final RecordCompressionCodec codec = new VersionedDeflateCodec(2, Deflater.BEST_SPEED);
+        TransformedRecordSerializer<Message> codecDefaultLevel = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(codec)
+                .build();
+        TransformedRecordSerializer<Message> explicitCodecLevel = TransformedRecordSerializer.newDefaultBuilder()
+                .setCompressWhenSerializing(true)
+                .setCompressionCodec(codec)
+                .setCompressionLevel(Deflater.BEST_SPEED)
+                .build();
+        byte[] serialized = serialize(codecDefaultLevel, simpleRecord);
+        assertArrayEquals(serialize(explicitCodecLevel, simpleRecord), serialized);
+        assertEquals(simpleRecord, deserialize(codecDefaultLevel, Tuple.from(1066L), serialized));
+    }
+
+    @Test
+    public void reuseCompressors() {
+        // Alternating levels and failures must not leave pooled compressors in a bad state.
+        for (int i = 0; i < 10; i++) {
+            final int level = i % 2 == 0 ? Deflater.BEST_COMPRESSION : Deflater.BEST_SPEED;
+            TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder()
+                    .setCompressWhenSerializing(true)
+                    .setCompressionLevel(level)
+                    .build();
+            MySimpleRecord simpleRecord = MySimpleRecord.newBuilder().setRecNo(i).setStrValueIndexed(SONNET_108 + i).build();
+            byte[] serialized = serialize(serializer, simpleRecord);
+            assertTrue(isCompressed(serialized));
+            assertEquals(simpleRecord, deserialize(serializer, Tuple.from(i), serialized));
+            byte[] corrupted = Arrays.copyOf(serialized, serialized.length);
+            corrupted[corrupted.length - 1] += 1;
+            assertThrows(RecordSerializationException.class, () -> deserialize(serializer, Tuple.from(1066L), corrupted));
+        }
+    }
+
     @Test
     public void decompressionError() {
         TransformedRecordSerializer<Message> serializer = TransformedRecordSerializer.newDefaultBuilder().setCompressWhenSerializing(true).build();
@@ -450,6 +532,33 @@ public class TransformedRecordSerializerTest {
                 .putInt(newSize);
     }
 
+    /**
+     * Test {@link RecordCompressionCodec} that uses the same format as the default codec, but with a different version.
+     */
+    private static class VersionedDeflateCodec extends DeflateRecordCompressionCodec {
+        private final int compressionVersion;
+        private final int defaultCompressionLevel;
+
+        VersionedDeflateCodec(int compressionVersion) {
+            this(compressionVersion, DEFAULT_COMPRESSION_LEVEL);
+        }
+
+        VersionedDeflateCodec(int compressionVersion, int defaultCompressionLevel) {
+            this.compressionVersion = compressionVersion;
+            this.defaultCompressionLevel = defaultCompressionLevel;
+        }
+
+        @Override
+        public int getCompressionVersion() {
+            return compressionVersion;
+        }
+
+        @Override
+        public int getDefaultCompressionLevel() {
+            return defaultCompressionLevel;
+        }
+    }
+
     /**
      * Test {@link RecordSerializer} that modifies the contents of the record during serialization. This allows
      * us to test that we catch faulty implementations that modify records if the {@link TransformedRecordSerializer#writeValidationRatio}
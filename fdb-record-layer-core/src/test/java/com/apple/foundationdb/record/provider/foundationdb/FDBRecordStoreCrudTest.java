@@ -22,11 +22,17 @@ package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.FDBError;
 import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
+import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TestRecords1Proto;
 import com.apple.foundationdb.record.TestRecordsBytesProto;
 import com.apple.foundationdb.record.TestRecordsWithUnionProto;
+import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.properties.RecordLayerPropertyStorage;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
 import com.google.protobuf.Message;
@@ -35,6 +41,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
@@ -365,4 +375,87 @@ public class FDBRecordStoreCrudTest extends FDBRecordStoreTestBase {
         }
     }
 
+    private static TestRecords1Proto.MySimpleRecord simpleRecord(long recNo, String strValue) {
+        return TestRecords1Proto.MySimpleRecord.newBuilder()
+                .setRecNo(recNo)
+                .setStrValueIndexed(strValue)
+                .setNumValueUnique((int)recNo)
+                .build();
+    }
+
+    private int countIndexed(String strValue) {
+        return recordStore.scanIndexRecords("MySimpleRecord$str_value_indexed", IndexScanType.BY_VALUE,
+                TupleRange.allOf(Tuple.from(strValue)), null, ScanProperties.FORWARD_SCAN).getCount().join();
+    }
+
+    @Test
+    public void saveAndDeleteRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 10)
+                    .mapToObj(i -> simpleRecord(i, i % 2 == 0 ? "even" : "odd"))
+                    .collect(Collectors.toList());
+            final List<FDBStoredRecord<Message>> saved = recordStore.saveRecords(records, FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_EXISTS);
+            assertEquals(10, saved.size());
+            for (int i = 0; i < saved.size(); i++) {
+                assertEquals(Tuple.from((long)i), saved.get(i).getPrimaryKey());
+            }
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertEquals(5, countIndexed("even"));
+            assertEquals(5, countIndexed("odd"));
+            final List<TestRecords1Proto.MySimpleRecord> updates = LongStream.range(0, 5)
+                    .mapToObj(i -> simpleRecord(i, "odd"))
+                    .collect(Collectors.toList());
+            assertEquals(5, recordStore.saveRecords(updates, FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_NOT_EXISTS).size());
+            // Duplicate and missing keys are not counted.
+            assertEquals(5, recordStore.deleteRecords(List.of(Tuple.from(5L), Tuple.from(6L), Tuple.from(6L),
+                    Tuple.from(7L), Tuple.from(8L), Tuple.from(9L), Tuple.from(100L))));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertEquals(0, countIndexed("even"));
+            assertEquals(5, countIndexed("odd"));
+            assertNotNull(recordStore.loadRecord(Tuple.from(4L)));
+            assertNull(recordStore.loadRecord(Tuple.from(5L)));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void saveRecordsChecksBeforeWriting() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            recordStore.saveRecord(simpleRecord(2L, "abc"));
+            assertThrows(RecordAlreadyExistsException.class, () -> recordStore.saveRecords(
+                    List.of(simpleRecord(1L, "abc"), simpleRecord(2L, "abc")), FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_EXISTS));
+            assertNull(recordStore.loadRecord(Tuple.from(1L)));
+            assertThrows(RecordCoreArgumentException.class, () -> recordStore.saveRecords(
+                    List.of(simpleRecord(3L, "abc"), simpleRecord(3L, "xyz")), FDBRecordStoreBase.RecordExistenceCheck.NONE));
+            assertNull(recordStore.loadRecord(Tuple.from(3L)));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void saveRecordsStopsAtSizeLimit() throws Exception {
+        final List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 10)
+                .mapToObj(i -> simpleRecord(i, "abc"))
+                .collect(Collectors.toList());
+        final int recordSize = records.get(0).getSerializedSize();
+        try (FDBRecordContext context = openContext(RecordLayerPropertyStorage.newBuilder()
+                .addProp(FDBRecordStoreProperties.BATCH_SAVE_MAX_BYTES, 3L * recordSize))) {
+            openSimpleRecordStore(context);
+            final List<FDBStoredRecord<Message>> saved = recordStore.saveRecords(records, FDBRecordStoreBase.RecordExistenceCheck.NONE);
+            // The serialized records are slightly larger than the messages, because of the union.
+            assertEquals(3, saved.size());
+            assertNotNull(recordStore.loadRecord(Tuple.from(2L)));
+            assertNull(recordStore.loadRecord(Tuple.from(3L)));
+            assertEquals(3, countIndexed("abc"));
+            commit(context);
+        }
+    }
 }
@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.provider.foundationdb;
 
+import com.apple.foundationdb.Range;
 import com.apple.foundationdb.record.IndexBuildProto;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.TestRecords1Proto;
@@ -29,6 +30,7 @@ import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression;
 import com.apple.foundationdb.synchronizedsession.SynchronizedSessionLockedException;
+import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.BooleanSource;
 import com.apple.test.Tags;
 import org.junit.jupiter.api.Tag;
@@ -48,6 +50,7 @@ import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
 import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -89,6 +92,71 @@ class OnlineIndexerMultiTargetTest extends OnlineIndexerTest {
         assertEquals(count , timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RANGES_BY_COUNT));
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {2, 4, 16})
+    void testMultiTargetParallel(int parallelism) {
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        final long numRecords = 300;
+
+        List<Index> indexes = new ArrayList<>();
+        indexes.add(new Index("indexA", field("num_value_2"), EmptyKeyExpression.EMPTY, IndexTypes.VALUE, IndexOptions.UNIQUE_OPTIONS));
+        indexes.add(new Index("indexB", field("num_value_3_indexed"), IndexTypes.VALUE));
+        indexes.add(new Index("indexD", new GroupingKeyExpression(EmptyKeyExpression.EMPTY, 0), IndexTypes.COUNT));
+
+        // So few records would all be in one shard, so pretend that they are spread over several.
+        final FDBDatabaseFactory factory = dbExtension.getDatabaseFactory();
+        factory.setLocalityProvider(MockedLocalityUtil.instance());
+        factory.clear();
+        fdb = factory.getDatabase();
+        fdb.setAsyncToSyncTimeout(5, TimeUnit.MINUTES);
+
+        populateData(numRecords);
+        final List<byte[]> keys = LongStream.range(0, numRecords)
+                .mapToObj(recNo -> recordStore.recordsSubspace().pack(Tuple.from(recNo)))
+                .collect(Collectors.toList());
+        MockedLocalityUtil.init(keys, 10);
+
+        FDBRecordStoreTestBase.RecordMetaDataHook hook = allIndexesHook(indexes);
+        openSimpleMetaData(hook);
+        disableAll(indexes);
+        try (OnlineIndexer indexBuilder = newIndexerBuilder(indexes, timer)
+                .setLimit(20)
+                .setIndexingPolicy(OnlineIndexer.IndexingPolicy.newBuilder()
+                        .setParallelism(parallelism))
+                .build()) {
+            indexBuilder.buildIndex(true);
+        }
+        final int shards = timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_PARALLEL_SHARDS);
+        assertTrue(shards > 1 && shards <= parallelism, () -> "shards: " + shards);
+        assertEquals(numRecords, timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED));
+        assertEquals(numRecords, timer.getCount(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED));
+        assertReadable(indexes);
+        assertAllValidated(indexes);
+    }
+
+    @Test
+    void testSplitToShards() {
+        final List<Tuple> boundaries = LongStream.range(1, 10).mapToObj(i -> Tuple.from(i * 10)).collect(Collectors.toList());
+        assertEquals(List.of(new Range(new byte[] {0x00}, new byte[] {(byte)0xff})),
+                IndexingMultiTargetByRecords.splitToShards(List.of(), 4));
+        assertEquals(List.of(new Range(new byte[] {0x00}, new byte[] {(byte)0xff})),
+                IndexingMultiTargetByRecords.splitToShards(boundaries, 1));
+
+        List<Range> shards = IndexingMultiTargetByRecords.splitToShards(boundaries, 3);
+        assertEquals(List.of(
+                new Range(new byte[] {0x00}, Tuple.from(40L).pack()),
+                new Range(Tuple.from(40L).pack(), Tuple.from(70L).pack()),
+                new Range(Tuple.from(70L).pack(), new byte[] {(byte)0xff})), shards);
+
+        // no more shards than ranges between the boundaries
+        shards = IndexingMultiTargetByRecords.splitToShards(boundaries, 100);
+        assertEquals(boundaries.size() + 1, shards.size());
+        for (int i = 1; i < shards.size(); i++) {
+            assertArrayEquals(shards.get(i - 1).end, shards.get(i).begin);
+            assertArrayEquals(boundaries.get(i - 1).pack(), shards.get(i).begin);
+        }
+    }
+
     @ParameterizedTest
     @BooleanSource
     void testMultiTargetSimple(boolean reverseScan) {
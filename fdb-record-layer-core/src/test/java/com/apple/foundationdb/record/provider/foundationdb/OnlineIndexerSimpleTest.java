@@ -67,6 +67,7 @@ import static com.apple.foundationdb.record.provider.foundationdb.OnlineIndexOpe
 import static com.apple.foundationdb.record.provider.foundationdb.OnlineIndexOperationConfig.DO_NOT_RE_INCREASE_LIMIT;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
@@ -1079,6 +1080,71 @@ public class OnlineIndexerSimpleTest extends OnlineIndexerTest {
         }
     }
 
+    private void postTransaction(IndexingThrottle.Booker booker, int repeats, long transactionMillis, long transactionBytes, @Nullable Throwable exception) {
+        for (int i = 0; i < repeats; i++) {
+            booker.handleLimitsPostRunnerTransaction(exception, new AtomicLong(10), true, null, transactionMillis, transactionBytes);
+        }
+    }
+
+    @Test
+    void testIndexingThrottleBookerTargetLatency() {
+        final OnlineIndexOperationConfig config = OnlineIndexOperationConfig.newBuilder()
+                .setInitialLimit(100)
+                .setRecordsPerSecond(100_000)
+                .setIncreaseLimitAfter(5) // ignored when there is a target latency
+                .setMaxLimit(1000)
+                .setTargetTransactionLatencyMillis(100)
+                .build();
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            final IndexingCommon common = new IndexingCommon(context.newRunner(),
+                    recordStore.asBuilder(),
+                    Collections.emptyList(),
+                    Collections.emptyList(),
+                    null,
+                    config,
+                    false);
+
+            final IndexingThrottle.Booker booker = new IndexingThrottle.Booker(common);
+            assertEquals(100, booker.getRecordsLimit());
+            // additive increase, of max limit / 20, while under the target
+            postTransaction(booker, 5, 50, 1000, null);
+            assertEquals(350, booker.getRecordsLimit());
+            assertEquals(0, booker.getLatencyDelayMilliseconds());
+            // a conflict stops the increase until the conflict rate goes down
+            postTransaction(booker, 1, 30, 0, new RecordCoreRetriableTransactionException("Conflict", new FDBException("not_committed", 1020)));
+            postTransaction(booker, 1, 50, 1000, null);
+            assertEquals(350, booker.getRecordsLimit());
+            // multiplicative decrease, with a delay, once the smoothed latency is over the target
+            postTransaction(booker, 1, 300, 1000, null);
+            assertEquals(262, booker.getRecordsLimit());
+            assertEquals(13, booker.getLatencyDelayMilliseconds());
+            postTransaction(booker, 1, 300, 1000, null);
+            assertEquals(196, booker.getRecordsLimit());
+            assertEquals(59, booker.getLatencyDelayMilliseconds());
+            assertThat(booker.waitTimeMilliseconds(), greaterThanOrEqualTo(59L));
+            // back under the target: the delay goes away and the limit grows again
+            postTransaction(booker, 10, 10, 1000, null);
+            assertEquals(0, booker.getLatencyDelayMilliseconds());
+            final long limit = booker.getRecordsLimit();
+            assertThat(limit, greaterThan(196L));
+            // no increase if the write size limit was reached anyway
+            postTransaction(booker, 1, 10, config.getMaxWriteLimitBytes(), null);
+            assertEquals(limit, booker.getRecordsLimit());
+            postTransaction(booker, 100, 10, 1000, null);
+            assertEquals(1000, booker.getRecordsLimit());
+            // errors that should lessen the work still cut the limit
+            postTransaction(booker, 1, 1000, 0, new RecordCoreRetriableTransactionException("Too old", new FDBException("transaction_too_old", 1007)));
+            mayRetryAfterHandlingException(booker, new RecordCoreRetriableTransactionException("Too old", new FDBException("transaction_too_old", 1007)), 1, true);
+            assertEquals(0, booker.getLatencyDelayMilliseconds());
+            assertThat(booker.getRecordsLimit(), lessThan(1000L));
+
+            final List<Object> keyValues = booker.logMessageKeyValues();
+            assertEquals(100L, keyValues.get(keyValues.indexOf(LogMessageKeys.TARGET_TRANSACTION_LATENCY_MILLIS) + 1));
+            assertTrue(keyValues.contains(LogMessageKeys.CONFLICT_RATE));
+        }
+    }
+
     @Test
     void testIndexingThrottleBookerRepeatingExceptions() {
         final OnlineIndexOperationConfig config = OnlineIndexOperationConfig.newBuilder()
@@ -48,6 +48,7 @@ import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.provider.foundationdb.IndexScanBounds;
 import com.apple.foundationdb.record.provider.foundationdb.IndexScanParameters;
 import com.apple.foundationdb.record.provider.foundationdb.MultidimensionalIndexScanBounds;
+import com.apple.foundationdb.record.provider.foundationdb.OnlineIndexer;
 import com.apple.foundationdb.record.provider.foundationdb.query.FDBRecordStoreQueryTestBase;
 import com.apple.foundationdb.record.query.IndexQueryabilityFilter;
 import com.apple.foundationdb.record.query.RecordQuery;
@@ -853,6 +854,160 @@ public abstract class MultidimensionalIndexTestBase extends FDBRecordStoreQueryT
         Assertions.assertEquals(expectedResults, actualResults);
     }
 
+    void nodeCacheTest(final boolean useAsync) throws Exception {
+        final RecordMetaDataHook additionalIndex =
+                metaDataBuilder -> metaDataBuilder.addIndex("MyMultidimensionalRecord",
+                        new Index("EventIntervals", DimensionsKeyExpression.of(field("calendar_name"),
+                                concat(field("start_epoch"), field("end_epoch"))),
+                                IndexTypes.MULTIDIMENSIONAL, ImmutableMap.of(IndexOptions.RTREE_STORAGE, BY_NODE.toString(),
+                                IndexOptions.RTREE_USE_NODE_CACHE, "true")));
+        loadRecords(useAsync, false, additionalIndex, 0, ImmutableList.of("business"), 500);
+        final long intervalStartInclusive = epochMean + 3600L;
+        final long intervalEndInclusive = epochMean + 5L * 3600L;
+        final RecordQueryIndexPlan indexPlan =
+                new RecordQueryIndexPlan("EventIntervals",
+                        new HypercubeScanParameters("business",
+                                (Long)null, intervalEndInclusive,
+                                intervalStartInclusive, null),
+                        false);
+        final MultidimensionalNodeCache nodeCache = new MultidimensionalNodeCache();
+        final Set<Message> expectedResults = getResults(additionalIndex, indexPlan);
+
+        // the first scan with the cache fetches the intermediate nodes and caches them
+        timer.reset();
+        Assertions.assertEquals(expectedResults, getResults(additionalIndex, indexPlan, nodeCache, fdbStoreTimer -> { }));
+        Assertions.assertTrue(timer.getCount(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_MISS) > 0);
+        Assertions.assertTrue(nodeCache.size() > 0);
+
+        // the second scan finds them in the cache
+        timer.reset();
+        Assertions.assertEquals(expectedResults, getResults(additionalIndex, indexPlan, nodeCache, fdbStoreTimer -> { }));
+        Assertions.assertTrue(timer.getCount(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_HIT) > 0);
+        Assertions.assertEquals(0, timer.getCount(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_MISS));
+
+        // a modification of the R-tree changes its version and so invalidates the cached nodes
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, additionalIndex);
+            recordStore.saveRecord(TestRecordsMultidimensionalProto.MyMultidimensionalRecord.newBuilder()
+                    .setRecNo(500L)
+                    .setCalendarName("business")
+                    .setStartEpoch(intervalStartInclusive)
+                    .setEndEpoch(intervalEndInclusive)
+                    .setExpirationEpoch(intervalEndInclusive + expirationCutOff)
+                    .build());
+            commit(context);
+        }
+        final Set<Message> expectedResultsAfterUpdate = getResults(additionalIndex, indexPlan);
+        Assertions.assertEquals(expectedResults.size() + 1, expectedResultsAfterUpdate.size());
+        timer.reset();
+        Assertions.assertEquals(expectedResultsAfterUpdate, getResults(additionalIndex, indexPlan, nodeCache, fdbStoreTimer -> { }));
+        Assertions.assertTrue(timer.getCount(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_INVALIDATION) > 0);
+        Assertions.assertEquals(0, timer.getCount(FDBStoreTimer.Counts.MULTIDIMENSIONAL_NODE_CACHE_HIT));
+    }
+
+    void bulkLoadWhileWriteOnlyTest(final long seed, final int numRecords, @Nonnull final String storage,
+                                    final boolean storeHilbertValues, final boolean useNodeSlotIndex) throws Exception {
+        final RecordMetaDataHook additionalIndexes =
+                metaDataBuilder -> {
+                    addCalendarNameStartEpochIndex(metaDataBuilder);
+                    addMultidimensionalIndex(metaDataBuilder, storage, storeHilbertValues, useNodeSlotIndex);
+                };
+        final Random random = new Random(seed);
+        final var recordGenerator = getRecordGenerator(random, ImmutableList.of("business", "private"));
+        // the first batch is packed into the empty R-trees, the second one is inserted into the existing ones
+        for (int batch = 0; batch < 2; batch++) {
+            try (FDBRecordContext context = openContext()) {
+                openRecordStore(context, additionalIndexes);
+                if (batch == 0) {
+                    recordStore.markIndexWriteOnly("EventIntervals").join();
+                }
+                final List<Message> records = new ArrayList<>();
+                for (int i = 0; i < numRecords; i++) {
+                    records.add(recordGenerator.apply(batch * numRecords + i));
+                }
+                recordStore.saveRecords(records, FDBRecordStoreBase.RecordExistenceCheck.NONE);
+                commit(context);
+            }
+        }
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, additionalIndexes);
+            recordStore.uncheckedMarkIndexReadable("EventIntervals").join();
+            commit(context);
+        }
+
+        final long intervalStartInclusive = epochMean + 3600L;
+        final long intervalEndInclusive = epochMean + 5L * 3600L;
+        final RecordQueryIndexPlan indexPlan =
+                new RecordQueryIndexPlan("EventIntervals",
+                        new HypercubeScanParameters("business",
+                                (Long)null, intervalEndInclusive,
+                                intervalStartInclusive, null),
+                        false);
+        final Set<Message> actualResults = getResults(additionalIndexes, indexPlan);
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MyMultidimensionalRecord")
+                .setFilter(Query.and(
+                        Query.field("calendar_name").equalsValue("business"),
+                        Query.field("start_epoch").lessThanOrEquals(intervalEndInclusive),
+                        Query.field("end_epoch").greaterThanOrEquals(intervalStartInclusive)))
+                .setIndexQueryabilityFilter(noMultidimensionalIndexes)
+                .build();
+        final Set<Message> expectedResults = getResults(additionalIndexes, planQuery(query));
+        Assertions.assertEquals(expectedResults, actualResults);
+    }
+
+    void onlineIndexerBuildTest(final long seed, final int numRecords, @Nonnull final String storage,
+                                final boolean storeHilbertValues, final boolean useNodeSlotIndex) throws Exception {
+        final RecordMetaDataHook additionalIndexes =
+                metaDataBuilder -> {
+                    addCalendarNameStartEpochIndex(metaDataBuilder);
+                    addMultidimensionalIndex(metaDataBuilder, storage, storeHilbertValues, useNodeSlotIndex);
+                };
+        final Random random = new Random(seed);
+        final var recordGenerator = getRecordGenerator(random, ImmutableList.of("business", "private"));
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, additionalIndexes);
+            recordStore.markIndexDisabled("EventIntervals").join();
+            final List<Message> records = new ArrayList<>();
+            for (int i = 0; i < numRecords; i++) {
+                records.add(recordGenerator.apply(i));
+            }
+            recordStore.saveRecords(records, FDBRecordStoreBase.RecordExistenceCheck.NONE);
+            commit(context);
+        }
+        // the first transaction packs the empty R-trees, the later ones insert into the existing ones
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, additionalIndexes);
+            try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder().setRecordStore(recordStore).setIndex("EventIntervals")
+                    .setLimit(numRecords / 4)
+                    .build()) {
+                indexBuilder.buildIndex();
+            }
+            commit(context);
+        }
+
+        final long intervalStartInclusive = epochMean + 3600L;
+        final long intervalEndInclusive = epochMean + 5L * 3600L;
+        final RecordQueryIndexPlan indexPlan =
+                new RecordQueryIndexPlan("EventIntervals",
+                        new HypercubeScanParameters("business",
+                                (Long)null, intervalEndInclusive,
+                                intervalStartInclusive, null),
+                        false);
+        final Set<Message> actualResults = getResults(additionalIndexes, indexPlan);
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MyMultidimensionalRecord")
+                .setFilter(Query.and(
+                        Query.field("calendar_name").equalsValue("business"),
+                        Query.field("start_epoch").lessThanOrEquals(intervalEndInclusive),
+                        Query.field("end_epoch").greaterThanOrEquals(intervalStartInclusive)))
+                .setIndexQueryabilityFilter(noMultidimensionalIndexes)
+                .build();
+        final Set<Message> expectedResults = getResults(additionalIndexes, planQuery(query));
+        Assertions.assertFalse(expectedResults.isEmpty());
+        Assertions.assertEquals(expectedResults, actualResults);
+    }
+
     void indexSkipScanTest(final boolean useAsync, final long seed, final int numRecords, @Nonnull final String storage,
                        final boolean storeHilbertValues, final boolean useNodeSlotIndex) throws Exception {
         final RecordMetaDataHook additionalIndexes =
@@ -1464,8 +1619,20 @@ public abstract class MultidimensionalIndexTestBase extends FDBRecordStoreQueryT
     private Set<Message> getResults(@Nonnull final RecordMetaDataHook additionalIndexes,
                                     @Nonnull final RecordQueryPlan queryPlan,
                                     @Nonnull final Consumer<FDBStoreTimer> timersConsumer) throws Exception {
+        return getResults(additionalIndexes, queryPlan, null, timersConsumer);
+    }
+
+    @Nonnull
+    @SuppressWarnings("resource")
+    private Set<Message> getResults(@Nonnull final RecordMetaDataHook additionalIndexes,
+                                    @Nonnull final RecordQueryPlan queryPlan,
+                                    @Nullable final MultidimensionalNodeCache nodeCache,
+                                    @Nonnull final Consumer<FDBStoreTimer> timersConsumer) throws Exception {
         final Set<Message> actualResults;
         try (FDBRecordContext context = openContext()) {
+            if (nodeCache != null) {
+                nodeCache.setForContext(context);
+            }
             openRecordStore(context, additionalIndexes);
             final RecordCursor<QueryResult> recordCursor =
                     queryPlan.executePlan(recordStore, EvaluationContext.empty(), null, ExecuteProperties.SERIAL_EXECUTE);
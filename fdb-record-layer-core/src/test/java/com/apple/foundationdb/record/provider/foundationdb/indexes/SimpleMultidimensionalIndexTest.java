@@ -278,6 +278,23 @@ class SimpleMultidimensionalIndexTest extends MultidimensionalIndexTestBase {
         super.continuationTest(false);
     }
 
+    @Test
+    void nodeCacheTest() throws Exception {
+        super.nodeCacheTest(false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForBasicReads")
+    void bulkLoadWhileWriteOnlyTest(@Nonnull final String storage, final boolean storeHilbertValues, final boolean useNodeSlotIndex) throws Exception {
+        super.bulkLoadWhileWriteOnlyTest(0, 300, storage, storeHilbertValues, useNodeSlotIndex);
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForBasicReads")
+    void onlineIndexerBuildTest(@Nonnull final String storage, final boolean storeHilbertValues, final boolean useNodeSlotIndex) throws Exception {
+        super.onlineIndexerBuildTest(0, 300, storage, storeHilbertValues, useNodeSlotIndex);
+    }
+
     @Test
     void wrongDimensionTypes() {
         super.wrongDimensionTypes(false);
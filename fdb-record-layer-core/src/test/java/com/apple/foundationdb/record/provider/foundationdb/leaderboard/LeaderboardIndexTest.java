@@ -293,6 +293,11 @@ public class LeaderboardIndexTest {
                             recordStore.performIndexOperation("LeaderboardIndex",
                                     new TimeWindowLeaderboardSaveSubDirectory(new TimeWindowLeaderboardSubDirectory(group, highScoreFirst)))).getSubDirectory();
         }
+
+        public int compactShards(Tuple group, int keyLimit) {
+            return ((TimeWindowLeaderboardShardCompactionResult)recordStore.performIndexOperation("LeaderboardIndex",
+                    new TimeWindowLeaderboardShardCompaction(group, keyLimit))).getKeysMoved();
+        }
     }
 
     abstract class NestedLeaderboards extends Leaderboards {
@@ -365,6 +370,15 @@ public class LeaderboardIndexTest {
         }
     }
 
+    class ShardedGroupedNestedLeaderboards extends GroupedNestedLeaderboards {
+        @Override
+        public void addIndex(RecordMetaDataBuilder metaDataBuilder) {
+            metaDataBuilder.addIndex("NestedLeaderboardRecord", new Index("LeaderboardIndex", keyExpression, IndexTypes.TIME_WINDOW_LEADERBOARD,
+                    Map.of(IndexOptions.RANK_HASH_FUNCTION, RankedSetHashFunctions.MURMUR3,
+                            IndexOptions.TIME_WINDOW_LEADERBOARD_SHARDS, "4")));
+        }
+    }
+
     class FlatLeaderboards extends Leaderboards {
         protected final GroupingKeyExpression keyExpression = Key.Expressions.field("scores", KeyExpression.FanType.FanOut)
                 .split(3)
@@ -537,8 +551,34 @@ public class LeaderboardIndexTest {
         basicGrouped(new FlatLeaderboards());
     }
 
+    @Test
+    public void shardedGroupedNested() {
+        final Leaderboards leaderboards = new ShardedGroupedNestedLeaderboards();
+        basicGrouped(leaderboards);
+
+        // Move some of the scores into the base sets, so that both they and the shards are read.
+        try (FDBRecordContext context = openContext()) {
+            leaderboards.openRecordStore(context, false);
+            assertEquals(2, leaderboards.compactShards(Tuple.from("game-1"), 2));
+            context.commit();
+        }
+        basicGroupedChecks(leaderboards);
+
+        try (FDBRecordContext context = openContext()) {
+            leaderboards.openRecordStore(context, false);
+            assertThat(leaderboards.compactShards(Tuple.from("game-1"), 100), Matchers.lessThan(100));
+            assertEquals(0, leaderboards.compactShards(Tuple.from("game-1"), 100));
+            context.commit();
+        }
+        basicGroupedChecks(leaderboards);
+    }
+
     protected void basicGrouped(Leaderboards leaderboards) {
         basicSetup(leaderboards, true);
+        basicGroupedChecks(leaderboards);
+    }
+
+    protected void basicGroupedChecks(Leaderboards leaderboards) {
         try (FDBRecordContext context = openContext()) {
             leaderboards.openRecordStore(context, false);
 
@@ -0,0 +1,270 @@
+/*
+ * FDBHashJoinQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.Bindings;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatisticsCollector;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesPlanner;
+import com.apple.foundationdb.record.query.plan.cascades.GraphExpansion;
+import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.Reference;
+import com.apple.foundationdb.record.query.plan.cascades.expressions.LogicalSortExpression;
+import com.apple.foundationdb.record.query.plan.cascades.predicates.ValuePredicate;
+import com.apple.foundationdb.record.query.plan.cascades.properties.UsedTypesProperty;
+import com.apple.foundationdb.record.query.plan.cascades.typing.TypeRepository;
+import com.apple.foundationdb.record.query.plan.cascades.values.FieldValue;
+import com.apple.foundationdb.record.query.plan.plans.QueryResult;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashJoinPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.anyPlan;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.flatMapPlan;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.hashJoinPlan;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Tests for planning and executing equi-joins as {@link RecordQueryHashJoinPlan}s.
+ */
+@Tag(Tags.RequiresFDB)
+class FDBHashJoinQueryTest extends FDBRecordStoreQueryTestBase {
+    private static final String STR_INDEX = "MySimpleRecord$str_value_indexed";
+    private static final String NUM_INDEX = "MySimpleRecord$num_value_3_indexed";
+    private static final int RECORD_COUNT = 20;
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(i % 2 == 0 ? "even" : "odd")
+                        .setNumValue2(i % 5)
+                        .setNumValue3Indexed(i)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private void collectStatistics() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (String indexName : new String[] {STR_INDEX, NUM_INDEX}) {
+                final Index index = recordStore.getRecordMetaData().getIndex(indexName);
+                new IndexStatisticsCollector(recordStore, index).collectAsync().join().save(recordStore, index);
+            }
+            commit(context);
+        }
+    }
+
+    // SELECT e.rec_no, h.rec_no FROM MySimpleRecord e, MySimpleRecord h
+    //   WHERE e.str_value_indexed = 'even' AND h.num_value_3_indexed >= 10 AND e.num_value_2 = h.num_value_2
+    @Nonnull
+    private Reference joinQuery() {
+        final var evenBase = FDBSimpleQueryGraphTest.fullTypeScan(recordStore.getRecordMetaData(), "MySimpleRecord");
+        final var evenQun = Quantifier.forEach(Reference.of(GraphExpansion.builder()
+                .addQuantifier(evenBase)
+                .addPredicate(FieldValue.ofFieldName(evenBase.getFlowedObjectValue(), "str_value_indexed")
+                        .withComparison(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, "even")))
+                .build()
+                .buildSelectWithResultValue(evenBase.getFlowedObjectValue())));
+
+        final var highBase = FDBSimpleQueryGraphTest.fullTypeScan(recordStore.getRecordMetaData(), "MySimpleRecord");
+        final var highQun = Quantifier.forEach(Reference.of(GraphExpansion.builder()
+                .addQuantifier(highBase)
+                .addPredicate(FieldValue.ofFieldName(highBase.getFlowedObjectValue(), "num_value_3_indexed")
+                        .withComparison(new Comparisons.SimpleComparison(Comparisons.Type.GREATER_THAN_OR_EQUALS, RECORD_COUNT / 2)))
+                .build()
+                .buildSelectWithResultValue(highBase.getFlowedObjectValue())));
+
+        final var joinQun = Quantifier.forEach(Reference.of(GraphExpansion.builder()
+                .addQuantifier(evenQun)
+                .addQuantifier(highQun)
+                .addPredicate(new ValuePredicate(FieldValue.ofFieldName(evenQun.getFlowedObjectValue(), "num_value_2"),
+                        new Comparisons.ValueComparison(Comparisons.Type.EQUALS,
+                                FieldValue.ofFieldName(highQun.getFlowedObjectValue(), "num_value_2"))))
+                .addResultColumn(FDBSimpleQueryGraphTest.resultColumn(FieldValue.ofFieldName(evenQun.getFlowedObjectValue(), "rec_no"), "even_rec_no"))
+                .addResultColumn(FDBSimpleQueryGraphTest.resultColumn(FieldValue.ofFieldName(highQun.getFlowedObjectValue(), "rec_no"), "high_rec_no"))
+                .build()
+                .buildSelect()));
+        return Reference.of(LogicalSortExpression.unsorted(joinQun));
+    }
+
+    @Nonnull
+    private RecordQueryPlan planWithStatistics() {
+        ((CascadesPlanner)planner).setIndexStatistics(IndexStatistics.loadAllAsync(recordStore).join());
+        return planGraph(this::joinQuery);
+    }
+
+    @Nonnull
+    private static List<Tuple> expectedResults() {
+        final List<Tuple> expected = new ArrayList<>();
+        for (long even = 0; even < RECORD_COUNT; even += 2) {
+            for (long high = RECORD_COUNT / 2; high < RECORD_COUNT; high++) {
+                if (even % 5 == high % 5) {
+                    expected.add(Tuple.from(even, high));
+                }
+            }
+        }
+        return expected;
+    }
+
+    @Nonnull
+    private List<Tuple> execute(@Nonnull RecordQueryPlan plan, int rowLimit) {
+        final TypeRepository typeRepository = TypeRepository.newBuilder()
+                .addAllTypes(UsedTypesProperty.evaluate(plan))
+                .build();
+        final EvaluationContext evaluationContext = EvaluationContext.forBindingsAndTypeRepository(Bindings.EMPTY_BINDINGS, typeRepository);
+        final ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setReturnedRowLimit(rowLimit).build();
+        final List<Tuple> results = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<QueryResult> cursor = plan.executePlan(recordStore, evaluationContext, continuation, executeProperties)) {
+                RecordCursorResult<QueryResult> result;
+                while ((result = cursor.getNext()).hasNext()) {
+                    results.add(toTuple(result.get()));
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        return results;
+    }
+
+    @Nonnull
+    private static Tuple toTuple(@Nonnull QueryResult result) {
+        final Message message = result.getMessage();
+        final Descriptors.Descriptor descriptor = message.getDescriptorForType();
+        return Tuple.from(message.getField(descriptor.findFieldByName("even_rec_no")),
+                message.getField(descriptor.findFieldByName("high_rec_no")));
+    }
+
+    @Nonnull
+    private static List<Tuple> sorted(@Nonnull List<Tuple> tuples) {
+        final List<Tuple> sorted = new ArrayList<>(tuples);
+        sorted.sort(null);
+        return sorted;
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void planHashJoinWithStatistics() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            // Without statistics, the nested loop join is kept.
+            assertMatchesExactly(planGraph(this::joinQuery), flatMapPlan(anyPlan(), anyPlan()));
+        }
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            // The nested loop join would read one side for each of the ten rows of the other; the hash join reads
+            // both sides once.
+            final RecordQueryPlan plan = planWithStatistics();
+            assertMatchesExactly(plan, hashJoinPlan(anyPlan(), anyPlan()));
+            assertEquals(Set.of(STR_INDEX, NUM_INDEX), plan.getUsedIndexes());
+            final RecordQueryHashJoinPlan hashJoinPlan = (RecordQueryHashJoinPlan)plan;
+            assertEquals(1, hashJoinPlan.getProbeKeyValues().size());
+            assertEquals(1, hashJoinPlan.getBuildKeyValues().size());
+            assertEquals(RecordQueryHashJoinPlan.DEFAULT_MAX_BUILD_RECORDS_IN_MEMORY, hashJoinPlan.getMaxBuildRecordsInMemory());
+        }
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void planHashAndSerialization() throws Exception {
+        saveRecords();
+        final RecordQueryPlan nestedLoopPlan;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            nestedLoopPlan = planGraph(this::joinQuery);
+        }
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final RecordQueryPlan plan = planWithStatistics();
+            final RecordQueryPlan replanned = planWithStatistics();
+            assertThat(plan, instanceOf(RecordQueryHashJoinPlan.class));
+            assertEquals(plan.planHash(PlanHashable.CURRENT_LEGACY), replanned.planHash(PlanHashable.CURRENT_LEGACY));
+            assertEquals(plan.planHash(PlanHashable.CURRENT_FOR_CONTINUATION), replanned.planHash(PlanHashable.CURRENT_FOR_CONTINUATION));
+            assertNotEquals(nestedLoopPlan.planHash(PlanHashable.CURRENT_LEGACY), plan.planHash(PlanHashable.CURRENT_LEGACY));
+            assertNotEquals(nestedLoopPlan.planHash(PlanHashable.CURRENT_FOR_CONTINUATION), plan.planHash(PlanHashable.CURRENT_FOR_CONTINUATION));
+
+            // The memory limit survives a round trip, but does not change the results, so it is not part of the plan hash.
+            final RecordQueryHashJoinPlan hashJoinPlan = (RecordQueryHashJoinPlan)plan;
+            final RecordQueryHashJoinPlan smallMemoryPlan = new RecordQueryHashJoinPlan(hashJoinPlan.getProbeQuantifier(),
+                    hashJoinPlan.getBuildQuantifier(), hashJoinPlan.getProbeKeyValues(), hashJoinPlan.getBuildKeyValues(),
+                    hashJoinPlan.getResultValue(), 3);
+            final RecordQueryPlan deserialized = verifySerialization(smallMemoryPlan);
+            assertThat(deserialized, instanceOf(RecordQueryHashJoinPlan.class));
+            assertEquals(3, ((RecordQueryHashJoinPlan)deserialized).getMaxBuildRecordsInMemory());
+            assertFalse(plan.structuralEquals(smallMemoryPlan));
+            assertEquals(plan.planHash(PlanHashable.CURRENT_FOR_CONTINUATION), smallMemoryPlan.planHash(PlanHashable.CURRENT_FOR_CONTINUATION));
+        }
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void executeHashJoin() throws Exception {
+        saveRecords();
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final RecordQueryPlan plan = planWithStatistics();
+            assertThat(plan, instanceOf(RecordQueryHashJoinPlan.class));
+
+            final List<Tuple> results = execute(plan, 0);
+            assertEquals(expectedResults(), sorted(results));
+            // Resuming from each continuation returns the same rows in the same order.
+            assertEquals(results, execute(plan, 1));
+            assertEquals(results, execute(plan, 4));
+
+            // With a build side larger than memory, the probe side is read once per chunk of it.
+            final RecordQueryHashJoinPlan hashJoinPlan = (RecordQueryHashJoinPlan)plan;
+            final RecordQueryHashJoinPlan smallMemoryPlan = new RecordQueryHashJoinPlan(hashJoinPlan.getProbeQuantifier(),
+                    hashJoinPlan.getBuildQuantifier(), hashJoinPlan.getProbeKeyValues(), hashJoinPlan.getBuildKeyValues(),
+                    hashJoinPlan.getResultValue(), 3);
+            final List<Tuple> spilledResults = execute(smallMemoryPlan, 0);
+            assertEquals(expectedResults(), sorted(spilledResults));
+            assertEquals(spilledResults, execute(smallMemoryPlan, 1));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * FDBIndexStatisticsQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.RecordCursorIterator;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatistics;
+import com.apple.foundationdb.record.provider.foundationdb.statistics.IndexStatisticsCollector;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesCostModel;
+import com.apple.foundationdb.record.query.plan.cascades.CascadesPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for collecting {@link IndexStatistics} from a record store and planning with them.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBIndexStatisticsQueryTest extends FDBRecordStoreQueryTestBase {
+    private static final String STR_INDEX = "MySimpleRecord$str_value_indexed";
+    private static final String NUM_INDEX = "MySimpleRecord$num_value_3_indexed";
+    private static final int RECORD_COUNT = 200;
+
+    // One of the two indexed fields has a distinct value for each record and the other only two values.
+    private void saveRecords(boolean selectiveString) throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(selectiveString ? "s" + i : (i % 2 == 0 ? "even" : "odd"))
+                        .setNumValue3Indexed(selectiveString ? i % 2 : i)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private void collectStatistics() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (String indexName : new String[] {STR_INDEX, NUM_INDEX}) {
+                final Index index = recordStore.getRecordMetaData().getIndex(indexName);
+                new IndexStatisticsCollector(recordStore, index).collectAsync().join().save(recordStore, index);
+            }
+            commit(context);
+        }
+    }
+
+    @Nonnull
+    private static RecordQuery bothFieldsQuery(boolean selectiveString) {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue(selectiveString ? "s42" : "even"),
+                        Query.field("num_value_3_indexed").equalsValue(selectiveString ? 0 : 42)))
+                .build();
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void collectAsync() throws Exception {
+        saveRecords(false);
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final Index numIndex = recordStore.getRecordMetaData().getIndex(NUM_INDEX);
+            final IndexStatistics statistics = IndexStatistics.loadAsync(recordStore, numIndex).join();
+            assertNotNull(statistics);
+            assertTrue(statistics.isCurrentFor(numIndex));
+            // The whole index fits in the sample, so the statistics are exact.
+            assertEquals(RECORD_COUNT, statistics.getEstimatedEntryCount());
+            assertEquals(RECORD_COUNT, statistics.getEstimatedDistinctCount());
+            assertEquals(1.0, statistics.estimateEquality(42), 0.01);
+            assertEquals(1.0, statistics.estimateEquality(RECORD_COUNT * 10), 0.01);
+
+            final IndexStatistics strStatistics = IndexStatistics.loadAsync(recordStore,
+                    recordStore.getRecordMetaData().getIndex(STR_INDEX)).join();
+            assertNotNull(strStatistics);
+            assertEquals(2L, strStatistics.getEstimatedDistinctCount());
+            assertEquals(RECORD_COUNT / 2.0, strStatistics.estimateEquality("even"), 0.01);
+
+            assertEquals(Set.of(STR_INDEX, NUM_INDEX), IndexStatistics.loadAllAsync(recordStore).join().keySet());
+
+            // Statistics are cleared with the index data.
+            recordStore.rebuildIndex(numIndex).join();
+            assertNull(IndexStatistics.loadAsync(recordStore, numIndex).join());
+        }
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void costModelPrefersFewerEstimatedEntries() throws Exception {
+        saveRecords(false);
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final RecordQuery query = bothFieldsQuery(false);
+            final RecordQueryPlan strPlan = planQuery(query.toBuilder().setAllowedIndex(STR_INDEX).build());
+            final RecordQueryPlan numPlan = planQuery(query.toBuilder().setAllowedIndex(NUM_INDEX).build());
+            assertEquals(Set.of(STR_INDEX), strPlan.getUsedIndexes());
+            assertEquals(Set.of(NUM_INDEX), numPlan.getUsedIndexes());
+
+            final Map<String, IndexStatistics> statistics = IndexStatistics.loadAllAsync(recordStore).join();
+            final CascadesCostModel costModel = new CascadesCostModel(((CascadesPlanner)planner).getConfiguration(), statistics);
+            assertTrue(costModel.compare(numPlan, strPlan) < 0);
+            assertTrue(costModel.compare(strPlan, numPlan) > 0);
+        }
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void planSelectiveNumberIndex() throws Exception {
+        planWithStatistics(false, NUM_INDEX);
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    void planSelectiveStringIndex() throws Exception {
+        planWithStatistics(true, STR_INDEX);
+    }
+
+    private void planWithStatistics(boolean selectiveString, @Nonnull String expectedIndex) throws Exception {
+        saveRecords(selectiveString);
+        collectStatistics();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            ((CascadesPlanner)planner).setIndexStatistics(IndexStatistics.loadAllAsync(recordStore).join());
+            final RecordQueryPlan plan = planQuery(bothFieldsQuery(selectiveString));
+            assertEquals(Set.of(expectedIndex), plan.getUsedIndexes());
+            int count = 0;
+            try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = executeQuery(plan)) {
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    count++;
+                }
+            }
+            assertEquals(1, count);
+        }
+    }
+}
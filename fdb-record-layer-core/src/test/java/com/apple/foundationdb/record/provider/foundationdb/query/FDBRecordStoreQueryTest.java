@@ -23,6 +23,7 @@ package com.apple.foundationdb.record.provider.foundationdb.query;
 import com.apple.foundationdb.record.Bindings;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FDBRecordStoreProperties;
 import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.PlanHashable;
 import com.apple.foundationdb.record.RecordCoreException;
@@ -38,19 +39,27 @@ import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.RecordTypeBuilder;
 import com.apple.foundationdb.record.metadata.expressions.TupleFieldsHelper;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.common.RecordSerializer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.record.provider.foundationdb.properties.RecordLayerPropertyStorage;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
 import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanComplexityException;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
 import com.apple.foundationdb.record.query.plan.cascades.matching.structure.ListMatcher;
 import com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers;
 import com.apple.foundationdb.record.query.plan.match.PlanMatchers;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryTypeFilterPlan;
 import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.BooleanSource;
 import com.apple.test.Tags;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -104,6 +113,7 @@ import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.filter
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.scan;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -851,6 +861,58 @@ class FDBRecordStoreQueryTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that a filter over a record scan returns the same records, with the same continuations, when it is checked
+     * before the records are fully deserialized.
+     */
+    @ParameterizedTest(name = "queryWithLazyFilterDeserialization [typeFilter = {0}]")
+    @BooleanSource
+    void queryWithLazyFilterDeserialization(boolean typeFilter) throws Exception {
+        setupSimpleRecordStore(null, (i, builder) -> {
+            builder.setRecNo(i);
+            builder.setNumValue2(i % 3);
+            builder.setStrValueIndexed((i % 2 == 0) ? "even" : "odd");
+            builder.addRepeater(i % 5);
+        });
+
+        final QueryComponent filter = Query.and(Query.field("num_value_2").equalsValue(1),
+                Query.or(Query.field("str_value_indexed").equalsValue("odd"), Query.field("repeater").oneOfThem().equalsValue(2)));
+        final RecordQueryPlan scanPlan = new RecordQueryScanPlan(ScanComparisons.EMPTY, false);
+        final RecordQueryPlan plan = new RecordQueryFilterPlan(
+                typeFilter ? new RecordQueryTypeFilterPlan(scanPlan, Collections.singletonList("MySimpleRecord")) : scanPlan,
+                filter);
+
+        final List<List<Long>> expected = new ArrayList<>();
+        for (boolean lazy : List.of(false, true)) {
+            final List<List<Long>> pages = new ArrayList<>();
+            byte[] continuation = null;
+            do {
+                try (FDBRecordContext context = openContext(RecordLayerPropertyStorage.newBuilder()
+                        .addProp(FDBRecordStoreProperties.LAZY_FILTER_DESERIALIZATION, lazy))) {
+                    openSimpleRecordStore(context, null);
+                    timer.reset();
+                    final RecordCursor<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan, continuation,
+                            ExecuteProperties.newBuilder().setReturnedRowLimit(5).build());
+                    pages.add(cursor.map(rec -> (Long)rec.getPrimaryKey().get(0)).asList().get());
+                    continuation = cursor.getNext().getContinuation().toBytes();
+                    assertEquals(timer.getCount(FDBStoreTimer.Counts.QUERY_FILTER_GIVEN),
+                            timer.getCount(FDBStoreTimer.Counts.QUERY_FILTER_PASSED) + timer.getCount(FDBStoreTimer.Counts.QUERY_DISCARDED));
+                    if (lazy) {
+                        assertThat(timer.getCount(RecordSerializer.Events.DESERIALIZE_PROTOBUF_RECORD),
+                                lessThan(timer.getCount(FDBStoreTimer.Counts.LOAD_RECORD_KEY)));
+                    }
+                }
+            } while (continuation != null);
+            if (lazy) {
+                assertEquals(expected, pages);
+            } else {
+                expected.addAll(pages);
+            }
+        }
+        assertEquals(LongStream.range(0, 100).filter(i -> i % 3 == 1 && (i % 2 == 1 || i % 5 == 2)).boxed().collect(Collectors.toList()),
+                expected.stream().flatMap(List::stream).collect(Collectors.toList()));
+    }
+
     /**
      * Verify that null is excluded from an index scan.
      */
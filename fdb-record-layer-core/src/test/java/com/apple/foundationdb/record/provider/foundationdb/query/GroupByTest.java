@@ -21,7 +21,9 @@
 package com.apple.foundationdb.record.provider.foundationdb.query;
 
 import com.apple.foundationdb.record.EvaluationContext;
-import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
 import com.apple.foundationdb.record.TestRecords1Proto;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexTypes;
@@ -35,6 +37,7 @@ import com.apple.foundationdb.record.query.plan.cascades.Column;
 import com.apple.foundationdb.record.query.plan.cascades.Reference;
 import com.apple.foundationdb.record.query.plan.cascades.GraphExpansion;
 import com.apple.foundationdb.record.query.plan.cascades.Quantifier;
+import com.apple.foundationdb.record.query.plan.cascades.properties.UsedTypesProperty;
 import com.apple.foundationdb.record.query.plan.cascades.expressions.FullUnorderedScanExpression;
 import com.apple.foundationdb.record.query.plan.cascades.expressions.GroupByExpression;
 import com.apple.foundationdb.record.query.plan.cascades.expressions.LogicalSortExpression;
@@ -42,19 +45,27 @@ import com.apple.foundationdb.record.query.plan.cascades.expressions.LogicalType
 import com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers;
 import com.apple.foundationdb.record.query.plan.cascades.predicates.ValuePredicate;
 import com.apple.foundationdb.record.query.plan.cascades.typing.Type;
+import com.apple.foundationdb.record.query.plan.cascades.typing.TypeRepository;
 import com.apple.foundationdb.record.query.plan.cascades.values.FieldValue;
 import com.apple.foundationdb.record.query.plan.cascades.values.NumericAggregationValue;
 import com.apple.foundationdb.record.query.plan.cascades.values.ObjectValue;
 import com.apple.foundationdb.record.query.plan.cascades.values.QuantifiedObjectValue;
 import com.apple.foundationdb.record.query.plan.cascades.values.RecordConstructorValue;
+import com.apple.foundationdb.record.query.plan.plans.QueryResult;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryHashAggregationPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryMapPlan;
 import com.apple.test.Tags;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import org.junit.jupiter.api.Assertions;
+import com.google.protobuf.Message;
 import org.junit.jupiter.api.Tag;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
@@ -62,7 +73,9 @@ import static com.apple.foundationdb.record.query.plan.ScanComparisons.range;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ListMatcher.exactly;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.aggregateIndexPlan;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.aggregations;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.anyPlan;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.groupings;
+import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.hashAggregationPlan;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.indexPlan;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.mapPlan;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.RecordQueryPlanMatchers.scanComparisons;
@@ -70,6 +83,8 @@ import static com.apple.foundationdb.record.query.plan.cascades.matching.structu
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers.anyValue;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers.recordConstructorValue;
 import static com.apple.foundationdb.record.query.plan.cascades.matching.structure.ValueMatchers.sumAggregationValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * test suite for {@code GROUP BY} expression planning and execution.
@@ -98,14 +113,57 @@ public class GroupByTest extends FDBRecordStoreQueryTestBase {
     }
 
     @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
-    public void attemptToPlanGroupByWithoutCompatiblySortedIndexFails() {
+    public void testGroupByWithoutCompatiblySortedIndexUsesHashAggregation() {
         setupHookAndAddData(false, false);
         final var cascadesPlanner = (CascadesPlanner)planner;
-        Assertions.assertThrows(RecordCoreException.class, () -> cascadesPlanner.planGraph(
+        final var plan = cascadesPlanner.planGraph(
                 () -> constructGroupByPlan(false, false),
                 Optional.empty(),
                 IndexQueryabilityFilter.TRUE,
-                EvaluationContext.empty()), "Cascades planner could not plan query");
+                EvaluationContext.empty()).getPlan();
+
+        assertMatchesExactly(plan, mapPlan(hashAggregationPlan(anyPlan())));
+    }
+
+    @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
+    public void testHashAggregationExecution() throws Exception {
+        setupHookAndAddData(false, false);
+        final var cascadesPlanner = (CascadesPlanner)planner;
+        final var plan = (RecordQueryMapPlan)cascadesPlanner.planGraph(
+                () -> constructGroupByPlan(false, false),
+                Optional.empty(),
+                IndexQueryabilityFilter.TRUE,
+                EvaluationContext.empty()).getPlan();
+        assertMatchesExactly(plan, mapPlan(hashAggregationPlan(anyPlan())));
+        final Map<Object, Object> expected = Map.of(1, 60, 2, 15, 3, -60, 4, 2100);
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, complexQuerySetupHook());
+            assertEquals(expected, sumsByGroup(fetchResultValues(context, plan, GroupByTest::groupAndSum, c -> { })));
+        }
+
+        // Hold only one group in memory, so that every group is spilled, and return one group per continuation.
+        final var hashAggregationPlan = (RecordQueryHashAggregationPlan)plan.getChild();
+        final var spillingPlan = plan.withChild(Reference.of(hashAggregationPlan.withMaxGroupsInMemory(1)));
+        final var evaluationContext = EvaluationContext.forTypeRepository(
+                TypeRepository.newBuilder().addAllTypes(UsedTypesProperty.evaluate(spillingPlan)).build());
+        final List<List<Object>> rows = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context, complexQuerySetupHook());
+                try (RecordCursor<QueryResult> cursor = spillingPlan.executePlan(recordStore, evaluationContext, continuation,
+                        ExecuteProperties.newBuilder().setReturnedRowLimit(1).build())) {
+                    final RecordCursorResult<QueryResult> result = cursor.getNext();
+                    if (result.hasNext()) {
+                        rows.add(groupAndSum(Objects.requireNonNull(result.get()).getMessage()));
+                    }
+                    continuation = result.getContinuation().toBytes();
+                }
+            }
+        } while (continuation != null);
+        assertEquals(expected.size(), rows.size());
+        assertEquals(expected, sumsByGroup(rows));
     }
 
     @DualPlannerTest(planner = DualPlannerTest.Planner.CASCADES)
@@ -237,6 +295,21 @@ public class GroupByTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    @Nonnull
+    private static List<Object> groupAndSum(@Nonnull Message message) {
+        final var fields = message.getDescriptorForType().getFields();
+        return List.of(message.getField(fields.get(0)), message.getField(fields.get(1)));
+    }
+
+    @Nonnull
+    private static Map<Object, Object> sumsByGroup(@Nonnull List<List<Object>> rows) {
+        final Map<Object, Object> sums = new HashMap<>();
+        for (List<Object> row : rows) {
+            assertNull(sums.put(row.get(0), row.get(1)), "group returned more than once");
+        }
+        return sums;
+    }
+
     protected void setupHookAndAddData(final boolean addIndex, final boolean addAggregateIndex) {
         try (FDBRecordContext context = openContext()) {
             FDBRecordStoreTestBase.RecordMetaDataHook hook = (metaDataBuilder) -> {
@@ -0,0 +1,153 @@
+/*
+ * IndexStatisticsTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.statistics;
+
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link IndexStatistics} and {@link IndexStatisticsCollector#fromSample}.
+ */
+public class IndexStatisticsTest {
+    private static final Index INDEX = new Index("test_index", Key.Expressions.concatenateFields("a", "b"));
+
+    // 1000 entries: values 0 through 9 are each repeated 91 times and values 10 through 99 appear once.
+    private static List<Tuple> skewedKeys() {
+        final List<Tuple> keys = new ArrayList<>();
+        long pk = 0;
+        for (long value = 0; value < 10; value++) {
+            for (int i = 0; i < 91; i++) {
+                keys.add(Tuple.from(value, pk++));
+            }
+        }
+        for (long value = 10; value < 100; value++) {
+            keys.add(Tuple.from(value, pk++));
+        }
+        Collections.shuffle(keys);
+        return keys;
+    }
+
+    @Test
+    public void completeSample() {
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 50_000L, skewedKeys(), 50_000L, true, 10);
+        assertEquals(1000L, statistics.getEstimatedEntryCount());
+        assertEquals(1000L, statistics.getSampleSize());
+        assertEquals(100L, statistics.getEstimatedDistinctCount());
+        assertEquals(1000L, statistics.getBuckets().stream().mapToLong(IndexStatistics.Bucket::getCount).sum());
+        assertTrue(statistics.isCurrentFor(INDEX));
+
+        // A frequent value is estimated much higher than a rare one.
+        assertEquals(91.0, statistics.estimateEquality(5L), 0.01);
+        assertTrue(statistics.estimateEquality(50L) < 5.0);
+        // Beyond the last bucket, the estimate falls back to the average frequency.
+        assertEquals(10.0, statistics.estimateEquality(1000L), 0.01);
+        assertEquals(10.0, statistics.estimateEquality(null));
+    }
+
+    @Test
+    public void partialSampleExtrapolates() {
+        final List<Tuple> keys = skewedKeys().subList(0, 100);
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 50_000L, keys, 5_000L, false, 10);
+        assertEquals(1000L, statistics.getEstimatedEntryCount());
+        assertEquals(100L, statistics.getSampleSize());
+        assertTrue(statistics.getEstimatedDistinctCount() <= 1000L);
+        assertTrue(statistics.getEstimatedDistinctCount() >= 10L);
+    }
+
+    @Test
+    public void estimateScans() {
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 50_000L, skewedKeys(), 50_000L, true, 10);
+        final ScanComparisons all = ScanComparisons.EMPTY;
+        assertEquals(1000.0, statistics.estimateEntries(all), 0.01);
+
+        final ScanComparisons frequent = new ScanComparisons(
+                List.of(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 3L)), Collections.emptySet());
+        final ScanComparisons rare = new ScanComparisons(
+                List.of(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 77L)), Collections.emptySet());
+        assertTrue(statistics.estimateEntries(frequent) > 10 * statistics.estimateEntries(rare));
+
+        final ScanComparisons twoEqualities = new ScanComparisons(
+                List.of(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 3L),
+                        new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 17L)),
+                Collections.emptySet());
+        assertEquals(statistics.estimateEntries(frequent) * IndexStatistics.DEFAULT_EQUALITY_SELECTIVITY,
+                statistics.estimateEntries(twoEqualities), 0.01);
+
+        final ScanComparisons tail = new ScanComparisons(Collections.emptyList(),
+                ImmutableSet.of(new Comparisons.SimpleComparison(Comparisons.Type.GREATER_THAN_OR_EQUALS, 10L)));
+        final double tailEstimate = statistics.estimateEntries(tail);
+        assertTrue(tailEstimate < 300.0, "tail estimate " + tailEstimate);
+
+        final ScanComparisons parameter = new ScanComparisons(
+                List.of(new Comparisons.ParameterComparison(Comparisons.Type.EQUALS, "p")), Collections.emptySet());
+        assertEquals(10.0, statistics.estimateEntries(parameter), 0.01);
+    }
+
+    @Test
+    public void rangeFraction() {
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 50_000L, skewedKeys(), 50_000L, true, 10);
+        assertEquals(1.0, statistics.estimateRangeFraction(null, null), 0.0001);
+        final double low = statistics.estimateRangeFraction(null, 4L);
+        final double high = statistics.estimateRangeFraction(5L, null);
+        assertTrue(low > 0.3 && low < 0.6, "low fraction " + low);
+        assertTrue(high > 0.4 && high < 0.7, "high fraction " + high);
+        assertEquals(0.0, statistics.estimateRangeFraction(200L, null), 0.0001);
+    }
+
+    @Test
+    public void emptySample() {
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 0L, Collections.emptyList(), 0L, true, 10);
+        assertEquals(0L, statistics.getEstimatedEntryCount());
+        assertEquals(0L, statistics.getEstimatedDistinctCount());
+        assertTrue(statistics.getBuckets().isEmpty());
+        assertEquals(0.0, statistics.estimateEntries(ScanComparisons.EMPTY));
+    }
+
+    @Test
+    public void protoRoundTrip() {
+        final IndexStatistics statistics = IndexStatisticsCollector.fromSample(INDEX, 50_000L, skewedKeys(), 50_000L, true, 10);
+        final IndexStatistics parsed = IndexStatistics.fromProto(statistics.toProto());
+        assertEquals(statistics.toString(), parsed.toString());
+        assertEquals(statistics.getBuckets().size(), parsed.getBuckets().size());
+        for (int i = 0; i < statistics.getBuckets().size(); i++) {
+            assertEquals(statistics.getBuckets().get(i).getUpperBound(), parsed.getBuckets().get(i).getUpperBound());
+            assertEquals(statistics.getBuckets().get(i).getCount(), parsed.getBuckets().get(i).getCount());
+        }
+        assertEquals(statistics.estimateEquality(5L), parsed.estimateEquality(5L));
+
+        final Index changed = new Index("test_index", Key.Expressions.field("a"));
+        changed.setLastModifiedVersion(INDEX.getLastModifiedVersion() + 1);
+        assertFalse(parsed.isCurrentFor(changed));
+    }
+}
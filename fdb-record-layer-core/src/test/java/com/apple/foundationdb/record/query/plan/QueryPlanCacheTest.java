@@ -0,0 +1,144 @@
+/*
+ * QueryPlanCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordMetaDataBuilder;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for {@link QueryPlanCache} and {@link CachingQueryPlanner}.
+ */
+public class QueryPlanCacheTest {
+    private static final String INDEX_NAME = "MySimpleRecord$str_value_indexed";
+
+    private RecordMetaData metaData;
+    private QueryPlanCache cache;
+    private FDBStoreTimer timer;
+
+    @BeforeEach
+    public void setup() {
+        metaData = RecordMetaData.build(TestRecords1Proto.getDescriptor());
+        cache = new QueryPlanCache();
+        timer = new FDBStoreTimer();
+    }
+
+    private QueryPlanner planner(RecordMetaData metaData, RecordStoreState recordStoreState) {
+        return new CachingQueryPlanner(new RecordQueryPlanner(metaData, recordStoreState), cache, timer);
+    }
+
+    private static RecordQuery parameterQuery() {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("str_value_indexed").equalsParameter("p"))
+                .build();
+    }
+
+    private static RecordQuery literalQuery(String value) {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.field("str_value_indexed").equalsValue(value))
+                .build();
+    }
+
+    @Test
+    public void parameterQueryReusesPlan() {
+        final RecordQueryPlan plan1 = planner(metaData, new RecordStoreState(null, null)).plan(parameterQuery());
+        final RecordQueryPlan plan2 = planner(metaData, new RecordStoreState(null, null)).plan(parameterQuery());
+        assertSame(plan1, plan2);
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void differentLiteralsPlannedSeparately() {
+        final QueryPlanner planner = planner(metaData, new RecordStoreState(null, null));
+        final RecordQueryPlan plan1 = planner.plan(literalQuery("even"));
+        final RecordQueryPlan plan2 = planner.plan(literalQuery("odd"));
+        assertNotEquals(plan1, plan2);
+        assertSame(plan1, planner.plan(literalQuery("even")));
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+    }
+
+    @Test
+    public void indexStateChangeInvalidates() {
+        final RecordQueryPlan readablePlan = planner(metaData, new RecordStoreState(null, null)).plan(parameterQuery());
+        assertEquals(1, readablePlan.getUsedIndexes().size());
+
+        // An explicit readable state is the same as the default.
+        final RecordStoreState explicitlyReadable = new RecordStoreState(null, ImmutableMap.of(INDEX_NAME, IndexState.READABLE));
+        assertSame(readablePlan, planner(metaData, explicitlyReadable).plan(parameterQuery()));
+
+        final RecordStoreState writeOnly = new RecordStoreState(null, ImmutableMap.of(INDEX_NAME, IndexState.WRITE_ONLY));
+        final RecordQueryPlan writeOnlyPlan = planner(metaData, writeOnly).plan(parameterQuery());
+        assertNotSame(readablePlan, writeOnlyPlan);
+        assertEquals(0, writeOnlyPlan.getUsedIndexes().size());
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_INVALIDATION));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void metaDataVersionChangeInvalidates() {
+        final RecordQueryPlan plan1 = planner(metaData, new RecordStoreState(null, null)).plan(parameterQuery());
+
+        final RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(TestRecords1Proto.getDescriptor());
+        builder.removeIndex(INDEX_NAME);
+        final RecordMetaData newMetaData = builder.getRecordMetaData();
+        assertNotEquals(metaData.getVersion(), newMetaData.getVersion());
+
+        final RecordQueryPlan plan2 = planner(newMetaData, new RecordStoreState(null, null)).plan(parameterQuery());
+        assertNotEquals(plan1, plan2);
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_INVALIDATION));
+
+        planner(metaData, new RecordStoreState(null, null)).plan(literalQuery("x"));
+        assertEquals(2, cache.size());
+        cache.invalidateOtherVersions(newMetaData.getVersion());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictionsReported() {
+        cache = new QueryPlanCache(1);
+        final QueryPlanner planner = planner(metaData, new RecordStoreState(null, null));
+        planner.plan(literalQuery("a"));
+        planner.plan(literalQuery("b"));
+        planner.plan(literalQuery("c"));
+        assertEquals(3, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_EVICTION));
+        assertEquals(1, cache.size());
+    }
+}
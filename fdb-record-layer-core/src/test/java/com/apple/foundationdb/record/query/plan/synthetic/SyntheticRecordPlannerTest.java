@@ -52,6 +52,7 @@ import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBSyntheticRecord;
@@ -2101,6 +2102,66 @@ public class SyntheticRecordPlannerTest {
         }
     }
 
+    @Test
+    void batchSaveJoinedRecords() {
+        metaDataBuilder.addIndex("MySimpleRecord", "other_rec_no");
+        final JoinedRecordTypeBuilder joined = metaDataBuilder.addJoinedRecordType("ManyToOne");
+        joined.addConstituent("simple", "MySimpleRecord");
+        joined.addConstituent("other", "MyOtherRecord");
+        joined.addJoin("simple", "other_rec_no", "other", "rec_no");
+        metaDataBuilder.addIndex(joined, new Index("joinNumValues", concat(field("simple").nest("num_value"), field("other").nest("num_value"))));
+        metaDataBuilder.addIndex(joined, new Index("joinCountByOther", new GroupingKeyExpression(field("other").nest("num_value"), 0), IndexTypes.COUNT));
+        metaDataBuilder.addIndex(joined, new Index("joinSumByOther", field("simple").nest("num_value").groupBy(field("other").nest("num_value")), IndexTypes.SUM));
+
+        try (FDBRecordContext context = openContext()) {
+            final FDBRecordStore recordStore = recordStoreBuilder.setContext(context).create();
+            recordStore.saveRecords(List.of(
+                    TestRecordsJoinIndexProto.MySimpleRecord.newBuilder().setRecNo(1).setNumValue(1).setOtherRecNo(10).build(),
+                    TestRecordsJoinIndexProto.MySimpleRecord.newBuilder().setRecNo(2).setNumValue(2).setOtherRecNo(10).build(),
+                    TestRecordsJoinIndexProto.MyOtherRecord.newBuilder().setRecNo(10).setNumValue(100).build()),
+                    FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_EXISTS);
+            assertEquals(Set.of(Tuple.from(1L, 100L), Tuple.from(2L, 100L)), joinNumValues(recordStore));
+            assertEquals(Map.of(100L, 2L), nonZeroGroups(recordStore, "joinCountByOther"));
+            assertEquals(Map.of(100L, 3L), nonZeroGroups(recordStore, "joinSumByOther"));
+            context.commit();
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            final FDBRecordStore recordStore = recordStoreBuilder.setContext(context).open();
+            // Both constituents of a joined record change in the same batch.
+            recordStore.saveRecords(List.of(
+                    TestRecordsJoinIndexProto.MySimpleRecord.newBuilder().setRecNo(1).setNumValue(3).setOtherRecNo(10).build(),
+                    TestRecordsJoinIndexProto.MyOtherRecord.newBuilder().setRecNo(10).setNumValue(200).build()),
+                    FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_NOT_EXISTS);
+            assertEquals(Set.of(Tuple.from(3L, 200L), Tuple.from(2L, 200L)), joinNumValues(recordStore));
+            assertEquals(Map.of(200L, 2L), nonZeroGroups(recordStore, "joinCountByOther"));
+            assertEquals(Map.of(200L, 5L), nonZeroGroups(recordStore, "joinSumByOther"));
+            context.commit();
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            final FDBRecordStore recordStore = recordStoreBuilder.setContext(context).open();
+            assertEquals(2, recordStore.deleteRecords(List.of(Tuple.from(1L), Tuple.from(10L))));
+            assertEquals(Set.of(), joinNumValues(recordStore));
+            assertEquals(Map.of(), nonZeroGroups(recordStore, "joinCountByOther"));
+            assertEquals(Map.of(), nonZeroGroups(recordStore, "joinSumByOther"));
+            context.commit();
+        }
+    }
+
+    private static Set<Tuple> joinNumValues(@Nonnull FDBRecordStore recordStore) {
+        return recordStore.scanIndex(recordStore.getRecordMetaData().getIndex("joinNumValues"), IndexScanType.BY_VALUE, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                .map(entry -> TupleHelpers.subTuple(entry.getKey(), 0, 2))
+                .asList().join().stream().collect(Collectors.toSet());
+    }
+
+    private static Map<Long, Long> nonZeroGroups(@Nonnull FDBRecordStore recordStore, @Nonnull String indexName) {
+        return recordStore.scanIndex(recordStore.getRecordMetaData().getIndex(indexName), IndexScanType.BY_GROUP, TupleRange.ALL, null, ScanProperties.FORWARD_SCAN)
+                .asList().join().stream()
+                .filter(entry -> entry.getValue().getLong(0) != 0L)
+                .collect(Collectors.toMap(entry -> entry.getKey().getLong(0), entry -> entry.getValue().getLong(0)));
+    }
+
     private static void assertConstituentPlansMatch(SyntheticRecordPlanner planner, JoinedRecordType joinedRecordType,
                                                     Map<String, Matcher<? super SyntheticRecordFromStoredRecordPlan>> constituentMatchers) {
         for (JoinedRecordType.JoinConstituent constituent : joinedRecordType.getConstituents()) {
@@ -0,0 +1,179 @@
+/*
+ * FileSorterTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordSortingProto;
+import com.apple.foundationdb.record.provider.common.CipherPool;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryDistinctAdapter;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link FileSorter} and {@link SortedFileReader} that do not need a database.
+ */
+public class FileSorterTest {
+    private static final int COUNT = 2000;
+    // A permutation of 0 .. COUNT - 1.
+    private static final List<Long> VALUES = IntStream.range(0, COUNT).mapToObj(i -> (long)(i * 7919) % COUNT)
+            .collect(Collectors.toList());
+
+    @ParameterizedTest(name = "sortThroughFiles [compressed = {0}, encrypted = {1}]")
+    @CsvSource({"false, false", "true, false", "false, true", "true, true"})
+    void sortThroughFiles(boolean compressed, boolean encrypted) {
+        final StoreTimer timer = new StoreTimer();
+        final TestAdapter adapter = new TestAdapter(compressed, encrypted);
+        final List<byte[]> input = VALUES.stream().map(value -> Tuple.from(value).pack()).collect(Collectors.toList());
+        final List<Long> sorted;
+        try (RecordCursor<byte[]> cursor = FileSortCursor.create(adapter, continuation -> RecordCursor.fromList(input),
+                timer, null, 10, COUNT)) {
+            sorted = cursor.map(bytes -> Tuple.fromBytes(bytes).getLong(0)).asList().join();
+        }
+        assertEquals(LongStream.range(10, COUNT).boxed().collect(Collectors.toList()), sorted);
+        // Every full tree map was saved, and then merged because there were too many files.
+        assertTrue(timer.getCount(SortEvents.Events.FILE_SORT_MERGE_FILES) > 0);
+        assertTrue(timer.getCount(SortEvents.Events.FILE_SORT_OPEN_FILE) >= COUNT / TestAdapter.MAX_RECORDS_IN_MEMORY);
+    }
+
+    @ParameterizedTest(name = "readVersion1File [compressed = {0}, encrypted = {1}, skip = {2}]")
+    @CsvSource({"false, false, 0", "true, false, 0", "false, true, 0", "true, true, 0",
+                "false, false, 25", "true, false, 25", "false, true, 25", "true, true, 25"})
+    void readVersion1File(boolean compressed, boolean encrypted, int skip, @TempDir Path tempDir) throws Exception {
+        final TestAdapter adapter = new TestAdapter(compressed, encrypted);
+        final List<Long> values = LongStream.range(0, 55).boxed().collect(Collectors.toList());
+        final File file = tempDir.resolve("version1.bin").toFile();
+        writeVersion1File(file, adapter, values, 10);
+
+        final List<Long> read = new ArrayList<>();
+        try (SortedFileReader<byte[]> reader = new SortedFileReader<>(file, adapter, null, skip, 20)) {
+            while (true) {
+                final byte[] value = reader.read();
+                if (value == null) {
+                    break;
+                }
+                read.add(Tuple.fromBytes(value).getLong(0));
+            }
+            assertNull(reader.read());
+        }
+        assertEquals(values.subList(skip, skip + 20), read);
+    }
+
+    // Write a file the way version 1 of FileSorter did, encrypting each section before compressing it.
+    private static void writeVersion1File(@Nonnull File file, @Nonnull TestAdapter adapter, @Nonnull List<Long> values,
+                                          int recordsPerSection) throws Exception {
+        final Cipher cipher = adapter.getEncryptionKey() == null ? null : CipherPool.borrowCipher();
+        try (FileOutputStream fileStream = new FileOutputStream(file)) {
+            final CodedOutputStream headerStream = CodedOutputStream.newInstance(fileStream);
+            final int sectionCount = (values.size() + recordsPerSection - 1) / recordsPerSection;
+            headerStream.writeMessageNoTag(RecordSortingProto.SortFileHeader.newBuilder()
+                    .setVersion(1)
+                    .setMetaDataVersion(adapter.getMetaDataVersion())
+                    .setNumberOfSections(sectionCount)
+                    .setNumberOfRecords(values.size())
+                    .build());
+            for (int section = 0; section < sectionCount; section++) {
+                final int start = section * recordsPerSection;
+                final List<Long> sectionValues = values.subList(start, Math.min(start + recordsPerSection, values.size()));
+                final RecordSortingProto.SortSectionHeader.Builder sectionHeader = RecordSortingProto.SortSectionHeader.newBuilder()
+                        .setSectionNumber(section)
+                        .setStartRecordNumber(start)
+                        .setNumberOfRecords(sectionValues.size());
+                final ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream();
+                OutputStream stream = sectionBytes;
+                if (adapter.isCompressed()) {
+                    stream = new DeflaterOutputStream(stream);
+                }
+                if (cipher != null) {
+                    FileSorter.initCipherEncrypt(cipher, adapter.getEncryptionKey(), adapter.getSecureRandom(), sectionHeader);
+                    stream = new CipherOutputStream(stream, cipher);
+                }
+                final CodedOutputStream entryStream = CodedOutputStream.newInstance(stream);
+                for (long value : sectionValues) {
+                    final byte[] bytes = Tuple.from(value).pack();
+                    entryStream.writeByteArrayNoTag(adapter.serializeKey(adapter.generateKey(bytes)));
+                    adapter.writeValue(bytes, entryStream);
+                }
+                entryStream.flush();
+                stream.close();
+                headerStream.writeMessageNoTag(sectionHeader.setNumberOfBytes(sectionBytes.size()).build());
+                headerStream.writeRawBytes(sectionBytes.toByteArray());
+            }
+            headerStream.flush();
+        } finally {
+            if (cipher != null) {
+                CipherPool.returnCipher(cipher);
+            }
+        }
+    }
+
+    private static class TestAdapter extends RecordQueryDistinctAdapter {
+        static final int MAX_RECORDS_IN_MEMORY = 50;
+        private final boolean compressed;
+        private final boolean encrypted;
+
+        TestAdapter(boolean compressed, boolean encrypted) {
+            super(0);
+            this.compressed = compressed;
+            this.encrypted = encrypted;
+        }
+
+        @Override
+        public int getMaxRecordCountInMemory() {
+            return MAX_RECORDS_IN_MEMORY;
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        @Nullable
+        @Override
+        public Key getEncryptionKey() {
+            return encrypted ? super.getEncryptionKey() : null;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * HashAggregateCursorTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorTest;
+import com.apple.foundationdb.record.cursors.aggregate.AccumulatorState;
+import com.apple.foundationdb.record.cursors.aggregate.AverageAccumulatorState;
+import com.apple.foundationdb.record.cursors.aggregate.LongState;
+import com.apple.foundationdb.record.cursors.aggregate.PrimitiveAccumulatorOperation;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryHashAggregateAdapter;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link HashAggregateCursor}.
+ */
+public class HashAggregateCursorTest {
+    // Values are grouped by their remainder and each group is aggregated into (sum, max, average).
+    private static final int GROUPS = 13;
+    private static final List<Long> VALUES = LongStream.range(0, 200).map(i -> (i * 37) % 101).boxed().collect(Collectors.toList());
+
+    private static final HashAggregateCursor.Aggregator<Long, String> AGGREGATOR = new HashAggregateCursor.Aggregator<>() {
+        @Nonnull
+        @Override
+        public ByteString groupKey(@Nonnull Long value) {
+            return ByteString.copyFrom(Tuple.from(value % GROUPS).pack());
+        }
+
+        @Nonnull
+        @Override
+        public List<AccumulatorState<?, ?>> newStates() {
+            return List.of(new LongState(PrimitiveAccumulatorOperation.SUM),
+                    new LongState(PrimitiveAccumulatorOperation.MAX),
+                    AverageAccumulatorState.longAverageState());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accumulate(@Nonnull Long value, @Nonnull List<AccumulatorState<?, ?>> states) {
+            for (AccumulatorState<?, ?> state : states) {
+                ((AccumulatorState<Long, ?>)state).accumulate(value);
+            }
+        }
+
+        @Nonnull
+        @Override
+        public String finish(@Nonnull ByteString groupKey, @Nonnull List<AccumulatorState<?, ?>> states) {
+            return Tuple.fromBytes(groupKey.toByteArray()).getLong(0) + ":" +
+                   states.stream().map(state -> String.valueOf(state.finish())).collect(Collectors.joining(","));
+        }
+    };
+
+    private static List<String> expected() {
+        final Map<Long, List<Long>> groups = new TreeMap<>();
+        for (Long value : VALUES) {
+            groups.computeIfAbsent(value % GROUPS, k -> new ArrayList<>()).add(value);
+        }
+        return groups.entrySet().stream()
+                .map(group -> {
+                    final List<Long> values = group.getValue();
+                    final long sum = values.stream().mapToLong(Long::longValue).sum();
+                    final long max = values.stream().mapToLong(Long::longValue).max().orElseThrow();
+                    return group.getKey() + ":" + sum + "," + max + "," + ((double)sum / values.size());
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Nonnull
+    private static RecordCursor<String> aggregate(@Nonnull RecordQueryHashAggregateAdapter adapter, int outOfBandLimit,
+                                                  @Nullable byte[] continuation) {
+        return HashAggregateCursor.create(adapter,
+                innerContinuation -> new RecordCursorTest.FakeOutOfBandCursor<>(RecordCursor.fromList(VALUES, innerContinuation), outOfBandLimit),
+                AGGREGATOR, null, ForkJoinPool.commonPool(), continuation);
+    }
+
+    private static List<String> sorted(@Nonnull List<String> results) {
+        return results.stream().sorted((s1, s2) -> Long.compare(Long.parseLong(s1.split(":")[0]), Long.parseLong(s2.split(":")[0])))
+                .collect(Collectors.toList());
+    }
+
+    @ParameterizedTest(name = "aggregateAll [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 5, 1})
+    void aggregateAll(int maxInMemory) {
+        final List<String> results = aggregate(new RecordQueryHashAggregateAdapter(maxInMemory, 0), Integer.MAX_VALUE, null).asList().join();
+        assertEquals(expected(), sorted(results));
+    }
+
+    @ParameterizedTest(name = "resumeAfterEachResult [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 5, 1})
+    void resumeAfterEachResult(int maxInMemory) {
+        final RecordQueryHashAggregateAdapter adapter = new RecordQueryHashAggregateAdapter(maxInMemory, 0);
+        final List<String> results = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<String> cursor = aggregate(adapter, Integer.MAX_VALUE, continuation).limitRowsTo(1)) {
+                final RecordCursorResult<String> result = cursor.getNext();
+                if (result.hasNext()) {
+                    results.add(result.get());
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        assertEquals(expected(), sorted(results));
+    }
+
+    @ParameterizedTest(name = "resumeOutOfBand [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 5})
+    void resumeOutOfBand(int maxInMemory) {
+        final RecordQueryHashAggregateAdapter adapter = new RecordQueryHashAggregateAdapter(maxInMemory, 0);
+        final List<String> results = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<String> cursor = aggregate(adapter, 7, continuation)) {
+                RecordCursorResult<String> result = cursor.getNext();
+                while (result.hasNext()) {
+                    results.add(result.get());
+                    result = cursor.getNext();
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        assertEquals(expected(), sorted(results));
+    }
+
+    @Test
+    void spillsAreMergedOnRead() {
+        final RecordQueryHashAggregateAdapter adapter = new RecordQueryHashAggregateAdapter(5, 0) {
+            @Override
+            public int getMaxFileCount() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        final List<String> results = new ArrayList<>();
+        try (RecordCursor<String> cursor = aggregate(adapter, Integer.MAX_VALUE, null)) {
+            RecordCursorResult<String> result = cursor.getNext();
+            assertTrue(result.hasNext());
+            // Each spill is a separate run, rather than being merged into what was spilled before.
+            final HashAggregateCursorContinuation continuation = HashAggregateCursorContinuation.from(result.getContinuation().toBytes());
+            assertTrue(continuation.getFiles().size() > 1, "spills should be kept as separate runs");
+            assertEquals(continuation.getFiles().size(), continuation.getRecordPositions().size());
+            while (result.hasNext()) {
+                results.add(result.get());
+                result = cursor.getNext();
+            }
+        }
+        assertEquals(expected(), sorted(results));
+    }
+
+    @Test
+    void mergePartialStates() {
+        final AccumulatorState<Long, Double> first = AverageAccumulatorState.longAverageState();
+        final AccumulatorState<Long, Double> second = AverageAccumulatorState.longAverageState();
+        first.accumulate(1L);
+        first.accumulate(2L);
+        second.accumulate(6L);
+        final AccumulatorState<Long, Double> combined = AverageAccumulatorState.longAverageState();
+        combined.mergeFrom(first.toProto());
+        combined.mergeFrom(second.toProto());
+        combined.mergeFrom(AverageAccumulatorState.longAverageState().toProto());
+        assertEquals(3.0, combined.finish());
+    }
+}
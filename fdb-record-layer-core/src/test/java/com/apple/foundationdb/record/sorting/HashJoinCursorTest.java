@@ -0,0 +1,259 @@
+/*
+ * HashJoinCursorTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorTest;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link HashJoinCursor}.
+ */
+public class HashJoinCursorTest {
+    // Build values are (key, id) and join on key. Some keys are missing from each side.
+    private static final List<Tuple> BUILD = buildValues();
+    private static final List<Long> PROBE = List.of(3L, 0L, 7L, 1L, 3L, 12L, 5L, 2L, 9L, 4L, 6L);
+
+    private static List<Tuple> buildValues() {
+        final List<Tuple> values = new ArrayList<>();
+        for (long id = 0; id < 25; id++) {
+            values.add(Tuple.from((id * 7) % 8, id));
+        }
+        return values;
+    }
+
+    private static List<String> nestedLoopJoin() {
+        final List<String> results = new ArrayList<>();
+        for (Long probe : PROBE) {
+            BUILD.stream()
+                    .filter(build -> build.getLong(0) == probe)
+                    .sorted()
+                    .forEach(build -> results.add(probe + ":" + build.getLong(1)));
+        }
+        return results;
+    }
+
+    private static class TupleAdapter implements FileSortAdapter<Tuple, Tuple> {
+        private final int maxRecordCountInMemory;
+
+        TupleAdapter(int maxRecordCountInMemory) {
+            this.maxRecordCountInMemory = maxRecordCountInMemory;
+        }
+
+        @Override
+        public int compare(Tuple o1, Tuple o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Nonnull
+        @Override
+        public Tuple generateKey(Tuple value) {
+            return value;
+        }
+
+        @Nonnull
+        @Override
+        public byte[] serializeKey(Tuple key) {
+            return key.pack();
+        }
+
+        @Override
+        public boolean isSerializedOrderReversed() {
+            return false;
+        }
+
+        @Nonnull
+        @Override
+        public Tuple deserializeKey(@Nonnull byte[] key) {
+            return Tuple.fromBytes(key);
+        }
+
+        @Nonnull
+        @Override
+        public byte[] serializeValue(Tuple value) {
+            return value.pack();
+        }
+
+        @Nonnull
+        @Override
+        public Tuple deserializeValue(@Nonnull byte[] bytes) {
+            return Tuple.fromBytes(bytes);
+        }
+
+        @Override
+        public int getMaxRecordCountInMemory() {
+            return maxRecordCountInMemory;
+        }
+
+        @Nonnull
+        @Override
+        public MemorySorter.RecordCountInMemoryLimitMode getRecordCountInMemoryLimitMode() {
+            return MemorySorter.RecordCountInMemoryLimitMode.STOP;
+        }
+
+        @Nonnull
+        @Override
+        public MemorySortComparator<Tuple> getComparator(@Nullable Tuple minimumKey) {
+            return new OrderComparator<>(this, minimumKey);
+        }
+
+        @Nonnull
+        @Override
+        public File generateFilename() throws IOException {
+            return File.createTempFile("fdb", ".bin");
+        }
+
+        @Override
+        public int getMetaDataVersion() {
+            return 0;
+        }
+
+        @Override
+        public void writeValue(@Nonnull Tuple value, @Nonnull CodedOutputStream stream) throws IOException {
+            stream.writeByteArrayNoTag(value.pack());
+        }
+
+        @Nonnull
+        @Override
+        public Tuple readValue(@Nonnull CodedInputStream stream) throws IOException {
+            return Tuple.fromBytes(stream.readByteArray());
+        }
+
+        @Override
+        public int getMinFileRecordCount() {
+            return maxRecordCountInMemory;
+        }
+
+        @Override
+        public int getMaxFileCount() {
+            return 10;
+        }
+
+        @Override
+        public int getRecordCountPerSection() {
+            return 4;
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public String getEncryptionCipherName() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public Key getEncryptionKey() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public SecureRandom getSecureRandom() {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static RecordCursor<String> join(@Nonnull TupleAdapter adapter, int outOfBandLimit, @Nullable byte[] continuation) {
+        final Function<byte[], RecordCursor<Tuple>> buildFunction = buildContinuation ->
+                new RecordCursorTest.FakeOutOfBandCursor<>(RecordCursor.fromList(BUILD, buildContinuation), outOfBandLimit);
+        final Function<byte[], RecordCursor<Long>> probeFunction = probeContinuation ->
+                new RecordCursorTest.FakeOutOfBandCursor<>(RecordCursor.fromList(PROBE, probeContinuation), outOfBandLimit);
+        return HashJoinCursor.create(adapter, buildFunction, probeFunction,
+                build -> build.getLong(0), probe -> probe,
+                (probe, build) -> probe + ":" + build.getLong(1),
+                null, ForkJoinPool.commonPool(), continuation);
+    }
+
+    @ParameterizedTest(name = "inMemory [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 4, 1})
+    void joinAll(int maxInMemory) {
+        final List<String> results = join(new TupleAdapter(maxInMemory), Integer.MAX_VALUE, null).asList().join();
+        if (maxInMemory >= BUILD.size()) {
+            assertEquals(nestedLoopJoin(), results);
+        } else {
+            // Chunked probing returns the same matches in a different order.
+            assertEquals(nestedLoopJoin().stream().sorted().toList(), results.stream().sorted().toList());
+        }
+    }
+
+    @ParameterizedTest(name = "resumeAfterEachResult [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 4})
+    void resumeAfterEachResult(int maxInMemory) {
+        final TupleAdapter adapter = new TupleAdapter(maxInMemory);
+        final List<String> expected = join(adapter, Integer.MAX_VALUE, null).asList().join();
+        final List<String> results = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<String> cursor = join(adapter, Integer.MAX_VALUE, continuation).limitRowsTo(1)) {
+                final RecordCursorResult<String> result = cursor.getNext();
+                if (result.hasNext()) {
+                    results.add(result.get());
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        assertEquals(expected, results);
+    }
+
+    @ParameterizedTest(name = "resumeOutOfBand [maxInMemory = {0}]")
+    @ValueSource(ints = {100, 4})
+    void resumeOutOfBand(int maxInMemory) {
+        final TupleAdapter adapter = new TupleAdapter(maxInMemory);
+        final List<String> expected = join(adapter, Integer.MAX_VALUE, null).asList().join();
+        final List<String> results = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (RecordCursor<String> cursor = join(adapter, 3, continuation)) {
+                RecordCursorResult<String> result = cursor.getNext();
+                while (result.hasNext()) {
+                    results.add(result.get());
+                    result = cursor.getNext();
+                }
+                continuation = result.getContinuation().toBytes();
+            }
+        } while (continuation != null);
+        assertEquals(expected, results);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * SpillingDistinctSetTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.sorting;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQueryDistinctAdapter;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ByteArrayHashSet}, {@link SpillingDistinctSet} and {@link DistinctCursor}.
+ */
+public class SpillingDistinctSetTest {
+    // Every value appears three times, interleaved.
+    private static final List<Long> VALUES = IntStream.range(0, 3 * 5000).mapToObj(i -> (long)(i * 7919) % 5000)
+            .collect(Collectors.toList());
+
+    @Test
+    void hashSet() {
+        final ByteArrayHashSet set = new ByteArrayHashSet();
+        final Set<Tuple> expected = new HashSet<>();
+        for (Long value : VALUES) {
+            final Tuple tuple = Tuple.from(value, "x");
+            assertEquals(expected.add(tuple), set.add(tuple.pack()));
+        }
+        assertEquals(expected.size(), set.size());
+        assertTrue(set.contains(Tuple.from(17L, "x").pack()));
+        assertFalse(set.contains(Tuple.from(17L, "y").pack()));
+        final Set<Tuple> members = new HashSet<>();
+        for (byte[] member : set) {
+            members.add(Tuple.fromBytes(member));
+        }
+        assertEquals(expected, members);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(Tuple.from(17L, "x").pack()));
+    }
+
+    @Test
+    void emptyMember() {
+        final ByteArrayHashSet set = new ByteArrayHashSet();
+        assertTrue(set.add(new byte[0]));
+        assertFalse(set.add(new byte[0]));
+        assertTrue(set.contains(new byte[0]));
+    }
+
+    @ParameterizedTest(name = "distinct [memoryBudget = {0}]")
+    @ValueSource(longs = {Long.MAX_VALUE, 64 * 1024, 8 * 1024})
+    void distinct(long memoryBudget) {
+        final StoreTimer timer = new StoreTimer();
+        final SpillingDistinctSet seen = new SpillingDistinctSet(new RecordQueryDistinctAdapter(0), memoryBudget,
+                timer, ForkJoinPool.commonPool());
+        final List<Long> results;
+        try (RecordCursor<Long> cursor = new DistinctCursor<>(RecordCursor.fromList(VALUES), value -> Tuple.from(value).pack(),
+                seen, timer, Collections.emptySet(), Collections.emptySet(), Collections.emptySet())) {
+            results = cursor.asList().join();
+        }
+        final List<Long> expected = new ArrayList<>(new LinkedHashSet<>(VALUES));
+        assertEquals(expected, results);
+        if (memoryBudget == Long.MAX_VALUE) {
+            assertEquals(0, seen.getSpilledCount());
+        } else {
+            assertTrue(seen.getSpilledCount() > 0);
+            assertTrue(seen.getMaxMemoryFootprint() <= 2 * memoryBudget);
+            assertEquals(seen.getSpilledCount(), timer.getCount(SortEvents.Counts.DISTINCT_SET_SPILLED_KEYS));
+        }
+        assertEquals(seen.getMaxMemoryFootprint(), timer.getCount(SortEvents.Counts.DISTINCT_SET_BYTES));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * StoreTimerBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.benchmark;
+
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording events in a single {@link FDBStoreTimer} shared by many threads, as when one timer is used for all of
+ * the transactions run by a server.
+ * Run {@link #main} to compare the throughput with from 1 to 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoreTimerBenchmark {
+    /**
+     * The shared timer.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedTimer {
+        FDBStoreTimer timer;
+
+        @Setup
+        public void setup() {
+            timer = new FDBStoreTimer();
+        }
+    }
+
+    @Benchmark
+    public void recordEvent(SharedTimer shared) {
+        shared.timer.record(FDBStoreTimer.Events.LOAD_RECORD, 1000L);
+    }
+
+    @Benchmark
+    public void incrementCount(SharedTimer shared) {
+        shared.timer.increment(FDBStoreTimer.Counts.LOAD_RECORD_KEY);
+    }
+
+    @Benchmark
+    public void recordMixed(SharedTimer shared) {
+        shared.timer.record(FDBStoreTimer.Events.SAVE_RECORD, 1000L);
+        shared.timer.increment(FDBStoreTimer.Counts.SAVE_RECORD_KEY);
+        shared.timer.increment(FDBStoreTimer.Counts.SAVE_RECORD_KEY_BYTES, 16);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options opt = new OptionsBuilder()
+                    .include(StoreTimerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .forks(1)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.lucene.util.BytesRef;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Continuation from scanning a Lucene index. This wraps the LuceneIndexContinuation protobuf message,
@@ -76,10 +77,7 @@ class LuceneCursorContinuation implements RecordCursorContinuation {
     public static LuceneCursorContinuation fromScoreDoc(ScoreDoc scoreDoc,
                                                         @Nullable Integer partitionId,
                                                         @Nullable Tuple partitionKey) {
-        LuceneContinuationProto.LuceneIndexContinuation.Builder builder = LuceneContinuationProto.LuceneIndexContinuation.newBuilder()
-                .setDoc(scoreDoc.doc)
-                .setShard(scoreDoc.shardIndex)
-                .setScore(scoreDoc.score);
+        LuceneContinuationProto.LuceneIndexContinuation.Builder builder = toProtoBuilder(scoreDoc);
 
         if (partitionId != null) {
             builder.setPartitionId(partitionId);
@@ -87,6 +85,51 @@ class LuceneCursorContinuation implements RecordCursorContinuation {
         if (partitionKey != null) {
             builder.setPartitionKey(ByteString.copyFrom(partitionKey.pack()));
         }
+        return new LuceneCursorContinuation(builder.build());
+    }
+
+    /**
+     * Create a continuation for a search of several partitions whose results are merged.
+     * @param scoreDoc the last result returned from the merged results
+     * @param partitionPositions where the search of each partition is up to
+     * @return a new continuation
+     */
+    public static LuceneCursorContinuation fromPartitionPositions(@Nonnull ScoreDoc scoreDoc,
+                                                                  @Nonnull List<LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition> partitionPositions) {
+        return new LuceneCursorContinuation(toProtoBuilder(scoreDoc)
+                .addAllPartitionPositions(partitionPositions)
+                .build());
+    }
+
+    /**
+     * Create a continuation for the search of a single partition that is part of a merged search.
+     * @param partitionId the partition being searched
+     * @param searchAfter the last result from the partition, or {@code null} if none has been returned yet
+     * @param exhausted whether the partition has no more results
+     * @return the position of the partition in a merged search
+     */
+    @Nonnull
+    public static LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition toPartitionPosition(int partitionId,
+                                                                                                      @Nullable ScoreDoc searchAfter,
+                                                                                                      boolean exhausted) {
+        LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition.Builder builder = LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition.newBuilder()
+                .setPartitionId(partitionId);
+        if (searchAfter != null) {
+            builder.setSearchAfter(toProtoBuilder(searchAfter));
+        }
+        if (exhausted) {
+            builder.setExhausted(true);
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    private static LuceneContinuationProto.LuceneIndexContinuation.Builder toProtoBuilder(@Nonnull ScoreDoc scoreDoc) {
+        LuceneContinuationProto.LuceneIndexContinuation.Builder builder = LuceneContinuationProto.LuceneIndexContinuation.newBuilder()
+                .setDoc(scoreDoc.doc)
+                .setShard(scoreDoc.shardIndex)
+                .setScore(scoreDoc.score);
+
         if (scoreDoc instanceof FieldDoc) {
             for (Object field : ((FieldDoc)scoreDoc).fields) {
                 final LuceneContinuationProto.LuceneIndexContinuation.Field.Builder value = builder.addFieldsBuilder();
@@ -108,7 +151,7 @@ class LuceneCursorContinuation implements RecordCursorContinuation {
                 }
             }
         }
-        return new LuceneCursorContinuation(builder.build());
+        return builder;
     }
 
     @Nonnull
@@ -77,7 +77,15 @@ public class LuceneEvents {
         /**
          * Amount of time spent moving documents during partition rebalancing.
          */
-        LUCENE_REBALANCE_PARTITION("Lucene rebalance partition")
+        LUCENE_REBALANCE_PARTITION("Lucene rebalance partition"),
+        /**
+         * Amount of time spent in a transaction applying pending writes to the Lucene directory.
+         */
+        LUCENE_DRAIN_PENDING_WRITES_TRANSACTION("Lucene drain pending writes transaction"),
+        /**
+         * Amount of time spent merging one directory for a {@link LuceneMergeScheduler}.
+         */
+        LUCENE_SCHEDULED_MERGE("Lucene scheduled merge")
         ;
 
         private final String title;
@@ -174,6 +182,10 @@ public class LuceneEvents {
         WAIT_LUCENE_FILE_LOCK_GET("lucene get file lock"),
         /** Clear a file lock. */
         WAIT_LUCENE_FILE_LOCK_CLEAR("lucene clear file lock"),
+        /** Read the pending writes of a group and the records they refer to. */
+        WAIT_LUCENE_READ_PENDING_WRITES("lucene read pending writes"),
+        /** Wait for the running merges of a {@link LuceneMergeScheduler} to finish when it is closed. */
+        WAIT_LUCENE_SCHEDULED_MERGES("lucene scheduled merges finish"),
         ;
         private final String title;
         private final String logKey;
@@ -217,6 +229,8 @@ public class LuceneEvents {
         LUCENE_SHARED_CACHE_HITS("lucene shared cache hits", false),
         /** Block to read came not in shared cache. **/
         LUCENE_SHARED_CACHE_MISSES("lucene shared cache misses", false),
+        /** Blocks evicted from the shared cache to make room for blocks read. **/
+        LUCENE_SHARED_CACHE_EVICTIONS("lucene shared cache evictions", false),
         /** Plan contains highlight operator. **/
         PLAN_HIGHLIGHT_TERMS("lucene highlight plans", false),
         /** Number of file delete operations on the FDBDirectory. */
@@ -235,8 +249,34 @@ public class LuceneEvents {
         LUCENE_AGILE_COMMITS_TIME_QUOTA("lucene agile commits time quota", false),
         /** Count of times a rebalance was called. */
         LUCENE_REPARTITION_CALLS("Count of Lucene repartition calls", false),
+        /** Number of documents whose writes were queued rather than applied. */
+        LUCENE_PENDING_WRITES_QUEUED("lucene pending writes queued", false),
+        /** Number of queued writes applied to the Lucene directory. */
+        LUCENE_PENDING_WRITES_DRAINED("lucene pending writes drained", false),
+        /** Number of queued writes whose documents were built for a query. */
+        LUCENE_PENDING_WRITES_READ("lucene pending writes read", false),
+        /** Number of range reads issued to read blocks ahead of sequential reads. */
+        LUCENE_READ_AHEAD_RANGE_READS("lucene read ahead range reads", false),
+        /** Number of blocks read ahead of sequential reads. */
+        LUCENE_READ_AHEAD_BLOCKS("lucene read ahead blocks", false),
+        /** Number of blocks read ahead that were skipped over by a seek. */
+        LUCENE_READ_AHEAD_WASTED_BLOCKS("lucene read ahead wasted blocks", false),
+        /** Number of times a cached reader shared between transactions was used. */
+        LUCENE_READER_CACHE_HITS("lucene reader cache hits", false),
+        /** Number of times a reader to be shared between transactions was opened from scratch. */
+        LUCENE_READER_CACHE_MISSES("lucene reader cache misses", false),
+        /** Number of times a reader to be shared between transactions was opened from an older one. */
+        LUCENE_READER_CACHE_REFRESHES("lucene reader cache refreshes", false),
+        /** Number of times the documents matching a filter query in a segment were found in the shared filter cache. */
+        LUCENE_FILTER_CACHE_HITS("lucene filter cache hits", false),
+        /** Number of times the documents matching a filter query in a segment were computed to add to the shared filter cache. */
+        LUCENE_FILTER_CACHE_MISSES("lucene filter cache misses", false),
         /** Count of the number of times a block was removed from the block cache. */
-        LUCENE_BLOCK_CACHE_REMOVE("Count of blocks removed from cache", false);
+        LUCENE_BLOCK_CACHE_REMOVE("Count of blocks removed from cache", false),
+        /** Number of directories queued by a {@link LuceneMergeScheduler}. */
+        LUCENE_SCHEDULED_MERGES_QUEUED("lucene scheduled merges queued", false),
+        /** Number of times a {@link LuceneMergeScheduler} deferred starting a merge until its rate allowed it. */
+        LUCENE_SCHEDULED_MERGES_THROTTLED("lucene scheduled merges throttled", false);
 
         private final String title;
         private final boolean isSize;
@@ -293,6 +333,8 @@ public class LuceneEvents {
         LUCENE_REBALANCE_PARTITION_DOCS("lucene rebalance partition count"),
         /** Size of the list of files loaded in loadFileReferenceCacheForMemoization operation in FDBDirectory. */
         LUCENE_FILES_COUNT("lucene files"),
+        /** The number of directories waiting in a {@link LuceneMergeScheduler} whenever one is queued or started. */
+        LUCENE_SCHEDULED_MERGE_QUEUE_DEPTH("lucene scheduled merge queue depth"),
         ;
 
         private final String title;
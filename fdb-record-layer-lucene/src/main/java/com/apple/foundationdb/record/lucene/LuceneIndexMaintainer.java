@@ -27,6 +27,7 @@ import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
@@ -47,11 +48,14 @@ import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
 import com.apple.foundationdb.record.metadata.IndexRecordFunction;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseRunner;
 import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBSyntheticRecord;
 import com.apple.foundationdb.record.provider.foundationdb.IndexDeferredMaintenanceControl;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
@@ -61,7 +65,9 @@ import com.apple.foundationdb.record.provider.foundationdb.IndexScanBounds;
 import com.apple.foundationdb.record.provider.foundationdb.indexes.InvalidIndexEntry;
 import com.apple.foundationdb.record.provider.foundationdb.indexes.StandardIndexMaintainer;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
+import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.Message;
 import org.apache.lucene.document.BinaryPoint;
@@ -76,10 +82,13 @@ import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.slf4j.Logger;
@@ -89,8 +98,11 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -122,6 +134,10 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
     private boolean serializerErrorLogged = false;
     @Nonnull
     private final LucenePartitioner partitioner;
+    @Nullable
+    private final LucenePendingWriteQueue pendingWriteQueue;
+    @Nullable
+    private CompletableFuture<Boolean> pendingWriteQueueFull;
 
     public LuceneIndexMaintainer(@Nonnull final IndexMaintainerState state, @Nonnull Executor executor) {
         super(state);
@@ -133,6 +149,7 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
         String formatString = state.index.getOption(LuceneIndexOptions.PRIMARY_KEY_SERIALIZATION_FORMAT);
         keySerializer = LuceneIndexKeySerializer.fromStringFormat(formatString);
         partitioner = new LucenePartitioner(state);
+        pendingWriteQueue = LucenePendingWriteQueue.isEnabled(state.index) ? new LucenePendingWriteQueue(state) : null;
     }
 
     public LuceneAnalyzerCombinationProvider getAutoCompleteAnalyzerSelector() {
@@ -251,12 +268,21 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
                                Integer partitionId,
                                Tuple primaryKey) throws IOException {
         final long startTime = System.nanoTime();
-        final List<String> texts = fields.stream()
+        final IndexWriter newWriter = directoryManager.getIndexWriter(groupingKey, partitionId, indexAnalyzerSelector.provideIndexAnalyzer(getTexts(fields)));
+        newWriter.addDocument(buildDocument(fields, primaryKey));
+        state.context.record(LuceneEvents.Events.LUCENE_ADD_DOCUMENT, System.nanoTime() - startTime);
+    }
+
+    @Nonnull
+    private static List<String> getTexts(@Nonnull List<LuceneDocumentFromRecord.DocumentField> fields) {
+        return fields.stream()
                 .filter(f -> f.getType().equals(LuceneIndexExpressions.DocumentFieldType.TEXT))
                 .map(f -> (String) f.getValue()).collect(Collectors.toList());
-        Document document = new Document();
-        final IndexWriter newWriter = directoryManager.getIndexWriter(groupingKey, partitionId, indexAnalyzerSelector.provideIndexAnalyzer(texts));
+    }
 
+    @Nonnull
+    private Document buildDocument(@Nonnull List<LuceneDocumentFromRecord.DocumentField> fields, Tuple primaryKey) {
+        Document document = new Document();
         BytesRef ref = new BytesRef(keySerializer.asPackedByteArray(primaryKey));
         // use packed Tuple for the Stored and Sorted fields
         document.add(new StoredField(PRIMARY_KEY_FIELD_NAME, ref));
@@ -278,8 +304,7 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
                 insertField(field, document);
             }
         }
-        newWriter.addDocument(document);
-        state.context.record(LuceneEvents.Events.LUCENE_ADD_DOCUMENT, System.nanoTime() - startTime);
+        return document;
     }
 
     @Nonnull
@@ -294,68 +319,95 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
         return map;
     }
 
-    @SuppressWarnings({"PMD.CloseResource", "java:S2095"})
     int deleteDocument(Tuple groupingKey, Integer partitionId, Tuple primaryKey) throws IOException {
-        final long startTime = System.nanoTime();
+        return deleteDocuments(groupingKey, partitionId, List.of(primaryKey));
+    }
+
+    /**
+     * Delete the documents of several records from one Lucene directory. The documents are looked up in the
+     * {@link LucenePrimaryKeySegmentIndex}, if the index has one, all together, and deleted directly if found, or else
+     * by query.
+     * @param groupingKey the grouping key of the directory
+     * @param partitionId the partition id of the directory, if the index is partitioned
+     * @param primaryKeys the primary keys of the records
+     * @return the number of documents deleted directly
+     * @throws IOException propagated from the index writer
+     */
+    @SuppressWarnings({"PMD.CloseResource", "java:S2095"})
+    int deleteDocuments(Tuple groupingKey, Integer partitionId, Collection<Tuple> primaryKeys) throws IOException {
+        long startTime = System.nanoTime();
         final IndexWriter indexWriter = directoryManager.getIndexWriter(groupingKey, partitionId, indexAnalyzerSelector.provideIndexAnalyzer(""));
         @Nullable final LucenePrimaryKeySegmentIndex segmentIndex = directoryManager.getDirectory(groupingKey, partitionId).getPrimaryKeySegmentIndex();
-
+        final Map<Tuple, LucenePrimaryKeySegmentIndex.DocumentIndexEntry> documentIndexEntries;
         if (segmentIndex != null) {
             final DirectoryReader directoryReader = directoryManager.getDirectoryReader(groupingKey, partitionId);
-            final LucenePrimaryKeySegmentIndex.DocumentIndexEntry documentIndexEntry = segmentIndex.findDocument(directoryReader, primaryKey);
-            if (documentIndexEntry != null) {
-                state.context.ensureActive().clear(documentIndexEntry.entryKey); // TODO: Only if valid?
-                long valid = indexWriter.tryDeleteDocument(documentIndexEntry.indexReader, documentIndexEntry.docId);
-                if (valid > 0) {
-                    state.context.record(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_PRIMARY_KEY, System.nanoTime() - startTime);
-                    return 1;
+            documentIndexEntries = segmentIndex.findDocuments(directoryReader, primaryKeys);
+        } else {
+            documentIndexEntries = Map.of();
+        }
+
+        int countDeleted = 0;
+        for (Tuple primaryKey : primaryKeys) {
+            if (segmentIndex != null) {
+                final LucenePrimaryKeySegmentIndex.DocumentIndexEntry documentIndexEntry = documentIndexEntries.get(primaryKey);
+                if (documentIndexEntry != null) {
+                    state.context.ensureActive().clear(documentIndexEntry.entryKey); // TODO: Only if valid?
+                    long valid = indexWriter.tryDeleteDocument(documentIndexEntry.indexReader, documentIndexEntry.docId);
+                    if (valid > 0) {
+                        state.context.record(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_PRIMARY_KEY, System.nanoTime() - startTime);
+                        startTime = System.nanoTime();
+                        countDeleted++;
+                        continue;
+                    } else if (LOG.isDebugEnabled()) {
+                        LOG.debug(KeyValueLogMessage.of("try delete document failed",
+                                LuceneLogMessageKeys.GROUP, groupingKey,
+                                LuceneLogMessageKeys.INDEX_PARTITION, partitionId,
+                                LuceneLogMessageKeys.SEGMENT, documentIndexEntry.segmentName,
+                                LuceneLogMessageKeys.DOC_ID, documentIndexEntry.docId,
+                                LuceneLogMessageKeys.PRIMARY_KEY, primaryKey));
+                    }
                 } else if (LOG.isDebugEnabled()) {
-                    LOG.debug(KeyValueLogMessage.of("try delete document failed",
+                    LOG.debug(KeyValueLogMessage.of("primary key segment index entry not found",
                             LuceneLogMessageKeys.GROUP, groupingKey,
                             LuceneLogMessageKeys.INDEX_PARTITION, partitionId,
-                            LuceneLogMessageKeys.SEGMENT, documentIndexEntry.segmentName,
-                            LuceneLogMessageKeys.DOC_ID, documentIndexEntry.docId,
-                            LuceneLogMessageKeys.PRIMARY_KEY, primaryKey));
+                            LuceneLogMessageKeys.PRIMARY_KEY, primaryKey,
+                            LuceneLogMessageKeys.SEGMENTS, segmentIndex.findSegments(primaryKey)));
                 }
-            } else if (LOG.isDebugEnabled()) {
-                LOG.debug(KeyValueLogMessage.of("primary key segment index entry not found",
-                        LuceneLogMessageKeys.GROUP, groupingKey,
-                        LuceneLogMessageKeys.INDEX_PARTITION, partitionId,
-                        LuceneLogMessageKeys.PRIMARY_KEY, primaryKey,
-                        LuceneLogMessageKeys.SEGMENTS, segmentIndex.findSegments(primaryKey)));
             }
+            indexWriter.deleteDocuments(primaryKeyQuery(primaryKey));
+            LuceneEvents.Events event = state.store.isIndexWriteOnly(state.index) ?
+                                        LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY_IN_WRITE_ONLY_MODE :
+                                        LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY;
+            state.context.record(event, System.nanoTime() - startTime);
+            startTime = System.nanoTime();
         }
-        Query query;
+
+        // if we delete by query, we aren't certain whether the document was actually deleted (if, for instance, it wasn't in Lucene
+        // to begin with)
+        return countDeleted;
+    }
+
+    @Nonnull
+    private Query primaryKeyQuery(@Nonnull Tuple primaryKey) {
         // null format means don't use BinaryPoint for the index primary key
         if (keySerializer.hasFormat()) {
             try {
                 byte[][] binaryPoint = keySerializer.asFormattedBinaryPoint(primaryKey);
-                query = BinaryPoint.newRangeQuery(PRIMARY_KEY_BINARY_POINT_NAME, binaryPoint, binaryPoint);
+                return BinaryPoint.newRangeQuery(PRIMARY_KEY_BINARY_POINT_NAME, binaryPoint, binaryPoint);
             } catch (RecordCoreFormatException ex) {
                 // this can happen on format mismatch or encoding error
                 // fallback to the old way (less efficient)
-                query = SortedDocValuesField.newSlowExactQuery(PRIMARY_KEY_SEARCH_NAME, new BytesRef(keySerializer.asPackedByteArray(primaryKey)));
                 logSerializationError("Failed to delete using BinaryPoint encoded ID: {}", ex.getMessage());
             }
-        } else {
-            // fallback to the old way (less efficient)
-            query = SortedDocValuesField.newSlowExactQuery(PRIMARY_KEY_SEARCH_NAME, new BytesRef(keySerializer.asPackedByteArray(primaryKey)));
         }
-
-        indexWriter.deleteDocuments(query);
-        LuceneEvents.Events event = state.store.isIndexWriteOnly(state.index) ?
-                                    LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY_IN_WRITE_ONLY_MODE :
-                                    LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY;
-        state.context.record(event, System.nanoTime() - startTime);
-
-        // if we delete by query, we aren't certain whether the document was actually deleted (if, for instance, it wasn't in Lucene
-        // to begin with)
-        return 0;
+        // fallback to the old way (less efficient)
+        return SortedDocValuesField.newSlowExactQuery(PRIMARY_KEY_SEARCH_NAME, new BytesRef(keySerializer.asPackedByteArray(primaryKey)));
     }
 
     @Override
     public CompletableFuture<Void> mergeIndex() {
-        return rebalancePartitions()
+        return drainPendingWrites()
+                .thenCompose(ignored -> rebalancePartitions())
                 .thenCompose(ignored -> {
                     state.store.getIndexDeferredMaintenanceControl().setLastStep(IndexDeferredMaintenanceControl.LastStep.MERGE);
                     return directoryManager.mergeIndex(partitioner, indexAnalyzerSelector.provideIndexAnalyzer(""));
@@ -378,16 +430,194 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
 
     @Nonnull
     private static LucenePartitioner getPartitioner(final Index index, final FDBRecordStore store) {
+        return getLuceneIndexMaintainer(index, store).partitioner;
+    }
+
+    @Nonnull
+    static LuceneIndexMaintainer getLuceneIndexMaintainer(final Index index, final FDBRecordStore store) {
         final IndexMaintainer indexMaintainer = store.getIndexMaintainer(index);
         if (indexMaintainer instanceof LuceneIndexMaintainer) {
-            return ((LuceneIndexMaintainer)indexMaintainer).partitioner;
+            return (LuceneIndexMaintainer)indexMaintainer;
         } else {
-            throw new RecordCoreException("Index being repartitioned is no longer a lucene index")
+            throw new RecordCoreException("Index being maintained is no longer a lucene index")
                     .addLogInfo(LogMessageKeys.INDEX_NAME, index.getName(),
                             LogMessageKeys.INDEX_TYPE, index.getType());
         }
     }
 
+    /**
+     * Apply the writes in the {@link LucenePendingWriteQueue} of an index with the
+     * {@link LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED} option to its Lucene directories, in as many transactions
+     * of up to {@link LuceneRecordContextProperties#LUCENE_PENDING_WRITES_DRAIN_BATCH_SIZE} writes as needed to empty
+     * the queue.
+     * @return a future that completes when the queue has been emptied
+     */
+    @SuppressWarnings("PMD.CloseResource") // the runner is closed in a whenComplete on the future returned
+    public CompletableFuture<Void> drainPendingWrites() {
+        if (pendingWriteQueue == null) {
+            return AsyncUtil.DONE;
+        }
+        final int batchSize = Objects.requireNonNull(state.context.getPropertyStorage().getPropertyValue(LuceneRecordContextProperties.LUCENE_PENDING_WRITES_DRAIN_BATCH_SIZE));
+        final FDBRecordStore.Builder storeBuilder = state.store.asBuilder();
+        final Index index = state.index;
+        FDBDatabaseRunner runner = state.context.newRunner();
+        return AsyncUtil.whileTrue(
+                () -> runner.runAsync(
+                        context -> context.instrument(LuceneEvents.Events.LUCENE_DRAIN_PENDING_WRITES_TRANSACTION,
+                                storeBuilder.setContext(context).openAsync().thenCompose(store ->
+                                        getLuceneIndexMaintainer(index, store).drainPendingWrites(batchSize)
+                                                .thenApply(drained -> drained >= batchSize)))),
+                state.context.getExecutor())
+                .whenComplete((result, error) -> runner.close());
+    }
+
+    /**
+     * Apply the first writes in the {@link LucenePendingWriteQueue} to the Lucene directories in this transaction.
+     * @param limit the maximum number of writes to apply
+     * @return a future that completes to the number of writes applied
+     */
+    @Nonnull
+    @VisibleForTesting
+    public CompletableFuture<Integer> drainPendingWrites(int limit) {
+        final LucenePendingWriteQueue queue = pendingWriteQueue;
+        if (queue == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return queue.getFirstEntries(limit).thenCompose(entries ->
+                RecordCursor.fromList(executor, entries)
+                        .mapPipelined(entry -> state.store.loadRecordAsync(entry.getRight())
+                                .thenApply(rec -> Pair.of(entry, rec)), state.store.getPipelineSize(PipelineOperation.KEY_TO_RECORD))
+                        .forEach(entryAndRecord -> {
+                            final Tuple groupingKey = entryAndRecord.getLeft().getLeft();
+                            final Tuple primaryKey = entryAndRecord.getLeft().getRight();
+                            try {
+                                deleteDocument(groupingKey, null, primaryKey);
+                                final List<LuceneDocumentFromRecord.DocumentField> fields = getCurrentFields(entryAndRecord.getRight(), groupingKey);
+                                if (fields != null) {
+                                    writeDocument(fields, groupingKey, null, primaryKey);
+                                }
+                            } catch (IOException e) {
+                                throw LuceneExceptions.toRecordCoreException("Issue applying pending write", e, "record", primaryKey);
+                            }
+                            queue.remove(groupingKey, primaryKey);
+                        })
+                        .thenApply(ignored -> {
+                            increment(LuceneEvents.Counts.LUCENE_PENDING_WRITES_DRAINED, entries.size());
+                            return entries.size();
+                        }));
+    }
+
+    private void increment(@Nonnull StoreTimer.Count count, int amount) {
+        final FDBStoreTimer timer = state.context.getTimer();
+        if (timer != null) {
+            timer.increment(count, amount);
+        }
+    }
+
+    /**
+     * Get the fields of the document of a record in a group, if the record has one.
+     */
+    @Nullable
+    private List<LuceneDocumentFromRecord.DocumentField> getCurrentFields(@Nullable FDBRecord<Message> rec, @Nonnull Tuple groupingKey) {
+        if (rec == null || !state.store.getRecordMetaData().recordTypesForIndex(state.index).contains(rec.getRecordType())) {
+            return null;
+        }
+        return LuceneDocumentFromRecord.getRecordFields(state.index.getRootExpression(), rec).get(groupingKey);
+    }
+
+    /**
+     * Get whether updates of this index go through a {@link LucenePendingWriteQueue}, so that readers from
+     * {@link #getReaderWithPendingWrites} are built from the queue and should be opened once per cursor.
+     * @return {@code true} if the index has the {@link LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED} option
+     */
+    boolean hasPendingWriteQueue() {
+        return pendingWriteQueue != null;
+    }
+
+    /**
+     * Get a reader of the current documents of a group. If the index has writes pending for the group, the documents
+     * of those records in the Lucene directory are replaced by ones built from the records. Building the reader takes
+     * time proportional to the number of pending writes of the group, so callers should keep it for as long as they
+     * can, such as for all pages of a cursor.
+     * @param groupingKey the grouping key
+     * @param partitionId the partition id, if any
+     * @return a reader of the current documents of the group
+     * @throws IOException if the documents cannot be built or the stale ones cannot be found
+     */
+    @Nonnull
+    IndexReader getReaderWithPendingWrites(@Nullable Tuple groupingKey, @Nullable Integer partitionId) throws IOException {
+        if (pendingWriteQueue == null) {
+            return directoryManager.getIndexReader(groupingKey, partitionId);
+        }
+        final Tuple group = groupingKey == null ? TupleHelpers.EMPTY : groupingKey;
+        final List<Tuple> primaryKeys = state.context.asyncToSync(LuceneEvents.Waits.WAIT_LUCENE_READ_PENDING_WRITES,
+                pendingWriteQueue.getPendingPrimaryKeys(group));
+        if (primaryKeys.isEmpty()) {
+            return directoryManager.getIndexReader(groupingKey, partitionId);
+        }
+        final List<FDBStoredRecord<Message>> records = state.context.asyncToSync(LuceneEvents.Waits.WAIT_LUCENE_READ_PENDING_WRITES,
+                AsyncUtil.getAll(primaryKeys.stream().map(state.store::loadRecordAsync).collect(Collectors.toList())));
+        final List<Query> staleDocumentQueries = new ArrayList<>(primaryKeys.size());
+        final ByteBuffersDirectory pendingDirectory = new ByteBuffersDirectory();
+        IndexWriter pendingWriter = null;
+        String pendingWriterAnalyzerId = null;
+        try {
+            for (int i = 0; i < primaryKeys.size(); i++) {
+                // The document of a deleted record is stale too, so the query is needed even when there is no record.
+                staleDocumentQueries.add(primaryKeyQuery(primaryKeys.get(i)));
+                final List<LuceneDocumentFromRecord.DocumentField> fields = getCurrentFields(records.get(i), group);
+                if (fields == null) {
+                    continue;
+                }
+                // Like the directory's writer, use a new writer whenever the analyzer changes.
+                final LuceneAnalyzerWrapper analyzerWrapper = indexAnalyzerSelector.provideIndexAnalyzer(getTexts(fields));
+                if (pendingWriter == null || !analyzerWrapper.getUniqueIdentifier().equals(pendingWriterAnalyzerId)) {
+                    if (pendingWriter != null) {
+                        pendingWriter.close();
+                    }
+                    pendingWriter = new IndexWriter(pendingDirectory, new IndexWriterConfig(analyzerWrapper.getAnalyzer()));
+                    pendingWriterAnalyzerId = analyzerWrapper.getUniqueIdentifier();
+                }
+                pendingWriter.addDocument(buildDocument(fields, primaryKeys.get(i)));
+            }
+        } finally {
+            if (pendingWriter != null) {
+                pendingWriter.close();
+            }
+        }
+        increment(LuceneEvents.Counts.LUCENE_PENDING_WRITES_READ, primaryKeys.size());
+        DirectoryReader indexReader;
+        try {
+            indexReader = directoryManager.getIndexReader(groupingKey, partitionId);
+        } catch (IndexNotFoundException ex) {
+            // Nothing has been drained to the directory yet, so only the pending documents are current.
+            if (pendingWriterAnalyzerId == null) {
+                throw ex;
+            }
+            indexReader = null;
+        }
+        return LucenePendingWritesReader.open(indexReader, staleDocumentQueries,
+                pendingWriterAnalyzerId == null ? null : DirectoryReader.open(pendingDirectory));
+    }
+
+    /**
+     * Merge the segments of one Lucene directory of this index, as {@link #mergeIndex} does for each directory. This
+     * neither drains pending writes nor rebalances partitions.
+     * @param groupingKey the grouping key of the directory
+     * @param partitionId the partition id of the directory, if the index is partitioned
+     * @return a future that completes when the directory has been merged
+     */
+    @Nonnull
+    CompletableFuture<Void> mergeDirectory(@Nonnull Tuple groupingKey, @Nullable Integer partitionId) {
+        state.store.getIndexDeferredMaintenanceControl().setLastStep(IndexDeferredMaintenanceControl.LastStep.MERGE);
+        try {
+            directoryManager.mergeIndex(indexAnalyzerSelector.provideIndexAnalyzer(""), groupingKey, partitionId);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return AsyncUtil.DONE;
+    }
+
     @SuppressWarnings("PMD.CloseResource") // the runner is closed in a whenComplete on the future returned
     public CompletableFuture<Void> rebalancePartitions() {
         if (!partitioner.isPartitioningEnabled()) {
@@ -457,24 +687,54 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
                                                        @Nullable Integer destinationPartitionIdHint) {
         LOG.trace("update oldRecord={}, newRecord={}", oldRecord, newRecord);
 
-        // Extract information for grouping from old and new records
-        final KeyExpression root = state.index.getRootExpression();
-        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> oldRecordFields = LuceneDocumentFromRecord.getRecordFields(root, oldRecord);
-        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> newRecordFields = LuceneDocumentFromRecord.getRecordFields(root, newRecord);
+        final Pair<Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>, Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>> changedFields =
+                getChangedRecordFields(oldRecord, newRecord);
+        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> oldRecordFields = changedFields.getLeft();
+        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> newRecordFields = changedFields.getRight();
 
-        final Set<Tuple> unchanged = new HashSet<>();
-        for (Map.Entry<Tuple, List<LuceneDocumentFromRecord.DocumentField>> entry : oldRecordFields.entrySet()) {
-            if (entry.getValue().equals(newRecordFields.get(entry.getKey()))) {
-                unchanged.add(entry.getKey());
-            }
-        }
-        for (Tuple t : unchanged) {
-            newRecordFields.remove(t);
-            oldRecordFields.remove(t);
+        final FDBIndexableRecord<M> anyRecord = newRecord == null ? oldRecord : newRecord;
+        if (pendingWriteQueue != null && anyRecord != null && !(anyRecord instanceof FDBSyntheticRecord) &&
+                state.store.isIndexReadable(state.index) && (!oldRecordFields.isEmpty() || !newRecordFields.isEmpty())) {
+            return isPendingWriteQueueFull().thenCompose(full -> {
+                if (full) {
+                    return writeDocuments(oldRecord, newRecord, oldRecordFields, newRecordFields, destinationPartitionIdHint);
+                }
+                // Leave the documents to be rewritten in a batch, rather than flushing a small segment for this transaction.
+                final Tuple primaryKey = anyRecord.getPrimaryKey();
+                final Set<Tuple> changed = new HashSet<>(oldRecordFields.keySet());
+                changed.addAll(newRecordFields.keySet());
+                for (Tuple groupingKey : changed) {
+                    pendingWriteQueue.enqueue(groupingKey, primaryKey);
+                }
+                increment(LuceneEvents.Counts.LUCENE_PENDING_WRITES_QUEUED, changed.size());
+                state.store.getIndexDeferredMaintenanceControl().setMergeRequiredIndexes(state.index);
+                return AsyncUtil.DONE;
+            });
         }
+        return writeDocuments(oldRecord, newRecord, oldRecordFields, newRecordFields, destinationPartitionIdHint);
+    }
 
-        LOG.trace("update oldFields={}, newFields{}", oldRecordFields, newRecordFields);
+    /**
+     * Get whether the pending write queue has grown too large to add to. This is checked once per transaction.
+     */
+    @Nonnull
+    private synchronized CompletableFuture<Boolean> isPendingWriteQueueFull() {
+        if (pendingWriteQueueFull == null) {
+            final long maxBytes = Objects.requireNonNull(state.context.getPropertyStorage().getPropertyValue(LuceneRecordContextProperties.LUCENE_PENDING_WRITES_MAX_QUEUE_BYTES));
+            pendingWriteQueueFull = Objects.requireNonNull(pendingWriteQueue).isFull(maxBytes);
+        }
+        return pendingWriteQueueFull;
+    }
 
+    /**
+     * Delete the old documents of a record and write its new ones to the Lucene directories.
+     */
+    @Nonnull
+    private <M extends Message> CompletableFuture<Void> writeDocuments(@Nullable FDBIndexableRecord<M> oldRecord,
+                                                                       @Nullable FDBIndexableRecord<M> newRecord,
+                                                                       @Nonnull Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> oldRecordFields,
+                                                                       @Nonnull Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> newRecordFields,
+                                                                       @Nullable Integer destinationPartitionIdHint) {
         // delete old
         return AsyncUtil.whenAll(oldRecordFields.keySet().stream().map(t -> {
             try {
@@ -501,6 +761,161 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
                 }).collect(Collectors.toList())));
     }
 
+    /**
+     * Get the fields of the old and new records for each grouping key, leaving out grouping keys whose fields did
+     * not change.
+     */
+    @Nonnull
+    private <M extends Message> Pair<Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>, Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>> getChangedRecordFields(
+            @Nullable FDBIndexableRecord<M> oldRecord, @Nullable FDBIndexableRecord<M> newRecord) {
+        // Extract information for grouping from old and new records
+        final KeyExpression root = state.index.getRootExpression();
+        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> oldRecordFields = LuceneDocumentFromRecord.getRecordFields(root, oldRecord);
+        final Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>> newRecordFields = LuceneDocumentFromRecord.getRecordFields(root, newRecord);
+
+        final Set<Tuple> unchanged = new HashSet<>();
+        for (Map.Entry<Tuple, List<LuceneDocumentFromRecord.DocumentField>> entry : oldRecordFields.entrySet()) {
+            if (entry.getValue().equals(newRecordFields.get(entry.getKey()))) {
+                unchanged.add(entry.getKey());
+            }
+        }
+        for (Tuple t : unchanged) {
+            newRecordFields.remove(t);
+            oldRecordFields.remove(t);
+        }
+
+        LOG.trace("update oldFields={}, newFields{}", oldRecordFields, newRecordFields);
+        return Pair.of(oldRecordFields, newRecordFields);
+    }
+
+    /**
+     * Update the index for a batch of changed records. The old documents of all the records are deleted first,
+     * looking them up in the {@link LucenePrimaryKeySegmentIndex} together for each directory, and then the new
+     * documents are written. Falls back to updating each record in turn if writes are being queued or a record
+     * appears more than once.
+     * @param changes the old and new records for each changed record
+     * @param <M> type of message
+     * @return a future that is complete when all the index updates are done
+     */
+    @Nonnull
+    @Override
+    public <M extends Message> CompletableFuture<Void> updateAll(@Nonnull List<? extends Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>>> changes) {
+        if (changes.size() < 2 || pendingWriteQueue != null) {
+            return super.updateAll(changes);
+        }
+        final Set<Tuple> primaryKeys = new HashSet<>();
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            final FDBIndexableRecord<M> anyRecord = change.getRight() == null ? change.getLeft() : change.getRight();
+            if (anyRecord == null || !primaryKeys.add(anyRecord.getPrimaryKey())) {
+                return super.updateAll(changes);
+            }
+        }
+
+        final boolean writeOnly = state.store.isIndexWriteOnly(state.index);
+        final List<Pair<Tuple, FDBIndexableRecord<M>>> toDelete = new ArrayList<>();
+        final List<Pair<FDBIndexableRecord<M>, Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>>> toWrite = new ArrayList<>();
+        for (Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>> change : changes) {
+            final Pair<Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>, Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>> changedFields =
+                    getChangedRecordFields(change.getLeft(), change.getRight());
+            for (Tuple groupingKey : changedFields.getLeft().keySet()) {
+                toDelete.add(Pair.of(groupingKey, Objects.requireNonNull(change.getLeft())));
+            }
+            if (!changedFields.getRight().isEmpty()) {
+                final FDBIndexableRecord<M> newRecord = Objects.requireNonNull(change.getRight());
+                if (writeOnly) {
+                    for (Tuple groupingKey : changedFields.getRight().keySet()) {
+                        toDelete.add(Pair.of(groupingKey, newRecord));
+                    }
+                }
+                toWrite.add(Pair.of(newRecord, changedFields.getRight()));
+            }
+        }
+
+        return tryDeleteAll(toDelete).thenCompose(ignored -> {
+            CompletableFuture<Void> future = AsyncUtil.DONE;
+            for (Pair<FDBIndexableRecord<M>, Map<Tuple, List<LuceneDocumentFromRecord.DocumentField>>> write : toWrite) {
+                final FDBIndexableRecord<M> newRecord = write.getLeft();
+                for (Map.Entry<Tuple, List<LuceneDocumentFromRecord.DocumentField>> entry : write.getRight().entrySet()) {
+                    future = future.thenCompose(vignore ->
+                            partitioner.addToAndSavePartitionMetadata(newRecord, entry.getKey(), null).thenAccept(partitionId -> {
+                                try {
+                                    writeDocument(entry.getValue(), entry.getKey(), partitionId, newRecord.getPrimaryKey());
+                                } catch (IOException e) {
+                                    throw LuceneExceptions.toRecordCoreException("Issue updating new index keys", e, "newRecord", newRecord.getPrimaryKey());
+                                }
+                            }));
+                }
+            }
+            return future;
+        });
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> CompletableFuture<Void> updateAllWhileWriteOnly(@Nonnull List<? extends Pair<? extends FDBIndexableRecord<M>, ? extends FDBIndexableRecord<M>>> changes) {
+        // Lucene indexes are idempotent, so updating while write-only is the same as updating.
+        return updateAll(changes);
+    }
+
+    /**
+     * Delete the documents of several records, as {@link #tryDelete(FDBIndexableRecord, Tuple)} does for each, with one
+     * lookup of their documents per directory. A record can be given more than once, as when it is deleted both as
+     * the old record and ahead of writing the new one while write-only, but its document is only deleted and counted
+     * once in each directory.
+     * @param toDelete pairs of grouping key and record to delete
+     * @param <M> record message
+     * @return a future that completes when the documents have been deleted
+     */
+    @Nonnull
+    private <M extends Message> CompletableFuture<Void> tryDeleteAll(@Nonnull List<Pair<Tuple, FDBIndexableRecord<M>>> toDelete) {
+        if (toDelete.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        // non-partitioned
+        if (!partitioner.isPartitioningEnabled()) {
+            final Map<Tuple, Set<Tuple>> primaryKeysByGroup = new LinkedHashMap<>();
+            for (Pair<Tuple, FDBIndexableRecord<M>> delete : toDelete) {
+                primaryKeysByGroup.computeIfAbsent(delete.getLeft(), k -> new LinkedHashSet<>()).add(delete.getRight().getPrimaryKey());
+            }
+            for (Map.Entry<Tuple, Set<Tuple>> entry : primaryKeysByGroup.entrySet()) {
+                try {
+                    deleteDocuments(entry.getKey(), null, entry.getValue());
+                } catch (IOException e) {
+                    throw LuceneExceptions.toRecordCoreException("Issue deleting", e, "group", entry.getKey());
+                }
+            }
+            return AsyncUtil.DONE;
+        }
+
+        // partitioned
+        return AsyncUtil.getAll(toDelete.stream()
+                        .map(delete -> partitioner.tryGetPartitionInfo(delete.getRight(), delete.getLeft()))
+                        .collect(Collectors.toList()))
+                .thenAccept(partitionInfos -> {
+                    final Map<Pair<Tuple, Integer>, Pair<LucenePartitionInfoProto.LucenePartitionInfo, Set<Tuple>>> primaryKeysByPartition = new LinkedHashMap<>();
+                    for (int i = 0; i < toDelete.size(); i++) {
+                        final LucenePartitionInfoProto.LucenePartitionInfo partitionInfo = partitionInfos.get(i);
+                        if (partitionInfo != null) {
+                            final Tuple groupingKey = toDelete.get(i).getLeft();
+                            primaryKeysByPartition.computeIfAbsent(Pair.of(groupingKey, partitionInfo.getId()), k -> Pair.of(partitionInfo, new LinkedHashSet<>()))
+                                    .getRight().add(toDelete.get(i).getRight().getPrimaryKey());
+                        }
+                    }
+                    for (Map.Entry<Pair<Tuple, Integer>, Pair<LucenePartitionInfoProto.LucenePartitionInfo, Set<Tuple>>> entry : primaryKeysByPartition.entrySet()) {
+                        final Tuple groupingKey = entry.getKey().getLeft();
+                        final LucenePartitionInfoProto.LucenePartitionInfo partitionInfo = entry.getValue().getLeft();
+                        try {
+                            int countDeleted = deleteDocuments(groupingKey, partitionInfo.getId(), entry.getValue().getRight());
+                            if (countDeleted > 0) {
+                                partitioner.decrementCountAndSave(groupingKey, partitionInfo, countDeleted);
+                            }
+                        } catch (IOException e) {
+                            throw LuceneExceptions.toRecordCoreException("Issue deleting", e, "group", groupingKey);
+                        }
+                    }
+                });
+    }
+
     /**
      * convenience wrapper that calls {@link #tryDelete(FDBIndexableRecord, Tuple)} only if the index is in
      * {@code WriteOnly} mode.
@@ -652,6 +1067,9 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
     public CompletableFuture<Void> deleteWhere(Transaction tr, @Nonnull Tuple prefix) {
         LOG.trace("deleteWhere transaction={}, prefix={}", tr, prefix);
         directoryManager.invalidatePrefix(prefix);
+        if (pendingWriteQueue != null) {
+            pendingWriteQueue.clear(prefix);
+        }
         return super.deleteWhere(tr, prefix);
     }
 
@@ -709,17 +1127,28 @@ public class LuceneIndexMaintainer extends StandardIndexMaintainer {
     }
 
 
-    @SuppressWarnings("PMD.CloseResource") // the indexReader and directory are closed by the directoryManager
+    /**
+     * Get information about one Lucene directory. This describes the directory as it is, so documents of writes that
+     * are still in the {@link LucenePendingWriteQueue} are not counted until it has been drained.
+     */
+    @SuppressWarnings("PMD.CloseResource") // the directory is closed by the directoryManager
     private CompletableFuture<LuceneMetadataInfo.LuceneInfo> getLuceneInfo(final Tuple groupingKey, final Integer partitionId) {
         try {
-            final IndexReader indexReader = directoryManager.getIndexReader(groupingKey, partitionId);
+            final int numDocs;
+            // the reader may be shared with other transactions, which only lets it go once closed
+            try (IndexReader indexReader = directoryManager.getIndexReader(groupingKey, partitionId)) {
+                numDocs = indexReader.numDocs();
+            }
             final FDBDirectory directory = getDirectory(groupingKey, partitionId);
             final CompletableFuture<Integer> fieldInfosFuture = directory.getFieldInfosCount();
+            final CompletableFuture<Long> totalFileSizeFuture = directory.getTotalFileSizeAsync();
             return directory.listAllAsync()
-                    .thenCombine(fieldInfosFuture, (fileList, fieldInfosCount) ->
+                    .thenCombine(fieldInfosFuture, Pair::of)
+                    .thenCombine(totalFileSizeFuture, (fileListAndFieldInfosCount, totalFileSize) ->
                             new LuceneMetadataInfo.LuceneInfo(
-                                    indexReader.numDocs(),
-                                    fileList, fieldInfosCount));
+                                    numDocs,
+                                    fileListAndFieldInfosCount.getLeft(), fileListAndFieldInfosCount.getRight(),
+                                    totalFileSize));
         } catch (IOException e) {
             return CompletableFuture.failedFuture(e);
         }
@@ -112,6 +112,21 @@ public class LuceneIndexOptions {
      * </p>
      */
     public static final String PRIMARY_KEY_SEGMENT_INDEX_V2_ENABLED = "primaryKeySegmentIndexV2Enabled";
+    /**
+     * Whether updates only record which documents are stale in a {@link LucenePendingWriteQueue}, so that the documents
+     * are written in large batches by {@link LuceneIndexMaintainer#mergeIndex} rather than as a new segment by every
+     * transaction. Queries replace the stale documents by ones built from the current records. Synthetic records are
+     * still written directly, as are all updates while the queue is larger than
+     * {@link LuceneRecordContextProperties#LUCENE_PENDING_WRITES_MAX_QUEUE_BYTES}. Index metadata from
+     * {@link LuceneGetMetadataInfo} describes the directories only.
+     * <p>
+     * Boolean string ({@code true} or {@code false}).
+     * </p>
+     * <p>
+     * This is incompatible with {@link #INDEX_PARTITION_BY_FIELD_NAME}.
+     * </p>
+     */
+    public static final String PENDING_WRITES_QUEUE_ENABLED = "pendingWritesQueueEnabled";
 
     private LuceneIndexOptions() {
     }
@@ -60,6 +60,7 @@ public class LuceneIndexValidator extends IndexValidator {
         validateAnalyzerNamePerFieldOption(LuceneIndexOptions.AUTO_COMPLETE_ANALYZER_NAME_PER_FIELD_OPTION, index);
         validatePartitionOptions(index);
         validatePrimaryKeyOptions(index.getOptions());
+        validatePendingWritesQueueOptions(index.getOptions());
     }
 
     private static void validatePartitionOptions(@Nonnull Index index) {
@@ -109,6 +110,15 @@ public class LuceneIndexValidator extends IndexValidator {
         }
     }
 
+    private static void validatePendingWritesQueueOptions(final Map<String, String> options) {
+        if (Boolean.parseBoolean(options.get(LuceneIndexOptions.PENDING_WRITES_QUEUE_ENABLED)) &&
+                options.get(LuceneIndexOptions.INDEX_PARTITION_BY_FIELD_NAME) != null) {
+            throw new MetaDataException(
+                    "Index cannot enable both " + LuceneIndexOptions.PENDING_WRITES_QUEUE_ENABLED + " and "
+                            + LuceneIndexOptions.INDEX_PARTITION_BY_FIELD_NAME);
+        }
+    }
+
     private static void validateAnalyzerNamePerFieldOption(@Nonnull String optionKey, @Nonnull Index index) {
         String analyzerNamePerFieldOption = index.getOption(optionKey);
         if (analyzerNamePerFieldOption != null) {
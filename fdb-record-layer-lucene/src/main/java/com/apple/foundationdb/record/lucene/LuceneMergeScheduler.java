@@ -0,0 +1,548 @@
+/*
+ * LuceneMergeScheduler.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.MoreAsyncUtil;
+import com.apple.foundationdb.record.logging.KeyValueLogMessage;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseRunner;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A service that merges the Lucene directories of many indexes and record stores in the background, within global limits.
+ *
+ * <p>
+ * Instead of merging every directory of an index through {@link LuceneIndexMaintainer#mergeIndex}, callers report
+ * groups whose directories may need merging with {@link #addGroup}. Their merge debt, which is the number of segments
+ * and their total size from {@link LuceneGetMetadataInfo}, is read, and each directory with at least
+ * {@link Builder#setMinimumSegmentCount minimum segment count} segments is queued. Queued directories are merged one
+ * per transaction, the directories with the most segments first, with at most
+ * {@link Builder#setMaximumConcurrentMerges maximum concurrent merges} running at once. If a
+ * {@link Builder#setMaximumBytesPerSecond maximum rate} is set, each merge is charged the size of its directory and
+ * waits until the rate allows it.
+ * </p>
+ *
+ * <p>
+ * The {@link Builder#setTimer timer} of the scheduler counts the directories queued
+ * ({@link LuceneEvents.Counts#LUCENE_SCHEDULED_MERGES_QUEUED}) and the merges deferred by the rate
+ * ({@link LuceneEvents.Counts#LUCENE_SCHEDULED_MERGES_THROTTLED}), and samples the queue depth whenever a directory is
+ * queued or started ({@link LuceneEvents.SizeEvents#LUCENE_SCHEDULED_MERGE_QUEUE_DEPTH}).
+ * </p>
+ *
+ * <p>
+ * Merged directories are not queued again until they are reported again. Scheduled merges neither drain the
+ * {@link LucenePendingWriteQueue} nor rebalance partitions, which still need {@link LuceneIndexMaintainer#mergeIndex}.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class LuceneMergeScheduler implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneMergeScheduler.class);
+
+    @Nonnull
+    private final FDBDatabaseRunner runner;
+    private final int maximumConcurrentMerges;
+    private final long maximumBytesPerSecond;
+    private final int minimumSegmentCount;
+    @Nonnull
+    private final LongSupplier nanoTime;
+
+    // The most fragmented directory first, then the smallest.
+    @GuardedBy("this")
+    @Nonnull
+    private final PriorityQueue<QueuedDirectory> queue = new PriorityQueue<>(
+            Comparator.comparingInt((QueuedDirectory directory) -> directory.segmentCount).reversed()
+                    .thenComparingLong(directory -> directory.totalFileSize));
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<DirectoryKey, QueuedDirectory> queued = new HashMap<>();
+    @GuardedBy("this")
+    private int running;
+    @GuardedBy("this")
+    private double availableBytes;
+    @GuardedBy("this")
+    private long availableBytesNanos;
+    @GuardedBy("this")
+    private boolean waitingForBudget;
+    @GuardedBy("this")
+    private boolean closed;
+    // Completed when the queue is empty and the last running merge finishes.
+    @GuardedBy("this")
+    @Nullable
+    private CompletableFuture<Void> idle;
+    @Nonnull
+    private final Stats stats = new Stats();
+
+    protected LuceneMergeScheduler(@Nonnull Builder builder) {
+        this.runner = builder.database.newRunner(builder.timer, null);
+        this.maximumConcurrentMerges = builder.maximumConcurrentMerges;
+        this.maximumBytesPerSecond = builder.maximumBytesPerSecond;
+        this.minimumSegmentCount = builder.minimumSegmentCount;
+        this.nanoTime = builder.nanoTime;
+        this.availableBytes = maximumBytesPerSecond;
+        this.availableBytesNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Read the merge debt of the directories of one group of a Lucene index and queue those that need merging.
+     * A directory that is already queued has its debt updated.
+     * @param storeBuilder a builder for the record store containing the index, whose context is replaced
+     * @param index the Lucene index
+     * @param groupingKey the grouping key, or an empty {@code Tuple} if the index is not grouped
+     * @return a future that completes when the directories have been queued
+     */
+    @Nonnull
+    public CompletableFuture<Void> addGroup(@Nonnull FDBRecordStore.Builder storeBuilder, @Nonnull Index index,
+                                            @Nonnull Tuple groupingKey) {
+        final FDBRecordStore.Builder builder = storeBuilder.copyBuilder();
+        return runner.runAsync(context -> builder.copyBuilder().setContext(context).openAsync().thenCompose(store ->
+                store.performIndexOperationAsync(index.getName(), new LuceneGetMetadataInfo(groupingKey, null, false))
+                        .thenApply(result -> {
+                            final LuceneMetadataInfo metadataInfo = (LuceneMetadataInfo)result;
+                            final boolean partitioned = !metadataInfo.getPartitionInfo().isEmpty();
+                            final byte[] indexSubspaceKey = store.indexSubspace(index).pack();
+                            final List<QueuedDirectory> directories = new ArrayList<>();
+                            for (Map.Entry<Integer, LuceneMetadataInfo.LuceneInfo> entry : metadataInfo.getLuceneInfo().entrySet()) {
+                                final LuceneMetadataInfo.LuceneInfo info = entry.getValue();
+                                if (info.getSegmentCount() >= minimumSegmentCount) {
+                                    final Integer partitionId = partitioned ? entry.getKey() : null;
+                                    directories.add(new QueuedDirectory(new DirectoryKey(indexSubspaceKey, groupingKey, partitionId),
+                                            builder, index, info.getSegmentCount(), info.getTotalFileSize()));
+                                }
+                            }
+                            return directories;
+                        })))
+                .thenAccept(this::queueDirectories);
+    }
+
+    @VisibleForTesting
+    void queueDirectory(@Nonnull FDBRecordStore.Builder storeBuilder, @Nonnull Index index, @Nonnull Tuple groupingKey,
+                        @Nullable Integer partitionId, int segmentCount, long totalFileSize) {
+        queueDirectories(List.of(new QueuedDirectory(new DirectoryKey(new byte[0], groupingKey, partitionId),
+                storeBuilder, index, segmentCount, totalFileSize)));
+    }
+
+    private void queueDirectories(@Nonnull List<QueuedDirectory> directories) {
+        final int queueDepth;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (QueuedDirectory directory : directories) {
+                final QueuedDirectory existing = queued.put(directory.key, directory);
+                if (existing != null) {
+                    queue.remove(existing);
+                }
+                queue.add(directory);
+            }
+            queueDepth = queue.size();
+        }
+        final FDBStoreTimer timer = runner.getTimer();
+        if (timer != null && !directories.isEmpty()) {
+            timer.increment(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_QUEUED, directories.size());
+            timer.recordSize(LuceneEvents.SizeEvents.LUCENE_SCHEDULED_MERGE_QUEUE_DEPTH, queueDepth);
+        }
+        startMerges();
+    }
+
+    /**
+     * Get the number of directories waiting to be merged.
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of merges currently running.
+     * @return the number of running merges
+     */
+    public synchronized int getRunningMerges() {
+        return running;
+    }
+
+    /**
+     * Get a future that completes once no directories are queued and no merges are running, including any merges
+     * that are waiting for the rate to allow them.
+     * @return a future that completes when the scheduler is idle
+     */
+    @Nonnull
+    public synchronized CompletableFuture<Void> whenIdle() {
+        if (queue.isEmpty() && running == 0) {
+            return AsyncUtil.DONE;
+        }
+        if (idle == null) {
+            idle = new CompletableFuture<>();
+        }
+        return idle;
+    }
+
+    /**
+     * Get the counts of merges done by this scheduler and the bytes they covered.
+     * @return the merge statistics
+     */
+    @Nonnull
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Stop starting merges and drop the queue. This waits for merges that are running to finish before closing the
+     * runner, so that they are committed. Groups still being read by {@link #addGroup} are abandoned.
+     */
+    @Override
+    public void close() {
+        final CompletableFuture<Void> finished;
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            queued.clear();
+            finished = whenIdle();
+        }
+        try {
+            runner.asyncToSync(LuceneEvents.Waits.WAIT_LUCENE_SCHEDULED_MERGES, finished);
+        } finally {
+            runner.close();
+        }
+    }
+
+    private void startMerges() {
+        final List<QueuedDirectory> toStart = new ArrayList<>();
+        long waitMillis = 0;
+        boolean throttled = false;
+        final int queueDepth;
+        synchronized (this) {
+            while (!closed && running < maximumConcurrentMerges && !queue.isEmpty()) {
+                final QueuedDirectory next = Objects.requireNonNull(queue.peek());
+                final long budgetWaitMillis = takeBudget(next.totalFileSize);
+                if (budgetWaitMillis > 0) {
+                    throttled = true;
+                    if (!waitingForBudget) {
+                        waitingForBudget = true;
+                        waitMillis = budgetWaitMillis;
+                    }
+                    break;
+                }
+                queue.poll();
+                queued.remove(next.key);
+                running++;
+                toStart.add(next);
+            }
+            queueDepth = queue.size();
+        }
+        final FDBStoreTimer timer = runner.getTimer();
+        if (timer != null) {
+            if (throttled) {
+                timer.increment(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_THROTTLED);
+            }
+            if (!toStart.isEmpty()) {
+                timer.recordSize(LuceneEvents.SizeEvents.LUCENE_SCHEDULED_MERGE_QUEUE_DEPTH, queueDepth);
+            }
+        }
+        if (waitMillis > 0) {
+            MoreAsyncUtil.delayedFuture(waitMillis, TimeUnit.MILLISECONDS).thenRun(() -> {
+                synchronized (this) {
+                    waitingForBudget = false;
+                }
+                startMerges();
+            });
+        }
+        toStart.forEach(this::merge);
+    }
+
+    /**
+     * Charge a merge to the rate budget, which refills continuously and holds at most one second's worth of bytes.
+     * A merge larger than that can start once the budget is full, leaving it negative.
+     * @return {@code 0} if the merge was charged, or else how many milliseconds until it can be
+     */
+    @GuardedBy("this")
+    private long takeBudget(long bytes) {
+        if (maximumBytesPerSecond <= 0) {
+            return 0;
+        }
+        final long now = nanoTime.getAsLong();
+        availableBytes = Math.min(maximumBytesPerSecond,
+                availableBytes + (now - availableBytesNanos) * (double)maximumBytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        availableBytesNanos = now;
+        final double needed = Math.min(bytes, maximumBytesPerSecond);
+        if (availableBytes >= needed) {
+            availableBytes -= bytes;
+            return 0;
+        }
+        return Math.max(1L, (long)Math.ceil((needed - availableBytes) * 1000 / maximumBytesPerSecond));
+    }
+
+    private void merge(@Nonnull QueuedDirectory directory) {
+        final long startTime = nanoTime.getAsLong();
+        runMerge(directory.storeBuilder, directory.index, directory.key.groupingKey, directory.key.partitionId)
+                .whenComplete((ignore, err) -> {
+                    if (err == null) {
+                        stats.merges.increment();
+                        stats.bytes.add(directory.totalFileSize);
+                        stats.nanos.add(nanoTime.getAsLong() - startTime);
+                    } else {
+                        stats.failures.increment();
+                        if (LOGGER.isWarnEnabled()) {
+                            LOGGER.warn(KeyValueLogMessage.of("Lucene scheduled merge failed",
+                                    LogMessageKeys.INDEX_NAME, directory.index.getName(),
+                                    LuceneLogMessageKeys.GROUP, directory.key.groupingKey,
+                                    LuceneLogMessageKeys.INDEX_PARTITION, directory.key.partitionId), err);
+                        }
+                    }
+                    synchronized (this) {
+                        running--;
+                    }
+                    startMerges();
+                    final CompletableFuture<Void> finished;
+                    synchronized (this) {
+                        finished = queue.isEmpty() && running == 0 ? idle : null;
+                        if (finished != null) {
+                            idle = null;
+                        }
+                    }
+                    if (finished != null) {
+                        finished.complete(null);
+                    }
+                });
+    }
+
+    @VisibleForTesting
+    @Nonnull
+    CompletableFuture<Void> runMerge(@Nonnull FDBRecordStore.Builder storeBuilder, @Nonnull Index index,
+                                     @Nonnull Tuple groupingKey, @Nullable Integer partitionId) {
+        return runner.runAsync(context -> context.instrument(LuceneEvents.Events.LUCENE_SCHEDULED_MERGE,
+                storeBuilder.copyBuilder().setContext(context).openAsync().thenCompose(store ->
+                        LuceneIndexMaintainer.getLuceneIndexMaintainer(index, store)
+                                .mergeDirectory(groupingKey, partitionId))));
+    }
+
+    /**
+     * Create a new builder for a scheduler.
+     * @param database the database in which to run merge transactions
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder newBuilder(@Nonnull FDBDatabase database) {
+        return new Builder(database);
+    }
+
+    /**
+     * Counts of the merges done by a {@link LuceneMergeScheduler}.
+     */
+    public static class Stats {
+        private final LongAdder merges = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * Get the number of directories merged.
+         * @return the number of successful merges
+         */
+        public long getMergeCount() {
+            return merges.sum();
+        }
+
+        /**
+         * Get the number of merges that failed.
+         * @return the number of failed merges
+         */
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        /**
+         * Get the total size of the directories merged, as of when they were queued.
+         * @return the number of bytes merged
+         */
+        public long getBytesMerged() {
+            return bytes.sum();
+        }
+
+        /**
+         * Get the total time spent in successful merges, which run concurrently.
+         * @return the number of nanoseconds spent merging
+         */
+        public long getMergeNanos() {
+            return nanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{merges=" + getMergeCount() + ", failures=" + getFailureCount() +
+                   ", bytes=" + getBytesMerged() + ", nanos=" + getMergeNanos() + "}";
+        }
+    }
+
+    /**
+     * Builder for {@link LuceneMergeScheduler}.
+     */
+    public static class Builder {
+        @Nonnull
+        private final FDBDatabase database;
+        @Nullable
+        private FDBStoreTimer timer;
+        private int maximumConcurrentMerges = 1;
+        private long maximumBytesPerSecond = 0;
+        private int minimumSegmentCount = 2;
+        @Nonnull
+        private LongSupplier nanoTime = System::nanoTime;
+
+        protected Builder(@Nonnull FDBDatabase database) {
+            this.database = database;
+        }
+
+        /**
+         * Set the timer for the transactions of the scheduler.
+         * @param timer the timer to use
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setTimer(@Nullable FDBStoreTimer timer) {
+            this.timer = timer;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of directories merged at the same time, over all indexes and record stores.
+         * @param maximumConcurrentMerges the size of the pool of merges
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaximumConcurrentMerges(int maximumConcurrentMerges) {
+            this.maximumConcurrentMerges = maximumConcurrentMerges;
+            return this;
+        }
+
+        /**
+         * Set the maximum rate at which directories are merged, measured by the size of each directory when queued.
+         * @param maximumBytesPerSecond the maximum merge rate, or {@code 0} for no limit
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMaximumBytesPerSecond(long maximumBytesPerSecond) {
+            this.maximumBytesPerSecond = maximumBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Set the number of segments at which a directory needs merging.
+         * @param minimumSegmentCount the minimum number of segments of a queued directory
+         * @return this builder
+         */
+        @Nonnull
+        public Builder setMinimumSegmentCount(int minimumSegmentCount) {
+            this.minimumSegmentCount = minimumSegmentCount;
+            return this;
+        }
+
+        @VisibleForTesting
+        @Nonnull
+        Builder setNanoTime(@Nonnull LongSupplier nanoTime) {
+            this.nanoTime = nanoTime;
+            return this;
+        }
+
+        @Nonnull
+        public LuceneMergeScheduler build() {
+            return new LuceneMergeScheduler(this);
+        }
+    }
+
+    private static final class DirectoryKey {
+        @Nonnull
+        private final byte[] indexSubspaceKey;
+        @Nonnull
+        private final Tuple groupingKey;
+        @Nullable
+        private final Integer partitionId;
+
+        private DirectoryKey(@Nonnull byte[] indexSubspaceKey, @Nonnull Tuple groupingKey, @Nullable Integer partitionId) {
+            this.indexSubspaceKey = indexSubspaceKey;
+            this.groupingKey = groupingKey;
+            this.partitionId = partitionId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final DirectoryKey that = (DirectoryKey)o;
+            return Arrays.equals(indexSubspaceKey, that.indexSubspaceKey) && groupingKey.equals(that.groupingKey) &&
+                   Objects.equals(partitionId, that.partitionId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(Arrays.hashCode(indexSubspaceKey), groupingKey, partitionId);
+        }
+    }
+
+    private static final class QueuedDirectory {
+        @Nonnull
+        private final DirectoryKey key;
+        @Nonnull
+        private final FDBRecordStore.Builder storeBuilder;
+        @Nonnull
+        private final Index index;
+        private final int segmentCount;
+        private final long totalFileSize;
+
+        private QueuedDirectory(@Nonnull DirectoryKey key, @Nonnull FDBRecordStore.Builder storeBuilder, @Nonnull Index index,
+                                int segmentCount, long totalFileSize) {
+            this.key = key;
+            this.storeBuilder = storeBuilder;
+            this.index = index;
+            this.segmentCount = segmentCount;
+            this.totalFileSize = totalFileSize;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.lucene;
 
 import com.apple.foundationdb.record.provider.foundationdb.IndexOperationResult;
+import org.apache.lucene.index.IndexFileNames;
 
 import javax.annotation.Nonnull;
 import java.util.Collection;
@@ -64,11 +65,18 @@ public class LuceneMetadataInfo extends IndexOperationResult {
         private final int documentCount;
         private final Collection<String> files;
         private final int fieldInfoCount;
+        private final long totalFileSize;
 
         public LuceneInfo(final int documentCount, final Collection<String> files, final int fieldInfoCount) {
+            this(documentCount, files, fieldInfoCount, 0L);
+        }
+
+        public LuceneInfo(final int documentCount, final Collection<String> files, final int fieldInfoCount,
+                          final long totalFileSize) {
             this.documentCount = documentCount;
             this.files = files;
             this.fieldInfoCount = fieldInfoCount;
+            this.totalFileSize = totalFileSize;
         }
 
         /**
@@ -96,6 +104,26 @@ public class LuceneMetadataInfo extends IndexOperationResult {
             return fieldInfoCount;
         }
 
+        /**
+         * The total length of the files in the directory.
+         * @return the sum of the file lengths, or {@code 0} if not known
+         */
+        public long getTotalFileSize() {
+            return totalFileSize;
+        }
+
+        /**
+         * The number of segments with files in the directory.
+         * @return the number of distinct segment names in the file listing
+         */
+        public int getSegmentCount() {
+            return (int)files.stream()
+                    .filter(name -> name.startsWith("_"))
+                    .map(IndexFileNames::parseSegmentName)
+                    .distinct()
+                    .count();
+        }
+
         @Override
         public boolean equals(final Object o) {
             if (this == o) {
@@ -105,12 +133,13 @@ public class LuceneMetadataInfo extends IndexOperationResult {
                 return false;
             }
             final LuceneInfo that = (LuceneInfo)o;
-            return documentCount == that.documentCount && fieldInfoCount == that.fieldInfoCount && Objects.equals(files, that.files);
+            return documentCount == that.documentCount && fieldInfoCount == that.fieldInfoCount &&
+                    totalFileSize == that.totalFileSize && Objects.equals(files, that.files);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(documentCount, files, fieldInfoCount);
+            return Objects.hash(documentCount, files, fieldInfoCount, totalFileSize);
         }
     }
 }
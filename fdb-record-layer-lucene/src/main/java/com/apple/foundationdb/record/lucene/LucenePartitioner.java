@@ -1056,13 +1056,12 @@ public class LucenePartitioner {
                 // shortcut delete docs from current partition
                 // (we do this, instead of calling LuceneIndexMaintainer.update() in order to avoid a chicken-and-egg
                 // situation with the partition metadata keys.
-                records.forEach(r -> {
-                    try {
-                        indexMaintainer.deleteDocument(groupingKey, partitionInfo.getId(), r.getPrimaryKey());
-                    } catch (IOException e) {
-                        throw new RecordCoreException(e);
-                    }
-                });
+                try {
+                    indexMaintainer.deleteDocuments(groupingKey, partitionInfo.getId(),
+                            records.stream().map(FDBIndexableRecord::getPrimaryKey).collect(Collectors.toList()));
+                } catch (IOException e) {
+                    throw new RecordCoreException(e);
+                }
                 timings.deleteNanos = System.nanoTime();
                 // update source partition's meta
                 LucenePartitionInfoProto.LucenePartitionInfo.Builder builder = partitionInfo.toBuilder()
@@ -0,0 +1,164 @@
+/*
+ * LucenePendingWriteQueue.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.record.util.pair.NonnullPair;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The records whose documents have not yet been written to a Lucene index with the
+ * {@link LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED} option.
+ *
+ * <p>
+ * Instead of adding and deleting documents through an {@code IndexWriter}, which flushes a new segment for every
+ * transaction, an update of a readable index only sets one key per changed grouping key in the index's secondary
+ * subspace, whose key is the grouping key followed by the record's primary key. Several updates of the same record
+ * therefore leave one entry, and updates never read the queue, so they do not conflict with each other or with the
+ * drainer.
+ * </p>
+ *
+ * <p>
+ * An entry only says that the document of a record in a group may be stale: the drainer deletes it from the Lucene
+ * directory and adds one for the current version of the record, if any, removing the entry in the same transaction.
+ * Since the drainer reads the entry and the record, a concurrent update of the same record makes it retry.
+ * Queries of a group with pending entries replace the documents of those records by ones built from the current
+ * records.
+ * </p>
+ *
+ * <p>
+ * Once the estimated size of the queue reaches
+ * {@link LuceneRecordContextProperties#LUCENE_PENDING_WRITES_MAX_QUEUE_BYTES}, updates write their documents directly
+ * again until the queue has been drained, which bounds the work of building those documents for queries.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+public class LucenePendingWriteQueue {
+    private static final int PENDING_WRITES_KEY = 0;
+
+    @Nonnull
+    private final IndexMaintainerState state;
+    @Nonnull
+    private final Subspace queueSubspace;
+    private final int groupingCount;
+
+    public LucenePendingWriteQueue(@Nonnull IndexMaintainerState state) {
+        this.state = state;
+        this.queueSubspace = state.store.indexSecondarySubspace(state.index).subspace(Tuple.from(PENDING_WRITES_KEY));
+        final KeyExpression rootExpression = state.index.getRootExpression();
+        this.groupingCount = rootExpression instanceof GroupingKeyExpression ? ((GroupingKeyExpression)rootExpression).getGroupingCount() : 0;
+    }
+
+    /**
+     * Get whether updates of an index go through a pending write queue.
+     * @param index the index
+     * @return {@code true} if the index has the {@link LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED} option
+     */
+    public static boolean isEnabled(@Nonnull Index index) {
+        return index.getBooleanOption(LuceneIndexOptions.PENDING_WRITES_QUEUE_ENABLED, false);
+    }
+
+    /**
+     * Record that the document of a record in a group needs to be rewritten.
+     * @param groupingKey the grouping key
+     * @param primaryKey the primary key of the record
+     */
+    public void enqueue(@Nonnull Tuple groupingKey, @Nonnull Tuple primaryKey) {
+        state.transaction.set(queueSubspace.pack(groupingKey.addAll(primaryKey)), TupleHelpers.EMPTY.pack());
+    }
+
+    /**
+     * Remove an entry once the document of the record has been rewritten.
+     * @param groupingKey the grouping key
+     * @param primaryKey the primary key of the record
+     */
+    public void remove(@Nonnull Tuple groupingKey, @Nonnull Tuple primaryKey) {
+        state.transaction.clear(queueSubspace.pack(groupingKey.addAll(primaryKey)));
+    }
+
+    /**
+     * Remove the entries of all groups beginning with a given prefix.
+     * @param prefix the prefix of the grouping keys
+     */
+    public void clear(@Nonnull Tuple prefix) {
+        state.transaction.clear(queueSubspace.range(prefix));
+    }
+
+    /**
+     * Get the primary keys of the records of one group that have pending writes.
+     * @param groupingKey the grouping key
+     * @return a future that completes to the primary keys in order
+     */
+    @Nonnull
+    public CompletableFuture<List<Tuple>> getPendingPrimaryKeys(@Nonnull Tuple groupingKey) {
+        // A snapshot read, so that queries do not conflict with updates that queue more writes.
+        return state.context.readTransaction(true).getRange(queueSubspace.range(groupingKey)).asList().thenApply(keyValues -> {
+            final List<Tuple> primaryKeys = new ArrayList<>(keyValues.size());
+            for (KeyValue keyValue : keyValues) {
+                final Tuple key = queueSubspace.unpack(keyValue.getKey());
+                primaryKeys.add(TupleHelpers.subTuple(key, groupingCount, key.size()));
+            }
+            return primaryKeys;
+        });
+    }
+
+    /**
+     * Get whether the queue has reached a given size, as estimated by the database. This does not read the queue, so
+     * it does not conflict with updates or the drainer either.
+     * @param maxBytes the size in bytes at which the queue is full
+     * @return a future that completes to {@code true} if the estimated size of the queue is at least {@code maxBytes}
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> isFull(long maxBytes) {
+        return state.context.readTransaction(true).getEstimatedRangeSizeBytes(queueSubspace.range())
+                .thenApply(size -> size >= maxBytes);
+    }
+
+    /**
+     * Get the first entries of the queue, over all groups.
+     * @param limit the maximum number of entries to return
+     * @return a future that completes to pairs of grouping key and primary key
+     */
+    @Nonnull
+    public CompletableFuture<List<NonnullPair<Tuple, Tuple>>> getFirstEntries(int limit) {
+        return state.transaction.getRange(queueSubspace.range(), limit, false).asList().thenApply(keyValues -> {
+            final List<NonnullPair<Tuple, Tuple>> entries = new ArrayList<>(keyValues.size());
+            for (KeyValue keyValue : keyValues) {
+                final Tuple key = queueSubspace.unpack(keyValue.getKey());
+                entries.add(NonnullPair.of(TupleHelpers.subTuple(key, 0, groupingCount),
+                        TupleHelpers.subTuple(key, groupingCount, key.size())));
+            }
+            return entries;
+        });
+    }
+}
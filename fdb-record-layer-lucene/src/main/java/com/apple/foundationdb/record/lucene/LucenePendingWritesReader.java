@@ -0,0 +1,176 @@
+/*
+ * LucenePendingWritesReader.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Readers that overlay the documents built for the {@link LucenePendingWriteQueue pending writes} of a group on a
+ * reader of its Lucene directory, hiding the documents of the directory that those writes make stale.
+ */
+final class LucenePendingWritesReader {
+    private LucenePendingWritesReader() {
+    }
+
+    /**
+     * Open a reader of the current documents of a group.
+     * @param indexReader a reader of the Lucene directory of the group, which is closed when the returned reader is,
+     * or {@code null} if the directory has no index yet
+     * @param staleDocumentQueries queries matching the documents of the records with pending writes
+     * @param pendingReader a reader of the documents built for the records with pending writes, if any
+     * @return a reader of the documents in {@code indexReader} that do not match any of the queries followed by the
+     * documents in {@code pendingReader}
+     * @throws IOException if searching for stale documents fails
+     */
+    @Nonnull
+    static IndexReader open(@Nullable DirectoryReader indexReader, @Nonnull List<Query> staleDocumentQueries,
+                            @Nullable DirectoryReader pendingReader) throws IOException {
+        if (indexReader == null) {
+            return Objects.requireNonNull(pendingReader);
+        }
+        final Map<LeafReader, FixedBitSet> staleDocuments = findDocuments(indexReader, staleDocumentQueries);
+        final DirectoryReader currentReader = staleDocuments.isEmpty() ? indexReader : new StaleDocumentsReader(indexReader, staleDocuments);
+        if (pendingReader == null) {
+            return currentReader;
+        }
+        return new MultiReader(new IndexReader[] {currentReader, pendingReader}, true);
+    }
+
+    @Nonnull
+    private static Map<LeafReader, FixedBitSet> findDocuments(@Nonnull IndexReader indexReader,
+                                                              @Nonnull List<Query> queries) throws IOException {
+        final Map<LeafReader, FixedBitSet> documents = new IdentityHashMap<>();
+        final IndexSearcher searcher = new IndexSearcher(indexReader);
+        searcher.setQueryCache(null);
+        for (Query query : queries) {
+            searcher.search(query, new SimpleCollector() {
+                private FixedBitSet leafDocuments;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) {
+                    leafDocuments = documents.computeIfAbsent(context.reader(), reader -> new FixedBitSet(reader.maxDoc()));
+                }
+
+                @Override
+                public void collect(int doc) {
+                    leafDocuments.set(doc);
+                }
+
+                @Override
+                public ScoreMode scoreMode() {
+                    return ScoreMode.COMPLETE_NO_SCORES;
+                }
+            });
+        }
+        return documents;
+    }
+
+    private static class StaleDocumentsReader extends FilterDirectoryReader {
+        @Nonnull
+        private final Map<LeafReader, FixedBitSet> staleDocuments;
+
+        StaleDocumentsReader(@Nonnull DirectoryReader in, @Nonnull Map<LeafReader, FixedBitSet> staleDocuments) throws IOException {
+            super(in, new SubReaderWrapper() {
+                @Override
+                public LeafReader wrap(LeafReader reader) {
+                    final FixedBitSet leafStaleDocuments = staleDocuments.get(reader);
+                    return leafStaleDocuments == null ? reader : new StaleDocumentsLeafReader(reader, leafStaleDocuments);
+                }
+            });
+            this.staleDocuments = staleDocuments;
+        }
+
+        @Override
+        protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
+            return new StaleDocumentsReader(in, staleDocuments);
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+    }
+
+    private static class StaleDocumentsLeafReader extends FilterLeafReader {
+        @Nonnull
+        private final Bits liveDocs;
+        private final int numDocs;
+
+        StaleDocumentsLeafReader(@Nonnull LeafReader in, @Nonnull FixedBitSet staleDocuments) {
+            super(in);
+            final Bits inLiveDocs = in.getLiveDocs();
+            this.liveDocs = new Bits() {
+                @Override
+                public boolean get(int index) {
+                    return (inLiveDocs == null || inLiveDocs.get(index)) && !staleDocuments.get(index);
+                }
+
+                @Override
+                public int length() {
+                    return in.maxDoc();
+                }
+            };
+            // Only live documents are found by searching.
+            this.numDocs = in.numDocs() - staleDocuments.cardinality();
+        }
+
+        @Override
+        public Bits getLiveDocs() {
+            return liveDocs;
+        }
+
+        @Override
+        public int numDocs() {
+            return numDocs;
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            // Only the deletions differ.
+            return in.getCoreCacheHelper();
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+    }
+}
@@ -29,7 +29,10 @@ import org.apache.lucene.index.IndexWriter;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Maintain a B-tree index of primary key to segment and doc id.
@@ -55,6 +58,27 @@ public interface LucenePrimaryKeySegmentIndex {
     @Nullable
     DocumentIndexEntry findDocument(@Nonnull DirectoryReader directoryReader, @Nonnull Tuple primaryKey);
 
+    /**
+     * Find documents in index for direct delete, for several primary keys at once.
+     * The default implementation calls {@link #findDocument} for each primary key in turn.
+     *
+     * @param directoryReader a NRT reader
+     * @param primaryKeys the documents' records' primary keys
+     *
+     * @return a map from each primary key whose document was found to its entry
+     */
+    @Nonnull
+    default Map<Tuple, DocumentIndexEntry> findDocuments(@Nonnull DirectoryReader directoryReader, @Nonnull Collection<Tuple> primaryKeys) {
+        final Map<Tuple, DocumentIndexEntry> documents = new HashMap<>();
+        for (Tuple primaryKey : primaryKeys) {
+            final DocumentIndexEntry document = findDocument(directoryReader, primaryKey);
+            if (document != null) {
+                documents.put(primaryKey, document);
+            }
+        }
+        return documents;
+    }
+
     /**
      * Add or delete the primary key/segment/docId from the index.
      * @param primaryKey the primary ey of the record
@@ -73,7 +97,7 @@ public interface LucenePrimaryKeySegmentIndex {
     void clearForSegment(String segmentName) throws IOException;
 
     /**
-     * Result of {@link #findDocument}.
+     * Result of {@link #findDocument} and {@link #findDocuments}.
      */
     // TODO: Can be a record.
     class DocumentIndexEntry {
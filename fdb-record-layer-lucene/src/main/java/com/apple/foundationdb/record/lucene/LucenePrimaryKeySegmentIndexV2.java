@@ -42,8 +42,12 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -154,6 +158,74 @@ public class LucenePrimaryKeySegmentIndexV2 implements LucenePrimaryKeySegmentIn
         }
     }
 
+    /**
+     * Find documents in index for direct delete, for several primary keys at once.
+     * The range reads for the primary keys are issued in key order, with up to
+     * {@link LuceneRecordContextProperties#LUCENE_PRIMARY_KEY_SEGMENT_LOOKUP_PIPELINE_SIZE} outstanding at a time,
+     * and waited for together.
+     *
+     * @param directoryReader a NRT reader
+     * @param primaryKeys the documents' records' primary keys
+     *
+     * @return a map from each primary key whose document was found to its entry
+     */
+    @Override
+    @Nonnull
+    public Map<Tuple, DocumentIndexEntry> findDocuments(@Nonnull DirectoryReader directoryReader, @Nonnull Collection<Tuple> primaryKeys) {
+        if (primaryKeys.size() < 2) {
+            return LucenePrimaryKeySegmentIndex.super.findDocuments(directoryReader, primaryKeys);
+        }
+        final Map<Tuple, DocumentIndexEntry> docs = new HashMap<>();
+        directory.getAgilityContext().accept(aContext -> findDocuments(aContext, docs, directoryReader, primaryKeys));
+        return docs;
+    }
+
+    private void findDocuments(FDBRecordContext aContext, Map<Tuple, DocumentIndexEntry> docs,
+                               @Nonnull DirectoryReader directoryReader, @Nonnull Collection<Tuple> primaryKeys) {
+        final SegmentInfos segmentInfos = ((StandardDirectoryReader)FilterDirectoryReader.unwrap(directoryReader)).getSegmentInfos();
+        final Map<String, Integer> leafIndexes = new HashMap<>();
+        for (int i = 0; i < segmentInfos.size(); i++) {
+            leafIndexes.put(segmentInfos.info(i).info.name, i);
+        }
+        final int pipelineSize = Objects.requireNonNull(aContext.getPropertyStorage()
+                .getPropertyValue(LuceneRecordContextProperties.LUCENE_PRIMARY_KEY_SEGMENT_LOOKUP_PIPELINE_SIZE));
+        final List<Tuple> sortedPrimaryKeys = primaryKeys.stream().distinct().sorted().collect(Collectors.toList());
+        try (RecordCursor<DocumentIndexEntry> documents = RecordCursor.fromList(aContext.getExecutor(), sortedPrimaryKeys)
+                .mapPipelined(primaryKey -> findDocumentAsync(aContext, directoryReader, leafIndexes, primaryKey), pipelineSize)
+                .filter(Objects::nonNull)) {
+            for (DocumentIndexEntry document : directory.asyncToSync(LuceneEvents.Waits.WAIT_LUCENE_FIND_PRIMARY_KEY, documents.asList())) {
+                docs.put(document.primaryKey, document);
+            }
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    private CompletableFuture<DocumentIndexEntry> findDocumentAsync(@Nonnull FDBRecordContext aContext,
+                                                                    @Nonnull DirectoryReader directoryReader,
+                                                                    @Nonnull Map<String, Integer> leafIndexes,
+                                                                    @Nonnull Tuple primaryKey) {
+        final Subspace keySubspace = subspace.subspace(primaryKey);
+        final RecordCursor<DocumentIndexEntry> documents = KeyValueCursor.Builder.newBuilder(keySubspace)
+                .setContext(aContext)
+                .setScanProperties(ScanProperties.FORWARD_SCAN)
+                .build()
+                .map(kv -> {
+                    final Tuple segdoc = keySubspace.unpack(kv.getKey());
+                    final String segmentName = directory.primaryKeySegmentName(segdoc.getLong(0));
+                    final Integer leafIndex = segmentName == null ? null : leafIndexes.get(segmentName);
+                    if (leafIndex == null) {
+                        return null;
+                    }
+                    return new DocumentIndexEntry(primaryKey, kv.getKey(),
+                            directoryReader.leaves().get(leafIndex).reader(), segmentName, (int)segdoc.getLong(1));
+                })
+                .filter(Objects::nonNull);
+        return documents.first()
+                .thenApply(document -> document.orElse(null))
+                .whenComplete((result, err) -> documents.close());
+    }
+
     @Override
     public void addOrDeletePrimaryKeyEntry(@Nonnull byte[] primaryKey, long segmentId, int docId, boolean add, String segmentName) {
         if (LOGGER.isTraceEnabled()) {
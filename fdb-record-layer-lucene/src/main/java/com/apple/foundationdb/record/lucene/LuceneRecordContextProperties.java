@@ -78,11 +78,24 @@ public final class LuceneRecordContextProperties {
      */
     public static final RecordLayerPropertyKey<Integer> LUCENE_INDEX_CURSOR_PAGE_SIZE = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.cursor.pageSize", 201);
 
+    /**
+     * This controls the maximum number of blocks that an index input reads ahead, with a single range read, once it sees
+     * that a file is being read sequentially. Zero or one disables read-ahead.
+     */
+    public static final RecordLayerPropertyKey<Integer> LUCENE_READ_AHEAD_MAXIMUM_BLOCKS = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.readAhead.maximumBlocks", 0);
+
     /**
      * This controls the number of threads used when opening segments in parallel.
      */
     public static final RecordLayerPropertyKey<Integer> LUCENE_OPEN_PARALLELISM = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.open.parallelism", 16);
 
+    /**
+     * This controls the number of partitions searched concurrently by a query against a partitioned index that is not
+     * sorted by the partitioning field. When greater than one, the partitions are searched together and their results merged,
+     * instead of one partition after another.
+     */
+    public static final RecordLayerPropertyKey<Integer> LUCENE_PARTITION_SEARCH_PARALLELISM = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.partition.search.parallelism", 1);
+
     /**
      * During merge, commit the agile context right after this time quota is reached. Milliseconds units.
      */
@@ -104,6 +117,22 @@ public final class LuceneRecordContextProperties {
      * Maximum number of documents to move during a re-balancing run.
      */
     public static final RecordLayerPropertyKey<Integer> LUCENE_MAX_DOCUMENTS_TO_MOVE_DURING_REPARTITIONING = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.repartition.max.document.count", 1000);
+    /**
+     * Maximum number of pending writes to apply in each transaction when draining the
+     * {@link com.apple.foundationdb.record.lucene.LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED pending write queue}.
+     */
+    public static final RecordLayerPropertyKey<Integer> LUCENE_PENDING_WRITES_DRAIN_BATCH_SIZE = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.pending.writes.drain.batch.size", 500);
+    /**
+     * Estimated size in bytes of the
+     * {@link com.apple.foundationdb.record.lucene.LuceneIndexOptions#PENDING_WRITES_QUEUE_ENABLED pending write queue}
+     * of an index at which updates stop adding to the queue and write their documents directly instead.
+     */
+    public static final RecordLayerPropertyKey<Long> LUCENE_PENDING_WRITES_MAX_QUEUE_BYTES = RecordLayerPropertyKey.longPropertyKey("com.apple.foundationdb.record.lucene.pending.writes.max.queue.bytes", 10_000_000L);
+    /**
+     * Maximum number of primary key segment index range reads outstanding at once when looking up the documents of
+     * several records together, such as when deleting the old documents of a batch of saved records.
+     */
+    public static final RecordLayerPropertyKey<Integer> LUCENE_PRIMARY_KEY_SEGMENT_LOOKUP_PIPELINE_SIZE = RecordLayerPropertyKey.integerPropertyKey("com.apple.foundationdb.record.lucene.primary.key.segment.lookup.pipeline.size", 20);
     /**
      * Lucene file lock time window in milliseconds. If a file lock is older (or younger) than this value, the lock will be considered invalid.
      */
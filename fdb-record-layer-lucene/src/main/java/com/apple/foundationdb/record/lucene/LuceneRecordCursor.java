@@ -34,10 +34,13 @@ import com.apple.foundationdb.record.cursors.BaseCursor;
 import com.apple.foundationdb.record.cursors.CursorLimitManager;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.lucene.directory.FDBDirectoryManager;
+import com.apple.foundationdb.record.lucene.directory.FDBDirectorySharedCacheManager;
+import com.apple.foundationdb.record.lucene.search.LuceneFilterCache;
 import com.apple.foundationdb.record.lucene.search.LuceneOptimizedIndexSearcher;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.foundationdb.tuple.TupleHelpers;
@@ -53,6 +56,8 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.slf4j.Logger;
@@ -61,7 +66,10 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -169,6 +177,31 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
      */
     private boolean isReverseSort = false;
 
+    /**
+     * true when several partitions are searched at once and their results merged, rather than one partition after
+     * another.
+     */
+    private boolean searchPartitionsInParallel = false;
+    /**
+     * the maximum number of partitions to search concurrently.
+     */
+    private final int partitionSearchParallelism;
+    /**
+     * the partitions being searched together, newest first, once they have been determined.
+     */
+    @Nullable
+    private List<PartitionSearch> partitionSearches = null;
+    /**
+     * the partitions that returned results for the current page, indexed by the shard index of those results.
+     */
+    @Nonnull
+    private List<PartitionSearch> pagePartitionSearches = Collections.emptyList();
+    /**
+     * the position of every partition after each result of the current page, for the continuation of that result.
+     */
+    @Nonnull
+    private final Map<ScoreDoc, List<LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition>> partitionPositionsByResult = new IdentityHashMap<>();
+
     //TODO: once we fix the available fields logic for lucene to take into account which fields are
     // stored there should be no need to pass in a list of fields, or we could only pass in the store field values.
     @SuppressWarnings("squid:S107")
@@ -222,11 +255,26 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
                 }
             }
         }
+        this.partitionSearchParallelism = state.context.getPropertyStorage().getPropertyValue(LuceneRecordContextProperties.LUCENE_PARTITION_SEARCH_PARALLELISM);
+        if (continuation == null) {
+            // Partitions can only be searched together when the order of the results does not depend on the partition.
+            searchPartitionsInParallel = partitionKey != null && !sortedByPartitioningKey && partitionSearchParallelism > 1;
+        }
         if (continuation != null) {
             withContinuation = true;
             try {
                 LuceneContinuationProto.LuceneIndexContinuation parsed = LuceneContinuationProto.LuceneIndexContinuation.parseFrom(continuation);
                 searchAfter = LuceneCursorContinuation.toScoreDoc(parsed);
+                // a continuation from a merged search keeps merging, regardless of the current parallelism
+                if (parsed.getPartitionPositionsCount() > 0) {
+                    searchPartitionsInParallel = true;
+                    partitionSearches = new ArrayList<>(parsed.getPartitionPositionsCount());
+                    for (LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition position : parsed.getPartitionPositionsList()) {
+                        partitionSearches.add(new PartitionSearch(position.getPartitionId(),
+                                position.hasSearchAfter() ? LuceneCursorContinuation.toScoreDoc(position.getSearchAfter()) : null,
+                                position.getExhausted()));
+                    }
+                }
                 // continuation partitionInfo "overrides" the defaults passed in
                 // from the index maintainer
 
@@ -280,15 +328,17 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
             return CompletableFuture.completedFuture(nextResult);
         }
 
-        return handleCrossPartitionDiscontinuity().thenCompose(noval -> {
+        return handleCrossPartitionDiscontinuity().thenCompose(vignore -> initializePartitionSearches()).thenCompose(noval -> {
             // Scan all the pages within skip range firstly
             CompletableFuture<Void> scanPages = AsyncUtil.whileTrue(() -> {
                 if (leftToSkip < pageSize) {
                     return CompletableFuture.completedFuture(false);
                 }
                 try {
-                    TopDocs topDocs = searchForTopDocs(pageSize);
-                    leftToSkip -= topDocs.scoreDocs.length;
+                    return searchForTopDocs(pageSize).thenApply(topDocs -> {
+                        leftToSkip -= topDocs.scoreDocs.length;
+                        return leftToSkip >= pageSize;
+                    });
                 } catch (IndexNotFoundException indexNotFoundException) {
                     // Trying to open an empty directory results in an IndexNotFoundException,
                     // but this should be interpreted as there not being any data to read
@@ -302,8 +352,9 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
             return scanPages.thenCompose(vignore -> {
                 if (lookupResults == null || !exhausted && (leftToSkip > 0 || (currentPosition + skip) % pageSize == 0) && limitRemaining > 0) {
                     return CompletableFuture.supplyAsync(() -> {
+                        final CompletableFuture<Void> scan;
                         try {
-                            maybePerformScan();
+                            scan = maybePerformScan();
                         } catch (IndexNotFoundException indexNotFoundException) {
                             // Trying to open an empty directory results in an IndexNotFoundException,
                             // but this should be interpreted as there not being any data to read
@@ -312,7 +363,7 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
                         } catch (IOException ioException) {
                             throw LuceneExceptions.toRecordCoreException("Record Cursor failed", ioException, LogMessageKeys.QUERY, query);
                         }
-                        return lookupResults.onNext().thenCompose(this::switchToNextPartitionAndContinue);
+                        return scan.thenCompose(vignore -> lookupResults.onNext()).thenCompose(this::switchToNextPartitionAndContinue);
                     }, executor).thenCompose(Function.identity());
                 }
                 return lookupResults.onNext().thenCompose(this::switchToNextPartitionAndContinue);
@@ -323,6 +374,7 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
     private CompletableFuture<Void> handleCrossPartitionDiscontinuity() {
         if (!withContinuation ||
                 continuationPartitionSanitized ||
+                searchPartitionsInParallel ||
                 !partitioner.isPartitioningEnabled()) {
             return AsyncUtil.DONE;
         }
@@ -352,14 +404,14 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
                         partitionId = properPartitionInfo.getId();
                         partitionKey = LucenePartitioner.getPartitionKey(properPartitionInfo);
                         // EXPERIMENTAL: reset the doc id if necessary in order to pass the Lucene check in searchAfter()
-                        Objects.requireNonNull(searchAfter).doc = Math.min(searchAfter.doc, properPartitionInfo.getCount() - 1);
+                        searchAfter = withDoc(Objects.requireNonNull(searchAfter), Math.min(searchAfter.doc, properPartitionInfo.getCount() - 1));
                     }
                     return AsyncUtil.DONE;
                 });
             } else {
                 // EXPERIMENTAL: reset the doc id if necessary in order to pass the Lucene check in searchAfter()
                 if (searchAfter != null) {
-                    searchAfter.doc = Math.min(searchAfter.doc, partitionInfo.getCount() - 1);
+                    searchAfter = withDoc(searchAfter, Math.min(searchAfter.doc, partitionInfo.getCount() - 1));
                 }
                 getProperContinuationPartition = AsyncUtil.DONE;
             }
@@ -371,8 +423,27 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
         });
     }
 
+    private CompletableFuture<Void> initializePartitionSearches() {
+        if (!searchPartitionsInParallel || partitionSearches != null) {
+            return AsyncUtil.DONE;
+        }
+        // Search the same partitions as switchToNextPartitionAndContinue would visit: the starting partition and all
+        // the ones older than it.
+        final Tuple startPartitionKey = Objects.requireNonNull(partitionKey);
+        return partitioner.getAllPartitionMetaInfo(Objects.requireNonNull(groupingKey)).thenAccept(partitionInfos -> {
+            final List<PartitionSearch> searches = new ArrayList<>();
+            for (LucenePartitionInfoProto.LucenePartitionInfo partitionInfo : Lists.reverse(partitionInfos)) {
+                if (LucenePartitioner.getPartitionKey(partitionInfo).compareTo(startPartitionKey) <= 0) {
+                    searches.add(new PartitionSearch(partitionInfo.getId(), null, false));
+                }
+            }
+            partitionSearches = searches;
+        });
+    }
+
     private CompletableFuture<RecordCursorResult<IndexEntry>> switchToNextPartitionAndContinue(RecordCursorResult<IndexEntry> recordCursorResult) {
         if (recordCursorResult.hasNext() ||
+                searchPartitionsInParallel ||
                 partitionKey == null ||
                 recordCursorResult.getNoNextReason() != SOURCE_EXHAUSTED) {
             return CompletableFuture.completedFuture(recordCursorResult);
@@ -409,8 +480,7 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
                     skip = leftToSkip;
                 }
                 try {
-                    maybePerformScan();
-                    return lookupResults.onNext().thenCompose(this::switchToNextPartitionAndContinue);
+                    return maybePerformScan().thenCompose(vignore -> lookupResults.onNext()).thenCompose(this::switchToNextPartitionAndContinue);
                 } catch (IOException ioException) {
                     throw new RecordCoreException(ioException)
                             .addLogInfo(LogMessageKeys.QUERY, query);
@@ -427,6 +497,11 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
             IOUtils.closeWhileHandlingException(indexReader);
         }
         indexReader = null;
+        if (partitionSearches != null) {
+            for (PartitionSearch partitionSearch : partitionSearches) {
+                partitionSearch.close();
+            }
+        }
         closed = true;
     }
 
@@ -448,25 +523,32 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
     }
 
     private synchronized IndexReader getIndexReader() throws IOException {
+        final IndexMaintainer indexMaintainer = state.store.getIndexMaintainer(state.index);
+        if (indexMaintainer instanceof LuceneIndexMaintainer && ((LuceneIndexMaintainer)indexMaintainer).hasPendingWriteQueue()) {
+            // Building the documents of pending writes takes time proportional to their number, so do it once per cursor.
+            if (indexReader == null) {
+                indexReader = ((LuceneIndexMaintainer)indexMaintainer).getReaderWithPendingWrites(groupingKey, partitionId);
+            }
+            return indexReader;
+        }
         return FDBDirectoryManager.getManager(state).getIndexReader(groupingKey, partitionId);
     }
 
-    private void maybePerformScan() throws IOException {
+    private CompletableFuture<Void> maybePerformScan() throws IOException {
         if (lookupResults != null) {
             lookupResults.close();
         }
 
         final int limit = limitRemaining == Integer.MAX_VALUE ? pageSize : Math.min(limitRemaining + leftToSkip, pageSize);
-        TopDocs newTopDocs = searchForTopDocs(limit);
+        return searchForTopDocs(limit).thenAccept(this::setLookupResults);
+    }
 
+    private void setLookupResults(@Nonnull TopDocs newTopDocs) {
         lookupResults = RecordCursor.fromIterator(executor, Arrays.stream(newTopDocs.scoreDocs).iterator()).skip(leftToSkip)
                 .mapPipelined(this::buildIndexEntryFromScoreDocAsync, state.store.getPipelineSize(PipelineOperation.KEY_TO_RECORD))
                 .mapResult(result -> {
                     if (result.hasNext() && limitManager.tryRecordScan()) {
-                        RecordCursorContinuation continuationFromDoc = LuceneCursorContinuation.fromScoreDoc(
-                                Objects.requireNonNull(result.get()).scoreDoc,
-                                partitionId,
-                                partitionKey);
+                        RecordCursorContinuation continuationFromDoc = continuationFromScoreDoc(Objects.requireNonNull(result.get()).scoreDoc);
                         currentPosition++;
                         if (limitRemaining != Integer.MAX_VALUE) {
                             limitRemaining--;
@@ -475,20 +557,14 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
                     } else if (exhausted) {
                         nextResult = RecordCursorResult.exhausted();
                     } else if (limitRemaining <= 0) {
-                        RecordCursorContinuation continuationFromDoc = LuceneCursorContinuation.fromScoreDoc(
-                                searchAfter,
-                                partitionId,
-                                partitionKey);
+                        RecordCursorContinuation continuationFromDoc = continuationFromScoreDoc(searchAfter);
                         nextResult = RecordCursorResult.withoutNextValue(continuationFromDoc, NoNextReason.RETURN_LIMIT_REACHED);
                     } else {
                         final Optional<NoNextReason> stoppedReason = limitManager.getStoppedReason();
                         if (stoppedReason.isEmpty()) {
                             throw new RecordCoreException("limit manager stopped LuceneRecordCursor but did not report a reason");
                         } else {
-                            nextResult = RecordCursorResult.withoutNextValue(LuceneCursorContinuation.fromScoreDoc(
-                                    searchAfter,
-                                    partitionId,
-                                    partitionKey), stoppedReason.get());
+                            nextResult = RecordCursorResult.withoutNextValue(continuationFromScoreDoc(searchAfter), stoppedReason.get());
                         }
                     }
                     return nextResult;
@@ -496,10 +572,35 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
         leftToSkip = Math.max(0, leftToSkip - newTopDocs.scoreDocs.length);
     }
 
-    private TopDocs searchForTopDocs(int limit) throws IOException {
+    @Nonnull
+    private RecordCursorContinuation continuationFromScoreDoc(ScoreDoc scoreDoc) {
+        if (searchPartitionsInParallel) {
+            List<LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition> partitionPositions = partitionPositionsByResult.get(scoreDoc);
+            if (partitionPositions == null) {
+                partitionPositions = currentPartitionPositions();
+            }
+            return LuceneCursorContinuation.fromPartitionPositions(scoreDoc, partitionPositions);
+        }
+        return LuceneCursorContinuation.fromScoreDoc(scoreDoc, partitionId, partitionKey);
+    }
+
+    @Nonnull
+    private List<LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition> currentPartitionPositions() {
+        final List<PartitionSearch> searches = Objects.requireNonNull(partitionSearches);
+        final LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition[] positions = new LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition[searches.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = searches.get(i).position;
+        }
+        return Arrays.asList(positions);
+    }
+
+    private CompletableFuture<TopDocs> searchForTopDocs(int limit) throws IOException {
+        if (searchPartitionsInParallel) {
+            return searchPartitionsForTopDocs(limit);
+        }
         long startTime = System.nanoTime();
         indexReader = getIndexReader();
-        searcher = new LuceneOptimizedIndexSearcher(indexReader, executorService);
+        searcher = newSearcher(indexReader);
         TopDocs newTopDocs;
         if (searchAfter != null && sort != null) {
             newTopDocs = searcher.searchAfter(searchAfter, query, limit, sort);
@@ -510,6 +611,93 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
         } else {
             newTopDocs = searcher.search(query, limit);
         }
+        if (newTopDocs.scoreDocs.length < limit) {
+            exhausted = true;
+        }
+        if (newTopDocs.scoreDocs.length != 0) {
+            searchAfter = newTopDocs.scoreDocs[newTopDocs.scoreDocs.length - 1];
+        }
+        if (timer != null) {
+            timer.recordSinceNanoTime(LuceneEvents.Events.LUCENE_INDEX_SCAN, startTime);
+            timer.increment(LuceneEvents.Counts.LUCENE_SCAN_MATCHED_DOCUMENTS, newTopDocs.scoreDocs.length);
+        }
+        return CompletableFuture.completedFuture(newTopDocs);
+    }
+
+    @Nonnull
+    private LuceneOptimizedIndexSearcher newSearcher(@Nonnull IndexReader reader) {
+        final LuceneOptimizedIndexSearcher newSearcher = new LuceneOptimizedIndexSearcher(reader, executorService);
+        final FDBDirectorySharedCacheManager sharedCacheManager = FDBDirectorySharedCacheManager.forContext(state.context);
+        final LuceneFilterCache filterCache = sharedCacheManager == null ? null : sharedCacheManager.getFilterCache();
+        if (filterCache != null) {
+            newSearcher.setFilterCache(filterCache, timer);
+        }
+        return newSearcher;
+    }
+
+    /**
+     * Search several partitions, {@link #partitionSearchParallelism} at a time, and merge their results.
+     * Each partition is searched after its own last result that has been merged into a page. Results beyond the
+     * limit are discarded and found again by the next page. The searches are composed rather than waited for, so
+     * that no thread of the executor blocks on searches queued behind it.
+     */
+    private CompletableFuture<TopDocs> searchPartitionsForTopDocs(int limit) {
+        long startTime = System.nanoTime();
+        final List<PartitionSearch> searches = Objects.requireNonNull(partitionSearches);
+        final List<PartitionSearch> activeSearches = new ArrayList<>(searches.size());
+        for (PartitionSearch partitionSearch : searches) {
+            if (!partitionSearch.exhausted) {
+                activeSearches.add(partitionSearch);
+            }
+        }
+        final TopDocs[] partitionTopDocs = sort == null ? new TopDocs[activeSearches.size()] : new TopFieldDocs[activeSearches.size()];
+        CompletableFuture<Void> batches = AsyncUtil.DONE;
+        for (int start = 0; start < activeSearches.size(); start += partitionSearchParallelism) {
+            final int batchStart = start;
+            final int batchEnd = Math.min(start + partitionSearchParallelism, activeSearches.size());
+            batches = batches.thenCompose(vignore -> {
+                final List<CompletableFuture<Void>> searchFutures = new ArrayList<>(batchEnd - batchStart);
+                for (int i = batchStart; i < batchEnd; i++) {
+                    final int shardIndex = i;
+                    searchFutures.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            partitionTopDocs[shardIndex] = activeSearches.get(shardIndex).search(limit);
+                        } catch (IOException ioException) {
+                            throw LuceneExceptions.toRecordCoreException("Partition search failed", ioException,
+                                    LogMessageKeys.QUERY, query, LogMessageKeys.PARTITION_ID, activeSearches.get(shardIndex).partitionId);
+                        }
+                    }, executor));
+                }
+                return AsyncUtil.whenAll(searchFutures);
+            });
+        }
+        return batches.thenApply(vignore -> mergePartitionTopDocs(limit, activeSearches, partitionTopDocs, startTime));
+    }
+
+    private TopDocs mergePartitionTopDocs(int limit, @Nonnull List<PartitionSearch> activeSearches, @Nonnull TopDocs[] partitionTopDocs, long startTime) {
+        // Merging sets the shard index of each result to the position of its partition in activeSearches.
+        final TopDocs newTopDocs = sort == null ?
+                                   TopDocs.merge(limit, partitionTopDocs) :
+                                   TopDocs.merge(sort, limit, (TopFieldDocs[])partitionTopDocs);
+
+        // Advance each partition past its results that made it into the page. A partition that returned fewer results
+        // than requested is exhausted once they have all been returned.
+        final int[] remaining = new int[activeSearches.size()];
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = partitionTopDocs[i].scoreDocs.length;
+            if (remaining[i] == 0) {
+                activeSearches.get(i).advance(null, true);
+            }
+        }
+        partitionPositionsByResult.clear();
+        for (ScoreDoc scoreDoc : newTopDocs.scoreDocs) {
+            final int shardIndex = scoreDoc.shardIndex;
+            remaining[shardIndex]--;
+            activeSearches.get(shardIndex).advance(scoreDoc, remaining[shardIndex] == 0 && partitionTopDocs[shardIndex].scoreDocs.length < limit);
+            partitionPositionsByResult.put(scoreDoc, currentPartitionPositions());
+        }
+        pagePartitionSearches = activeSearches;
+
         if (newTopDocs.scoreDocs.length < limit) {
             exhausted = true;
         }
@@ -526,7 +714,8 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
     private CompletableFuture<ScoreDocIndexEntry> buildIndexEntryFromScoreDocAsync(@Nonnull ScoreDoc scoreDoc) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Document document = searcher.doc(scoreDoc.doc, storedFieldsToReturn);
+                final IndexSearcher docSearcher = searchPartitionsInParallel ? pagePartitionSearches.get(scoreDoc.shardIndex).searcher : searcher;
+                Document document = Objects.requireNonNull(docSearcher).doc(scoreDoc.doc, storedFieldsToReturn);
                 IndexableField primaryKey = document.getField(LuceneIndexMaintainer.PRIMARY_KEY_FIELD_NAME);
                 BytesRef pk = primaryKey.binaryValue();
                 if (LOGGER.isTraceEnabled()) {
@@ -598,6 +787,85 @@ public class LuceneRecordCursor implements BaseCursor<IndexEntry> {
         }, executor);
     }
 
+    /**
+     * Copy a search after point with a different doc id. The original may be a result that has been returned.
+     */
+    @Nonnull
+    private static ScoreDoc withDoc(@Nonnull ScoreDoc scoreDoc, int doc) {
+        if (scoreDoc instanceof FieldDoc) {
+            return new FieldDoc(doc, scoreDoc.score, ((FieldDoc)scoreDoc).fields, scoreDoc.shardIndex);
+        }
+        return new ScoreDoc(doc, scoreDoc.score, scoreDoc.shardIndex);
+    }
+
+    /**
+     * The search of one partition when several partitions are searched together. Partitioned indexes cannot have a
+     * {@link LucenePendingWriteQueue}, so this reads the partition's directory directly.
+     */
+    private final class PartitionSearch {
+        private final int partitionId;
+        @Nullable
+        private ScoreDoc searchAfter;
+        private boolean exhausted;
+        @Nonnull
+        private LuceneContinuationProto.LuceneIndexContinuation.PartitionPosition position;
+        @Nullable
+        private IndexReader reader;
+        @Nullable
+        private IndexSearcher searcher;
+
+        private PartitionSearch(int partitionId, @Nullable ScoreDoc searchAfter, boolean exhausted) {
+            this.partitionId = partitionId;
+            this.searchAfter = searchAfter;
+            this.exhausted = exhausted;
+            this.position = LuceneCursorContinuation.toPartitionPosition(partitionId, searchAfter, exhausted);
+        }
+
+        private TopDocs search(int limit) throws IOException {
+            if (reader == null) {
+                // The reader is kept for the later pages, so that the doc ids of their search after points stay valid
+                try {
+                    reader = FDBDirectoryManager.getManager(state).getIndexReader(groupingKey, partitionId);
+                } catch (IndexNotFoundException indexNotFoundException) {
+                    // An empty partition has nothing to return
+                    return sort == null ?
+                           new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]) :
+                           new TopFieldDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0], sort.getSort());
+                }
+                searcher = newSearcher(reader);
+                if (searchAfter != null && searchAfter.doc >= reader.maxDoc()) {
+                    // the partition may have shrunk since the continuation was made; Lucene checks the doc id in searchAfter()
+                    searchAfter = withDoc(searchAfter, Math.max(0, reader.maxDoc() - 1));
+                }
+            }
+            if (searchAfter != null && sort != null) {
+                return searcher.searchAfter(searchAfter, query, limit, sort);
+            } else if (searchAfter != null) {
+                return searcher.searchAfter(searchAfter, query, limit);
+            } else if (sort != null) {
+                return searcher.search(query, limit, sort);
+            } else {
+                return searcher.search(query, limit);
+            }
+        }
+
+        private void advance(@Nullable ScoreDoc newSearchAfter, boolean newExhausted) {
+            if (newSearchAfter != null) {
+                searchAfter = newSearchAfter;
+            }
+            exhausted = newExhausted;
+            position = LuceneCursorContinuation.toPartitionPosition(partitionId, searchAfter, exhausted);
+        }
+
+        private void close() {
+            if (reader != null) {
+                IOUtils.closeWhileHandlingException(reader);
+                reader = null;
+                searcher = null;
+            }
+        }
+    }
+
     /**
      * An IndexEntry based off a Lucene ScoreDoc.
      */
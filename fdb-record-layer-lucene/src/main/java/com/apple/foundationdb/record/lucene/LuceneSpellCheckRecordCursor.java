@@ -30,6 +30,7 @@ import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.cursors.BaseCursor;
 import com.apple.foundationdb.record.lucene.directory.FDBDirectoryManager;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.protobuf.ByteString;
@@ -165,6 +166,10 @@ public class LuceneSpellCheckRecordCursor implements BaseCursor<IndexEntry> {
     }
 
     private synchronized IndexReader getIndexReader() throws IOException {
+        final IndexMaintainer indexMaintainer = state.store.getIndexMaintainer(state.index);
+        if (indexMaintainer instanceof LuceneIndexMaintainer) {
+            return ((LuceneIndexMaintainer)indexMaintainer).getReaderWithPendingWrites(groupingKey, partitionId);
+        }
         return FDBDirectoryManager.getManager(state).getIndexReader(groupingKey, partitionId);
     }
 
@@ -162,9 +162,11 @@ public class FDBDirectory extends Directory  {
     private final AtomicLong fileSequenceCounter;
 
     private final Cache<ComparablePair<Long, Integer>, CompletableFuture<byte[]>> blockCache;
+    private final int blockCacheMaximumSize;
 
     private final boolean compressionEnabled;
     private final boolean encryptionEnabled;
+    private final int readAheadMaximumBlocks;
 
     // The shared cache is initialized when first listing the directory, if a manager is present, and cleared before writing.
     @Nullable
@@ -217,6 +219,7 @@ public class FDBDirectory extends Directory  {
         this.fileLockSubspace = subspace.subspace(Tuple.from(FILE_LOCK_SUBSPACE));
         this.lockFactory = new FDBDirectoryLockFactory(this, Objects.requireNonNullElse(agilityContext.getPropertyValue(LuceneRecordContextProperties.LUCENE_FILE_LOCK_TIME_WINDOW_MILLISECONDS), 0));
         this.blockSize = blockSize;
+        this.blockCacheMaximumSize = blockCacheMaximumSize;
         this.fileReferenceCache = new AtomicReference<>();
         this.blockCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(concurrencyLevel)
@@ -228,6 +231,7 @@ public class FDBDirectory extends Directory  {
         this.fileSequenceCounter = new AtomicLong(-1);
         this.compressionEnabled = Objects.requireNonNullElse(agilityContext.getPropertyValue(LuceneRecordContextProperties.LUCENE_INDEX_COMPRESSION_ENABLED), false);
         this.encryptionEnabled = Objects.requireNonNullElse(agilityContext.getPropertyValue(LuceneRecordContextProperties.LUCENE_INDEX_ENCRYPTION_ENABLED), false);
+        this.readAheadMaximumBlocks = Objects.requireNonNullElse(agilityContext.getPropertyValue(LuceneRecordContextProperties.LUCENE_READ_AHEAD_MAXIMUM_BLOCKS), 0);
         this.fileReferenceMapSupplier = Suppliers.memoize(this::loadFileReferenceCacheForMemoization);
         this.sharedCacheManager = sharedCacheManager;
         this.sharedCacheKey = sharedCacheKey;
@@ -504,8 +508,9 @@ public class FDBDirectory extends Directory  {
             return exceptionalFuture;
         }
         final long id = reference.getId();
+        final ComparablePair<Long, Integer> blockKey = ComparablePair.of(id, block);
         try {
-            return agilityContext.instrument(LuceneEvents.Events.LUCENE_READ_BLOCK, blockCache.get(ComparablePair.of(id, block), () -> {
+            final CompletableFuture<byte[]> blockFuture = blockCache.get(blockKey, () -> {
                 if (sharedCache == null) {
                     return readData(id, block);
                 }
@@ -516,18 +521,100 @@ public class FDBDirectory extends Directory  {
                 } else {
                     agilityContext.increment(LuceneEvents.Counts.LUCENE_SHARED_CACHE_MISSES);
                     return readData(id, block).thenApply(data -> {
-                        sharedCache.putBlockIfAbsent(id, block, data);
+                        final int evicted = sharedCache.putBlockIfAbsent(id, block, data);
+                        if (evicted > 0) {
+                            agilityContext.increment(LuceneEvents.Counts.LUCENE_SHARED_CACHE_EVICTIONS, evicted);
+                        }
                         return data;
                     });
                 }
-                    }
-            ));
+            });
+            // Do not keep a failed read, which a directory used by more than one transaction could otherwise repeat.
+            blockFuture.whenComplete((data, err) -> {
+                if (err != null) {
+                    blockCache.asMap().remove(blockKey, blockFuture);
+                }
+            });
+            return agilityContext.instrument(LuceneEvents.Events.LUCENE_READ_BLOCK, blockFuture);
         } catch (ExecutionException e) {
             // This would happen when the cache.get() fails to execute the lambda (not when the block's future is joined)
             throw new RecordCoreException(e.getCause());
         }
     }
 
+    /**
+     * Reads a run of consecutive blocks of a file with a single range read and adds them to the block cache, so that
+     * subsequent calls to {@link #readBlock} for them do not need their own reads.
+     * Blocks that are already in the block cache or the shared cache are not read again; if all of them are, nothing is read.
+     * @param id the id of the file
+     * @param beginBlock the first block to read
+     * @param count the number of blocks to read, which must all exist
+     * @return the number of blocks that were not already in the block cache or the shared cache
+     */
+    @API(API.Status.INTERNAL)
+    public int readAheadBlocks(long id, int beginBlock, int count) {
+        final List<Integer> missing = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final ComparablePair<Long, Integer> blockKey = ComparablePair.of(id, beginBlock + i);
+            if (blockCache.getIfPresent(blockKey) != null) {
+                continue;
+            }
+            final byte[] fromShared = sharedCache == null ? null : sharedCache.getBlockIfPresent(id, beginBlock + i);
+            if (fromShared != null) {
+                agilityContext.increment(LuceneEvents.Counts.LUCENE_SHARED_CACHE_HITS);
+                blockCache.asMap().putIfAbsent(blockKey, CompletableFuture.completedFuture(fromShared));
+            } else {
+                missing.add(beginBlock + i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        final int first = missing.get(0);
+        final int last = missing.get(missing.size() - 1);
+        final CompletableFuture<Map<Integer, byte[]>> rangeFuture = agilityContext.instrument(LuceneEvents.Events.LUCENE_FDB_READ_BLOCK,
+                agilityContext.getRange(dataSubspace.pack(Tuple.from(id, first)), dataSubspace.pack(Tuple.from(id, last + 1))))
+                .thenApply(keyValues -> {
+                    final Map<Integer, byte[]> blocks = new ConcurrentHashMap<>(keyValues.size());
+                    for (KeyValue keyValue : keyValues) {
+                        final int block = (int)dataSubspace.unpack(keyValue.getKey()).getLong(1);
+                        final byte[] data = LuceneSerializer.decode(keyValue.getValue());
+                        blocks.put(block, data);
+                        if (sharedCache != null) {
+                            sharedCache.putBlockIfAbsent(id, block, data);
+                        }
+                    }
+                    return blocks;
+                });
+        for (int block : missing) {
+            // A block that the range read did not return is read on its own, which fails the same way readBlock would.
+            final ComparablePair<Long, Integer> blockKey = ComparablePair.of(id, block);
+            final CompletableFuture<byte[]> blockFuture = rangeFuture.thenCompose(blocks -> {
+                final byte[] data = blocks.get(block);
+                return data != null ? CompletableFuture.completedFuture(data) : readData(id, block);
+            });
+            if (blockCache.asMap().putIfAbsent(blockKey, blockFuture) == null) {
+                blockFuture.whenComplete((data, err) -> {
+                    if (err != null || data == null) {
+                        blockCache.asMap().remove(blockKey, blockFuture);
+                    }
+                });
+            }
+        }
+        agilityContext.increment(LuceneEvents.Counts.LUCENE_READ_AHEAD_RANGE_READS);
+        agilityContext.increment(LuceneEvents.Counts.LUCENE_READ_AHEAD_BLOCKS, missing.size());
+        return missing.size();
+    }
+
+    /**
+     * Get the maximum number of blocks that an {@link FDBIndexInput} reads ahead.
+     * @return the maximum read-ahead, with zero or one meaning no read-ahead
+     * @see LuceneRecordContextProperties#LUCENE_READ_AHEAD_MAXIMUM_BLOCKS
+     */
+    public int getReadAheadMaximumBlocks() {
+        return readAheadMaximumBlocks;
+    }
+
     private CompletableFuture<byte[]> readData(long id, int block) {
         return agilityContext.instrument(LuceneEvents.Events.LUCENE_FDB_READ_BLOCK,
                 agilityContext.get(dataSubspace.pack(Tuple.from(id, block)))
@@ -585,6 +672,16 @@ public class FDBDirectory extends Directory  {
         return getFileReferenceCacheAsync().thenApply(references -> List.copyOf(references.keySet()));
     }
 
+    /**
+     * Get the total length of the files in the directory.
+     * @return a future that completes to the sum of the file lengths
+     */
+    @Nonnull
+    public CompletableFuture<Long> getTotalFileSizeAsync() {
+        return getFileReferenceCacheAsync().thenApply(references ->
+                references.values().stream().mapToLong(FDBLuceneFileReference::getSize).sum());
+    }
+
     @VisibleForTesting
     public CompletableFuture<List<KeyValue>> scanStoredFields(String segmentName) {
         return agilityContext.apply(aContext -> aContext.ensureActive()
@@ -681,6 +778,28 @@ public class FDBDirectory extends Directory  {
         return fileReferenceMapSupplier.get().thenApply(ignore -> fileReferenceCache.get());
     }
 
+    /**
+     * Get the shared cache of this directory, if it has one and has not been written in this transaction.
+     * @return the shared cache for the sequence number of the directory or {@code null}
+     */
+    @Nullable
+    FDBDirectorySharedCache getSharedCacheForReading() {
+        getFileReferenceCache();
+        return sharedCache;
+    }
+
+    /**
+     * Create another directory for the same data that reads through the given context, for a reader that is shared
+     * between transactions.
+     * @param sharedReaderContext the context through which the new directory reads
+     * @return a new directory
+     */
+    @Nonnull
+    FDBDirectory newSharedReaderDirectory(@Nonnull AgilityContext sharedReaderContext) {
+        return new FDBDirectory(subspace, indexOptions, sharedCacheManager, sharedCacheKey,
+                deferDeleteToCompoundFile, sharedReaderContext, blockCacheMaximumSize);
+    }
+
     @Nonnull
     private Map<String, FDBLuceneFileReference> getFileReferenceCache() {
         return Objects.requireNonNull(asyncToSync(LuceneEvents.Waits.WAIT_LUCENE_LOAD_FILE_CACHE, getFileReferenceCacheAsync()));
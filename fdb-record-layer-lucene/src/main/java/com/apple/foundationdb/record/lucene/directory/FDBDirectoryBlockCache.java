@@ -0,0 +1,404 @@
+/*
+ * FDBDirectoryBlockCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.directory;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of {@link FDBDirectory} blocks for all the directories of a {@link FDBDirectorySharedCacheManager}, limited by
+ * the number of bytes held rather than the number of blocks.
+ *
+ * The cache is divided into segments by key, each with an equal share of the capacity and its own lock. Each segment is a
+ * segmented LRU: a block enters a probationary part and only moves to the protected part, which holds most of the capacity,
+ * when it is read again. Blocks are evicted from the probationary part first, so a single large scan through one index
+ * cannot push out the blocks that other indexes read repeatedly.
+ *
+ * Optionally, blocks are stored in direct buffers outside of the Java heap and copied out when read.
+ *
+ * Blocks are keyed by the sequence number of their directory as well. Once a directory has a newer sequence number,
+ * {@link #invalidate} removes its older blocks, which no transaction reading the newer one can use.
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class FDBDirectoryBlockCache {
+    /**
+     * Approximate number of bytes of memory used for each cached block besides its contents.
+     */
+    public static final int ENTRY_OVERHEAD = 96;
+    /**
+     * Number of directories whose statistics are kept. Those of the least recently used directories are dropped first.
+     */
+    public static final int MAXIMUM_TRACKED_DIRECTORIES = 10_000;
+    // The fraction of each segment's capacity that can be used by blocks that have been read more than once.
+    private static final double PROTECTED_FRACTION = 0.8;
+
+    private final long maximumBytes;
+    private final boolean offHeap;
+    @Nonnull
+    private final Segment[] segments;
+    @Nonnull
+    private final Cache<Tuple, Stats> stats;
+
+    /**
+     * Create a new block cache.
+     * @param maximumBytes the maximum number of bytes of blocks to hold, including {@link #ENTRY_OVERHEAD}
+     * @param concurrencyLevel the number of segments, each of which can be updated by only one thread at a time
+     * @param offHeap whether to store blocks outside of the Java heap
+     */
+    public FDBDirectoryBlockCache(long maximumBytes, int concurrencyLevel, boolean offHeap) {
+        this.maximumBytes = maximumBytes;
+        this.offHeap = offHeap;
+        final int segmentCount = Math.max(1, concurrencyLevel);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maximumBytes / segmentCount);
+        }
+        this.stats = CacheBuilder.newBuilder()
+                .concurrencyLevel(segmentCount)
+                .maximumSize(MAXIMUM_TRACKED_DIRECTORIES)
+                .build();
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Get a block if present in the cache.
+     * @param directoryKey the key of the directory, as used by {@link FDBDirectorySharedCacheManager#getCache}
+     * @param sequenceNumber the sequence number of the directory
+     * @param id file id
+     * @param blockNumber block number in the file
+     * @return the cached block or {@code null} if not cached
+     */
+    @Nullable
+    public byte[] getIfPresent(@Nonnull Tuple directoryKey, long sequenceNumber, long id, int blockNumber) {
+        final BlockKey key = new BlockKey(directoryKey, sequenceNumber, id, blockNumber);
+        final byte[] block = segmentFor(key).get(key);
+        final Stats directoryStats = getStats(directoryKey);
+        if (block == null) {
+            directoryStats.misses.increment();
+        } else {
+            directoryStats.hits.increment();
+        }
+        return block;
+    }
+
+    /**
+     * Add a block to the cache if it is not already present.
+     * @param directoryKey the key of the directory, as used by {@link FDBDirectorySharedCacheManager#getCache}
+     * @param sequenceNumber the sequence number of the directory
+     * @param id file id
+     * @param blockNumber block number in the file
+     * @param block the block to be cached
+     * @return the number of blocks evicted to make room for the new one
+     */
+    public int putIfAbsent(@Nonnull Tuple directoryKey, long sequenceNumber, long id, int blockNumber, @Nonnull byte[] block) {
+        final BlockKey key = new BlockKey(directoryKey, sequenceNumber, id, blockNumber);
+        final Object contents;
+        if (offHeap) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(block.length);
+            buffer.put(block);
+            contents = buffer;
+        } else {
+            contents = block;
+        }
+        return segmentFor(key).put(key, contents, block.length + ENTRY_OVERHEAD);
+    }
+
+    /**
+     * Remove the blocks of a directory for sequence numbers older than the given one.
+     * @param directoryKey the key of the directory, as used by {@link FDBDirectorySharedCacheManager#getCache}
+     * @param sequenceNumber the current sequence number of the directory
+     * @return the number of blocks removed
+     */
+    public int invalidate(@Nonnull Tuple directoryKey, long sequenceNumber) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.invalidate(directoryKey, sequenceNumber);
+        }
+        return removed;
+    }
+
+    /**
+     * Get the number of bytes held by the cache, including {@link #ENTRY_OVERHEAD}.
+     * @return the weighted size of the cache
+     */
+    public long getWeightedSize() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.getWeightedSize();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of blocks held by the cache.
+     * @return the number of cached blocks
+     */
+    public long size() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    /**
+     * Get the statistics of the cache for a directory.
+     * Statistics are only kept for the {@link #MAXIMUM_TRACKED_DIRECTORIES} most recently used directories, so those of
+     * a directory that has not been used for a while start again from zero.
+     * @param directoryKey the key of the directory
+     * @return the statistics for the directory, which continue to be updated
+     */
+    @Nonnull
+    public Stats getStats(@Nonnull Tuple directoryKey) {
+        return stats.asMap().computeIfAbsent(directoryKey, k -> new Stats());
+    }
+
+    @Nonnull
+    private Segment segmentFor(@Nonnull BlockKey key) {
+        final int hash = key.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    private void recordEviction(@Nonnull BlockKey key) {
+        getStats(key.directoryKey).evictions.increment();
+    }
+
+    /**
+     * Hit, miss and eviction counts for one directory.
+     */
+    public static class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long getHitCount() {
+            return hits.sum();
+        }
+
+        public long getMissCount() {
+            return misses.sum();
+        }
+
+        public long getEvictionCount() {
+            return evictions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+        }
+    }
+
+    private static final class BlockKey {
+        @Nonnull
+        private final Tuple directoryKey;
+        private final long sequenceNumber;
+        private final long id;
+        private final int blockNumber;
+        private final int hashCode;
+
+        private BlockKey(@Nonnull Tuple directoryKey, long sequenceNumber, long id, int blockNumber) {
+            this.directoryKey = directoryKey;
+            this.sequenceNumber = sequenceNumber;
+            this.id = id;
+            this.blockNumber = blockNumber;
+            this.hashCode = Objects.hash(directoryKey, sequenceNumber, id, blockNumber);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final BlockKey that = (BlockKey)o;
+            return sequenceNumber == that.sequenceNumber && id == that.id && blockNumber == that.blockNumber &&
+                   directoryKey.equals(that.directoryKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final Object contents;
+        private final int weight;
+
+        private Entry(@Nonnull Object contents, int weight) {
+            this.contents = contents;
+            this.weight = weight;
+        }
+
+        @Nonnull
+        private byte[] toBytes() {
+            if (contents instanceof ByteBuffer) {
+                final ByteBuffer buffer = ((ByteBuffer)contents).duplicate();
+                buffer.clear();
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+            return (byte[])contents;
+        }
+    }
+
+    private final class Segment {
+        private final long capacity;
+        private final long protectedCapacity;
+        // Both maps are in insertion order, least recently used first; use moves an entry to the end.
+        private final LinkedHashMap<BlockKey, Entry> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<BlockKey, Entry> protectedEntries = new LinkedHashMap<>();
+        // The blocks of each directory in either map, so that those of old sequence numbers can be found.
+        private final Map<Tuple, Set<BlockKey>> directoryBlocks = new HashMap<>();
+        private long probationBytes;
+        private long protectedBytes;
+
+        private Segment(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long)(capacity * PROTECTED_FRACTION);
+        }
+
+        @Nullable
+        private synchronized byte[] get(@Nonnull BlockKey key) {
+            Entry entry = protectedEntries.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                return entry.toBytes();
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            // Read a second time: promote, demoting the least recently used protected blocks if that is now full.
+            probationBytes -= entry.weight;
+            protectedEntries.put(key, entry);
+            protectedBytes += entry.weight;
+            final Iterator<Map.Entry<BlockKey, Entry>> iterator = protectedEntries.entrySet().iterator();
+            while (protectedBytes > protectedCapacity && iterator.hasNext()) {
+                final Map.Entry<BlockKey, Entry> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    break;
+                }
+                iterator.remove();
+                protectedBytes -= eldest.getValue().weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationBytes += eldest.getValue().weight;
+            }
+            return entry.toBytes();
+        }
+
+        private synchronized int put(@Nonnull BlockKey key, @Nonnull Object contents, int weight) {
+            if (weight > capacity || probation.containsKey(key) || protectedEntries.containsKey(key)) {
+                return 0;
+            }
+            probation.put(key, new Entry(contents, weight));
+            probationBytes += weight;
+            directoryBlocks.computeIfAbsent(key.directoryKey, k -> new HashSet<>()).add(key);
+            int evicted = 0;
+            while (probationBytes + protectedBytes > capacity) {
+                final LinkedHashMap<BlockKey, Entry> from = probation.isEmpty() ? protectedEntries : probation;
+                final Iterator<Map.Entry<BlockKey, Entry>> iterator = from.entrySet().iterator();
+                final Map.Entry<BlockKey, Entry> eldest = iterator.next();
+                iterator.remove();
+                if (from == probation) {
+                    probationBytes -= eldest.getValue().weight;
+                } else {
+                    protectedBytes -= eldest.getValue().weight;
+                }
+                removeDirectoryBlock(eldest.getKey());
+                recordEviction(eldest.getKey());
+                evicted++;
+            }
+            return evicted;
+        }
+
+        private synchronized int invalidate(@Nonnull Tuple directoryKey, long sequenceNumber) {
+            final Set<BlockKey> keys = directoryBlocks.get(directoryKey);
+            if (keys == null) {
+                return 0;
+            }
+            int removed = 0;
+            final Iterator<BlockKey> iterator = keys.iterator();
+            while (iterator.hasNext()) {
+                final BlockKey key = iterator.next();
+                if (key.sequenceNumber >= sequenceNumber) {
+                    continue;
+                }
+                iterator.remove();
+                Entry entry = probation.remove(key);
+                if (entry != null) {
+                    probationBytes -= entry.weight;
+                } else {
+                    entry = Objects.requireNonNull(protectedEntries.remove(key));
+                    protectedBytes -= entry.weight;
+                }
+                removed++;
+            }
+            if (keys.isEmpty()) {
+                directoryBlocks.remove(directoryKey);
+            }
+            return removed;
+        }
+
+        private void removeDirectoryBlock(@Nonnull BlockKey key) {
+            final Set<BlockKey> keys = directoryBlocks.get(key.directoryKey);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                directoryBlocks.remove(key.directoryKey);
+            }
+        }
+
+        private synchronized long getWeightedSize() {
+            return probationBytes + protectedBytes;
+        }
+
+        private synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+    }
+}
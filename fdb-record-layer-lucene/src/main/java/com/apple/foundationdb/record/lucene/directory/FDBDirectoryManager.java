@@ -172,6 +172,17 @@ public class FDBDirectoryManager implements AutoCloseable {
         }
     }
 
+    /**
+     * Merge the segments of one directory, in agile sub-transactions, as {@link #mergeIndex(LucenePartitioner, LuceneAnalyzerWrapper)}
+     * does for each directory of the index.
+     * @param analyzerWrapper the analyzer for the index writer
+     * @param groupingKey the grouping key of the directory
+     * @param partitionId the partition id of the directory, if the index is partitioned
+     */
+    public void mergeIndex(@Nonnull LuceneAnalyzerWrapper analyzerWrapper, @Nonnull Tuple groupingKey, @Nullable Integer partitionId) {
+        mergeIndexNow(analyzerWrapper, groupingKey, partitionId);
+    }
+
     private void mergeIndexNow(LuceneAnalyzerWrapper analyzerWrapper, Tuple groupingKey, @Nullable final Integer partitionId) {
         final AgilityContext agilityContext = getAgilityContext(true, true);
         try {
@@ -341,7 +352,7 @@ public class FDBDirectoryManager implements AutoCloseable {
         return getDirectoryWrapper(groupingKey, partitionId).getDirectory();
     }
 
-    public IndexReader getIndexReader(@Nullable Tuple groupingKey, @Nullable Integer partitionId) throws IOException {
+    public DirectoryReader getIndexReader(@Nullable Tuple groupingKey, @Nullable Integer partitionId) throws IOException {
         return getDirectoryWrapper(groupingKey, partitionId).getReader();
     }
 
@@ -0,0 +1,281 @@
+/*
+ * FDBDirectoryReaderCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.directory;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.lucene.LuceneEvents;
+import com.apple.foundationdb.record.lucene.LuceneExceptions;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.tuple.Tuple;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StandardDirectoryReaderOptimization;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A cache of open {@link DirectoryReader}s that can be shared between transactions, so that queries of an index that
+ * has not changed do not read segment infos, field infos and term dictionary headers again.
+ *
+ * <p>
+ * Like the {@link FDBDirectorySharedCache}, each reader is for one directory key as of one sequence number, and only
+ * the reader for the latest sequence number of a directory is kept. When the sequence number advances, the new reader
+ * is opened from the old one, as by {@link DirectoryReader#openIfChanged}, so that only new segments are opened.
+ * The least recently used directories are dropped beyond a maximum number of readers.
+ * </p>
+ *
+ * <p>
+ * Each reader returned must be closed by the caller, which only releases its reference: the shared reader is closed
+ * once it has been dropped from the cache and every transaction using it has closed its reader. The shared reader
+ * reads through a transaction of its own, at the read version of a transaction holding it
+ * (see {@link SharedReaderAgilityContext}). A reader from the cache is a point in time view that is not reopened:
+ * a reader for a newer sequence number is gotten from the cache again.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class FDBDirectoryReaderCache {
+    private final int maximumReaders;
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<Tuple, SharedReader> readers;
+
+    public FDBDirectoryReaderCache(int maximumReaders) {
+        this.maximumReaders = maximumReaders;
+        this.readers = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Tuple, SharedReader> eldest) {
+                if (size() > FDBDirectoryReaderCache.this.maximumReaders) {
+                    eldest.getValue().release();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getMaximumReaders() {
+        return maximumReaders;
+    }
+
+    /**
+     * Get the number of readers currently in the cache.
+     * @return the number of cached readers
+     */
+    public synchronized int size() {
+        return readers.size();
+    }
+
+    /**
+     * Get a reader of a directory as of a sequence number, from the cache if possible.
+     * @param directory the directory as opened in the calling transaction, which has not written to it
+     * @param key the directory key, including the index prefix and any grouping keys
+     * @param sequenceNumber the sequence number of the directory as read in the calling transaction
+     * @param context the calling transaction
+     * @param executor executor to use to open segment readers in parallel
+     * @param parallelism number of segment readers to open in parallel
+     * @return a reader that the caller must close or {@code null} if a reader for a newer sequence number is cached
+     * @throws IOException if the reader cannot be opened
+     */
+    @Nullable
+    @SuppressWarnings("PMD.CloseResource")
+    public DirectoryReader getReader(@Nonnull FDBDirectory directory, @Nonnull Tuple key, long sequenceNumber,
+                                     @Nonnull FDBRecordContext context,
+                                     @Nonnull Executor executor, int parallelism) throws IOException {
+        final SharedReader previous;
+        synchronized (this) {
+            previous = readers.get(key);
+            if (previous != null && previous.sequenceNumber == sequenceNumber) {
+                context.increment(LuceneEvents.Counts.LUCENE_READER_CACHE_HITS);
+                return previous.lease(context);
+            }
+            if (previous != null && previous.sequenceNumber > sequenceNumber) {
+                return null;
+            }
+        }
+        final SharedReader opened = open(directory, previous, sequenceNumber, context, executor, parallelism);
+        synchronized (this) {
+            try {
+                return opened.lease(context);
+            } finally {
+                if (readers.get(key) == previous) {
+                    if (previous != null) {
+                        previous.release();
+                    }
+                    readers.put(key, opened);
+                } else {
+                    // Another transaction replaced the reader first, so this one is only used by the caller.
+                    opened.release();
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("PMD.CloseResource")
+    private static SharedReader open(@Nonnull FDBDirectory directory, @Nullable SharedReader previous, long sequenceNumber,
+                                     @Nonnull FDBRecordContext context,
+                                     @Nonnull Executor executor, int parallelism) throws IOException {
+        final SharedReaderAgilityContext agilityContext = new SharedReaderAgilityContext();
+        agilityContext.lend(context);
+        try {
+            final FDBDirectory sharedDirectory = directory.newSharedReaderDirectory(agilityContext);
+            final DirectoryReader reader;
+            if (previous != null && previous.reader.tryIncRef()) {
+                try {
+                    reader = StandardDirectoryReaderOptimization.openIfChanged(sharedDirectory, previous.reader);
+                } finally {
+                    previous.reader.decRef();
+                }
+                context.increment(LuceneEvents.Counts.LUCENE_READER_CACHE_REFRESHES);
+            } else {
+                reader = StandardDirectoryReaderOptimization.open(sharedDirectory, null, null, executor, parallelism);
+                context.increment(LuceneEvents.Counts.LUCENE_READER_CACHE_MISSES);
+            }
+            // Segments that have not changed keep reading through the directory they were first opened with.
+            final Map<Object, SharedReaderAgilityContext> segmentContexts = new HashMap<>();
+            for (LeafReaderContext leaf : reader.leaves()) {
+                final Object coreKey = leaf.reader().getCoreCacheHelper().getKey();
+                final SharedReaderAgilityContext previousContext = previous == null ? null : previous.segmentContexts.get(coreKey);
+                segmentContexts.put(coreKey, previousContext == null ? agilityContext : previousContext);
+            }
+            return new SharedReader(sequenceNumber, reader, segmentContexts);
+        } finally {
+            agilityContext.giveBack(context);
+        }
+    }
+
+    private static class SharedReader {
+        private final long sequenceNumber;
+        @Nonnull
+        private final DirectoryReader reader;
+        @Nonnull
+        private final Map<Object, SharedReaderAgilityContext> segmentContexts;
+
+        SharedReader(long sequenceNumber, @Nonnull DirectoryReader reader,
+                     @Nonnull Map<Object, SharedReaderAgilityContext> segmentContexts) {
+            this.sequenceNumber = sequenceNumber;
+            this.reader = reader;
+            this.segmentContexts = segmentContexts;
+        }
+
+        @Nonnull
+        DirectoryReader lease(@Nonnull FDBRecordContext context) throws IOException {
+            reader.incRef();
+            final Collection<SharedReaderAgilityContext> agilityContexts = Set.copyOf(segmentContexts.values());
+            for (SharedReaderAgilityContext agilityContext : agilityContexts) {
+                agilityContext.lend(context);
+            }
+            return new LeasedReader(reader, () -> {
+                for (SharedReaderAgilityContext agilityContext : agilityContexts) {
+                    agilityContext.giveBack(context);
+                }
+                reader.decRef();
+            });
+        }
+
+        void release() {
+            try {
+                reader.decRef();
+            } catch (IOException ex) {
+                throw LuceneExceptions.toRecordCoreException("unable to close shared reader", ex);
+            }
+        }
+    }
+
+    /**
+     * The reader given to one transaction, whose closing returns its reference to the shared reader. It has the same
+     * segment readers as the shared reader and, like it, is never reopened.
+     */
+    private static class LeasedReader extends DirectoryReader {
+        @Nonnull
+        private final DirectoryReader in;
+        @Nonnull
+        private final LeaseRelease release;
+
+        LeasedReader(@Nonnull DirectoryReader in, @Nonnull LeaseRelease release) throws IOException {
+            super(in.directory(), in.leaves().stream().map(LeafReaderContext::reader).toArray(LeafReader[]::new));
+            this.in = in;
+            this.release = release;
+        }
+
+        @Override
+        protected DirectoryReader doOpenIfChanged() {
+            // A reader for a newer sequence number comes from the cache.
+            return null;
+        }
+
+        @Override
+        protected DirectoryReader doOpenIfChanged(IndexCommit commit) {
+            return null;
+        }
+
+        @Override
+        protected DirectoryReader doOpenIfChanged(IndexWriter writer, boolean applyAllDeletes) {
+            return null;
+        }
+
+        @Override
+        public long getVersion() {
+            return in.getVersion();
+        }
+
+        @Override
+        public boolean isCurrent() throws IOException {
+            return in.isCurrent();
+        }
+
+        @Override
+        public IndexCommit getIndexCommit() throws IOException {
+            return in.getIndexCommit();
+        }
+
+        @Override
+        protected void doClose() throws IOException {
+            release.release();
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LeaseRelease {
+        void release() throws IOException;
+    }
+}
@@ -21,10 +21,7 @@
 package com.apple.foundationdb.record.lucene.directory;
 
 import com.apple.foundationdb.annotation.API;
-import com.apple.foundationdb.record.util.pair.Pair;
 import com.apple.foundationdb.tuple.Tuple;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -36,6 +33,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A shared cache for a single {@link FDBDirectory}.
+ * Blocks are kept in the {@link FDBDirectoryBlockCache} shared by all the directories of the manager.
  */
 @API(API.Status.EXPERIMENTAL)
 @ThreadSafe
@@ -50,19 +48,15 @@ public class FDBDirectorySharedCache {
     @Nonnull
     private final AtomicReference<ConcurrentMap<Long, AtomicInteger>> fieldInfosReferenceCount = new AtomicReference<>();
     @Nonnull
-    private final Cache<Pair<Long, Integer>, byte[]> blocks;
+    private final FDBDirectoryBlockCache blocks;
+    // Set once the manager has a newer sequence number for the directory and has removed this one's blocks.
+    private volatile boolean superseded;
 
-    public FDBDirectorySharedCache(@Nonnull Tuple key, long sequenceNumber,
-                                   int maximumSize, int concurrencyLevel, int initialCapacity) {
+    public FDBDirectorySharedCache(@Nonnull Tuple key, long sequenceNumber, @Nonnull FDBDirectoryBlockCache blocks) {
         this.key = key;
         this.sequenceNumber = sequenceNumber;
         this.fileReferences = new AtomicReference<>();
-        this.blocks = CacheBuilder.newBuilder()
-                .concurrencyLevel(concurrencyLevel)
-                .initialCapacity(initialCapacity)
-                .maximumSize(maximumSize)
-                .recordStats()
-                .build();
+        this.blocks = blocks;
     }
 
     /**
@@ -109,7 +103,10 @@ public class FDBDirectorySharedCache {
      */
     @Nullable
     public byte[] getBlockIfPresent(long id, int blockNumber) {
-        return blocks.getIfPresent(Pair.of(id, blockNumber));
+        if (superseded) {
+            return null;
+        }
+        return blocks.getIfPresent(key, sequenceNumber, id, blockNumber);
     }
 
     /**
@@ -117,9 +114,31 @@ public class FDBDirectorySharedCache {
      * @param id file id
      * @param blockNumber block number in the file
      * @param block the block to be cached
+     * @return the number of blocks evicted from the shared block cache to make room
      */
-    public void putBlockIfAbsent(long id, int blockNumber, @Nonnull byte[] block) {
-        blocks.asMap().putIfAbsent(Pair.of(id, blockNumber), block);
+    public int putBlockIfAbsent(long id, int blockNumber, @Nonnull byte[] block) {
+        if (superseded) {
+            return 0;
+        }
+        return blocks.putIfAbsent(key, sequenceNumber, id, blockNumber, block);
+    }
+
+    /**
+     * Stop sharing blocks for this sequence number, which is older than the manager's current one, and remove those
+     * already in the shared block cache.
+     */
+    void supersede() {
+        superseded = true;
+        blocks.invalidate(key, sequenceNumber + 1);
+    }
+
+    /**
+     * Get the hit, miss and eviction counts of the shared block cache for this directory, across all sequence numbers.
+     * @return the block cache statistics for this directory
+     */
+    @Nonnull
+    public FDBDirectoryBlockCache.Stats getBlockCacheStats() {
+        return blocks.getStats(key);
     }
 
     public void setFieldInfosReferenceCount(final ConcurrentMap<Long, AtomicInteger> fieldInfosReferenceCount) {
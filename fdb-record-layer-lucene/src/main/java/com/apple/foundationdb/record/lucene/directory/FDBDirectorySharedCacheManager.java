@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.lucene.directory;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.lucene.search.LuceneFilterCache;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.Tuple;
@@ -38,35 +39,73 @@ import java.util.concurrent.ConcurrentHashMap;
  * any grouping key.
  * Additionally, the cache is per directory sequence number. Any transaction that changes the directory must also advance this
  * counter. Only the latest sequence number's cache is retained by this manager, although it is possible that multiple older
- * transactions continue to share one.
+ * transactions continue to share one. Once a newer sequence number is seen, the blocks of older ones are removed.
+ *
+ * The blocks of all the directories are kept in a single {@link FDBDirectoryBlockCache}, whose capacity is a number of bytes.
+ * To share blocks across the whole process, use a single manager for all record stores.
+ *
+ * Optionally, open readers of the directories are kept in a {@link FDBDirectoryReaderCache}, for the same sequence numbers,
+ * and the documents matching filter queries in each segment are kept in a {@link LuceneFilterCache}.
  */
 @API(API.Status.EXPERIMENTAL)
 @ThreadSafe
 public class FDBDirectorySharedCacheManager {
     public static final Object SHARED_CACHE_CONTEXT_KEY = new Object();
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
     @Nonnull
     private final Map<Tuple, FDBDirectorySharedCache> caches;
+    @Nonnull
+    private final FDBDirectoryBlockCache blockCache;
+    @Nullable
+    private final FDBDirectoryReaderCache readerCache;
+    @Nullable
+    private final LuceneFilterCache filterCache;
     @Nullable
     private final Subspace subspace;
-    private final int maximumSize;
     private final int concurrencyLevel;
-    private final int initialCapacity;
 
     @Nullable
     public Subspace getSubspace() {
         return subspace;
     }
 
-    public int getMaximumSize() {
-        return maximumSize;
+    public long getMaximumBytes() {
+        return blockCache.getMaximumBytes();
     }
 
-    public int getConcurrencyLevel() {
-        return concurrencyLevel;
+    public boolean isOffHeap() {
+        return blockCache.isOffHeap();
+    }
+
+    /**
+     * Get the block cache shared by all the directories of this manager.
+     * @return the shared block cache
+     */
+    @Nonnull
+    public FDBDirectoryBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Get the cache of readers shared by all the directories of this manager, if enabled.
+     * @return the shared reader cache or {@code null} if readers are not cached
+     */
+    @Nullable
+    public FDBDirectoryReaderCache getReaderCache() {
+        return readerCache;
+    }
+
+    /**
+     * Get the cache of filter query matches shared by all the searchers of this manager's directories, if enabled.
+     * @return the shared filter cache or {@code null} if filters are not cached
+     */
+    @Nullable
+    public LuceneFilterCache getFilterCache() {
+        return filterCache;
     }
 
-    public int getInitialCapacity() {
-        return initialCapacity;
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
     }
 
     /**
@@ -91,12 +130,22 @@ public class FDBDirectorySharedCacheManager {
         context.putInSessionIfAbsent(SHARED_CACHE_CONTEXT_KEY, this);
     }
 
-    protected FDBDirectorySharedCacheManager(@Nullable Subspace subspace, int maximumSize, int concurrencyLevel, int initialCapacity) {
-        this.subspace = subspace;
-        this.maximumSize = maximumSize;
-        this.concurrencyLevel = concurrencyLevel;
-        this.initialCapacity = initialCapacity;
+    protected FDBDirectorySharedCacheManager(@Nonnull Builder builder) {
+        this.subspace = builder.subspace;
+        this.concurrencyLevel = builder.concurrencyLevel;
         this.caches = new ConcurrentHashMap<>();
+        this.blockCache = new FDBDirectoryBlockCache(builder.maximumBytes, concurrencyLevel, builder.offHeap);
+        this.readerCache = builder.maximumReaders > 0 ? new FDBDirectoryReaderCache(builder.maximumReaders) : null;
+        this.filterCache = builder.maximumFilterCacheBytes > 0 ? new LuceneFilterCache(builder.maximumFilterCacheBytes) : null;
+    }
+
+    /**
+     * Get the number of bytes of blocks of the default size that hold the given number of blocks.
+     * @param maximumSize a maximum number of blocks
+     * @return the corresponding maximum number of bytes for the shared block cache
+     */
+    public static long maximumBytesForSize(int maximumSize) {
+        return (long)maximumSize * (FDBDirectory.DEFAULT_BLOCK_SIZE + FDBDirectoryBlockCache.ENTRY_OVERHEAD);
     }
 
     /**
@@ -109,8 +158,10 @@ public class FDBDirectorySharedCacheManager {
     public FDBDirectorySharedCache getCache(@Nonnull Tuple key, long sequenceNumber) {
         FDBDirectorySharedCache storedCache = caches.compute(key, (ckey, cache) -> {
             if (cache == null || cache.getSequenceNumber() < sequenceNumber) {
-                cache = new FDBDirectorySharedCache(ckey, sequenceNumber,
-                        maximumSize, concurrencyLevel, initialCapacity);
+                if (cache != null) {
+                    cache.supersede();
+                }
+                cache = new FDBDirectorySharedCache(ckey, sequenceNumber, blockCache);
             }
             return cache;
         });
@@ -130,9 +181,11 @@ public class FDBDirectorySharedCacheManager {
      */
     public static class Builder {
         private Subspace subspace;
-        private int maximumSize = 1024;
+        private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+        private boolean offHeap = false;
+        private int maximumReaders = 0;
+        private long maximumFilterCacheBytes = 0;
         private int concurrencyLevel = 16;
-        private int initialCapacity = 128;
 
         protected Builder() {
         }
@@ -142,23 +195,56 @@ public class FDBDirectorySharedCacheManager {
             return this;
         }
 
-        public Builder setMaximumSize(final int maximumSize) {
-            this.maximumSize = maximumSize;
+        /**
+         * Set the maximum number of bytes of blocks kept by the cache for all directories together.
+         * The default is {@link FDBDirectorySharedCacheManager#DEFAULT_MAXIMUM_BYTES}. To hold a number of blocks of the
+         * default size, use {@link FDBDirectorySharedCacheManager#maximumBytesForSize}.
+         * @param maximumBytes the capacity of the shared block cache
+         * @return this builder
+         */
+        public Builder setMaximumBytes(final long maximumBytes) {
+            this.maximumBytes = maximumBytes;
             return this;
         }
 
-        public Builder setConcurrencyLevel(final int concurrencyLevel) {
-            this.concurrencyLevel = concurrencyLevel;
+        /**
+         * Set whether to keep cached blocks outside of the Java heap.
+         * @param offHeap {@code true} to store blocks in direct buffers
+         * @return this builder
+         */
+        public Builder setOffHeap(final boolean offHeap) {
+            this.offHeap = offHeap;
             return this;
         }
 
-        public Builder setInitialCapacity(final int initialCapacity) {
-            this.initialCapacity = initialCapacity;
+        /**
+         * Set the maximum number of directories whose open readers are kept for use by later transactions.
+         * @param maximumReaders the capacity of the shared reader cache, or {@code 0} to not cache readers
+         * @return this builder
+         */
+        public Builder setMaximumReaders(final int maximumReaders) {
+            this.maximumReaders = maximumReaders;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of bytes of filter query matches kept for use by later searches.
+         * @param maximumFilterCacheBytes the capacity of the shared filter cache, or {@code 0} to use Lucene's default
+         * query cache
+         * @return this builder
+         */
+        public Builder setMaximumFilterCacheBytes(final long maximumFilterCacheBytes) {
+            this.maximumFilterCacheBytes = maximumFilterCacheBytes;
+            return this;
+        }
+
+        public Builder setConcurrencyLevel(final int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
             return this;
         }
 
         public FDBDirectorySharedCacheManager build() {
-            return new FDBDirectorySharedCacheManager(subspace, maximumSize, concurrencyLevel, initialCapacity);
+            return new FDBDirectorySharedCacheManager(this);
         }
     }
 }
@@ -102,8 +102,12 @@ public class FDBDirectoryWrapper implements AutoCloseable {
     }
 
     @SuppressWarnings("PMD.CloseResource")
-    public IndexReader getReader() throws IOException {
+    public DirectoryReader getReader() throws IOException {
         if (writer == null) {
+            final DirectoryReader sharedReader = getSharedReader();
+            if (sharedReader != null) {
+                return sharedReader;
+            }
             return StandardDirectoryReaderOptimization.open(directory, null, null,
                     state.context.getExecutor(),
                     state.context.getPropertyStorage().getPropertyValue(LuceneRecordContextProperties.LUCENE_OPEN_PARALLELISM));
@@ -112,6 +116,26 @@ public class FDBDirectoryWrapper implements AutoCloseable {
         }
     }
 
+    /**
+     * Get a reader from the {@link FDBDirectoryReaderCache} of the context's shared cache manager, if it has one and
+     * the directory has not been written in this transaction.
+     */
+    @Nullable
+    private DirectoryReader getSharedReader() throws IOException {
+        final FDBDirectorySharedCacheManager sharedCacheManager = FDBDirectorySharedCacheManager.forContext(state.context);
+        final FDBDirectoryReaderCache readerCache = sharedCacheManager == null ? null : sharedCacheManager.getReaderCache();
+        if (readerCache == null) {
+            return null;
+        }
+        final FDBDirectorySharedCache sharedCache = directory.getSharedCacheForReading();
+        if (sharedCache == null) {
+            return null;
+        }
+        return readerCache.getReader(directory, sharedCache.getKey(), sharedCache.getSequenceNumber(), state.context,
+                state.context.getExecutor(),
+                state.context.getPropertyStorage().getPropertyValue(LuceneRecordContextProperties.LUCENE_OPEN_PARALLELISM));
+    }
+
     @SuppressWarnings("PMD.CloseResource")
     public DirectoryReader getWriterReader(boolean flush) throws IOException {
         if (flush || writerReader == null) {
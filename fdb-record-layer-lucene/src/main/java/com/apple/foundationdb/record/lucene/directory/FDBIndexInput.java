@@ -46,6 +46,9 @@ import static com.google.common.base.Verify.verify;
 @API(API.Status.EXPERIMENTAL)
 public class FDBIndexInput extends IndexInput {
     private static final Logger LOGGER = LoggerFactory.getLogger(FDBIndexInput.class);
+    // Number of consecutive blocks read before starting to read ahead.
+    private static final int READ_AHEAD_SEQUENTIAL_THRESHOLD = 2;
+    private static final int READ_AHEAD_INITIAL_BLOCKS = 4;
     private final String fileName;
     private final FDBDirectory fdbDirectory;
     private final CompletableFuture<FDBLuceneFileReference> reference;
@@ -60,6 +63,13 @@ public class FDBIndexInput extends IndexInput {
     // These actual values are added to remove a hotspot during byte reads.
     private byte[] actualCurrentData;
     private FDBLuceneFileReference actualReference;
+    /*
+     * Adaptive read-ahead: once enough consecutive blocks have been read, the following blocks are read with a single
+     * range read. The window doubles each time the blocks read ahead are used up and halves when a seek skips over them.
+     */
+    private int sequentialBlocks = 0;
+    private int readAheadWindow = 0;
+    private int readAheadEnd = 0;
 
     /**
      * Constructor to create an FDBIndexInput from a file referenced in the metadata keyspace.
@@ -175,9 +185,11 @@ public class FDBIndexInput extends IndexInput {
     @Override
     public void seek(final long offset) throws IOException {
         if (currentBlock != getBlock(offset)) {
+            final int previousBlock = currentBlock;
             this.position = offset;
             this.currentBlock = getBlock(position);
             numberOfSeeks++;
+            resetReadAhead(previousBlock);
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace(getLogMessage("actual seek",
                         LuceneLogMessageKeys.OFFSET, offset));
@@ -261,6 +273,7 @@ public class FDBIndexInput extends IndexInput {
             if (absolutePosition() % fileReference.getBlockSize() == 0) {
                 currentBlock++;
                 numberOfSeeks++;
+                maybeReadAhead();
                 readBlock();
             }
         }
@@ -300,12 +313,63 @@ public class FDBIndexInput extends IndexInput {
                             LuceneLogMessageKeys.POSITION, position,
                             LuceneLogMessageKeys.INITIAL_OFFSET, initialOffset));
                 }
+                maybeReadAhead();
                 readBlock();
             }
         }
 
     }
 
+    /**
+     * Called when moving on to the next block. After a few consecutive blocks, read the blocks ahead of the current one
+     * with a single range read, once the current block gets into the second half of what was last read ahead.
+     */
+    private void maybeReadAhead() {
+        final int maximumBlocks = fdbDirectory.getReadAheadMaximumBlocks();
+        if (maximumBlocks <= 1) {
+            return;
+        }
+        sequentialBlocks++;
+        if (sequentialBlocks < READ_AHEAD_SEQUENTIAL_THRESHOLD || currentBlock < readAheadEnd - readAheadWindow / 2) {
+            return;
+        }
+        if (readAheadWindow == 0) {
+            readAheadWindow = Math.min(READ_AHEAD_INITIAL_BLOCKS, maximumBlocks);
+        } else if (readAheadEnd > 0) {
+            // The blocks read ahead so far have been used
+            readAheadWindow = Math.min(readAheadWindow * 2, maximumBlocks);
+        }
+        final long length = length();
+        if (length == 0) {
+            return;
+        }
+        // The last block of this input, which for a slice of a compound file is not the last block of the file
+        final int lastBlock = getBlock(length - 1);
+        final int begin = Math.max(currentBlock, readAheadEnd);
+        final int end = Math.min(lastBlock + 1, currentBlock + readAheadWindow);
+        if (end > begin) {
+            fdbDirectory.readAheadBlocks(getFileReference().getId(), begin, end - begin);
+            readAheadEnd = end;
+        }
+    }
+
+    /**
+     * Called on a seek to another block. A seek within the blocks already read ahead keeps using them. Otherwise,
+     * sequential reading starts over and, if blocks read ahead were skipped, the window shrinks.
+     */
+    private void resetReadAhead(int previousBlock) {
+        if (currentBlock > previousBlock && currentBlock < readAheadEnd) {
+            return;
+        }
+        final int wasted = readAheadEnd - previousBlock - 1;
+        if (wasted > 0) {
+            fdbDirectory.getAgilityContext().increment(LuceneEvents.Counts.LUCENE_READ_AHEAD_WASTED_BLOCKS, wasted);
+            readAheadWindow = Math.max(READ_AHEAD_SEQUENTIAL_THRESHOLD, readAheadWindow / 2);
+        }
+        sequentialBlocks = 0;
+        readAheadEnd = 0;
+    }
+
     /**
      * Retrieve the appropriate indexed block taking into account the absolute position
      * (possible splice offsets) and dividing by the block size stored in the metadata keyspace.
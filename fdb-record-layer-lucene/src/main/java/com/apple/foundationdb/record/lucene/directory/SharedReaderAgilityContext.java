@@ -0,0 +1,220 @@
+/*
+ * SharedReaderAgilityContext.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.directory;
+
+import com.apple.foundationdb.record.RecordCoreStorageException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContextConfig;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A read-only {@link AgilityContext} for the directory of a reader in the {@link FDBDirectoryReaderCache}, which
+ * outlives any one transaction.
+ *
+ * <p>
+ * Reads go through a transaction of its own, which is never committed, so that they add no conflicts to the
+ * transactions using the reader, do not fail when one of those ends, and are not counted on their timers. Every
+ * transaction that uses a cached reader lends its context here while it does, and the read transaction takes the read
+ * version of one of them: each saw the files of the reader's segments, which do not change once written. When the
+ * read transaction gets old, it is replaced by one at the read version of the most recent lender. It is closed once no
+ * transaction is using the reader and no read is in progress.
+ * </p>
+ */
+@ThreadSafe
+class SharedReaderAgilityContext implements AgilityContext {
+    // Replace the read transaction well before its read version is too old to read at.
+    private static final long READ_VERSION_MAX_AGE_MILLIS = 2000;
+
+    // The number of times each context has been lent.
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<FDBRecordContext, Integer> loans = new HashMap<>();
+    @GuardedBy("this")
+    @Nullable
+    private ReadContext current;
+
+    /**
+     * Lend a context to be used for read versions until it is returned.
+     * @param context the context of a transaction that is using a cached reader
+     */
+    synchronized void lend(@Nonnull FDBRecordContext context) {
+        loans.merge(context, 1, Integer::sum);
+    }
+
+    /**
+     * Return a context once the transaction is done with a cached reader.
+     * @param context a context given to {@link #lend}
+     */
+    synchronized void giveBack(@Nonnull FDBRecordContext context) {
+        loans.computeIfPresent(context, (ignore, count) -> count > 1 ? count - 1 : null);
+        if (loans.isEmpty() && current != null) {
+            retire(current);
+            current = null;
+        }
+    }
+
+    @GuardedBy("this")
+    @Nonnull
+    private ReadContext currentReadContext() {
+        if (current == null || current.isTooOld()) {
+            final FDBRecordContext lender = mostRecentLender();
+            if (lender != null && (current == null || lender.getReadVersion() > current.readVersion)) {
+                if (current != null) {
+                    retire(current);
+                }
+                current = new ReadContext(lender);
+            } else if (current == null) {
+                throw new RecordCoreStorageException("No open transaction to read a shared Lucene reader");
+            }
+        }
+        return current;
+    }
+
+    @GuardedBy("this")
+    @Nullable
+    private FDBRecordContext mostRecentLender() {
+        FDBRecordContext mostRecent = null;
+        for (FDBRecordContext context : loans.keySet()) {
+            if (!context.isClosed() && context.hasReadVersion() &&
+                    (mostRecent == null || context.getTransactionCreateTime() > mostRecent.getTransactionCreateTime())) {
+                mostRecent = context;
+            }
+        }
+        return mostRecent;
+    }
+
+    @Nonnull
+    private synchronized ReadContext startRead() {
+        final ReadContext readContext = currentReadContext();
+        readContext.reads++;
+        return readContext;
+    }
+
+    private synchronized void endRead(@Nonnull ReadContext readContext) {
+        readContext.reads--;
+        if (readContext.retired && readContext.reads == 0) {
+            readContext.context.close();
+        }
+    }
+
+    private static void retire(@Nonnull ReadContext readContext) {
+        readContext.retired = true;
+        if (readContext.reads == 0) {
+            readContext.context.close();
+        }
+    }
+
+    @Override
+    public <R> CompletableFuture<R> apply(final Function<FDBRecordContext, CompletableFuture<R>> function) {
+        final ReadContext readContext = startRead();
+        final CompletableFuture<R> future;
+        try {
+            future = function.apply(readContext.context);
+        } catch (RuntimeException ex) {
+            endRead(readContext);
+            throw ex;
+        }
+        return future.whenComplete((ignoreResult, ignoreError) -> endRead(readContext));
+    }
+
+    @Override
+    public <R> CompletableFuture<R> applyInRecoveryPath(final Function<FDBRecordContext, CompletableFuture<R>> function) {
+        return apply(function).exceptionally(ex -> null);
+    }
+
+    @Override
+    public void accept(final Consumer<FDBRecordContext> function) {
+        throw new RecordCoreStorageException("Shared Lucene reader cannot write");
+    }
+
+    @Override
+    public void set(final byte[] key, final byte[] value) {
+        throw new RecordCoreStorageException("Shared Lucene reader cannot write");
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is ever written.
+    }
+
+    @Override
+    public void flushAndClose() {
+        // Stays open for as long as any reader uses it.
+    }
+
+    @Override
+    public void abortAndClose() {
+        // Nothing is ever written.
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized FDBRecordContext getCallerContext() {
+        return currentReadContext().context;
+    }
+
+    @Override
+    public void setCommitCheck(final Function<FDBRecordContext, CompletableFuture<Void>> commitCheck) {
+        throw new RecordCoreStorageException("Shared Lucene reader cannot write");
+    }
+
+    /**
+     * A transaction that is only read from, at the read version of a lender.
+     */
+    private static class ReadContext {
+        @Nonnull
+        private final FDBRecordContext context;
+        private final long readVersion;
+        // The lender got its read version no earlier than it was created.
+        private final long readVersionTime;
+        private int reads;
+        private boolean retired;
+
+        ReadContext(@Nonnull FDBRecordContext lender) {
+            final FDBRecordContextConfig config = lender.getConfig().toBuilder()
+                    .setTimer(null)
+                    .setWeakReadSemantics(null)
+                    .setTransactionId(null)
+                    .build();
+            this.context = lender.getDatabase().openContext(config);
+            this.readVersion = context.setReadVersion(lender.getReadVersion());
+            this.readVersionTime = lender.getTransactionCreateTime();
+        }
+
+        boolean isTooOld() {
+            return System.currentTimeMillis() - readVersionTime > READ_VERSION_MAX_AGE_MILLIS;
+        }
+    }
+}
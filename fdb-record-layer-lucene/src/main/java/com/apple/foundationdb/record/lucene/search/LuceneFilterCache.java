@@ -0,0 +1,439 @@
+/*
+ * LuceneFilterCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.search;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.lucene.LuceneEvents;
+import com.apple.foundationdb.record.lucene.directory.FDBDirectory;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link QueryCache} of the documents matching filter queries in each segment, which can be shared by searchers in
+ * many transactions.
+ *
+ * <p>
+ * Lucene's own {@link org.apache.lucene.search.LRUQueryCache} is keyed by the core of each open segment reader, so
+ * nothing cached by one transaction's reader is found by the next one's. This cache is instead keyed by the
+ * {@linkplain org.apache.lucene.index.SegmentInfo#getId() id} of each segment, which stays the same for as long as
+ * the segment exists, plus its doc values and field infos generations, together with the query with any boost or
+ * constant score wrapping removed. Segments in an {@link FDBDirectory} are never changed once committed, and deleted
+ * documents are not part of a cached set but are removed when searching, so an entry is valid for as long as it is
+ * kept. Segments in any other directory are not cached.
+ * </p>
+ *
+ * <p>
+ * As with Lucene's cache, only queries whose scores are not needed, such as {@link org.apache.lucene.search.BooleanClause.Occur#FILTER}
+ * and {@link org.apache.lucene.search.BooleanClause.Occur#MUST_NOT} clauses and queries sorted by fields, are cached, once the
+ * {@linkplain #getCachingPolicy caching policy} has seen them often enough. Unlike Lucene's default policy, the
+ * default {@link FrequencyCachingPolicy} also caches term queries, since their postings are read from the database.
+ * The least recently used entries are evicted beyond a maximum number of bytes.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+@ThreadSafe
+public class LuceneFilterCache {
+    public static final int DEFAULT_MINIMUM_USES = 2;
+    public static final int DEFAULT_TRACKED_QUERIES = 256;
+    // The same estimate as LRUQueryCache uses for queries that are not Accountable.
+    private static final long QUERY_RAM_BYTES_USED = 1024;
+    private static final long ENTRY_RAM_BYTES_USED = 4L * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 64;
+
+    private final long maximumBytes;
+    @Nonnull
+    private final QueryCachingPolicy cachingPolicy;
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<Key, DocIdSet> cache = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long bytes;
+    @Nonnull
+    private final LongAdder hits = new LongAdder();
+    @Nonnull
+    private final LongAdder misses = new LongAdder();
+    @Nonnull
+    private final LongAdder evictions = new LongAdder();
+
+    public LuceneFilterCache(long maximumBytes) {
+        this(maximumBytes, new FrequencyCachingPolicy(DEFAULT_MINIMUM_USES, DEFAULT_TRACKED_QUERIES));
+    }
+
+    public LuceneFilterCache(long maximumBytes, @Nonnull QueryCachingPolicy cachingPolicy) {
+        this.maximumBytes = maximumBytes;
+        this.cachingPolicy = cachingPolicy;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Get the policy deciding which queries to cache, which tracks the queries used by all searchers sharing this cache.
+     * @return the caching policy
+     */
+    @Nonnull
+    public QueryCachingPolicy getCachingPolicy() {
+        return cachingPolicy;
+    }
+
+    /**
+     * Get a {@link QueryCache} for one searcher that uses this cache.
+     * @param timer a timer to count cache hits and misses in, if any
+     * @return a query cache to give to {@link org.apache.lucene.search.IndexSearcher#setQueryCache}
+     */
+    @Nonnull
+    public QueryCache forSearcher(@Nullable StoreTimer timer) {
+        // A constant score query's weight may already be the caching weight of the query it wraps.
+        return (weight, policy) -> weight instanceof CachingWeight ? weight : new CachingWeight(weight, policy, timer);
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+
+    @Nullable
+    private synchronized DocIdSet get(@Nonnull Key key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(@Nonnull Key key, @Nonnull DocIdSet docIdSet) {
+        final DocIdSet previous = cache.put(key, docIdSet);
+        if (previous != null) {
+            bytes -= entryBytes(key, previous);
+        }
+        bytes += entryBytes(key, docIdSet);
+        final var iterator = cache.entrySet().iterator();
+        while (bytes > maximumBytes && iterator.hasNext()) {
+            final Map.Entry<Key, DocIdSet> eldest = iterator.next();
+            bytes -= entryBytes(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long entryBytes(@Nonnull Key key, @Nonnull DocIdSet docIdSet) {
+        return ENTRY_RAM_BYTES_USED + key.segmentId.length + QUERY_RAM_BYTES_USED + docIdSet.ramBytesUsed();
+    }
+
+    @Nonnull
+    private static Query normalize(@Nonnull Query query) {
+        while (true) {
+            if (query instanceof BoostQuery) {
+                query = ((BoostQuery)query).getQuery();
+            } else if (query instanceof ConstantScoreQuery) {
+                query = ((ConstantScoreQuery)query).getQuery();
+            } else {
+                return query;
+            }
+        }
+    }
+
+    @Nullable
+    private static Key key(@Nonnull LeafReaderContext context, @Nonnull Query query) {
+        final LeafReader reader = FilterLeafReader.unwrap(context.reader());
+        // Only segments of an FDBDirectory keep their id for as long as they exist. Others, such as the documents of
+        // pending writes, which are built in memory for every query, would get new ids each time and only fill the cache.
+        if (!(reader instanceof SegmentReader) ||
+                !(FilterDirectory.unwrap(((SegmentReader)reader).directory()) instanceof FDBDirectory)) {
+            return null;
+        }
+        final SegmentCommitInfo segmentCommitInfo = ((SegmentReader)reader).getSegmentInfo();
+        final byte[] segmentId = segmentCommitInfo.info.getId();
+        if (segmentId == null) {
+            return null;
+        }
+        return new Key(segmentId, segmentCommitInfo.getDocValuesGen(), segmentCommitInfo.getFieldInfosGen(), normalize(query));
+    }
+
+    /**
+     * Collect all the documents matching a query in a segment, ignoring deletions, in the same representations as
+     * {@link org.apache.lucene.search.LRUQueryCache}: a bit set if dense and a roaring set otherwise.
+     */
+    @Nonnull
+    private static DocIdSet cacheImpl(@Nonnull BulkScorer scorer, int maxDoc) throws IOException {
+        if (scorer.cost() * 100 >= maxDoc) {
+            final FixedBitSet bitSet = new FixedBitSet(maxDoc);
+            final long[] cost = new long[1];
+            scorer.score(new NoScoreLeafCollector() {
+                @Override
+                public void collect(int doc) {
+                    bitSet.set(doc);
+                    cost[0]++;
+                }
+            }, null);
+            return new BitDocIdSet(bitSet, cost[0]);
+        } else {
+            final RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+            scorer.score(new NoScoreLeafCollector() {
+                @Override
+                public void collect(int doc) {
+                    builder.add(doc);
+                }
+            }, null);
+            return builder.build();
+        }
+    }
+
+    /**
+     * A caching policy that caches any query, other than those matching all or no documents, once it has been used
+     * by a minimum number of searches among the most recently used queries.
+     */
+    @ThreadSafe
+    public static class FrequencyCachingPolicy implements QueryCachingPolicy {
+        private final int minimumUses;
+        private final int trackedQueries;
+        @GuardedBy("this")
+        @Nonnull
+        private final Map<Query, Integer> uses;
+
+        public FrequencyCachingPolicy(int minimumUses, int trackedQueries) {
+            this.minimumUses = minimumUses;
+            this.trackedQueries = trackedQueries;
+            this.uses = new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Query, Integer> eldest) {
+                    return size() > FrequencyCachingPolicy.this.trackedQueries;
+                }
+            };
+        }
+
+        @Override
+        public synchronized void onUse(Query query) {
+            uses.merge(normalize(query), 1, Integer::sum);
+        }
+
+        @Override
+        public synchronized boolean shouldCache(Query query) {
+            final Query normalized = normalize(query);
+            if (normalized instanceof MatchAllDocsQuery || normalized instanceof MatchNoDocsQuery) {
+                return false;
+            }
+            return uses.getOrDefault(normalized, 0) >= minimumUses;
+        }
+    }
+
+    private abstract static class NoScoreLeafCollector implements LeafCollector {
+        @Override
+        public void setScorer(Scorable scorer) {
+            // Scores are not used.
+        }
+    }
+
+    private static final class Key {
+        @Nonnull
+        private final byte[] segmentId;
+        private final long docValuesGen;
+        private final long fieldInfosGen;
+        @Nonnull
+        private final Query query;
+        private final int hashCode;
+
+        private Key(@Nonnull byte[] segmentId, long docValuesGen, long fieldInfosGen, @Nonnull Query query) {
+            this.segmentId = segmentId;
+            this.docValuesGen = docValuesGen;
+            this.fieldInfosGen = fieldInfosGen;
+            this.query = query;
+            this.hashCode = Objects.hash(Arrays.hashCode(segmentId), docValuesGen, fieldInfosGen, query);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key that = (Key)o;
+            return docValuesGen == that.docValuesGen && fieldInfosGen == that.fieldInfosGen &&
+                   Arrays.equals(segmentId, that.segmentId) && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A weight that reads the matching documents of each segment from the cache, or computes and caches them when the
+     * policy says so.
+     */
+    private class CachingWeight extends ConstantScoreWeight {
+        @Nonnull
+        private final Weight in;
+        @Nonnull
+        private final QueryCachingPolicy policy;
+        @Nullable
+        private final StoreTimer timer;
+        @Nonnull
+        private final AtomicBoolean used = new AtomicBoolean();
+
+        CachingWeight(@Nonnull Weight in, @Nonnull QueryCachingPolicy policy, @Nullable StoreTimer timer) {
+            super(in.getQuery(), 1.0f);
+            this.in = in;
+            this.policy = policy;
+            this.timer = timer;
+        }
+
+        @Nullable
+        private DocIdSet getOrCache(@Nonnull LeafReaderContext context) throws IOException {
+            if (used.compareAndSet(false, true)) {
+                policy.onUse(getQuery());
+            }
+            if (!in.isCacheable(context)) {
+                return null;
+            }
+            final Key key = key(context, getQuery());
+            if (key == null) {
+                return null;
+            }
+            DocIdSet docIdSet = get(key);
+            if (docIdSet != null) {
+                hits.increment();
+                increment(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS);
+                return docIdSet;
+            }
+            if (!policy.shouldCache(getQuery())) {
+                return null;
+            }
+            misses.increment();
+            increment(LuceneEvents.Counts.LUCENE_FILTER_CACHE_MISSES);
+            final BulkScorer scorer = in.bulkScorer(context);
+            docIdSet = scorer == null ? DocIdSet.EMPTY : cacheImpl(scorer, context.reader().maxDoc());
+            put(key, docIdSet);
+            return docIdSet;
+        }
+
+        private void increment(@Nonnull StoreTimer.Count count) {
+            if (timer != null) {
+                timer.increment(count);
+            }
+        }
+
+        @Override
+        public Matches matches(LeafReaderContext context, int doc) throws IOException {
+            return in.matches(context, doc);
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            final DocIdSet docIdSet = getOrCache(context);
+            if (docIdSet == null) {
+                return in.scorer(context);
+            }
+            final DocIdSetIterator iterator = docIdSet.iterator();
+            if (iterator == null) {
+                return null;
+            }
+            return new ConstantScoreScorer(this, 0f, ScoreMode.COMPLETE_NO_SCORES, iterator);
+        }
+
+        @Override
+        public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
+            final DocIdSet docIdSet = getOrCache(context);
+            if (docIdSet == null) {
+                return in.bulkScorer(context);
+            }
+            final DocIdSetIterator iterator = docIdSet.iterator();
+            if (iterator == null) {
+                return null;
+            }
+            return new DefaultBulkScorer(new ConstantScoreScorer(this, 0f, ScoreMode.COMPLETE_NO_SCORES, iterator));
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+            return in.isCacheable(ctx);
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+            return in.explain(context, doc);
+        }
+    }
+}
@@ -22,6 +22,7 @@ package com.apple.foundationdb.record.lucene.search;
 
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.lucene.LuceneExceptions;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.util.pair.Pair;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -41,6 +42,7 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -70,6 +72,16 @@ public class LuceneOptimizedIndexSearcher extends IndexSearcher {
         super(r, executor);
     }
 
+    /**
+     * Use a filter cache shared with other searchers, in place of Lucene's default query cache.
+     * @param filterCache the shared cache of the documents matching filter queries
+     * @param timer a timer to count cache hits and misses in, if any
+     */
+    public void setFilterCache(@Nonnull LuceneFilterCache filterCache, @Nullable StoreTimer timer) {
+        setQueryCache(filterCache.forSearcher(timer));
+        setQueryCachingPolicy(filterCache.getCachingPolicy());
+    }
+
     /** Lower-level search API.
      *
      * <p>{@link LeafCollector#collect(int)} is called for every matching document.
@@ -26,8 +26,10 @@ import org.apache.lucene.util.IOUtils;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
@@ -92,6 +94,29 @@ public class StandardDirectoryReaderOptimization {
         }.run(commit);
     }
 
+    /**
+     * Open a reader of the latest commit in a directory, sharing the segment readers of an older reader of the same
+     * index for the segments that have not changed, like {@link DirectoryReader#openIfChanged}.
+     * Unlike that, the directory can be a different instance from that of the old reader.
+     * @param directory the directory to open
+     * @param oldReader an older reader of the same index
+     * @return an open directory reader
+     * @throws IOException if there is a problem with the underlying implementation
+     */
+    public static DirectoryReader openIfChanged(final Directory directory, final DirectoryReader oldReader) throws IOException {
+        final List<LeafReader> oldReaders = new ArrayList<>(oldReader.leaves().size());
+        for (LeafReaderContext context : oldReader.leaves()) {
+            oldReaders.add(context.reader());
+        }
+        return new SegmentInfos.FindSegmentsFile<DirectoryReader>(directory) {
+            @Override
+            protected DirectoryReader doBody(String segmentFileName) throws IOException {
+                final SegmentInfos sis = SegmentInfos.readCommit(directory, segmentFileName);
+                return StandardDirectoryReader.open(directory, sis, oldReaders, null);
+            }
+        }.run();
+    }
+
     static class SegmentReaderOpener {
         private final SegmentReader[] segmentReaders;
         private final int readerIndex;
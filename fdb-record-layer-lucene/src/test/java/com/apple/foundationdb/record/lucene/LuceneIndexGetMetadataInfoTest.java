@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -192,6 +193,54 @@ public class LuceneIndexGetMetadataInfoTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    void scheduledMerge() throws Exception {
+        final LuceneIndexTestDataModel dataModel = new LuceneIndexTestDataModel.Builder(234097L, this::getStoreBuilder, pathManager)
+                .setPartitionHighWatermark(-1) // disable partitioning
+                .setIsGrouped(false)
+                .build();
+        final long start = Instant.now().toEpochMilli();
+        for (int i = 0; i < 5; i++) {
+            try (FDBRecordContext context = openContext()) {
+                dataModel.saveRecords(10, start, context, i);
+                commit(context);
+            }
+        }
+        final Tuple groupingKey = Tuple.from();
+        final LuceneMetadataInfo.LuceneInfo before = getLuceneMetadataInfo(false, groupingKey, dataModel, null).getLuceneInfo().get(0);
+        assertEquals(5, before.getSegmentCount());
+        assertThat(before.getTotalFileSize(), Matchers.greaterThan(0L));
+
+        try (LuceneMergeScheduler scheduler = LuceneMergeScheduler.newBuilder(fdb)
+                .setTimer(timer)
+                .setMaximumConcurrentMerges(2)
+                .setMinimumSegmentCount(3)
+                .build()) {
+            final FDBRecordStore.Builder storeBuilder;
+            try (FDBRecordContext context = openContext()) {
+                storeBuilder = dataModel.schemaSetup.apply(context).asBuilder();
+            }
+            scheduler.addGroup(storeBuilder, dataModel.index, groupingKey).join();
+            assertEquals(1, timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_QUEUED));
+            scheduler.whenIdle().get(30, TimeUnit.SECONDS);
+            assertEquals(0, scheduler.getQueueDepth());
+            assertEquals(1, scheduler.getStats().getMergeCount());
+            assertEquals(0, scheduler.getStats().getFailureCount());
+            assertEquals(before.getTotalFileSize(), scheduler.getStats().getBytesMerged());
+
+            final LuceneMetadataInfo.LuceneInfo after = getLuceneMetadataInfo(false, groupingKey, dataModel, null).getLuceneInfo().get(0);
+            assertEquals(1, after.getSegmentCount());
+            assertEquals(before.getDocumentCount(), after.getDocumentCount());
+
+            // a directory with fewer segments than the minimum is not queued
+            scheduler.addGroup(storeBuilder, dataModel.index, groupingKey).join();
+            assertEquals(0, scheduler.getQueueDepth());
+            assertEquals(0, scheduler.getRunningMerges());
+            assertEquals(1, scheduler.getStats().getMergeCount());
+            assertEquals(1, timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_QUEUED));
+        }
+    }
+
     private static void assertPartitionInfosHaveCorrectFromTo(
             final List<LucenePartitionInfoProto.LucenePartitionInfo> partitionInfo) {
         for (int i = 0; i < partitionInfo.size(); i++) {
@@ -611,6 +611,40 @@ public class LuceneIndexTest extends FDBRecordStoreTestBase {
         return Stream.of(Pair.of(COMPLEX_PARTITIONED, Tuple.from(1L)), Pair.of(COMPLEX_PARTITIONED_NOGROUP, Tuple.from()));
     }
 
+    @ParameterizedTest
+    @MethodSource(value = {"dualGroupModeIndexProvider"})
+    void writeOnlyPartitionedBatchUpdate(Pair<Index, Tuple> indexAndGroupingKey) {
+        Index index = indexAndGroupingKey.getLeft();
+        Tuple groupingKey = indexAndGroupingKey.getRight();
+        final RecordLayerPropertyStorage contextProps = RecordLayerPropertyStorage.newBuilder().build();
+        Consumer<FDBRecordContext> schemaSetup = context -> rebuildIndexMetaData(context, COMPLEX_DOC, index);
+        long docGroupFieldValue = groupingKey.isEmpty() ? 0L : groupingKey.getLong(0);
+        final int docCount = 10;
+        final long start = Instant.now().toEpochMilli();
+
+        try (FDBRecordContext context = openContext(contextProps)) {
+            schemaSetup.accept(context);
+            recordStore.saveRecords(IntStream.range(0, docCount)
+                    .mapToObj(i -> createComplexDocument(1000L + i, ENGINEER_JOKE, docGroupFieldValue, start + i))
+                    .collect(Collectors.toList()), FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_EXISTS);
+            commit(context);
+        }
+        assertEquals(docCount, getPartitionMeta(index, groupingKey, contextProps, schemaSetup).get(0).getCount());
+
+        // While write-only, each record's document is deleted both as the old record and ahead of writing the new one.
+        try (FDBRecordContext context = openContext(contextProps)) {
+            schemaSetup.accept(context);
+            recordStore.markIndexWriteOnly(index).join();
+            recordStore.saveRecords(IntStream.range(0, docCount)
+                    .mapToObj(i -> createComplexDocument(1000L + i, WAYLON, docGroupFieldValue, start + i))
+                    .collect(Collectors.toList()), FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_NOT_EXISTS);
+            commit(context);
+        }
+        final List<LucenePartitionInfoProto.LucenePartitionInfo> partitionInfos = getPartitionMeta(index, groupingKey, contextProps, schemaSetup);
+        assertEquals(1, partitionInfos.size());
+        assertEquals(docCount, partitionInfos.get(0).getCount());
+    }
+
     @ParameterizedTest
     @MethodSource(value = {"dualGroupModeIndexProvider"})
     void repartitionGroupedTest(Pair<Index, Tuple> indexAndGroupingKey) throws IOException {
@@ -2294,6 +2328,211 @@ public class LuceneIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    /**
+     * test searching partitions in parallel, with limits and continuations spanning partitions.
+     */
+    @Test
+    void testPartitionedParallelSearchWithContinuation() throws ExecutionException, InterruptedException, InvalidProtocolBufferException {
+        final RecordLayerPropertyStorage.Builder storageBuilder = RecordLayerPropertyStorage.newBuilder()
+                .addProp(LuceneRecordContextProperties.LUCENE_PARTITION_SEARCH_PARALLELISM, 2)
+                .addProp(LuceneRecordContextProperties.LUCENE_INDEX_CURSOR_PAGE_SIZE, 10);
+        try (FDBRecordContext context = openContext(storageBuilder)) {
+            rebuildIndexMetaData(context, COMPLEX_DOC, COMPLEX_PARTITIONED);
+            setTimestamps();
+            createDualPartitionsWithComplexDocs(15);
+
+            Set<Tuple> primaryKeys = new HashSet<>();
+            byte[] continuation = null;
+            RecordCursorResult<IndexEntry> lastResult;
+            do {
+                RecordCursor<IndexEntry> indexEntryCursor = recordStore.scanIndex(COMPLEX_PARTITIONED, groupedTextSearch(COMPLEX_PARTITIONED, "text:propose", 1), continuation, ExecuteProperties.newBuilder().setReturnedRowLimit(7).build().asScanProperties(false));
+                for (IndexEntry entry : indexEntryCursor.asList().join()) {
+                    assertTrue(primaryKeys.add(entry.getPrimaryKey()), () -> "duplicate entry " + entry.getPrimaryKey());
+                }
+                lastResult = indexEntryCursor.onNext().get();
+                if (lastResult.getNoNextReason() == RecordCursor.NoNextReason.RETURN_LIMIT_REACHED) {
+                    continuation = lastResult.getContinuation().toBytes();
+                    // both partitions are in every continuation
+                    assertEquals(2, LuceneContinuationProto.LuceneIndexContinuation.parseFrom(continuation).getPartitionPositionsCount());
+                }
+            } while (lastResult.getNoNextReason() == RecordCursor.NoNextReason.RETURN_LIMIT_REACHED);
+            assertEquals(RecordCursor.NoNextReason.SOURCE_EXHAUSTED, lastResult.getNoNextReason());
+            assertEquals(makeKeyTuples(1L, 0, 14, 1000, 1014), primaryKeys);
+
+            validatePartitionSegmentIntegrity(COMPLEX_PARTITIONED, context, 1, 0, 1);
+        }
+    }
+
+    /**
+     * test that searching partitions in parallel returns the same results, in the same order, as searching them one
+     * after another and merging those results by score or by sort, across continuations.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void testPartitionedParallelSearchMatchesSequential(boolean sorted) {
+        final Index index = new Index("Complex$partitioned_sorted_by_score",
+                concat(function(LuceneFunctionNames.LUCENE_TEXT, field("text")),
+                        function(LuceneFunctionNames.LUCENE_SORTED, field("timestamp")),
+                        function(LuceneFunctionNames.LUCENE_SORTED, field("score"))).groupBy(field("group")),
+                LuceneIndexTypes.LUCENE,
+                Map.of(IndexOptions.TEXT_TOKENIZER_NAME_OPTION, AllSuffixesTextTokenizer.NAME,
+                        INDEX_PARTITION_BY_FIELD_NAME, "timestamp",
+                        INDEX_PARTITION_HIGH_WATERMARK, "100"));
+        final Sort sort = sorted ? new Sort(new SortField("score", SortField.Type.INT, true)) : null;
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, COMPLEX_DOC, index);
+            setTimestamps();
+            createPartitionMetadata(index, Tuple.from(1L), 0, timestamp60DaysAgo, timestamp30DaysAgo);
+            createPartitionMetadata(index, Tuple.from(1L), 1, timestamp29DaysAgo, yesterday);
+            // the number of matching terms varies the relevance score, and the score field has ties within and
+            // across partitions
+            for (int i = 0; i < 15; i++) {
+                final String text = String.join(" ", Collections.nCopies(i % 3, "propose")) + " " + ENGINEER_JOKE;
+                recordStore.saveRecord(createComplexDocument(i, text, 1, timestamp60DaysAgo + i).toBuilder().setScore(i % 4).build());
+                recordStore.saveRecord(createComplexDocument(1000L + i, text, 1, timestamp29DaysAgo + i).toBuilder().setScore((i + 2) % 4).build());
+            }
+            commit(context);
+        }
+
+        final List<IndexEntry> sequential = scanPartitionedIndex(index, sort, 1, Integer.MAX_VALUE);
+        assertEquals(makeKeyTuples(1L, 0, 14, 1000, 1014), sequential.stream().map(IndexEntry::getPrimaryKey).collect(Collectors.toSet()));
+        // the sequential search returns each partition in order, newest first, so a stable sort of its results
+        // merges them as the parallel search does, breaking ties by partition and then by position within it
+        final List<IndexEntry> expected = new ArrayList<>(sequential);
+        if (sorted) {
+            expected.sort(Comparator.comparing((IndexEntry entry) -> (Integer)((FieldDoc)((LuceneRecordCursor.ScoreDocIndexEntry)entry).getScoreDoc()).fields[0]).reversed());
+        } else {
+            expected.sort(Comparator.comparing((IndexEntry entry) -> ((LuceneRecordCursor.ScoreDocIndexEntry)entry).getScoreDoc().score).reversed());
+        }
+        final List<Tuple> expectedKeys = expected.stream().map(IndexEntry::getPrimaryKey).collect(Collectors.toList());
+        assertNotEquals(sequential.stream().map(IndexEntry::getPrimaryKey).collect(Collectors.toList()), expectedKeys);
+
+        assertEquals(expectedKeys, scanPartitionedIndex(index, sort, 2, Integer.MAX_VALUE).stream()
+                .map(IndexEntry::getPrimaryKey).collect(Collectors.toList()));
+        for (int limit : List.of(1, 4, 7)) {
+            assertEquals(expectedKeys, scanPartitionedIndex(index, sort, 2, limit).stream()
+                    .map(IndexEntry::getPrimaryKey).collect(Collectors.toList()), () -> "limit " + limit);
+        }
+    }
+
+    @Nonnull
+    private List<IndexEntry> scanPartitionedIndex(@Nonnull Index index, @Nullable Sort sort, int parallelism, int limit) {
+        final RecordLayerPropertyStorage.Builder storageBuilder = RecordLayerPropertyStorage.newBuilder()
+                .addProp(LuceneRecordContextProperties.LUCENE_PARTITION_SEARCH_PARALLELISM, parallelism)
+                .addProp(LuceneRecordContextProperties.LUCENE_INDEX_CURSOR_PAGE_SIZE, 5);
+        final List<IndexEntry> entries = new ArrayList<>();
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext(storageBuilder)) {
+                rebuildIndexMetaData(context, COMPLEX_DOC, index);
+                try (RecordCursor<IndexEntry> cursor = recordStore.scanIndex(index, groupedSortedTextSearch(index, "text:propose", sort, 1),
+                        continuation, ExecuteProperties.newBuilder().setReturnedRowLimit(limit).build().asScanProperties(false))) {
+                    RecordCursorResult<IndexEntry> result;
+                    while ((result = cursor.getNext()).hasNext()) {
+                        entries.add(result.get());
+                    }
+                    continuation = result.getContinuation().toBytes();
+                }
+            }
+        } while (continuation != null);
+        return entries;
+    }
+
+    /**
+     * test that queued writes are found by queries before and after they are drained to the directory.
+     */
+    @Test
+    void testPendingWritesQueue() {
+        final Index index = LuceneIndexTestUtils.simpleTextSuffixesIndex(options ->
+                options.put(LuceneIndexOptions.PENDING_WRITES_QUEUE_ENABLED, "true"));
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            recordStore.getIndexDeferredMaintenanceControl().setAutoMergeDuringCommit(false);
+            recordStore.saveRecord(createSimpleDocument(1623L, ENGINEER_JOKE, 2));
+            recordStore.saveRecord(createSimpleDocument(1624L, ENGINEER_JOKE, 2));
+            recordStore.saveRecord(createSimpleDocument(1547L, WAYLON, 1));
+            // nothing has been written to the directory yet
+            assertEquals(0, timer.getCount(LuceneEvents.Events.LUCENE_ADD_DOCUMENT));
+            assertEquals(3, timer.getCount(LuceneEvents.Counts.LUCENE_PENDING_WRITES_QUEUED));
+            assertIndexEntryPrimaryKeys(Set.of(1623L, 1624L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "Vision"), null, ScanProperties.FORWARD_SCAN));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            final LuceneIndexMaintainer indexMaintainer = (LuceneIndexMaintainer)recordStore.getIndexMaintainer(index);
+            assertEquals(3, indexMaintainer.drainPendingWrites(10).join());
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            recordStore.getIndexDeferredMaintenanceControl().setAutoMergeDuringCommit(false);
+            recordStore.deleteRecord(Tuple.from(1623L));
+            recordStore.saveRecord(createSimpleDocument(1624L, WAYLON, 2));
+            recordStore.saveRecord(createSimpleDocument(1547L, ENGINEER_JOKE, 1));
+            // the drained documents of changed records are hidden
+            assertIndexEntryPrimaryKeys(Set.of(1547L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "Vision"), null, ScanProperties.FORWARD_SCAN));
+            assertIndexEntryPrimaryKeys(Set.of(1624L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "things"), null, ScanProperties.FORWARD_SCAN));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            ((LuceneIndexMaintainer)recordStore.getIndexMaintainer(index)).drainPendingWrites().join();
+        }
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            timer.reset();
+            assertEquals(0, ((LuceneIndexMaintainer)recordStore.getIndexMaintainer(index)).drainPendingWrites(10).join());
+            assertIndexEntryPrimaryKeys(Set.of(1547L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "Vision"), null, ScanProperties.FORWARD_SCAN));
+            assertIndexEntryPrimaryKeys(Set.of(1624L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "things"), null, ScanProperties.FORWARD_SCAN));
+            assertEquals(0, timer.getCount(LuceneEvents.Counts.LUCENE_PENDING_WRITES_READ));
+        }
+    }
+
+    /**
+     * test that the queued writes are read once per cursor and that updates write directly once the queue is full.
+     */
+    @Test
+    void testPendingWritesQueueLimits() {
+        final Index index = LuceneIndexTestUtils.simpleTextSuffixesIndex(options ->
+                options.put(LuceneIndexOptions.PENDING_WRITES_QUEUE_ENABLED, "true"));
+        final RecordLayerPropertyStorage.Builder pageSizeOne = RecordLayerPropertyStorage.newBuilder()
+                .addProp(LuceneRecordContextProperties.LUCENE_INDEX_CURSOR_PAGE_SIZE, 1);
+        try (FDBRecordContext context = openContext(pageSizeOne)) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            recordStore.getIndexDeferredMaintenanceControl().setAutoMergeDuringCommit(false);
+            recordStore.saveRecord(createSimpleDocument(1623L, ENGINEER_JOKE, 2));
+            recordStore.saveRecord(createSimpleDocument(1624L, ENGINEER_JOKE, 2));
+            recordStore.saveRecord(createSimpleDocument(1547L, WAYLON, 1));
+            assertEquals(3, timer.getCount(LuceneEvents.Counts.LUCENE_PENDING_WRITES_QUEUED));
+            // two pages, but the pending writes are only read for the first one
+            assertIndexEntryPrimaryKeys(Set.of(1623L, 1624L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "Vision"), null, ScanProperties.FORWARD_SCAN));
+            assertEquals(3, timer.getCount(LuceneEvents.Counts.LUCENE_PENDING_WRITES_READ));
+            commit(context);
+        }
+        final RecordLayerPropertyStorage.Builder fullQueue = RecordLayerPropertyStorage.newBuilder()
+                .addProp(LuceneRecordContextProperties.LUCENE_PENDING_WRITES_MAX_QUEUE_BYTES, 0L);
+        try (FDBRecordContext context = openContext(fullQueue)) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            recordStore.getIndexDeferredMaintenanceControl().setAutoMergeDuringCommit(false);
+            timer.reset();
+            recordStore.saveRecord(createSimpleDocument(1625L, ENGINEER_JOKE, 2));
+            assertEquals(0, timer.getCount(LuceneEvents.Counts.LUCENE_PENDING_WRITES_QUEUED));
+            assertEquals(1, timer.getCount(LuceneEvents.Events.LUCENE_ADD_DOCUMENT));
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            assertIndexEntryPrimaryKeys(Set.of(1623L, 1624L, 1625L),
+                    recordStore.scanIndex(index, fullTextSearch(index, "Vision"), null, ScanProperties.FORWARD_SCAN));
+        }
+    }
+
     private Set<Tuple> makeKeyTuples(long group, int... ranges) {
         int[] rangeList = Arrays.stream(ranges).toArray();
         if (rangeList.length == 0 || rangeList.length % 2 == 1) {
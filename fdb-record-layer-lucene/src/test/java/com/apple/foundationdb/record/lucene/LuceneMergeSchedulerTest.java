@@ -0,0 +1,218 @@
+/*
+ * LuceneMergeSchedulerTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene;
+
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreTestBase;
+import com.apple.foundationdb.tuple.Tuple;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the queueing, concurrency and rate limits of {@link LuceneMergeScheduler}, using merges that finish when
+ * the test completes them.
+ */
+public class LuceneMergeSchedulerTest extends FDBRecordStoreTestBase {
+    private static final Index INDEX = new Index("Simple$text", Key.Expressions.field("text"), LuceneIndexTypes.LUCENE);
+
+    @Test
+    void mostSegmentsFirst() {
+        try (ControlledScheduler scheduler = new ControlledScheduler(LuceneMergeScheduler.newBuilder(fdb)
+                .setTimer(timer)
+                .setMaximumConcurrentMerges(1))) {
+            // the first directory starts at once, holding the only merge
+            queue(scheduler, 0, 3, 100);
+            queue(scheduler, 1, 5, 100);
+            queue(scheduler, 2, 8, 100);
+            queue(scheduler, 3, 8, 10);
+            queue(scheduler, 4, 2, 100);
+            assertEquals(List.of(0), scheduler.getStarted());
+            assertEquals(4, scheduler.getQueueDepth());
+
+            for (int partitionId : List.of(0, 3, 2, 1, 4)) {
+                scheduler.finish(partitionId);
+            }
+            assertEquals(List.of(0, 3, 2, 1, 4), scheduler.getStarted());
+            assertTrue(scheduler.whenIdle().isDone());
+            assertEquals(5, scheduler.getStats().getMergeCount());
+            assertEquals(5, timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_QUEUED));
+        }
+    }
+
+    @Test
+    void requeueUpdatesDebt() {
+        try (ControlledScheduler scheduler = new ControlledScheduler(LuceneMergeScheduler.newBuilder(fdb)
+                .setTimer(timer)
+                .setMaximumConcurrentMerges(1))) {
+            queue(scheduler, 0, 3, 100);
+            queue(scheduler, 1, 5, 100);
+            queue(scheduler, 2, 4, 100);
+            // reporting a directory again replaces its queued debt
+            queue(scheduler, 1, 2, 100);
+            assertEquals(2, scheduler.getQueueDepth());
+
+            scheduler.finish(0);
+            scheduler.finish(2);
+            scheduler.finish(1);
+            assertEquals(List.of(0, 2, 1), scheduler.getStarted());
+            assertEquals(300, scheduler.getStats().getBytesMerged());
+        }
+    }
+
+    @Test
+    void maximumConcurrentMerges() {
+        try (ControlledScheduler scheduler = new ControlledScheduler(LuceneMergeScheduler.newBuilder(fdb)
+                .setTimer(timer)
+                .setMaximumConcurrentMerges(2))) {
+            for (int partitionId = 0; partitionId < 5; partitionId++) {
+                queue(scheduler, partitionId, 10 - partitionId, 100);
+            }
+            assertEquals(List.of(0, 1), scheduler.getStarted());
+            assertEquals(2, scheduler.getRunningMerges());
+            assertEquals(3, scheduler.getQueueDepth());
+
+            final CompletableFuture<Void> idle = scheduler.whenIdle();
+            scheduler.finish(1);
+            assertEquals(List.of(0, 1, 2), scheduler.getStarted());
+            assertEquals(2, scheduler.getRunningMerges());
+            scheduler.fail(0);
+            assertEquals(List.of(0, 1, 2, 3), scheduler.getStarted());
+            assertEquals(2, scheduler.getRunningMerges());
+            scheduler.finish(2);
+            scheduler.finish(3);
+            assertEquals(1, scheduler.getRunningMerges());
+            assertFalse(idle.isDone());
+            scheduler.finish(4);
+            assertEquals(0, scheduler.getRunningMerges());
+            assertTrue(idle.isDone());
+
+            assertEquals(4, scheduler.getStats().getMergeCount());
+            assertEquals(1, scheduler.getStats().getFailureCount());
+            assertEquals(5, timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_QUEUED));
+            // sampled on each of the five queueings and each of the five starts
+            assertEquals(10, timer.getCount(LuceneEvents.SizeEvents.LUCENE_SCHEDULED_MERGE_QUEUE_DEPTH));
+        }
+    }
+
+    @Test
+    void maximumBytesPerSecond() throws Exception {
+        final AtomicLong nanoTime = new AtomicLong(0L);
+        try (ControlledScheduler scheduler = new ControlledScheduler(LuceneMergeScheduler.newBuilder(fdb)
+                .setTimer(timer)
+                .setMaximumConcurrentMerges(10)
+                .setMaximumBytesPerSecond(1000)
+                .setNanoTime(nanoTime::get))) {
+            // the first directory uses the whole budget
+            queue(scheduler, 0, 5, 1000);
+            queue(scheduler, 1, 4, 500);
+            assertEquals(List.of(0), scheduler.getStarted());
+            assertEquals(1, scheduler.getQueueDepth());
+            final int throttled = timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_THROTTLED);
+            assertThat(throttled, Matchers.greaterThanOrEqualTo(1));
+
+            // finishing a merge does not refill the budget, only time does, and not enough has passed yet
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+            scheduler.finish(0);
+            assertEquals(List.of(0), scheduler.getStarted());
+            assertEquals(1, scheduler.getQueueDepth());
+            assertThat(timer.getCount(LuceneEvents.Counts.LUCENE_SCHEDULED_MERGES_THROTTLED), Matchers.greaterThan(throttled));
+
+            // half a second refills half the budget, which the pending retry then takes
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            scheduler.started(1).get(30, TimeUnit.SECONDS);
+            assertEquals(List.of(0, 1), scheduler.getStarted());
+            assertEquals(0, scheduler.getQueueDepth());
+
+            final CompletableFuture<Void> idle = scheduler.whenIdle();
+            assertFalse(idle.isDone());
+            scheduler.finish(1);
+            assertTrue(idle.isDone());
+            assertEquals(1500, scheduler.getStats().getBytesMerged());
+        }
+    }
+
+    private static void queue(@Nonnull LuceneMergeScheduler scheduler, int partitionId, int segmentCount, long totalFileSize) {
+        scheduler.queueDirectory(FDBRecordStore.newBuilder(), INDEX, Tuple.from(), partitionId, segmentCount, totalFileSize);
+    }
+
+    private static class ControlledScheduler extends LuceneMergeScheduler {
+        private final List<Integer> started = new ArrayList<>();
+        private final Map<Integer, CompletableFuture<Void>> starts = new ConcurrentHashMap<>();
+        private final Map<Integer, CompletableFuture<Void>> merges = new ConcurrentHashMap<>();
+
+        ControlledScheduler(@Nonnull Builder builder) {
+            super(builder);
+        }
+
+        @Nonnull
+        @Override
+        CompletableFuture<Void> runMerge(@Nonnull FDBRecordStore.Builder storeBuilder, @Nonnull Index index,
+                                         @Nonnull Tuple groupingKey, @Nullable Integer partitionId) {
+            synchronized (started) {
+                started.add(partitionId);
+            }
+            started(partitionId).complete(null);
+            return merge(partitionId);
+        }
+
+        @Nonnull
+        List<Integer> getStarted() {
+            synchronized (started) {
+                return new ArrayList<>(started);
+            }
+        }
+
+        @Nonnull
+        CompletableFuture<Void> started(int partitionId) {
+            return starts.computeIfAbsent(partitionId, ignore -> new CompletableFuture<>());
+        }
+
+        @Nonnull
+        private CompletableFuture<Void> merge(int partitionId) {
+            return merges.computeIfAbsent(partitionId, ignore -> new CompletableFuture<>());
+        }
+
+        void finish(int partitionId) {
+            merge(partitionId).complete(null);
+        }
+
+        void fail(int partitionId) {
+            merge(partitionId).completeExceptionally(new IllegalStateException("merge failed"));
+        }
+    }
+}
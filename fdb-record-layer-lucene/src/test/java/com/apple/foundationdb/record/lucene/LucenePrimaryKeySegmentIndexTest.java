@@ -21,10 +21,13 @@
 package com.apple.foundationdb.record.lucene;
 
 import com.apple.foundationdb.record.lucene.directory.AgilityContext;
+import com.apple.foundationdb.record.lucene.directory.FDBDirectoryManager;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreTestBase;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.record.provider.foundationdb.OnlineIndexer;
 import com.apple.foundationdb.record.provider.foundationdb.properties.RecordLayerPropertyStorage;
 import com.apple.foundationdb.record.query.plan.QueryPlanner;
@@ -39,12 +42,15 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -182,6 +188,46 @@ public class LucenePrimaryKeySegmentIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @ParameterizedTest
+    @EnumSource(Version.class)
+    void updateDocumentsInBatch(Version version) throws Exception {
+        Index index = version.simpleIndex;
+
+        final Set<Tuple> primaryKeys = createDocuments(index, 5);
+        idCounter -= 5;
+
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            if (version.enabled) {
+                final FDBDirectoryManager directoryManager = FDBDirectoryManager.getManager(
+                        new IndexMaintainerState(recordStore, index, recordStore.getIndexMaintenanceFilter()));
+                final LucenePrimaryKeySegmentIndex segmentIndex = Objects.requireNonNull(
+                        directoryManager.getDirectory(Tuple.from(), null).getPrimaryKeySegmentIndex());
+                final List<Tuple> lookups = new ArrayList<>(primaryKeys);
+                lookups.add(Tuple.from(idCounter + 100));
+                assertEquals(primaryKeys,
+                        segmentIndex.findDocuments(directoryManager.getDirectoryReader(Tuple.from(), null), lookups).keySet());
+            }
+            recordStore.saveRecords(IntStream.range(0, 5).mapToObj(i ->
+                            createSimpleDocument(idCounter++, "Document " + (textCounter++), 2))
+                    .collect(Collectors.toList()), FDBRecordStoreBase.RecordExistenceCheck.ERROR_IF_NOT_EXISTS);
+            context.commit();
+        }
+
+        if (version.enabled) {
+            assertEquals(0, timer.getCount(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY));
+            assertEquals(5, timer.getCount(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_PRIMARY_KEY));
+        } else {
+            assertEquals(5, timer.getCount(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_QUERY));
+            assertEquals(0, timer.getCount(LuceneEvents.Events.LUCENE_DELETE_DOCUMENT_BY_PRIMARY_KEY));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            rebuildIndexMetaData(context, SIMPLE_DOC, index);
+            LuceneIndexTestValidator.validatePrimaryKeySegmentIndex(recordStore, index, Tuple.from(), null, primaryKeys, false);
+        }
+    }
+
     @ParameterizedTest
     @EnumSource(Version.class)
     void deleteDocument(Version version) throws Exception {
@@ -38,6 +38,7 @@ import com.apple.foundationdb.record.query.expressions.Query;
 import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.plan.PlannableIndexTypes;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -232,4 +233,92 @@ public class LuceneSharedCacheTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    @Test
+    void sharedReaders() throws Exception {
+        initializeRecords();
+        final FDBDirectorySharedCacheManager readerCacheManager = FDBDirectorySharedCacheManager.newBuilder()
+                .setMaximumReaders(10)
+                .build();
+        final QueryComponent filter = Query.and(
+                Query.field("group").equalsParameter("g"),
+                new LuceneQueryComponent("text:mutiny", List.of("text")));
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType(TextIndexTestUtils.SIMPLE_DOC)
+                .setFilter(filter)
+                .build();
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            readerCacheManager.setForContext(context);
+            timer.reset();
+            assertEquals(Set.of(4L), groupQueryForPrimaryKeys(query, 0));
+            assertThat("reader opened", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_MISSES), equalTo(1));
+            assertThat("no reader reused", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_HITS), equalTo(0));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            readerCacheManager.setForContext(context);
+            timer.reset();
+            assertEquals(Set.of(4L), groupQueryForPrimaryKeys(query, 0));
+            assertThat("no reader opened", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_MISSES), equalTo(0));
+            assertThat("reader reused", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_HITS), equalTo(1));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            TextIndexTestUtils.toSimpleDocuments(List.of(
+                    TextSamples.ROMEO_AND_JULIET_PROLOGUE
+            )).forEach(recordStore::saveRecord);
+            recordStore.deleteRecord(Tuple.from(4L));
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            readerCacheManager.setForContext(context);
+            timer.reset();
+            assertEquals(Set.of(0L), groupQueryForPrimaryKeys(query, 0));
+            assertThat("reader refreshed", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_REFRESHES), equalTo(1));
+            assertThat("no reader reused", timer.getCount(LuceneEvents.Counts.LUCENE_READER_CACHE_HITS), equalTo(0));
+        }
+        assertEquals(1, readerCacheManager.getReaderCache().size());
+    }
+
+    @Test
+    void filterCacheAcrossTransactions() throws Exception {
+        initializeRecords();
+        final FDBDirectorySharedCacheManager filterCacheManager = FDBDirectorySharedCacheManager.newBuilder()
+                .setMaximumFilterCacheBytes(1024 * 1024)
+                .build();
+        // the prohibited clause does not need scores, so its matches can be cached
+        final QueryComponent filter = Query.and(
+                Query.field("group").equalsParameter("g"),
+                new LuceneQueryComponent("text:traffic -text:mutiny", List.of("text")));
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType(TextIndexTestUtils.SIMPLE_DOC)
+                .setFilter(filter)
+                .build();
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            filterCacheManager.setForContext(context);
+            timer.reset();
+            // the caching policy only caches a filter once it has been used before
+            assertEquals(Set.of(6L), groupQueryForPrimaryKeys(query, 0));
+            assertEquals(Set.of(6L), groupQueryForPrimaryKeys(query, 0));
+            assertThat("filter cached", timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_MISSES), greaterThan(0));
+            assertThat("no hits", timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS), equalTo(0));
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            filterCacheManager.setForContext(context);
+            timer.reset();
+            assertEquals(Set.of(6L), groupQueryForPrimaryKeys(query, 0));
+            assertThat("filter found", timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS), greaterThan(0));
+            assertThat("no misses", timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_MISSES), equalTo(0));
+        }
+    }
+
 }
@@ -0,0 +1,186 @@
+/*
+ * FDBDirectoryBlockCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.directory;
+
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link FDBDirectoryBlockCache}.
+ */
+class FDBDirectoryBlockCacheTest {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCK_WEIGHT = BLOCK_SIZE + FDBDirectoryBlockCache.ENTRY_OVERHEAD;
+    private static final Tuple SMALL_INDEX = Tuple.from("small");
+    private static final Tuple LARGE_INDEX = Tuple.from("large");
+
+    private static byte[] block(long id, int blockNumber) {
+        final byte[] block = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            block[i] = (byte)(id * 31 + blockNumber + i);
+        }
+        return block;
+    }
+
+    @ParameterizedTest(name = "getAndPut [offHeap = {0}]")
+    @ValueSource(booleans = {false, true})
+    void getAndPut(boolean offHeap) {
+        final FDBDirectoryBlockCache cache = new FDBDirectoryBlockCache(100L * BLOCK_WEIGHT, 1, offHeap);
+        assertNull(cache.getIfPresent(SMALL_INDEX, 1, 1, 0));
+        assertEquals(0, cache.putIfAbsent(SMALL_INDEX, 1, 1, 0, block(1, 0)));
+        assertArrayEquals(block(1, 0), cache.getIfPresent(SMALL_INDEX, 1, 1, 0));
+        // A different sequence number is a different block
+        assertNull(cache.getIfPresent(SMALL_INDEX, 2, 1, 0));
+        assertEquals(BLOCK_WEIGHT, cache.getWeightedSize());
+        final FDBDirectoryBlockCache.Stats stats = cache.getStats(SMALL_INDEX);
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+    }
+
+    @ParameterizedTest(name = "limitedByBytes [concurrencyLevel = {0}]")
+    @ValueSource(ints = {1, 4})
+    void limitedByBytes(int concurrencyLevel) {
+        final long maximumBytes = 64L * BLOCK_WEIGHT;
+        final FDBDirectoryBlockCache cache = new FDBDirectoryBlockCache(maximumBytes, concurrencyLevel, false);
+        int evicted = 0;
+        for (int i = 0; i < 1000; i++) {
+            evicted += cache.putIfAbsent(LARGE_INDEX, 1, 1, i, block(1, i));
+            assertTrue(cache.getWeightedSize() <= maximumBytes);
+        }
+        assertEquals(1000 - cache.size(), evicted);
+        assertEquals(evicted, cache.getStats(LARGE_INDEX).getEvictionCount());
+    }
+
+    @ParameterizedTest(name = "scanResistant [offHeap = {0}]")
+    @ValueSource(booleans = {false, true})
+    void scanResistant(boolean offHeap) {
+        final FDBDirectoryBlockCache cache = new FDBDirectoryBlockCache(100L * BLOCK_WEIGHT, 1, offHeap);
+        // Blocks of a small index that are read repeatedly.
+        for (int i = 0; i < 20; i++) {
+            cache.putIfAbsent(SMALL_INDEX, 1, 7, i, block(7, i));
+            assertNotNull(cache.getIfPresent(SMALL_INDEX, 1, 7, i));
+        }
+        // A large index reads many more blocks than fit, once each.
+        for (int i = 0; i < 1000; i++) {
+            if (cache.getIfPresent(LARGE_INDEX, 1, 9, i) == null) {
+                cache.putIfAbsent(LARGE_INDEX, 1, 9, i, block(9, i));
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(block(7, i), cache.getIfPresent(SMALL_INDEX, 1, 7, i));
+        }
+        assertEquals(0, cache.getStats(SMALL_INDEX).getEvictionCount());
+        assertEquals(1000, cache.getStats(LARGE_INDEX).getMissCount());
+        assertTrue(cache.getStats(LARGE_INDEX).getEvictionCount() > 0);
+    }
+
+    @ParameterizedTest(name = "protectedSegmentIsBounded [offHeap = {0}]")
+    @ValueSource(booleans = {false, true})
+    void protectedSegmentIsBounded(boolean offHeap) {
+        final FDBDirectoryBlockCache cache = new FDBDirectoryBlockCache(10L * BLOCK_WEIGHT, 1, offHeap);
+        // Every block read twice, so all of them want to be protected.
+        for (int i = 0; i < 30; i++) {
+            cache.putIfAbsent(SMALL_INDEX, 1, 1, i, block(1, i));
+            cache.getIfPresent(SMALL_INDEX, 1, 1, i);
+        }
+        assertEquals(10, cache.size());
+        // The most recently promoted blocks are still there.
+        assertArrayEquals(block(1, 29), cache.getIfPresent(SMALL_INDEX, 1, 1, 29));
+        // A new block can still be added and read back.
+        cache.putIfAbsent(SMALL_INDEX, 1, 2, 0, block(2, 0));
+        assertArrayEquals(block(2, 0), cache.getIfPresent(SMALL_INDEX, 1, 2, 0));
+    }
+
+    @ParameterizedTest(name = "invalidateOlderSequenceNumbers [concurrencyLevel = {0}]")
+    @ValueSource(ints = {1, 4})
+    void invalidateOlderSequenceNumbers(int concurrencyLevel) {
+        final FDBDirectoryBlockCache cache = new FDBDirectoryBlockCache(100L * BLOCK_WEIGHT, concurrencyLevel, false);
+        for (int i = 0; i < 10; i++) {
+            cache.putIfAbsent(SMALL_INDEX, 1, 1, i, block(1, i));
+            cache.putIfAbsent(SMALL_INDEX, 2, 1, i, block(1, i));
+            cache.putIfAbsent(LARGE_INDEX, 1, 1, i, block(1, i));
+        }
+        // Some of the old blocks have been promoted.
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.getIfPresent(SMALL_INDEX, 1, 1, i));
+        }
+        assertEquals(30, cache.size());
+
+        assertEquals(10, cache.invalidate(SMALL_INDEX, 2));
+        assertEquals(20, cache.size());
+        assertEquals(20L * BLOCK_WEIGHT, cache.getWeightedSize());
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.getIfPresent(SMALL_INDEX, 1, 1, i));
+            assertArrayEquals(block(1, i), cache.getIfPresent(SMALL_INDEX, 2, 1, i));
+            assertArrayEquals(block(1, i), cache.getIfPresent(LARGE_INDEX, 1, 1, i));
+        }
+        assertEquals(0, cache.invalidate(SMALL_INDEX, 2));
+        // Removed blocks are not counted as evictions.
+        assertEquals(0, cache.getStats(SMALL_INDEX).getEvictionCount());
+    }
+
+    @Test
+    void managerInvalidatesSupersededCaches() {
+        final FDBDirectorySharedCacheManager manager = FDBDirectorySharedCacheManager.newBuilder()
+                .setMaximumBytes(100L * BLOCK_WEIGHT)
+                .setConcurrencyLevel(1)
+                .build();
+        final FDBDirectorySharedCache oldCache = manager.getCache(SMALL_INDEX, 1);
+        assertNotNull(oldCache);
+        for (int i = 0; i < 10; i++) {
+            oldCache.putBlockIfAbsent(1, i, block(1, i));
+        }
+        assertEquals(10, manager.getBlockCache().size());
+
+        final FDBDirectorySharedCache newCache = manager.getCache(SMALL_INDEX, 2);
+        assertNotNull(newCache);
+        assertEquals(0, manager.getBlockCache().size());
+        assertNull(manager.getCache(SMALL_INDEX, 1));
+        // A transaction still using the old sequence number no longer shares blocks.
+        oldCache.putBlockIfAbsent(1, 0, block(1, 0));
+        assertNull(oldCache.getBlockIfPresent(1, 0));
+        assertEquals(0, manager.getBlockCache().size());
+
+        newCache.putBlockIfAbsent(1, 0, block(1, 0));
+        assertArrayEquals(block(1, 0), newCache.getBlockIfPresent(1, 0));
+    }
+
+    @Test
+    void maximumBytesFromBuilder() {
+        assertEquals(FDBDirectorySharedCacheManager.DEFAULT_MAXIMUM_BYTES,
+                FDBDirectorySharedCacheManager.newBuilder().build().getMaximumBytes());
+        assertEquals(1024L * 1024,
+                FDBDirectorySharedCacheManager.newBuilder().setMaximumBytes(1024L * 1024).build().getMaximumBytes());
+        assertEquals(100L * (FDBDirectory.DEFAULT_BLOCK_SIZE + FDBDirectoryBlockCache.ENTRY_OVERHEAD),
+                FDBDirectorySharedCacheManager.newBuilder()
+                        .setMaximumBytes(FDBDirectorySharedCacheManager.maximumBytesForSize(100))
+                        .build().getMaximumBytes());
+    }
+}
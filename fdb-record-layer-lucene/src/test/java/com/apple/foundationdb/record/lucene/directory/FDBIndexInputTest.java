@@ -20,14 +20,23 @@
 
 package com.apple.foundationdb.record.lucene.directory;
 
+import com.apple.foundationdb.record.lucene.LuceneEvents;
+import com.apple.foundationdb.record.lucene.LuceneRecordContextProperties;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContextConfig;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.properties.RecordLayerPropertyStorage;
 import com.apple.test.Tags;
+import org.apache.lucene.store.IndexInput;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test to FDBIndexInput functionality.
@@ -79,4 +88,73 @@ public class FDBIndexInputTest extends FDBDirectoryBaseTest {
         input.readBytes(actual, 0, actual.length);
         assertEquals(actual.length, expected.length - offset);
     }
+
+    @Test
+    void testSequentialReadsReadAhead() throws Exception {
+        final FDBStoreTimer readAheadTimer = new FDBStoreTimer();
+        final FDBRecordContextConfig config = FDBRecordContextConfig.newBuilder()
+                .setTimer(readAheadTimer)
+                .setRecordContextProperties(RecordLayerPropertyStorage.newBuilder()
+                        .addProp(LuceneRecordContextProperties.LUCENE_READ_AHEAD_MAXIMUM_BLOCKS, 16)
+                        .build())
+                .build();
+        try (FDBRecordContext readAheadContext = fdb.openContext(config)) {
+            final FDBDirectory writeDirectory = new FDBDirectory(subspace, readAheadContext, null);
+            final int blockCount = 100;
+            FDBIndexOutput output = new FDBIndexOutput(FILE_NAME, writeDirectory);
+            byte[] expected = new byte[blockCount * writeDirectory.getBlockSize()];
+            random.nextBytes(expected);
+            output.writeBytes(expected, expected.length);
+            output.close();
+
+            // A new directory, so that no blocks are cached yet
+            FDBIndexInput input = new FDBIndexInput(FILE_NAME, new FDBDirectory(subspace, readAheadContext, null));
+            byte[] actual = new byte[expected.length];
+            for (int offset = 0; offset < actual.length; offset += 100) {
+                input.readBytes(actual, offset, Math.min(100, actual.length - offset));
+            }
+            assertArrayEquals(expected, actual);
+            // Every block after the first two is read ahead, a few at a time
+            assertEquals(blockCount - 2, readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_BLOCKS));
+            final int rangeReads = readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_RANGE_READS);
+            assertTrue(rangeReads > 0 && rangeReads <= (blockCount - 2) / 4, () -> "range reads: " + rangeReads);
+            assertEquals(0, readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_WASTED_BLOCKS));
+        }
+    }
+
+    @Test
+    void testSliceReadsAheadWithinItself() throws Exception {
+        final FDBStoreTimer readAheadTimer = new FDBStoreTimer();
+        final FDBRecordContextConfig config = FDBRecordContextConfig.newBuilder()
+                .setTimer(readAheadTimer)
+                .setRecordContextProperties(RecordLayerPropertyStorage.newBuilder()
+                        .addProp(LuceneRecordContextProperties.LUCENE_READ_AHEAD_MAXIMUM_BLOCKS, 16)
+                        .build())
+                .build();
+        try (FDBRecordContext readAheadContext = fdb.openContext(config)) {
+            final FDBDirectory writeDirectory = new FDBDirectory(subspace, readAheadContext, null);
+            final int blockSize = writeDirectory.getBlockSize();
+            final int blockCount = 100;
+            FDBIndexOutput output = new FDBIndexOutput(FILE_NAME, writeDirectory);
+            byte[] expected = new byte[blockCount * blockSize];
+            random.nextBytes(expected);
+            output.writeBytes(expected, expected.length);
+            output.close();
+
+            // A slice from the middle of block 10 to the middle of block 40, as of a file within a compound file
+            final int sliceOffset = 10 * blockSize + blockSize / 2;
+            final int sliceLength = 30 * blockSize;
+            FDBIndexInput input = new FDBIndexInput(FILE_NAME, new FDBDirectory(subspace, readAheadContext, null));
+            final IndexInput slice = input.slice("slice", sliceOffset, sliceLength);
+            byte[] actual = new byte[sliceLength];
+            for (int offset = 0; offset < actual.length; offset += 100) {
+                slice.readBytes(actual, offset, Math.min(100, actual.length - offset));
+            }
+            assertArrayEquals(Arrays.copyOfRange(expected, sliceOffset, sliceOffset + sliceLength), actual);
+            // Blocks 10 and 11 are read on their own and 12 through 40 are read ahead, but nothing past the slice
+            assertEquals(29, readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_BLOCKS));
+            assertTrue(readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_RANGE_READS) > 0);
+            assertEquals(0, readAheadTimer.getCount(LuceneEvents.Counts.LUCENE_READ_AHEAD_WASTED_BLOCKS));
+        }
+    }
 }
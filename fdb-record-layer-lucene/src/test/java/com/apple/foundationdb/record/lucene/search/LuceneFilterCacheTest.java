@@ -0,0 +1,172 @@
+/*
+ * LuceneFilterCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2024 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.lucene.search;
+
+import com.apple.foundationdb.record.lucene.LuceneEvents;
+import com.apple.foundationdb.record.lucene.codec.LuceneOptimizedCodec;
+import com.apple.foundationdb.record.lucene.directory.FDBDirectoryBaseTest;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.test.Tags;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LuceneFilterCache}.
+ */
+@Tag(Tags.RequiresFDB)
+class LuceneFilterCacheTest extends FDBDirectoryBaseTest {
+    private static final Query FILTER = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("tenant", "t1")), BooleanClause.Occur.FILTER)
+            .add(new TermQuery(new Term("status", "open")), BooleanClause.Occur.FILTER)
+            .build();
+
+    private static Document document(String id, String tenant, String status) {
+        final Document document = new Document();
+        document.add(new StringField("id", id, Field.Store.YES));
+        document.add(new StringField("tenant", tenant, Field.Store.NO));
+        document.add(new StringField("status", status, Field.Store.NO));
+        return document;
+    }
+
+    private static IndexWriterConfig writerConfig() {
+        return new IndexWriterConfig(new StandardAnalyzer()).setCodec(LuceneOptimizedCodec.CODEC);
+    }
+
+    private static int count(DirectoryReader reader, LuceneFilterCache cache, FDBStoreTimer timer) throws IOException {
+        final LuceneOptimizedIndexSearcher searcher = new LuceneOptimizedIndexSearcher(reader);
+        searcher.setFilterCache(cache, timer);
+        return searcher.count(FILTER);
+    }
+
+    @Test
+    void sharedBetweenReaders() throws IOException {
+        final LuceneFilterCache cache = new LuceneFilterCache(1024 * 1024);
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (IndexWriter writer = new IndexWriter(directory, writerConfig())) {
+            for (int i = 0; i < 100; i++) {
+                writer.addDocument(document(Integer.toString(i), i % 2 == 0 ? "t1" : "t2", i % 5 == 0 ? "open" : "closed"));
+            }
+            writer.commit();
+
+            // Each transaction opens its own reader of the same segment.
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(10, count(reader, cache, timer));
+            }
+            assertEquals(0, cache.size(), "not cached until used again");
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(10, count(reader, cache, timer));
+            }
+            assertTrue(cache.size() > 0);
+            final long misses = cache.getMissCount();
+            assertEquals(misses, timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_MISSES));
+            assertEquals(0, timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS));
+
+            timer.reset();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(10, count(reader, cache, timer));
+            }
+            assertEquals(misses, cache.getMissCount());
+            assertTrue(timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS) > 0);
+
+            // Deleted documents are removed from the cached matches when searching.
+            writer.deleteDocuments(new Term("id", "0"));
+            writer.commit();
+            timer.reset();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(9, count(reader, cache, timer));
+            }
+            assertEquals(0, timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_MISSES));
+            assertTrue(timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS) > 0);
+
+            // A new segment is cached separately.
+            writer.addDocument(document("100", "t1", "open"));
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(10, count(reader, cache, timer));
+            }
+        }
+    }
+
+    @Test
+    void limitedByBytes() throws IOException {
+        final LuceneFilterCache cache = new LuceneFilterCache(8 * 1024);
+        try (IndexWriter writer = new IndexWriter(directory, writerConfig())) {
+            for (int i = 0; i < 100; i++) {
+                writer.addDocument(document(Integer.toString(i), "t" + (i % 20), "open"));
+            }
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                for (int i = 0; i < 20; i++) {
+                    final LuceneOptimizedIndexSearcher searcher = new LuceneOptimizedIndexSearcher(reader);
+                    searcher.setFilterCache(cache, null);
+                    final Query query = new BooleanQuery.Builder()
+                            .add(new TermQuery(new Term("tenant", "t" + i)), BooleanClause.Occur.FILTER)
+                            .add(new TermQuery(new Term("status", "open")), BooleanClause.Occur.FILTER)
+                            .build();
+                    assertEquals(5, searcher.count(query));
+                    assertEquals(5, searcher.count(query));
+                    assertTrue(cache.getBytes() <= cache.getMaximumBytes());
+                }
+            }
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    void onlyFDBDirectorySegments() throws IOException {
+        final LuceneFilterCache cache = new LuceneFilterCache(1024 * 1024);
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        // Segments built in memory, such as those of pending writes, get new ids every time and are not cached.
+        try (ByteBuffersDirectory memoryDirectory = new ByteBuffersDirectory();
+                IndexWriter writer = new IndexWriter(memoryDirectory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < 100; i++) {
+                writer.addDocument(document(Integer.toString(i), i % 2 == 0 ? "t1" : "t2", i % 5 == 0 ? "open" : "closed"));
+            }
+            writer.commit();
+            for (int i = 0; i < 3; i++) {
+                try (DirectoryReader reader = DirectoryReader.open(memoryDirectory)) {
+                    assertEquals(10, count(reader, cache, timer));
+                }
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, timer.getCount(LuceneEvents.Counts.LUCENE_FILTER_CACHE_HITS));
+    }
+}